@@ -67,6 +67,12 @@ protected void attachBaseContext(Context base) {
         // Initialize Update Checker (WorkManager for periodic checks)
         initializeUpdateChecker();
 
+        // Daily conditional refresh of fetched provider model lists
+        try {
+            tn.eluea.kgpt.llm.ModelCatalogWorker.schedule(this);
+        } catch (Throwable ignored) {
+        }
+
         // Start system clipboard monitoring in KGPT app process.
         // This makes "AI剪贴板" able to capture system clipboard changes even when
         // the Xposed clipboard hook isn't active (e.g., scope not including System Framework).
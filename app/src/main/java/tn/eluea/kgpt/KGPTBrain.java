@@ -19,6 +19,7 @@ import tn.eluea.kgpt.instruction.command.CommandManager;
 import tn.eluea.kgpt.listener.DialogDismissListener;
 import tn.eluea.kgpt.listener.InputEventListener;
 import tn.eluea.kgpt.llm.GenerativeAIController;
+import tn.eluea.kgpt.llm.RequestTracer;
 import tn.eluea.kgpt.provider.XposedConfigReader;
 import tn.eluea.kgpt.text.TextParser;
 import tn.eluea.kgpt.text.parse.result.ParseResult;
@@ -80,6 +81,9 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
         // Load inline ask prefix from config
         loadInlineAskPrefix();
 
+        // Replays prompts queued while offline (possibly by an earlier keyboard process).
+        tn.eluea.kgpt.core.ai.OfflineOutbox.getInstance().start(context);
+
         tn.eluea.kgpt.util.Logger.log("KGPTBrain initialized (Refactored)");
         tn.eluea.kgpt.util.Logger.log("XSharedPreferences available: " + XposedConfigReader.isAvailable());
     }
@@ -112,13 +116,25 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
         }
     }
 
+    @Override
+    public int getTriggerTailWindow() {
+        return mTextParser.getTriggerTailWindow();
+    }
+
+    @Override
+    public boolean mayTriggerOnTail(CharSequence tail) {
+        return mTextParser.mayEndWithTrigger(tail);
+    }
+
     @Override
     public void onTextUpdate(String text, int cursor) {
         // SOLVED: Offload config check to background thread
         mConfigHandler.post(this::reloadConfigIfNeeded);
 
         IMSController imsController = UiInteractor.getInstance().getIMSController();
+        final long parseStartNs = android.os.SystemClock.elapsedRealtimeNanos();
         ParseResult result = mTextParser.parse(text, cursor);
+        final long parseEndNs = android.os.SystemClock.elapsedRealtimeNanos();
         if (result != null) {
             // Some editors keep a trailing newline/whitespace in extracted text.
             // Java regex '$' can match *before* a final newline, making indexEnd < cursor.
@@ -196,6 +212,7 @@ public class KGPTBrain implements InputEventListener, DialogDismissListener {
                     imsController.startNotifyInput();
                 }
 
+                RequestTracer.getInstance().beginPending(parseStartNs, parseEndNs);
                 processParsedText(text, result);
             }
         }
@@ -225,6 +225,7 @@ private void hookKeyboard(XC_LoadPackage.LoadPackageParam lpparam) {
         hookManager.hook(inputMethodServiceClass, "onStartInput",
                 new Class<?>[] { EditorInfo.class, boolean.class }, MethodHook.after(param -> {
                     InputMethodService ims = (InputMethodService) param.thisObject;
+                    IMSController.getInstance().onStartInput((EditorInfo) param.args[0]);
                         
                     // Performance optimization: Skip if InputConnection hasn't changed
                     if (ims.getCurrentInputConnection() == null) {
@@ -26,6 +26,9 @@ import java.util.List;
 import tn.eluea.kgpt.instruction.command.Commands;
 import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
 import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.CapabilityProbeWorker;
+import tn.eluea.kgpt.llm.ModelCapabilities;
+import tn.eluea.kgpt.llm.ModelCatalog;
 import tn.eluea.kgpt.listener.ConfigInfoProvider;
 import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.provider.ConfigClient;
@@ -76,6 +79,8 @@ public class SPManager implements ConfigInfoProvider {
 
     private SPManager(Context context) {
         mClient = new ConfigClient(context);
+        // Rules written by another process (settings UI, backup restore) reach the IME through here.
+        mClient.registerListener(PREF_MODEL_CAP_RULES, (key, newValue) -> ModelCapabilities.reloadRules());
         updateVersion();
         initializeDefaultCommands();
         initializeDefaultPatterns();
@@ -179,6 +184,7 @@ public class SPManager implements ConfigInfoProvider {
 
     public void setSubModel(LanguageModel model, String subModel) {
         setLanguageModelField(model, LanguageModelField.SubModel, subModel);
+        CapabilityProbeWorker.onSubModelChanged(model, subModel);
     }
 
     public String getSubModel(LanguageModel model) {
@@ -216,8 +222,34 @@ public void setCachedModels(LanguageModel model, String baseUrl, List<String> mo
         }
     }
 
-    mClient.putString(keyJson, arr.toString());
-    if (baseUrl != null) mClient.putString(keyUrl, baseUrl.trim());
+    // Diff against the stored list: an unchanged refresh (the common case) writes nothing.
+    String json = arr.toString();
+    String newUrl = baseUrl != null ? baseUrl.trim() : null;
+    boolean listChanged = !json.equals(mClient.getString(keyJson, null));
+    boolean urlChanged = newUrl != null && !newUrl.equals(mClient.getString(keyUrl, null));
+    if (!listChanged && !urlChanged) return;
+
+    if (listChanged) mClient.putString(keyJson, json);
+    if (urlChanged) mClient.putString(keyUrl, newUrl);
+    ModelCatalog.getInstance().invalidateIndex(model);
+    CapabilityProbeWorker.onModelsFetched(model);
+}
+
+// Conditional GET validators (ETag / Last-Modified) of the last model list download, per provider.
+private static final String PREF_MODEL_CATALOG_META = "model_catalog_meta_v1";
+
+public String getModelCatalogMetaJson() {
+    try {
+        return mClient.getString(PREF_MODEL_CATALOG_META, "{}");
+    } catch (Throwable t) {
+        return "{}";
+    }
+}
+
+public void setModelCatalogMetaJson(String json) {
+    try {
+        mClient.putString(PREF_MODEL_CATALOG_META, json == null ? "{}" : json);
+    } catch (Throwable ignored) {}
 }
 
 public List<String> getCachedModels(LanguageModel model) {
@@ -566,22 +598,6 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
     public static final int STREAM_GRANULARITY_PUNCT = 2;
 
 
-    // Per-request overrides (ThreadLocal). Used by auto-downgrade retry logic to
-    // force a different streaming mode without changing the user's global setting.
-    private static final ThreadLocal<Integer> TL_STREAM_MODE_OVERRIDE = new ThreadLocal<>();
-
-    public static void setThreadStreamingModeOverride(Integer mode) {
-        if (mode == null) {
-            TL_STREAM_MODE_OVERRIDE.remove();
-            return;
-        }
-        TL_STREAM_MODE_OVERRIDE.set(mode);
-    }
-
-    public static void clearThreadStreamingModeOverride() {
-        TL_STREAM_MODE_OVERRIDE.remove();
-    }
-
     public boolean getStreamingOutputEnabled() {
         return mClient.getBoolean(PREF_STREAMING_OUTPUT_ENABLED, false);
     }
@@ -1211,13 +1227,6 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
         return v;
     }
 
-    /** Streaming mode for the current request. Can be overridden via ThreadLocal. */
-    public int getStreamingOutputModeForRequest() {
-        Integer o = TL_STREAM_MODE_OVERRIDE.get();
-        if (o != null) return o;
-        return getStreamingOutputMode();
-    }
-
 
     public void setStreamingOutputMode(int mode) {
         int v = mode;
@@ -1697,6 +1706,7 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
     // Tri-state: key absent = unknown, 0 = false, 1 = true
     private static final String PREF_MODEL_CAP_TEMP = "model_cap.temp.%s.%s";      // provider, subModelKey
     private static final String PREF_MODEL_CAP_REASON = "model_cap.reason.%s.%s";  // provider, subModelKey
+    private static final String PREF_MODEL_CAP_STREAM_USAGE = "model_cap.stream_usage.%s.%s";  // provider, subModelKey
     // Integer cache: key absent = unknown, value > 0 = safe max output tokens to use (auto-learned)
     private static final String PREF_MODEL_CAP_MAXTOK = "model_cap.maxtok.%s.%s";  // provider, subModelKey
 
@@ -1734,6 +1744,7 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
             String key = capKey(PREF_MODEL_CAP_TEMP, provider, subModel);
             mClient.putInt(key, supported ? 1 : 0);
         } catch (Throwable ignored) {}
+        ModelCapabilities.invalidate(provider, subModel);
     }
 
     /**
@@ -1756,6 +1767,30 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
             String key = capKey(PREF_MODEL_CAP_REASON, provider, subModel);
             mClient.putInt(key, supported ? 1 : 0);
         } catch (Throwable ignored) {}
+        ModelCapabilities.invalidate(provider, subModel);
+    }
+
+    /**
+     * Returns cached support for {@code stream_options.include_usage}.
+     * @return Boolean.TRUE/Boolean.FALSE if known, null if unknown.
+     */
+    public Boolean getCachedSupportsStreamUsage(LanguageModel provider, String subModel) {
+        try {
+            String key = capKey(PREF_MODEL_CAP_STREAM_USAGE, provider, subModel);
+            if (!mClient.contains(key)) return null;
+            int v = mClient.getInt(key, 0);
+            return v == 1;
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    public void setCachedSupportsStreamUsage(LanguageModel provider, String subModel, boolean supported) {
+        try {
+            String key = capKey(PREF_MODEL_CAP_STREAM_USAGE, provider, subModel);
+            mClient.putInt(key, supported ? 1 : 0);
+        } catch (Throwable ignored) {}
+        ModelCapabilities.invalidate(provider, subModel);
     }
 
     /**
@@ -1795,6 +1830,94 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
             if (v <= 0) v = 0;
             mClient.putInt(key, v);
         } catch (Throwable ignored) {}
+        ModelCapabilities.invalidate(provider, subModel);
+    }
+
+    // Capability rules override (JSON, same format as ModelCapabilities.DEFAULT_RULES). Empty = built-in.
+    // Set through backup restore; other processes reload on the change notification.
+    private static final String PREF_MODEL_CAP_RULES = "model_cap_rules_v1";
+
+    public String getModelCapabilityRulesJson() {
+        try {
+            return mClient.getString(PREF_MODEL_CAP_RULES, "");
+        } catch (Throwable t) {
+            return "";
+        }
+    }
+
+    public void setModelCapabilityRulesJson(String json) {
+        try {
+            mClient.putString(PREF_MODEL_CAP_RULES, json == null ? "" : json);
+        } catch (Throwable ignored) {}
+        ModelCapabilities.reloadRules();
+    }
+
+    // Prompts waiting for connectivity (JSON array), see OfflineOutbox.
+    private static final String PREF_OFFLINE_OUTBOX = "offline_outbox_v1";
+
+    public String getOfflineOutboxJson() {
+        try {
+            return mClient.getString(PREF_OFFLINE_OUTBOX, "[]");
+        } catch (Throwable t) {
+            return "[]";
+        }
+    }
+
+    public void setOfflineOutboxJson(String json) {
+        try {
+            mClient.putString(PREF_OFFLINE_OUTBOX, json == null ? "[]" : json);
+        } catch (Throwable ignored) {}
+    }
+
+    // Last id handed to an outbox entry; only grows, so ids stay unique across restarts.
+    private static final String PREF_OFFLINE_OUTBOX_SEQ = "offline_outbox_seq_v1";
+
+    public int getOfflineOutboxSeq() {
+        try {
+            return mClient.getInt(PREF_OFFLINE_OUTBOX_SEQ, 0);
+        } catch (Throwable t) {
+            return 0;
+        }
+    }
+
+    public void setOfflineOutboxSeq(int seq) {
+        try {
+            mClient.putInt(PREF_OFFLINE_OUTBOX_SEQ, seq);
+        } catch (Throwable ignored) {}
+    }
+
+    // Per-provider transport: true = HTTP/2 (Http2InternetProvider), false = HttpURLConnection.
+    private static final String PREF_HTTP2_TRANSPORT_PREFIX = "http2_transport_";
+
+    public boolean getHttp2Enabled(LanguageModel model) {
+        try {
+            return mClient.getBoolean(PREF_HTTP2_TRANSPORT_PREFIX + model.name(), false);
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    public void setHttp2Enabled(LanguageModel model, boolean enabled) {
+        try {
+            mClient.putBoolean(PREF_HTTP2_TRANSPORT_PREFIX + model.name(), enabled);
+        } catch (Throwable ignored) {}
+    }
+
+    // Last background capability probe per "PROVIDER/subModel" (epoch ms), see CapabilityProbeWorker.
+    private static final String PREF_CAPABILITY_PROBES = "capability_probes_v1";
+
+    public String getCapabilityProbesJson() {
+        try {
+            return mClient.getString(PREF_CAPABILITY_PROBES, "{}");
+        } catch (Throwable t) {
+            return "{}";
+        }
+    }
+
+    public void setCapabilityProbesJson(String json) {
+        try {
+            mClient.putString(PREF_CAPABILITY_PROBES, json == null ? "{}" : json);
+        } catch (Throwable ignored) {}
     }
 
     /** 0..10. 0 = stateless (no context), 1..10 = include that many previous turns. Default = 1. */
@@ -2020,10 +2143,20 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
     public static final int DOWNGRADE_FLAG_STREAM = 1;
     public static final int DOWNGRADE_FLAG_BASEURL = 2;
     public static final int DOWNGRADE_FLAG_MODEL = 4;
+    /** Race the first backup (base URL / model) when the primary is slower than its p90 TTFT. */
+    public static final int DOWNGRADE_FLAG_HEDGE = 8;
+    /** Answer cut off by the output token limit: ask the model to continue and append the rest. */
+    public static final int DOWNGRADE_FLAG_CONTINUE = 16;
+    /** Probe a newly selected sub-model's parameter support in the background (idle, unmetered). */
+    public static final int DOWNGRADE_FLAG_PROBE = 32;
+    private static final int DOWNGRADE_FLAGS_ALL = 63;
 
-    /** Bitmask of DOWNGRADE_FLAG_* . Default enables all (7). */
+    /**
+     * Bitmask of DOWNGRADE_FLAG_* . Default enables stream/base URL/model and background probing (39);
+     * hedging and continuation are opt-in.
+     */
     public int getAutoDowngradeFlags() {
-        int v = (DOWNGRADE_FLAG_STREAM | DOWNGRADE_FLAG_BASEURL | DOWNGRADE_FLAG_MODEL);
+        int v = (DOWNGRADE_FLAG_STREAM | DOWNGRADE_FLAG_BASEURL | DOWNGRADE_FLAG_MODEL | DOWNGRADE_FLAG_PROBE);
         try {
             v = mClient.getInt(PREF_AUTO_DOWNGRADE_FLAGS, v);
         } catch (Throwable ignored) {
@@ -2033,14 +2166,14 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
             } catch (Throwable ignored2) {}
         }
         if (v < 0) v = 0;
-        if (v > 7) v = 7;
+        if (v > DOWNGRADE_FLAGS_ALL) v = DOWNGRADE_FLAGS_ALL;
         return v;
     }
 
     public void setAutoDowngradeFlags(int flags) {
         int v = flags;
         if (v < 0) v = 0;
-        if (v > 7) v = 7;
+        if (v > DOWNGRADE_FLAGS_ALL) v = DOWNGRADE_FLAGS_ALL;
         try {
             mClient.putInt(PREF_AUTO_DOWNGRADE_FLAGS, v);
         } catch (Throwable t) {
@@ -2083,6 +2216,69 @@ public String getCachedModelsBaseUrl(LanguageModel model) {
         mClient.putString(PREF_AUTO_DOWNGRADE_BACKUP_MODEL, v);
     }
 
+    // =============================
+    // Provider health (latency EWMA / circuit breaker), see ProviderHealthTracker
+    // =============================
+    private static final String PREF_PROVIDER_HEALTH = "provider_health_v1";
+
+    /** JSON object keyed by endpoint (model|subModel|baseUrl). Empty string if none. */
+    public String getProviderHealthJson() {
+        try {
+            String s = mClient.getString(PREF_PROVIDER_HEALTH, "");
+            return s == null ? "" : s;
+        } catch (Throwable ignored) {
+            return "";
+        }
+    }
+
+    public void setProviderHealthJson(String json) {
+        try {
+            mClient.putString(PREF_PROVIDER_HEALTH, json == null ? "" : json);
+        } catch (Throwable ignored) {}
+    }
+
+    // =============================
+    // Token usage time series, see UsageTracker
+    // =============================
+    private static final String PREF_USAGE_STATS = "usage_stats_v1";
+
+    /** JSON object keyed by model|subModel (daily buckets + completion histogram). Empty string if none. */
+    public String getUsageStatsJson() {
+        try {
+            String s = mClient.getString(PREF_USAGE_STATS, "");
+            return s == null ? "" : s;
+        } catch (Throwable ignored) {
+            return "";
+        }
+    }
+
+    public void setUsageStatsJson(String json) {
+        try {
+            mClient.putString(PREF_USAGE_STATS, json == null ? "" : json);
+        } catch (Throwable ignored) {}
+    }
+
+    // =============================
+    // Request traces (per-stage timings), see RequestTracer
+    // =============================
+    private static final String PREF_REQUEST_TRACES = "request_traces_v1";
+
+    /** JSON array of the most recent request traces. Empty string if none. */
+    public String getRequestTracesJson() {
+        try {
+            String s = mClient.getString(PREF_REQUEST_TRACES, "");
+            return s == null ? "" : s;
+        } catch (Throwable ignored) {
+            return "";
+        }
+    }
+
+    public void setRequestTracesJson(String json) {
+        try {
+            mClient.putString(PREF_REQUEST_TRACES, json == null ? "" : json);
+        } catch (Throwable ignored) {}
+    }
+
     // =============================
     // Labs: Request cancel / concurrency policy
     // =============================
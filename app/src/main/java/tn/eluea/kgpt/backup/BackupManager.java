@@ -40,6 +40,7 @@ public class BackupManager {
     private static final String KEY_PATTERNS = "patterns";
     private static final String KEY_LANGUAGE_MODEL = "language_model";
     private static final String KEY_SUB_MODELS = "sub_models";
+    private static final String KEY_MODEL_CAPABILITY_RULES = "model_capability_rules";
     private static final String KEY_THEME = "theme";
     private static final String KEY_AMOLED = "amoled";
     private static final String KEY_MATERIAL_YOU_ENABLED = "material_you_enabled";
@@ -105,6 +106,9 @@ public class BackupManager {
                     subModels.put(model.name(), subModel);
             }
             backup.put(KEY_SUB_MODELS, subModels);
+            String capabilityRules = spManager.getModelCapabilityRulesJson();
+            if (capabilityRules != null && !capabilityRules.isEmpty())
+                backup.put(KEY_MODEL_CAPABILITY_RULES, capabilityRules);
             includedSections.put(BackupOptions.Option.LANGUAGE_MODEL.key);
         }
 
@@ -277,6 +281,9 @@ public class BackupManager {
                     }
                     restoredItems.add("AI Model Settings");
                 }
+                if (backup.has(KEY_MODEL_CAPABILITY_RULES)) {
+                    spManager.setModelCapabilityRulesJson(backup.getString(KEY_MODEL_CAPABILITY_RULES));
+                }
             }
 
             if (options.isSelected(BackupOptions.Option.SENSITIVE_DATA) && backup.has(KEY_SENSITIVE_DATA)) {
@@ -34,6 +34,8 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import tn.eluea.kgpt.BuildConfig;
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.llm.RequestTracer;
 
 public class LogExporter {
 
@@ -117,6 +119,10 @@ public class LogExporter {
             addSettingsDump(zos);
             result.settingsDump = true;
 
+            // Add per-stage timings of recent requests
+            addRequestTraces(zos);
+            result.requestTraces = true;
+
             result.success = true;
             result.hasRootAccess = hasRootAccess;
             return result;
@@ -364,6 +370,16 @@ public class LogExporter {
         }
     }
 
+    private void addRequestTraces(ZipOutputStream zos) throws IOException {
+        String traces;
+        try {
+            traces = RequestTracer.format(SPManager.getInstance().getRequestTracesJson());
+        } catch (Exception e) {
+            traces = "Error reading request traces: " + e.getMessage();
+        }
+        addZipEntry(zos, "request_traces.txt", traces);
+    }
+
     private void addZipEntry(ZipOutputStream zos, String filename, String content) throws IOException {
         ZipEntry entry = new ZipEntry(filename);
         zos.putNextEntry(entry);
@@ -425,6 +441,7 @@ public class LogExporter {
         public boolean crashLogs = false;
         public boolean hookedKeyboardInfo = false;
         public boolean settingsDump = false;
+        public boolean requestTraces = false;
         public String errorMessage = null;
     }
 }
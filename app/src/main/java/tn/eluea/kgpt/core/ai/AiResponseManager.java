@@ -1,9 +1,5 @@
 package tn.eluea.kgpt.core.ai;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-
 import java.util.Random;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,9 +28,12 @@ import tn.eluea.kgpt.R;
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.listener.GenerativeAIListener;
 import tn.eluea.kgpt.llm.GenerativeAIController;
+import tn.eluea.kgpt.llm.LlmExecutor;
+import tn.eluea.kgpt.llm.RequestTracer;
 import tn.eluea.kgpt.ui.IMSController;
 import tn.eluea.kgpt.ui.UiInteractor;
 import tn.eluea.kgpt.core.ui.TopStatusBanner;
+import tn.eluea.kgpt.util.Logger;
 
 public class AiResponseManager implements GenerativeAIListener {
 
@@ -114,8 +113,22 @@ public class AiResponseManager implements GenerativeAIListener {
 
     // Streaming output renderer: throttle commits so the user can actually see a stream/typing effect.
     // This also provides a "simulated" streaming effect when the backend returns the full text at once.
-    private final Handler streamHandler = new Handler(Looper.getMainLooper());
+    // Ticks run on display frames against a virtual timeline (see StreamFrameClock), so the
+    // configured rhythm survives main-thread load instead of drifting like postDelayed.
+    private final StreamFrameClock streamClock = new StreamFrameClock(new StreamFrameClock.Listener() {
+        @Override
+        public void onTick() {
+            streamTick.run();
+        }
+
+        @Override
+        public void onFrameTicksDone(long frameTimeNanos) {
+            frameCommitter.runFrame(frameTimeNanos);
+        }
+    });
     private final StringBuilder streamPending = new StringBuilder();
+    // First editor commit of this request already stamped on its trace.
+    private boolean firstCommitTraced = false;
     // Network/prefetch buffer. When enabled, we decouple network chunk timing from UI rendering.
     // We first prefetch enough text, then render from the buffer using a stable pacing clock.
     private final StringBuilder streamPrefetch = new StringBuilder();
@@ -549,16 +562,12 @@ public class AiResponseManager implements GenerativeAIListener {
                 return;
             }
 
-            // Clear placeholder on first real output.
-            IMSController.getInstance().endInputLock();
-            clearGeneratingContent();
             // Switch to "replying" state only when we are about to show real output.
+            // (Placeholder removal and the reply marker happen with the first frame commit.)
             if (!replyStartedThisRequest) {
                 replyStartedThisRequest = true;
-                ensureReplySuffixInsertedIfNeeded();
                 showReplyingToastIfNeeded();
             }
-            IMSController.getInstance().flush();
 
             // Take a small slice to commit (avoid splitting surrogate pairs).
             // NOTE: Use the last scheduled delay for chars-per-tick sizing.
@@ -586,7 +595,8 @@ public class AiResponseManager implements GenerativeAIListener {
             String piece = streamPending.substring(0, n);
             streamPending.delete(0, n);
 
-            IMSController.getInstance().commit(piece);
+            // Written to the editor on the next vsync, coalesced with any other slice of this frame.
+            frameCommitter.submit(piece);
             streamCommittedTotalChars += piece.length();
 
             // Haptics: vibrate in sync with the renderer while outputting.
@@ -594,12 +604,6 @@ public class AiResponseManager implements GenerativeAIListener {
                 vibrateForStreamTick(tickMsForSizing, piece.length());
             }
 
-
-            // Marker animation (after-cursor rainbow) in sync with the renderer ticks.
-            if (replyStartedThisRequest) {
-                maybeAdvanceRainbowMarkerOnTick();
-            }
-
             // Non-linear pause after punctuation: if the piece ends with punctuation, delay the NEXT tick.
             try {
                 if (piece != null && !piece.isEmpty()) {
@@ -627,24 +631,54 @@ public class AiResponseManager implements GenerativeAIListener {
         }
     };
 
+    /**
+     * Editor side of the renderer: runs at most once per frame with everything the ticks produced
+     * since the last frame, so the placeholder cleanup, the commit and the marker update cost one
+     * batch edit instead of several IPCs per tick.
+     */
+    private final FrameCommitScheduler frameCommitter = new FrameCommitScheduler(new FrameCommitScheduler.Sink() {
+        @Override
+        public boolean commitFrame(String text) {
+            IMSController ims = IMSController.getInstance();
+            if (!firstCommitTraced) {
+                firstCommitTraced = true;
+                RequestTracer.Trace trace = mAIController.getActiveTrace();
+                if (trace != null) trace.stamp(RequestTracer.Stage.FIRST_COMMIT);
+            }
+            ims.endInputLock();
+            // Clear placeholder on first real output.
+            clearGeneratingContent();
+            ensureReplySuffixInsertedIfNeeded();
+
+            boolean ok = ims.commitBatched(text);
+
+            // Marker animation (after-cursor rainbow) in sync with the rendered output.
+            maybeAdvanceRainbowMarkerOnTick();
+
+            // More to output: keep locking to prevent self-trigger recursion.
+            if (streamScheduled || streamPending.length() > 0 || !streamCompleted) {
+                ims.startInputLock();
+            }
+            return ok;
+        }
+    });
+
     /** Schedule an immediate tick (first output should appear as soon as we have data). */
     private void scheduleStreamTickNow() {
         if (streamScheduled) return;
         streamScheduled = true;
-        streamHandler.post(streamTick);
+        streamClock.scheduleNow();
     }
 
     /** Schedule a paced tick to make the output feel like streaming/typing. */
     private void scheduleStreamTickDelayed(long delayMs) {
         if (streamScheduled) return;
         streamScheduled = true;
-        long ms = delayMs;
-        if (ms < 0) ms = 0;
-        streamHandler.postDelayed(streamTick, ms);
+        streamClock.scheduleAfter(delayMs);
     }
 
     private void cancelStreamTicks() {
-        streamHandler.removeCallbacks(streamTick);
+        streamClock.cancel();
         streamScheduled = false;
     }
 
@@ -674,6 +708,12 @@ public class AiResponseManager implements GenerativeAIListener {
 
     private void finishStreamingIfNeeded() {
         cancelStreamTicks();
+        // Write whatever is still waiting for a frame before the reply marker is removed.
+        frameCommitter.flushNow();
+        if (frameCommitter.getCommitCount() > 0) {
+            Logger.log("AiResponseManager", "stream commits: " + frameCommitter.describe()
+                    + " | pacing: " + streamClock.describe());
+        }
         streamCompleted = false;
         streamPending.setLength(0);
         streamPrefetch.setLength(0);
@@ -1213,23 +1253,6 @@ if (ok) {
         rainbowAnimTickCounter = 0;
     }
 
-    // Thread pool for AI requests - reuse threads instead of creating new ones
-    private static final ExecutorService aiExecutor = Executors.newFixedThreadPool(2);
-
-    // Shutdown hook to clean up executor
-    static {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            aiExecutor.shutdown();
-            try {
-                if (!aiExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    aiExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                aiExecutor.shutdownNow();
-            }
-        }));
-    }
-
     public AiResponseManager(GenerativeAIController aiController, Runnable onAiPrepareCallback) {
         this.mAIController = aiController;
         this.onAiPrepareCallback = onAiPrepareCallback;
@@ -1271,22 +1294,47 @@ if (ok) {
             return;
         }
 
-        // Use thread pool instead of creating new threads
-        aiExecutor.execute(() -> {
-            boolean useMemory = !isTextActionMode;
-            try {
-                // Prefer role+memory API if available
-                mAIController.generateResponse(prompt, systemMessage, roleIdOverride, useMemory);
-            } catch (Throwable t1) {
+        // Offline: don't wait out the connect timeout, the trigger text is already gone.
+        // Text actions are not queued: their reply replaces a selection that will be gone by then.
+        OfflineOutbox outbox = OfflineOutbox.getInstance();
+        if (!isTextActionMode && !outbox.isOnline()) {
+            outbox.enqueue(prompt, systemMessage, roleIdOverride);
+            setTextActionMode(false, null);
+            toastQueuedOffline();
+            return;
+        }
+        outbox.replayAsync();
+
+        // Role / memory resolution reads preferences, so do it off the main thread too. Text actions
+        // get their own lane so they don't queue behind (or hold up) inline requests.
+        final boolean textAction = isTextActionMode;
+        final LlmExecutor.Lane lane = textAction ? LlmExecutor.Lane.TEXT_ACTION : LlmExecutor.Lane.INTERACTIVE;
+        RequestTracer.getInstance().stampPending(RequestTracer.Stage.HANDOFF);
+        try {
+            LlmExecutor.getInstance().lane(lane).execute(() -> {
+                boolean useMemory = !textAction;
                 try {
-                    // Fall back to role-aware signature
-                    mAIController.generateResponse(prompt, systemMessage, roleIdOverride);
-                } catch (Throwable t2) {
-                    // Backward compatibility: legacy signature
-                    mAIController.generateResponse(prompt, systemMessage);
+                    // Prefer role+memory API if available
+                    mAIController.generateResponse(prompt, systemMessage, roleIdOverride, useMemory, lane);
+                } catch (Throwable t1) {
+                    try {
+                        // Fall back to role-aware signature
+                        mAIController.generateResponse(prompt, systemMessage, roleIdOverride);
+                    } catch (Throwable t2) {
+                        // Backward compatibility: legacy signature
+                        mAIController.generateResponse(prompt, systemMessage);
+                    }
                 }
-            }
-        });
+            });
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            Logger.error("AI request rejected: " + e.getMessage());
+        }
+    }
+
+    private void toastQueuedOffline() {
+        Context ctx = UiInteractor.getInstance().getContext();
+        toastShortSafe(ctx != null ? ctx.getString(R.string.offline_outbox_queued)
+                : "Offline: prompt queued");
     }
 
     public void setTextActionMode(boolean enabled, String selectedText) {
@@ -1308,6 +1356,9 @@ if (ok) {
         streamPending.setLength(0);
         streamPrefetch.setLength(0);
         cancelStreamTicks();
+        frameCommitter.reset();
+        streamClock.resetStats();
+        firstCommitTraced = false;
         streamCompleted = false;
         streamReceivedTotalChars = 0;
         streamCommittedTotalChars = 0;
@@ -1590,7 +1641,13 @@ if (ok) {
 
     @Override
     public void onAIError(Throwable t) {
+        onAIError(t, null);
+    }
+
+    @Override
+    public void onAIError(Throwable t, GenerativeAIController.Request request) {
         cancelStreamTicks();
+        frameCommitter.cancel();
         streamPending.setLength(0);
         streamPrefetch.setLength(0);
         streamCompleted = false;
@@ -1607,6 +1664,16 @@ if (ok) {
         // If we were buffering, clear it (avoid committing partial output on error).
         bufferedResponse.setLength(0);
 
+        // The request never reached the provider: queue it instead of committing the error.
+        if (request != null && request.lane != LlmExecutor.Lane.TEXT_ACTION
+                && OfflineOutbox.isConnectivityError(t)) {
+            OfflineOutbox.getInstance().enqueue(request.prompt, request.systemMessage, request.roleIdOverride);
+            IMSController.getInstance().startNotifyInput();
+            setTextActionMode(false, null);
+            toastQueuedOffline();
+            return;
+        }
+
         String errorMsg = t.getMessage();
         Context ctx = UiInteractor.getInstance().getContext();
         if (errorMsg == null || errorMsg.isEmpty()) {
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.core.ai;
+
+import android.view.Choreographer;
+
+/**
+ * Coalesces streaming output into at most one editor commit per display frame.
+ *
+ * The renderer hands over slices as it paces them; the text is accumulated and written on the
+ * next vsync in a single batch edit. Each commit is a Binder call into the target app, so when
+ * those calls get slow we commit every N frames instead (bigger chunks, fewer IPCs).
+ *
+ * Main thread only.
+ */
+final class FrameCommitScheduler implements Choreographer.FrameCallback {
+
+    /** Performs the actual editor write for one frame. */
+    interface Sink {
+        /** @return true if the text reached the editor. */
+        boolean commitFrame(String text);
+    }
+
+    private static final long DEFAULT_FRAME_NS = 16_666_667L;
+    private static final long MIN_FRAME_NS = 4_000_000L;
+    // A frame counts as dropped when its interval exceeds this multiple of the vsync period.
+    private static final double DROPPED_FRAME_FACTOR = 1.5;
+    // Keep commit latency under this share of the frame budget before spreading commits out.
+    private static final double LATENCY_BUDGET_SHARE = 0.5;
+    private static final int MAX_FRAME_STRIDE = 8;
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+    private static final long RATE_WINDOW_NS = 1_000_000_000L;
+
+    private final Sink sink;
+    private final StringBuilder pending = new StringBuilder();
+    private Choreographer choreographer;
+    private boolean frameScheduled = false;
+
+    // Frame cadence
+    private long frameIntervalNs = DEFAULT_FRAME_NS;
+    private long lastFrameTimeNs = 0;
+    private int framesSinceCommit = 0;
+    private int frameStride = 1;
+
+    // Metrics (per stream, reset in reset())
+    private double commitLatencyEwmaNs = 0;
+    private long commitCount = 0;
+    private long committedChars = 0;
+    private long framesObserved = 0;
+    private long droppedFrames = 0;
+    private long rateWindowStartNs = 0;
+    private int rateWindowCommits = 0;
+    private double commitsPerSecond = 0;
+
+    FrameCommitScheduler(Sink sink) {
+        this.sink = sink;
+    }
+
+    /** Queue text for the next frame. */
+    void submit(CharSequence text) {
+        if (text == null || text.length() == 0) return;
+        pending.append(text);
+        scheduleFrame();
+    }
+
+    boolean hasPending() {
+        return pending.length() > 0;
+    }
+
+    /** Write everything queued right now (end of stream, before the reply marker is removed). */
+    void flushNow() {
+        cancelFrame();
+        if (pending.length() == 0) return;
+        commitPending(System.nanoTime());
+    }
+
+    /**
+     * Handle the current frame from another frame callback (the pacing clock), so text produced
+     * during this vsync is written in it instead of one frame later.
+     */
+    void runFrame(long frameTimeNanos) {
+        if (pending.length() == 0) return;
+        cancelFrame();
+        doFrame(frameTimeNanos);
+    }
+
+    /** Drop queued text and stop waiting for frames. Metrics are kept until {@link #reset()}. */
+    void cancel() {
+        cancelFrame();
+        pending.setLength(0);
+        lastFrameTimeNs = 0;
+        framesSinceCommit = 0;
+    }
+
+    /** Start a new stream: drop queued text and clear metrics. */
+    void reset() {
+        cancel();
+        frameStride = 1;
+        commitLatencyEwmaNs = 0;
+        commitCount = 0;
+        committedChars = 0;
+        framesObserved = 0;
+        droppedFrames = 0;
+        rateWindowStartNs = 0;
+        rateWindowCommits = 0;
+        commitsPerSecond = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+
+        if (lastFrameTimeNs > 0) {
+            long delta = frameTimeNanos - lastFrameTimeNs;
+            if (delta > 0) {
+                framesObserved++;
+                // The shortest interval we see between back-to-back frames is the vsync period.
+                if (delta >= MIN_FRAME_NS && delta < frameIntervalNs) {
+                    frameIntervalNs = delta;
+                }
+                if (delta > frameIntervalNs * DROPPED_FRAME_FACTOR) {
+                    droppedFrames += Math.max(1, Math.round(delta / (double) frameIntervalNs) - 1);
+                }
+            }
+        }
+        lastFrameTimeNs = frameTimeNanos;
+
+        if (pending.length() == 0) {
+            lastFrameTimeNs = 0;
+            return;
+        }
+
+        framesSinceCommit++;
+        if (framesSinceCommit < frameStride) {
+            // Slow editor: let more text pile up for a bigger, later commit.
+            scheduleFrame();
+            return;
+        }
+
+        commitPending(frameTimeNanos);
+
+        // Keep the frame chain alive only while there is something left to write;
+        // the renderer re-arms us on the next submit().
+        if (pending.length() > 0) {
+            scheduleFrame();
+        } else {
+            lastFrameTimeNs = 0;
+        }
+    }
+
+    private void commitPending(long frameTimeNanos) {
+        String text = pending.toString();
+        pending.setLength(0);
+        framesSinceCommit = 0;
+
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            ok = sink.commitFrame(text);
+        } catch (Throwable ignored) {
+        }
+        long latency = System.nanoTime() - t0;
+
+        if (commitLatencyEwmaNs <= 0) {
+            commitLatencyEwmaNs = latency;
+        } else {
+            commitLatencyEwmaNs += LATENCY_EWMA_ALPHA * (latency - commitLatencyEwmaNs);
+        }
+        adaptStride();
+
+        if (!ok) return;
+        commitCount++;
+        committedChars += text.length();
+
+        if (rateWindowStartNs == 0) rateWindowStartNs = frameTimeNanos;
+        rateWindowCommits++;
+        long elapsed = frameTimeNanos - rateWindowStartNs;
+        if (elapsed >= RATE_WINDOW_NS) {
+            commitsPerSecond = rateWindowCommits * 1_000_000_000.0 / elapsed;
+            rateWindowStartNs = frameTimeNanos;
+            rateWindowCommits = 0;
+        }
+    }
+
+    private void adaptStride() {
+        double budget = frameIntervalNs * LATENCY_BUDGET_SHARE;
+        int stride = (int) Math.ceil(commitLatencyEwmaNs / budget);
+        if (stride < 1) stride = 1;
+        if (stride > MAX_FRAME_STRIDE) stride = MAX_FRAME_STRIDE;
+        frameStride = stride;
+    }
+
+    private void scheduleFrame() {
+        if (frameScheduled) return;
+        try {
+            if (choreographer == null) choreographer = Choreographer.getInstance();
+            choreographer.postFrameCallback(this);
+            frameScheduled = true;
+        } catch (Throwable t) {
+            // No looper-bound Choreographer (should not happen on the main thread): write directly.
+            commitPending(System.nanoTime());
+        }
+    }
+
+    private void cancelFrame() {
+        if (!frameScheduled) return;
+        try {
+            choreographer.removeFrameCallback(this);
+        } catch (Throwable ignored) {
+        }
+        frameScheduled = false;
+    }
+
+    // =============================
+    // Metrics
+    // =============================
+
+    /** Commits per second over the last completed one-second window. */
+    double getCommitsPerSecond() {
+        return commitsPerSecond;
+    }
+
+    long getCommitCount() {
+        return commitCount;
+    }
+
+    long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    long getFramesObserved() {
+        return framesObserved;
+    }
+
+    double getCommitLatencyMs() {
+        return commitLatencyEwmaNs / 1_000_000.0;
+    }
+
+    /** Frames between commits currently used (1 = every vsync). */
+    int getFrameStride() {
+        return frameStride;
+    }
+
+    String describe() {
+        return String.format(java.util.Locale.US,
+                "commits=%d chars=%d cps=%.1f latency=%.2fms stride=%d frame=%.2fms dropped=%d/%d",
+                commitCount, committedChars, commitsPerSecond, getCommitLatencyMs(), frameStride,
+                frameIntervalNs / 1_000_000.0, droppedFrames, framesObserved);
+    }
+}
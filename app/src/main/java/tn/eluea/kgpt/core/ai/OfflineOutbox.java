@@ -0,0 +1,476 @@
+package tn.eluea.kgpt.core.ai;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import tn.eluea.kgpt.R;
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.clipboard.AIClipboardStore;
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.LlmExecutor;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.client.RequestSpec;
+import tn.eluea.kgpt.roles.RoleManager;
+import tn.eluea.kgpt.ui.IMSController;
+import tn.eluea.kgpt.ui.UiInteractor;
+
+/**
+ * Durable queue of prompts that could not be sent: fired while offline, or failed on a
+ * connectivity error after the trigger text was already deleted.
+ *
+ * Entries live in SPManager ({@code offline_outbox_v1}), so they survive the keyboard process
+ * being killed. A default-network callback replays them once connectivity is back. A result goes
+ * into the editor it was asked from if that input session is still active, otherwise into the AI
+ * clipboard with a notification. Text actions are never queued: their reply replaces a selection.
+ */
+public final class OfflineOutbox {
+    private static final String TAG = "KGPT_OfflineOutbox";
+
+    private static final int MAX_ENTRIES = 20;
+    private static final long MAX_AGE_MS = 24L * 60 * 60 * 1000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long REPLAY_TIMEOUT_SEC = 120;
+    private static final String CHANNEL_ID = "kgpt_offline_outbox";
+    private static final int NOTIFICATION_ID_BASE = 0x4b47;
+
+    private static volatile OfflineOutbox sInstance;
+
+    private final Object lock = new Object();
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
+    private final Handler timeouts = new Handler(Looper.getMainLooper());
+    private Context context;
+    private ConnectivityManager.NetworkCallback callback;
+
+    public static OfflineOutbox getInstance() {
+        if (sInstance == null) {
+            synchronized (OfflineOutbox.class) {
+                if (sInstance == null) sInstance = new OfflineOutbox();
+            }
+        }
+        return sInstance;
+    }
+
+    private OfflineOutbox() {
+    }
+
+    /** Bind to the keyboard process. Watches the network if entries are waiting from an earlier run. */
+    public void start(Context context) {
+        synchronized (lock) {
+            this.context = context;
+        }
+        if (read().length() > 0) watchNetwork();
+    }
+
+    // =============================
+    // Queue
+    // =============================
+
+    /** Whether the device has a network that claims internet access. */
+    public boolean isOnline() {
+        ConnectivityManager cm = connectivity();
+        if (cm == null) return true;
+        try {
+            Network network = cm.getActiveNetwork();
+            NetworkCapabilities caps = network != null ? cm.getNetworkCapabilities(network) : null;
+            return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        } catch (Throwable t) {
+            // No ACCESS_NETWORK_STATE in the host app: assume online and let the request decide.
+            return true;
+        }
+    }
+
+    /** Whether {@code t} (or a cause) means the request never reached the provider. */
+    public static boolean isConnectivityError(Throwable t) {
+        for (int depth = 0; t != null && depth < 8; depth++, t = t.getCause()) {
+            if (t instanceof UnknownHostException || t instanceof ConnectException
+                    || t instanceof NoRouteToHostException) {
+                return true;
+            }
+            if (t instanceof SocketTimeoutException && String.valueOf(t.getMessage()).contains("connect")) {
+                return true;
+            }
+            if (t instanceof SocketException && String.valueOf(t.getMessage()).contains("unreachable")) {
+                return true;
+            }
+            if (t instanceof InterruptedIOException) return false;
+        }
+        return false;
+    }
+
+    /**
+     * Queue a prompt for later. The role is resolved now (the user picked it for this prompt),
+     * conversation memory is not: the replay is a standalone request.
+     */
+    public void enqueue(String prompt, String systemMessage, String roleIdOverride) {
+        if (prompt == null || prompt.trim().isEmpty() || !SPManager.isReady()) return;
+        SPManager sp = SPManager.getInstance();
+        try {
+            String rid = (roleIdOverride != null && !roleIdOverride.trim().isEmpty())
+                    ? roleIdOverride.trim()
+                    : sp.getActiveRoleId();
+            systemMessage = RoleManager.resolveSystemMessage(rid, sp.getRolesJson(), systemMessage);
+        } catch (Throwable ignored) {}
+
+        try {
+            JSONObject entry = new JSONObject()
+                    .put("t", System.currentTimeMillis())
+                    .put("model", sp.getLanguageModel().name())
+                    .put("prompt", prompt)
+                    .put("session", IMSController.getInstance().getInputSessionId());
+            if (systemMessage != null) entry.put("system", systemMessage);
+            synchronized (lock) {
+                int id = sp.getOfflineOutboxSeq() + 1;
+                sp.setOfflineOutboxSeq(id);
+                entry.put("id", id);
+                JSONArray arr = read();
+                arr.put(entry);
+                while (arr.length() > MAX_ENTRIES) arr.remove(0);
+                write(arr);
+            }
+            Log.i(TAG, "Queued prompt for " + entry.optString("model"));
+        } catch (Throwable t) {
+            Log.w(TAG, "Could not queue prompt: " + t.getMessage());
+            return;
+        }
+        watchNetwork();
+    }
+
+    public int size() {
+        return read().length();
+    }
+
+    // =============================
+    // Replay
+    // =============================
+
+    private void watchNetwork() {
+        ConnectivityManager cm = connectivity();
+        if (cm == null) return;
+        synchronized (lock) {
+            if (callback != null) return;
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+                    if (caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) replayAsync();
+                }
+            };
+            try {
+                cm.registerDefaultNetworkCallback(callback);
+            } catch (Throwable t) {
+                // Missing permission in the host app: fall back to replaying on the next trigger.
+                callback = null;
+                Log.w(TAG, "No network callback: " + t.getMessage());
+            }
+        }
+    }
+
+    private void unwatchNetwork() {
+        ConnectivityManager cm = connectivity();
+        synchronized (lock) {
+            if (callback == null) return;
+            try {
+                if (cm != null) cm.unregisterNetworkCallback(callback);
+            } catch (Throwable ignored) {}
+            callback = null;
+        }
+    }
+
+    /**
+     * Replay queued prompts if there are any and the device is online. Each entry is sent from
+     * the I/O pool and the next one starts when its reply ends, so nothing waits on a lane.
+     */
+    public void replayAsync() {
+        if (read().length() == 0 || !isOnline()) return;
+        if (!replaying.compareAndSet(false, true)) return;
+        replayNext(new HashSet<>());
+    }
+
+    private void replayNext(HashSet<Long> tried) {
+        try {
+            LlmExecutor.getInstance().io().execute(() -> {
+                try {
+                    sendNext(tried);
+                } catch (Throwable t) {
+                    Log.w(TAG, "Replay stopped: " + t.getMessage());
+                    replaying.set(false);
+                }
+            });
+        } catch (Throwable t) {
+            // I/O pool full: the next network change or trigger replays.
+            replaying.set(false);
+        }
+    }
+
+    /**
+     * Send the oldest entry not yet tried in this pass. An entry that fails for another reason
+     * than connectivity goes to the back of the queue, so it does not hold up the ones behind it.
+     */
+    private void sendNext(HashSet<Long> tried) {
+        JSONObject entry = null;
+        boolean empty;
+        synchronized (lock) {
+            JSONArray arr = read();
+            dropExpired(arr);
+            write(arr);
+            empty = arr.length() == 0;
+            for (int i = 0; i < arr.length() && entry == null; i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o != null && !tried.contains(o.optLong("id"))) entry = o;
+            }
+        }
+        if (entry == null) {
+            // Empty, or everything left already failed in this pass and waits for the next one.
+            replaying.set(false);
+            if (empty) unwatchNetwork();
+            return;
+        }
+        tried.add(entry.optLong("id"));
+        final JSONObject sent = entry;
+        send(sent, (result, t) -> {
+            if (t == null) {
+                remove(sent);
+                deliver(sent, result);
+                replayNext(tried);
+                return;
+            }
+            if (isConnectivityError(t)) {
+                Log.d(TAG, "Still offline, keeping " + size() + " queued");
+                replaying.set(false);
+                return;
+            }
+            int attempts = sent.optInt("n") + 1;
+            if (attempts < MAX_ATTEMPTS) {
+                moveToBack(sent, attempts);
+            } else {
+                remove(sent);
+                notifyUser(sent, null, t.getMessage());
+            }
+            replayNext(tried);
+        });
+    }
+
+    /** Send {@code entry}; {@code done} gets the whole reply or the error, exactly once. */
+    private void send(JSONObject entry, BiConsumer<String, Throwable> done) {
+        Publisher<String> publisher;
+        try {
+            LanguageModel model = LanguageModel.valueOf(entry.getString("model"));
+            SPManager sp = SPManager.getInstance();
+            LanguageModelClient client = LanguageModelClient.forModel(model);
+            for (LanguageModelField field : LanguageModelField.values()) {
+                client.setField(field, sp.getLanguageModelField(model, field));
+            }
+            // One whole reply: nothing is shown while it arrives.
+            RequestSpec spec = new RequestSpec.Builder()
+                    .setStreamingMode(SPManager.STREAM_MODE_TYPEWRITER)
+                    .build();
+            publisher = client.submitPrompt(entry.getString("prompt"),
+                    entry.has("system") ? entry.getString("system") : null, spec);
+        } catch (Throwable t) {
+            done.accept(null, t);
+            return;
+        }
+
+        StringBuilder out = new StringBuilder();
+        AtomicBoolean finished = new AtomicBoolean(false);
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+        Runnable timeout = () -> {
+            if (!finished.compareAndSet(false, true)) return;
+            Subscription s = subscription.get();
+            if (s != null) s.cancel();
+            // Back off the main thread: the result handling writes preferences.
+            replayOnIo(() -> done.accept(null, new SocketTimeoutException("Queued request timed out")));
+        };
+        timeouts.postDelayed(timeout, TimeUnit.SECONDS.toMillis(REPLAY_TIMEOUT_SEC));
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription.set(s);
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                out.append(s);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (!finished.compareAndSet(false, true)) return;
+                timeouts.removeCallbacks(timeout);
+                done.accept(null, t);
+            }
+
+            @Override
+            public void onComplete() {
+                if (!finished.compareAndSet(false, true)) return;
+                timeouts.removeCallbacks(timeout);
+                done.accept(out.toString(), null);
+            }
+        });
+    }
+
+    private void replayOnIo(Runnable r) {
+        try {
+            LlmExecutor.getInstance().io().execute(r);
+        } catch (Throwable t) {
+            r.run();
+        }
+    }
+
+    private void deliver(JSONObject entry, String result) {
+        if (result == null || result.isEmpty()) return;
+        String session = entry.optString("session", "");
+        UiInteractor.getInstance().post(() -> {
+            // Only the input session the prompt came from; the same kind of field in another
+            // chat (or after a restart) is a different editor.
+            if (!session.isEmpty() && session.equals(IMSController.getInstance().getInputSessionId())
+                    && IMSController.getInstance().commitToInputNow(result)) {
+                Log.i(TAG, "Queued reply delivered to its editor");
+                return;
+            }
+            AIClipboardStore.append(context(), result);
+            notifyUser(entry, result, null);
+        });
+    }
+
+    private void notifyUser(JSONObject entry, String result, String error) {
+        Context ctx = context();
+        if (ctx == null) return;
+        try {
+            NotificationManager nm = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+            if (nm == null) return;
+            Notification.Builder builder;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                nm.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                        ctx.getString(R.string.offline_outbox_channel), NotificationManager.IMPORTANCE_DEFAULT));
+                builder = new Notification.Builder(ctx, CHANNEL_ID);
+            } else {
+                builder = new Notification.Builder(ctx);
+            }
+            String title = error == null
+                    ? ctx.getString(R.string.offline_outbox_delivered)
+                    : ctx.getString(R.string.offline_outbox_failed);
+            String text = error == null ? result : entry.optString("prompt") + "\n" + error;
+            builder.setSmallIcon(android.R.drawable.stat_notify_chat)
+                    .setContentTitle(title)
+                    .setContentText(text)
+                    .setStyle(new Notification.BigTextStyle().bigText(text))
+                    .setAutoCancel(true);
+            // Ids come from a growing counter, so the (at most MAX_ENTRIES) live ones never collide.
+            nm.notify(NOTIFICATION_ID_BASE + (int) (entry.optLong("id") % 1000), builder.build());
+        } catch (Throwable t) {
+            // Notifications blocked for the host app: the reply is still in the AI clipboard.
+            Log.w(TAG, "Notification failed: " + t.getMessage());
+        }
+    }
+
+    // =============================
+    // Storage
+    // =============================
+
+    private JSONArray read() {
+        try {
+            if (!SPManager.isReady()) return new JSONArray();
+            return new JSONArray(SPManager.getInstance().getOfflineOutboxJson());
+        } catch (Throwable t) {
+            return new JSONArray();
+        }
+    }
+
+    private void write(JSONArray arr) {
+        try {
+            if (SPManager.isReady()) SPManager.getInstance().setOfflineOutboxJson(arr.toString());
+        } catch (Throwable ignored) {}
+    }
+
+    private static void dropExpired(JSONArray arr) {
+        long now = System.currentTimeMillis();
+        for (int i = arr.length() - 1; i >= 0; i--) {
+            JSONObject o = arr.optJSONObject(i);
+            if (o == null || now - o.optLong("t") > MAX_AGE_MS) arr.remove(i);
+        }
+    }
+
+    private void remove(JSONObject entry) {
+        synchronized (lock) {
+            JSONArray arr = read();
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o != null && o.optLong("id") == entry.optLong("id")) {
+                    arr.remove(i);
+                    break;
+                }
+            }
+            write(arr);
+        }
+    }
+
+    private void moveToBack(JSONObject entry, int attempts) {
+        synchronized (lock) {
+            JSONArray arr = read();
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o != null && o.optLong("id") == entry.optLong("id")) {
+                    arr.remove(i);
+                    try { o.put("n", attempts); } catch (Throwable ignored) {}
+                    arr.put(o);
+                    break;
+                }
+            }
+            write(arr);
+        }
+    }
+
+    // =============================
+    // Helpers
+    // =============================
+
+    private Context context() {
+        synchronized (lock) {
+            if (context != null) return context;
+        }
+        try {
+            return UiInteractor.getInstance().getContext();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private ConnectivityManager connectivity() {
+        Context ctx = context();
+        if (ctx == null) return null;
+        try {
+            return (ConnectivityManager) ctx.getSystemService(Context.CONNECTIVITY_SERVICE);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+}
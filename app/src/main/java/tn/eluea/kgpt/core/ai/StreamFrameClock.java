@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.core.ai;
+
+import android.view.Choreographer;
+
+/**
+ * Pacing clock for the streaming renderer, driven by display frames instead of
+ * Handler.postDelayed.
+ *
+ * Tick due times live on a virtual timeline: a delay requested from inside a tick is added to
+ * that tick's due time, not to the moment the main thread got around to running it. Lateness
+ * therefore never accumulates into the rhythm; when frames are missed, the overdue ticks run
+ * back-to-back in the next frame (more characters in that frame) and the timeline stays on
+ * schedule. The clock sleeps until the frame just before the next due time, so long pauses
+ * cost no extra main-thread wakeups.
+ *
+ * Main thread only.
+ */
+final class StreamFrameClock implements Choreographer.FrameCallback {
+
+    /** Per-frame hooks for the renderer. */
+    interface Listener {
+        /** One renderer tick. May call {@link #scheduleAfter(long)} to keep the clock running. */
+        void onTick();
+
+        /** All due ticks of this frame have run. */
+        void onFrameTicksDone(long frameTimeNanos);
+    }
+
+    private static final long FRAME_NS = 16_666_667L;
+    // Overdue ticks replayed in one frame before the timeline is re-anchored to "now".
+    private static final int MAX_CATCH_UP_TICKS = 12;
+    // Further behind than this (process paused, long GC, ...): do not replay, just resync.
+    private static final long MAX_CATCH_UP_NS = 1_000_000_000L;
+
+    private final Listener listener;
+    private Choreographer choreographer;
+
+    private boolean armed = false;
+    private boolean frameScheduled = false;
+    private long dueNs = 0;
+    // Due time of the tick being dispatched; delays requested during a tick extend from here.
+    private long dispatchingDueNs = 0;
+
+    // Jitter statistics (lateness of each tick against its virtual due time).
+    private long tickCount = 0;
+    private long catchUpTicks = 0;
+    private long resyncs = 0;
+    private double latenessSumMs = 0;
+    private double latenessSqSumMs = 0;
+    private double latenessMaxMs = 0;
+
+    StreamFrameClock(Listener listener) {
+        this.listener = listener;
+    }
+
+    boolean isArmed() {
+        return armed;
+    }
+
+    /** Run a tick on the next frame. */
+    void scheduleNow() {
+        arm(System.nanoTime());
+    }
+
+    /** Run a tick {@code delayMs} after the current tick's due time (or after now, outside a tick). */
+    void scheduleAfter(long delayMs) {
+        if (delayMs < 0) delayMs = 0;
+        long base = dispatchingDueNs > 0 ? dispatchingDueNs : System.nanoTime();
+        arm(base + delayMs * 1_000_000L);
+    }
+
+    void cancel() {
+        armed = false;
+        dueNs = 0;
+        if (frameScheduled) {
+            try {
+                choreographer.removeFrameCallback(this);
+            } catch (Throwable ignored) {
+            }
+            frameScheduled = false;
+        }
+    }
+
+    /** Clear jitter statistics for a new stream. */
+    void resetStats() {
+        tickCount = 0;
+        catchUpTicks = 0;
+        resyncs = 0;
+        latenessSumMs = 0;
+        latenessSqSumMs = 0;
+        latenessMaxMs = 0;
+    }
+
+    private void arm(long atNs) {
+        armed = true;
+        dueNs = atNs;
+        // Inside doFrame the loop picks the new due time up itself.
+        if (dispatchingDueNs > 0) return;
+        postFrame(System.nanoTime());
+    }
+
+    private void postFrame(long nowNs) {
+        try {
+            if (choreographer == null) choreographer = Choreographer.getInstance();
+            if (frameScheduled) choreographer.removeFrameCallback(this);
+            // Wake up on the frame that precedes the due time, not on every frame in between.
+            long waitMs = (dueNs - nowNs - FRAME_NS) / 1_000_000L;
+            if (waitMs > 0) {
+                choreographer.postFrameCallbackDelayed(this, waitMs);
+            } else {
+                choreographer.postFrameCallback(this);
+            }
+            frameScheduled = true;
+        } catch (Throwable t) {
+            frameScheduled = false;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (!armed) return;
+
+        // Frame time is the vsync timestamp; treat anything due before the next vsync as due now
+        // so ticks land on the frame closest to their schedule.
+        long horizon = frameTimeNanos + FRAME_NS / 2;
+
+        if (horizon - dueNs > MAX_CATCH_UP_NS) {
+            resyncs++;
+            dueNs = frameTimeNanos;
+        }
+
+        int ran = 0;
+        while (armed && dueNs <= horizon) {
+            if (ran >= MAX_CATCH_UP_TICKS) {
+                // Still behind after a full burst: give up the rest of the backlog.
+                resyncs++;
+                dueNs = frameTimeNanos + FRAME_NS;
+                break;
+            }
+            long tickDue = dueNs;
+            recordLateness(frameTimeNanos - tickDue);
+            if (ran > 0) catchUpTicks++;
+            ran++;
+
+            armed = false;
+            dispatchingDueNs = tickDue;
+            try {
+                listener.onTick();
+            } catch (Throwable ignored) {
+            } finally {
+                dispatchingDueNs = 0;
+            }
+        }
+
+        try {
+            listener.onFrameTicksDone(frameTimeNanos);
+        } catch (Throwable ignored) {
+        }
+
+        if (armed) postFrame(frameTimeNanos);
+    }
+
+    private void recordLateness(long latenessNs) {
+        double ms = latenessNs / 1_000_000.0;
+        tickCount++;
+        latenessSumMs += ms;
+        latenessSqSumMs += ms * ms;
+        double abs = Math.abs(ms);
+        if (abs > latenessMaxMs) latenessMaxMs = abs;
+    }
+
+    // =============================
+    // Jitter statistics
+    // =============================
+
+    long getTickCount() {
+        return tickCount;
+    }
+
+    /** Ticks that ran in the same frame as an earlier overdue tick. */
+    long getCatchUpTicks() {
+        return catchUpTicks;
+    }
+
+    long getResyncs() {
+        return resyncs;
+    }
+
+    double getMeanLatenessMs() {
+        return tickCount == 0 ? 0 : latenessSumMs / tickCount;
+    }
+
+    /** Standard deviation of tick lateness, i.e. the jitter felt as uneven rhythm. */
+    double getJitterMs() {
+        if (tickCount < 2) return 0;
+        double mean = latenessSumMs / tickCount;
+        double var = latenessSqSumMs / tickCount - mean * mean;
+        return var > 0 ? Math.sqrt(var) : 0;
+    }
+
+    double getMaxLatenessMs() {
+        return latenessMaxMs;
+    }
+
+    String describe() {
+        return String.format(java.util.Locale.US,
+                "ticks=%d catchUp=%d resync=%d lateMean=%.2fms jitter=%.2fms lateMax=%.2fms",
+                tickCount, catchUpTicks, resyncs, getMeanLatenessMs(), getJitterMs(), latenessMaxMs);
+    }
+}
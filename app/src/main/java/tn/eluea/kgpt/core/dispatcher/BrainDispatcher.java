@@ -11,6 +11,7 @@ import tn.eluea.kgpt.instruction.command.AbstractCommand;
 import tn.eluea.kgpt.instruction.command.CommandManager;
 import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
 import tn.eluea.kgpt.instruction.command.WebSearchCommand;
+import tn.eluea.kgpt.llm.RequestTracer;
 import tn.eluea.kgpt.text.parse.result.AIParseResult;
 import tn.eluea.kgpt.text.parse.result.AppTriggerParseResult;
 import tn.eluea.kgpt.text.parse.result.CommandParseResult;
@@ -41,6 +42,7 @@ public class BrainDispatcher {
     }
 
     public void dispatch(ParseResult parseResult) {
+        RequestTracer.getInstance().stampPending(RequestTracer.Stage.DISPATCH);
         IMSController imsController = UiInteractor.getInstance().getIMSController();
 
         if (parseResult instanceof FormatParseResult) {
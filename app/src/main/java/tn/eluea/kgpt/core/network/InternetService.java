@@ -18,119 +18,192 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 import android.util.Log;
-import android.widget.Toast;
+import android.util.Pair;
 
 import androidx.annotation.NonNull;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
+import tn.eluea.kgpt.llm.LlmExecutor;
+
+/**
+ * Performs HTTP requests on behalf of the keyboard process (see {@code ExternalInternetProvider}).
+ *
+ * The response body is copied as raw bytes into the pipe that came with the request; only the
+ * status code and the end (or failure) of the request are sent back as messages. Requests run
+ * on the shared LLM I/O pool; a cancel from the client disconnects the request's connection.
+ */
 public class InternetService extends Service {
+    private static final String TAG = "KGPT_InternetService";
+
     public static final int SEND_REQUEST_WHAT = 2608;
     public static final int REQUEST_RESULT_WHAT = 2609;
+    /** The client aborted a request ({@link #KEY_REQUEST_ID}): disconnect it. */
+    public static final int CANCEL_REQUEST_WHAT = 2610;
+
+    public static final String KEY_REQUEST_ID = "request_id";
+    public static final String KEY_URL = "url";
+    public static final String KEY_HEADERS = "request_headers";
+    public static final String KEY_METHOD = "request_method";
+    /** Request body bytes, already encoded as they go on the wire. */
+    public static final String KEY_BODY = "request_body";
+    /** Write end of the response body pipe ({@link ParcelFileDescriptor}). */
+    public static final String KEY_BODY_FD = "body_fd";
+    public static final String KEY_MESSAGE_TYPE = "message_type";
+    public static final String KEY_STATUS_CODE = "status_code";
+    public static final String KEY_ERROR = "error";
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    // Requests being relayed, by client and request id, so a cancel can disconnect them.
+    private final Map<Pair<Messenger, Long>, HttpURLConnection> activeConnections = new ConcurrentHashMap<>();
 
     private final Handler incomingHandler = new Handler(new Handler.Callback() {
-        private void handleMessageAsync(Messenger replyMessenger, Bundle requestBundle, int what) {
-            Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Received new message what" + what);
-            if (what == SEND_REQUEST_WHAT) {
-                long requestId = requestBundle.getLong("request_id");
-                URL url = (URL) requestBundle.getSerializable("url");
-                // noinspection unchecked
-                HashMap<String, List<String>> headers = (HashMap<String, List<String>>) requestBundle
-                        .getSerializable("request_headers");
-                String method = requestBundle.getString("request_method");
-                String body = requestBundle.getString("request_body");
-
-                if (url == null)
-                    throw new IllegalArgumentException("url cannot be null");
-
+        @Override
+        public boolean handleMessage(@NonNull Message msg) {
+            Messenger replyMessenger = msg.replyTo;
+            Bundle data = msg.getData();
+            if (msg.what == SEND_REQUEST_WHAT) {
                 try {
-                    Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Opening connection");
-                    HttpURLConnection con = (HttpURLConnection) url.openConnection();
-                    if (headers != null) {
-                        applyHeaders(headers, con);
+                    LlmExecutor.getInstance().io().execute(() -> handleRequest(replyMessenger, data));
+                } catch (RejectedExecutionException e) {
+                    Log.e(TAG, "Relay rejected: " + e.getMessage());
+                    // The client only sees the failure once its read end does: close ours with it.
+                    ParcelFileDescriptor bodyFd = data.getParcelable(KEY_BODY_FD);
+                    if (bodyFd != null) {
+                        try {
+                            bodyFd.closeWithError(e.getMessage());
+                        } catch (Throwable ignored) {
+                        }
                     }
-
-                    if (method != null) {
-                        con.setRequestMethod(method);
+                    reply(replyMessenger, craftErrorReply(data.getLong(KEY_REQUEST_ID), e.getMessage()));
+                }
+            } else if (msg.what == CANCEL_REQUEST_WHAT) {
+                HttpURLConnection con = activeConnections.remove(
+                        Pair.create(replyMessenger, data.getLong(KEY_REQUEST_ID)));
+                // Disconnecting can write (TLS close); not on the main thread unless the pool is full.
+                if (con != null) {
+                    try {
+                        LlmExecutor.getInstance().io().execute(con::disconnect);
+                    } catch (RejectedExecutionException e) {
+                        con.disconnect();
                     }
+                }
+            }
+            return true;
+        }
+    });
 
-                    if (body != null) {
-                        con.setDoOutput(true);
-                        try (OutputStream os = con.getOutputStream()) {
-                            byte[] input = body.getBytes(StandardCharsets.UTF_8);
-                            os.write(input, 0, input.length);
-                        }
-
-                        int responseCode = con.getResponseCode();
-                        replyMessenger.send(craftStatusCodeReply(requestId, responseCode));
+    private final Messenger serviceMessenger = new Messenger(incomingHandler);
 
-                        Log.d("LSPosed-Bridge", "(KeyboardGPT) [External] Got response code " + responseCode);
-                        InputStream is = responseCode == 200 ? con.getInputStream() : con.getErrorStream();
+    private void handleRequest(Messenger replyMessenger, Bundle requestBundle) {
+        long requestId = requestBundle.getLong(KEY_REQUEST_ID);
+        Pair<Messenger, Long> key = Pair.create(replyMessenger, requestId);
+        ParcelFileDescriptor bodyFd = requestBundle.getParcelable(KEY_BODY_FD);
+        if (bodyFd == null) {
+            Log.e(TAG, "Request " + requestId + " has no body pipe");
+            reply(replyMessenger, craftErrorReply(requestId, "No body pipe"));
+            return;
+        }
 
-                        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-                            String line;
-                            while ((line = reader.readLine()) != null) {
-                                Log.d("LSPosed-Bridge",
-                                        "(KeyboardGPT) [External] Sending line with length " + line.length());
-                                replyMessenger.send(craftInputStreamReply(requestId, line));
-                            }
-                        }
+        HttpURLConnection con = null;
+        // Closed by hand: on failure the pipe must be closed with the error, not cleanly.
+        OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(bodyFd);
+        try {
+            String url = requestBundle.getString(KEY_URL);
+            if (url == null)
+                throw new IllegalArgumentException("url cannot be null");
+            // noinspection unchecked
+            HashMap<String, List<String>> headers = (HashMap<String, List<String>>) requestBundle
+                    .getSerializable(KEY_HEADERS);
+            String method = requestBundle.getString(KEY_METHOD);
+            // Already encoded by the caller (see Content-Encoding in the headers).
+            byte[] body = requestBundle.getByteArray(KEY_BODY);
+
+            con = (HttpURLConnection) new URL(url).openConnection();
+            activeConnections.put(key, con);
+            if (headers != null) {
+                applyHeaders(headers, con);
+            }
+            if (method != null) {
+                con.setRequestMethod(method);
+            }
+            if (body != null) {
+                con.setDoOutput(true);
+                try (OutputStream os = con.getOutputStream()) {
+                    os.write(body, 0, body.length);
+                }
+            }
 
-                        replyMessenger.send(craftCompleteReply(requestId));
+            int responseCode = con.getResponseCode();
+            Log.d(TAG, "Request " + requestId + ": response code " + responseCode);
+            reply(replyMessenger, craftStatusCodeReply(requestId, responseCode));
+
+            InputStream is = responseCode == 200 ? con.getInputStream() : con.getErrorStream();
+            long total = 0;
+            if (is != null) {
+                try (InputStream in = is) {
+                    // Whatever the socket has, as soon as it has it: streamed replies stay live.
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                        total += n;
                     }
-
-                } catch (Throwable t) {
-                    Log.e("LSPosed-Bridge", "Unexpected error while processing request", t);
-                    // Toast.makeText(InternetService.this, t.getClass().getName() + ":" +
-                    // t.getMessage(), Toast.LENGTH_SHORT).show();
                 }
-
             }
+            out.close();
+            Log.d(TAG, "Request " + requestId + ": " + total + " bytes relayed");
+            reply(replyMessenger, craftCompleteReply(requestId));
+        } catch (Throwable t) {
+            // Also the way a cancelled request ends: the reader closed its end, so writes fail.
+            Log.w(TAG, "Request " + requestId + " failed: " + t);
+            String error = t.getClass().getSimpleName() + ": " + t.getMessage();
+            try {
+                bodyFd.closeWithError(error);
+            } catch (Throwable ignored) {
+            }
+            reply(replyMessenger, craftErrorReply(requestId, error));
+        } finally {
+            activeConnections.remove(key);
+            if (con != null) con.disconnect();
         }
+    }
 
-        @Override
-        public boolean handleMessage(@NonNull Message msg) {
-            Messenger messenger = msg.replyTo;
-            Bundle data = msg.getData();
-            int what = msg.what;
-            new Thread(() -> handleMessageAsync(messenger, data, what)).start();
-            return true;
+    private static void reply(Messenger replyMessenger, Message reply) {
+        if (replyMessenger == null) return;
+        try {
+            replyMessenger.send(reply);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Client gone: " + e.getMessage());
         }
-    });
-
-    private final Messenger serviceMessenger = new Messenger(incomingHandler);
+    }
 
     private static Message craftReply(long requestId, InternetServiceMessageType type) {
         Message reply = Message.obtain(null, REQUEST_RESULT_WHAT);
         Bundle data = new Bundle();
-        data.putLong("request_id", requestId);
-        data.putSerializable("message_type", type);
+        data.putLong(KEY_REQUEST_ID, requestId);
+        data.putSerializable(KEY_MESSAGE_TYPE, type);
         reply.setData(data);
         return reply;
     }
 
     private static Message craftStatusCodeReply(long requestId, int statusCode) {
         Message reply = craftReply(requestId, InternetServiceMessageType.STATUS_CODE);
-        reply.getData().putInt("status_code", statusCode);
-        return reply;
-    }
-
-    private static Message craftInputStreamReply(long requestId, String chunk) {
-        Message reply = craftReply(requestId, InternetServiceMessageType.INPUT_STREAM);
-        reply.getData().putString("inputstream_chunk", chunk);
+        reply.getData().putInt(KEY_STATUS_CODE, statusCode);
         return reply;
     }
 
@@ -138,6 +211,12 @@ public class InternetService extends Service {
         return craftReply(requestId, InternetServiceMessageType.COMPLETE);
     }
 
+    private static Message craftErrorReply(long requestId, String error) {
+        Message reply = craftReply(requestId, InternetServiceMessageType.ERROR);
+        reply.getData().putString(KEY_ERROR, error);
+        return reply;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return serviceMessenger.getBinder();
@@ -11,8 +11,14 @@
  */
 package tn.eluea.kgpt.core.network;
 
+/**
+ * Control messages from {@link InternetService}. The response body itself never travels in a
+ * message: it is written to the pipe the client passed with the request.
+ */
 public enum InternetServiceMessageType {
     STATUS_CODE,
-    INPUT_STREAM,
-    COMPLETE
+    /** Body fully written and the pipe closed. */
+    COMPLETE,
+    /** The request failed; the pipe was closed with the same error. */
+    ERROR
 }
@@ -50,13 +50,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.ItemTouchHelper;
 
 import android.text.InputType;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -70,6 +64,7 @@ import tn.eluea.kgpt.clipboard.AIClipboardStore;
 import tn.eluea.kgpt.core.data.ConfigContainer;
 import tn.eluea.kgpt.core.ui.dialog.DialogBoxManager;
 import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.ModelCatalog;
 import tn.eluea.kgpt.roles.RoleManager;
 import tn.eluea.kgpt.core.quickjump.QuickJumpEntry;
 import tn.eluea.kgpt.core.quickjump.QuickJumpManager;
@@ -95,6 +90,7 @@ import android.text.Editable;
 import android.text.TextWatcher;
 import com.google.android.material.materialswitch.MaterialSwitch;
 import tn.eluea.kgpt.instruction.command.SimpleGenerativeAICommand;
+import tn.eluea.kgpt.llm.LlmExecutor;
 
 public class ChooseSubModelDialogBox extends DialogBox {
 
@@ -3801,15 +3797,8 @@ if (tv != null) tv.setText(displayName);
             String q = modelSearchQuery != null ? modelSearchQuery.trim() : "";
             ArrayList<String> visible = new ArrayList<>();
             if (!q.isEmpty()) {
-                String qLower = q.toLowerCase(Locale.ROOT);
-                for (String m : models) {
-                    if (m == null) continue;
-                    String modelName = m.trim();
-                    if (modelName.isEmpty()) continue;
-                    if (modelName.toLowerCase(Locale.ROOT).contains(qLower)) {
-                        visible.add(modelName);
-                    }
-                }
+                // Indexed, ranked search over the cached list (best matches first).
+                visible.addAll(ModelCatalog.getInstance().search(provider, q));
             } else {
                 for (String m : models) {
                     if (m == null) continue;
@@ -4281,9 +4270,9 @@ private void addInlineFetchModelsRow(Context ctx, LinearLayout container, SPMana
 
         Toast.makeText(ctx, ctx.getString(R.string.ui_fetching_models), Toast.LENGTH_SHORT).show();
 
-        new Thread(() -> {
+        LlmExecutor.getInstance().execute(LlmExecutor.Lane.BACKGROUND, () -> {
             try {
-                List<String> models = fetchModelsFromEndpoint(provider, baseUrl, apiKey);
+                List<String> models = ModelCatalog.getInstance().fetch(provider, baseUrl, apiKey);
                 Activity act = getParent();
                 if (act != null) {
                     act.runOnUiThread(() -> {
@@ -4323,7 +4312,7 @@ private void addInlineFetchModelsRow(Context ctx, LinearLayout container, SPMana
                     );
                 }
             }
-        }).start();
+        });
     });
 
     row.addView(et);
@@ -4467,9 +4456,9 @@ private void addInlineModelSearchRow(Context ctx, LinearLayout container, Runnab
 
                     Toast.makeText(ctx, ctx.getString(R.string.ui_fetching_models), Toast.LENGTH_SHORT).show();
 
-                    new Thread(() -> {
+                    LlmExecutor.getInstance().execute(LlmExecutor.Lane.BACKGROUND, () -> {
                         try {
-                            List<String> models = fetchModelsFromEndpoint(provider, baseUrl, apiKey);
+                            List<String> models = ModelCatalog.getInstance().fetch(provider, baseUrl, apiKey);
                             Activity act = getParent();
                             if (act != null) {
                                 act.runOnUiThread(() -> {
@@ -4506,7 +4495,7 @@ private void addInlineModelSearchRow(Context ctx, LinearLayout container, Runnab
                                 act.runOnUiThread(() -> Toast.makeText(ctx, ctx.getString(R.string.fetch_models_failed) + ": " + e.getMessage(), Toast.LENGTH_LONG).show());
                             }
                         }
-                    }).start();
+                    });
                 })
                 .show();
     }
@@ -4575,9 +4564,9 @@ private void addInlineModelSearchRow(Context ctx, LinearLayout container, Runnab
 
                     Toast.makeText(ctx, ctx.getString(R.string.ui_fetching_models), Toast.LENGTH_SHORT).show();
 
-                    new Thread(() -> {
+                    LlmExecutor.getInstance().execute(LlmExecutor.Lane.BACKGROUND, () -> {
                         try {
-                            List<String> models = fetchModelsFromEndpoint(provider, baseUrl, apiKey);
+                            List<String> models = ModelCatalog.getInstance().fetch(provider, baseUrl, apiKey);
                             Activity act = getParent();
                             if (act != null) {
                                 act.runOnUiThread(() -> {
@@ -4618,7 +4607,7 @@ private void addInlineModelSearchRow(Context ctx, LinearLayout container, Runnab
                                 });
                             }
                         }
-                    }).start();
+                    });
                 })
                 .show();
     }
@@ -4670,105 +4659,6 @@ private void addInlineModelSearchRow(Context ctx, LinearLayout container, Runnab
         return s;
     }
 
-    private List<String> fetchModelsFromEndpoint(LanguageModel model, String baseUrl, String apiKey) throws Exception {
-        List<String> out = new ArrayList<>();
-        if (baseUrl == null || baseUrl.trim().isEmpty()) return out;
-
-        String url = baseUrl;
-        while (url.endsWith("/")) url = url.substring(0, url.length() - 1);
-        url = url + "/models";
-
-        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-        con.setRequestMethod("GET");
-        con.setConnectTimeout(15000);
-        con.setReadTimeout(20000);
-        con.setRequestProperty("Accept", "application/json");
-
-        if (apiKey != null && !apiKey.trim().isEmpty()) {
-            if (model == LanguageModel.Gemini) {
-                con.setRequestProperty("x-goog-api-key", apiKey.trim());
-            } else {
-                con.setRequestProperty("Authorization", "Bearer " + apiKey.trim());
-            }
-        }
-
-        int code = con.getResponseCode();
-        InputStream is = (code >= 200 && code < 300) ? con.getInputStream() : con.getErrorStream();
-        String body = readAll(is);
-        if (code < 200 || code >= 300) {
-            throw new Exception("HTTP " + code + " " + body);
-        }
-        return parseModels(body);
-    }
-
-    private String readAll(InputStream is) throws Exception {
-        if (is == null) return "";
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while ((line = br.readLine()) != null) sb.append(line);
-        br.close();
-        return sb.toString();
-    }
-
-    private List<String> parseModels(String body) {
-        List<String> list = new ArrayList<>();
-        if (body == null) return list;
-        try {
-            JSONObject root = new JSONObject(body);
-
-            // OpenAI style: { data: [ { id: ... }, ... ] }
-            if (root.has("data") && root.optJSONArray("data") != null) {
-                JSONArray arr = root.optJSONArray("data");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String id = ((JSONObject) it).optString("id", "");
-                        if (id.isEmpty()) id = ((JSONObject) it).optString("name", "");
-                        if (!id.isEmpty()) list.add(id);
-                    } else if (it instanceof String) {
-                        String name = (String) it;
-                        // Gemini sometimes returns "models/xxx". Strip the prefix defensively.
-                        if (name != null && name.startsWith("models/")) {
-                            name = name.substring("models/".length());
-                        }
-                        list.add(name);
-                    }
-                }
-            }
-
-            // Gemini style: { models: [ { name: "models/xxx" }, ... ] }
-            if (list.isEmpty() && root.has("models") && root.optJSONArray("models") != null) {
-                JSONArray arr = root.optJSONArray("models");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String name = ((JSONObject) it).optString("name", "");
-                        if (!name.isEmpty()) {
-                            // Strip Gemini "models/" prefix if present.
-                            if (name.startsWith("models/")) name = name.substring("models/".length());
-                            list.add(name);
-                        }
-                    } else if (it instanceof String) {
-                        list.add((String) it);
-                    }
-                }
-            }
-
-        } catch (Exception ignored) {
-        }
-
-        // De-dup and trim
-        HashSet<String> seen = new HashSet<>();
-        ArrayList<String> out = new ArrayList<>();
-        for (String s : list) {
-            if (s == null) continue;
-            String v = s.trim();
-            if (v.isEmpty()) continue;
-            if (seen.add(v)) out.add(v);
-        }
-        return out;
-    }
     // -----------------------------
     // Open AI Invocation editor inside the app (Commands/Triggers)
     // This avoids jumping to the old Settings dialog-tree (the unexpected KGPT menu).
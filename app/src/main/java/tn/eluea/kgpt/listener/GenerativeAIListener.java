@@ -11,9 +11,17 @@
  */
 package tn.eluea.kgpt.listener;
 
+import tn.eluea.kgpt.llm.GenerativeAIController;
+
 public interface GenerativeAIListener {
     void onAIPrepare();
     void onAINext(String chunk);
     void onAIError(Throwable t);
+
+    /** The request that failed comes along, or null if a newer request has replaced it. */
+    default void onAIError(Throwable t, GenerativeAIController.Request request) {
+        onAIError(t);
+    }
+
     void onAIComplete();
 }
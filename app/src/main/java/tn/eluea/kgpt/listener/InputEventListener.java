@@ -13,4 +13,17 @@ package tn.eluea.kgpt.listener;
 
 public interface InputEventListener {
     void onTextUpdate(String text, int cursor);
+
+    /**
+     * Chars before the cursor this listener needs to decide whether a full editor read is
+     * worth it. 0 means "always give me the full buffer".
+     */
+    default int getTriggerTailWindow() {
+        return 0;
+    }
+
+    /** Pre-check on the last {@link #getTriggerTailWindow()} chars before the cursor. */
+    default boolean mayTriggerOnTail(CharSequence tail) {
+        return true;
+    }
 }
@@ -0,0 +1,269 @@
+package tn.eluea.kgpt.llm;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import org.json.JSONObject;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import tn.eluea.kgpt.KGPTApplication;
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.core.ai.OfflineOutbox;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.client.RequestSpec;
+
+/**
+ * Learns a sub-model's parameter support ahead of its first real use.
+ *
+ * Without it, temperature / stream_options / output-limit support is only learned when a user
+ * request fails and the controller retries, which doubles the latency of the first request to
+ * every new model. This worker sends the request a user request would send (same parameters),
+ * with a tiny prompt, and applies the same downgrade rules to the answer: rejected parameters
+ * and the safe max tokens go into the SPManager capability cache, and a success confirms what
+ * was sent.
+ *
+ * Scheduled (app process only) when models are fetched or the selected sub-model changes, and
+ * runs only on an idle device on an unmetered network. A sub-model is probed at most once per
+ * {@link #REPROBE_AFTER_MS}.
+ */
+public class CapabilityProbeWorker extends Worker {
+    private static final String TAG = "KGPT_CapProbe";
+    private static final String WORK_NAME_PREFIX = "kgpt_capability_probe_";
+    private static final String KEY_PROVIDER = "provider";
+    private static final String KEY_SUB_MODEL = "sub_model";
+
+    private static final long REPROBE_AFTER_MS = 7L * 24 * 60 * 60 * 1000;
+    /** Each learned downgrade needs one more request; stop after this many. */
+    private static final int MAX_ROUNDS = 4;
+    private static final long PROBE_TIMEOUT_MS = 45_000L;
+    /** Runs rescheduled for transport failures before the probe gives up until the next trigger. */
+    private static final int MAX_RETRIES = 3;
+
+    private static final String PROBE_SYSTEM_MESSAGE = "You are a connectivity check.";
+    private static final String PROBE_PROMPT = "Reply with the single word OK.";
+
+    public CapabilityProbeWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    // ============ Scheduling ============
+
+    /** The provider's model list was refreshed: probe its selected sub-model. */
+    public static void onModelsFetched(LanguageModel provider) {
+        try {
+            if (provider == null || !SPManager.isReady()) return;
+            schedule(provider, SPManager.getInstance().getSubModel(provider));
+        } catch (Throwable ignored) {}
+    }
+
+    /** A sub-model was selected for {@code provider}. */
+    public static void onSubModelChanged(LanguageModel provider, String subModel) {
+        schedule(provider, subModel);
+    }
+
+    private static void schedule(LanguageModel provider, String subModel) {
+        // Only the KGPT app process owns a WorkManager; the keyboard process just skips.
+        KGPTApplication app = KGPTApplication.getInstance();
+        if (app == null || provider == null || TextUtils.isEmpty(subModel)) return;
+        try {
+            SPManager sp = SPManager.getInstance();
+            if ((sp.getAutoDowngradeFlags() & SPManager.DOWNGRADE_FLAG_PROBE) == 0) return;
+            if (!isProbeDue(sp, provider, subModel.trim())) return;
+
+            Constraints constraints = new Constraints.Builder()
+                    .setRequiredNetworkType(NetworkType.UNMETERED)
+                    .setRequiresDeviceIdle(true)
+                    .setRequiresBatteryNotLow(true)
+                    .build();
+            OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(CapabilityProbeWorker.class)
+                    .setConstraints(constraints)
+                    .setInputData(new Data.Builder()
+                            .putString(KEY_PROVIDER, provider.name())
+                            .putString(KEY_SUB_MODEL, subModel.trim())
+                            .build())
+                    .build();
+            // One pending probe per provider: a newer selection replaces an older one.
+            WorkManager.getInstance(app).enqueueUniqueWork(
+                    WORK_NAME_PREFIX + provider.name(), ExistingWorkPolicy.REPLACE, request);
+            Log.d(TAG, "Scheduled probe for " + provider.name() + "/" + subModel);
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to schedule probe: " + t.getMessage());
+        }
+    }
+
+    private static boolean isProbeDue(SPManager sp, LanguageModel provider, String subModel) {
+        try {
+            JSONObject probes = new JSONObject(sp.getCapabilityProbesJson());
+            long last = probes.optLong(provider.name() + "/" + subModel, 0);
+            return System.currentTimeMillis() - last >= REPROBE_AFTER_MS;
+        } catch (Throwable t) {
+            return true;
+        }
+    }
+
+    private static void markProbed(SPManager sp, LanguageModel provider, String subModel) {
+        try {
+            String raw = sp.getCapabilityProbesJson();
+            JSONObject probes = TextUtils.isEmpty(raw) ? new JSONObject() : new JSONObject(raw);
+            probes.put(provider.name() + "/" + subModel, System.currentTimeMillis());
+            sp.setCapabilityProbesJson(probes.toString());
+        } catch (Throwable ignored) {}
+    }
+
+    // ============ Probe ============
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (!SPManager.isReady()) return Result.success();
+        LanguageModel provider;
+        try {
+            provider = LanguageModel.valueOf(getInputData().getString(KEY_PROVIDER));
+        } catch (Throwable t) {
+            return Result.success();
+        }
+        String subModel = getInputData().getString(KEY_SUB_MODEL);
+        if (TextUtils.isEmpty(subModel)) return Result.success();
+
+        SPManager sp = SPManager.getInstance();
+        LanguageModelClient client = LanguageModelClient.forModel(provider);
+        for (LanguageModelField field : LanguageModelField.values()) {
+            client.setField(field, sp.getLanguageModelField(provider, field));
+        }
+        client.setField(LanguageModelField.SubModel, subModel);
+        if (TextUtils.isEmpty(client.getApiKey())) return Result.success();
+
+        int maxTokens = sp.getMaxTokensLimit();
+        for (int round = 0; round < MAX_ROUNDS && !isStopped(); round++) {
+            Integer safe = ModelCapabilities.getSafeMaxTokens(provider, subModel);
+            int effective = (safe != null && safe > 0 && (maxTokens <= 0 || maxTokens > safe)) ? safe : maxTokens;
+            boolean sentTemperature = ModelCapabilities.supportsTemperature(provider, subModel);
+            boolean sentStreamUsage = sp.getStreamingOutputEnabled()
+                    && sp.getStreamingOutputMode() != SPManager.STREAM_MODE_TYPEWRITER
+                    && ModelCapabilities.supportsStreamUsage(provider, subModel);
+
+            RequestSpec spec = new RequestSpec.Builder()
+                    .set(LanguageModelField.MaxTokens, effective > 0 ? String.valueOf(effective) : null)
+                    .build();
+            Throwable error = probe(client, spec);
+
+            if (error == null) {
+                if (sentTemperature) sp.setCachedSupportsTemperature(provider, subModel, true);
+                if (sentStreamUsage) sp.setCachedSupportsStreamUsage(provider, subModel, true);
+                markProbed(sp, provider, subModel);
+                Log.i(TAG, "Probed " + provider.name() + "/" + subModel + " in " + (round + 1) + " round(s)");
+                return Result.success();
+            }
+
+            if (sentTemperature && (ModelCapabilities.isUnsupportedParamError(error, "temperature")
+                    || ModelCapabilities.isUnsupportedParamError(error, "top_p")
+                    || ModelCapabilities.isUnsupportedParamError(error, "topP"))) {
+                sp.setCachedSupportsTemperature(provider, subModel, false);
+                continue;
+            }
+            if (sentStreamUsage && ModelCapabilities.isUnsupportedParamError(error, "stream_options")) {
+                sp.setCachedSupportsStreamUsage(provider, subModel, false);
+                continue;
+            }
+            if (effective > 0 && (ModelCapabilities.isTokenLimitError(error)
+                    || ModelCapabilities.isUnsupportedParamError(error, "max_tokens")
+                    || ModelCapabilities.isUnsupportedParamError(error, "max_completion_tokens")
+                    || ModelCapabilities.isUnsupportedParamError(error, "maxoutputtokens"))) {
+                int reduced = ModelCapabilities.safeMaxTokensAfter(error, effective);
+                if (reduced < effective) {
+                    sp.setCachedSafeMaxTokens(provider, subModel, reduced);
+                    continue;
+                }
+            }
+            if (isTransportFailure(error)) {
+                // Network trouble (no HTTP answer), not an answer about the model: try again later.
+                if (getRunAttemptCount() < MAX_RETRIES) {
+                    Log.d(TAG, "Probe failed to connect: " + error.getMessage());
+                    return Result.retry();
+                }
+                // Not marked as probed, so the next model fetch or selection schedules it again.
+                Log.d(TAG, "Probe gave up after " + (getRunAttemptCount() + 1) + " runs: " + error.getMessage());
+                return Result.failure();
+            }
+            // Anything else (auth, quota, unknown model...) is not ours to learn; a real request will report it.
+            Log.d(TAG, "Probe ended with " + error.getMessage());
+            break;
+        }
+        markProbed(sp, provider, subModel);
+        return Result.success();
+    }
+
+    /**
+     * Whether {@code error} means the request never got an HTTP answer. Error statuses arrive as
+     * "API Error <code>: ..." IOExceptions and are answers (401, 404, 429...): retrying them
+     * would only repeat the same reply.
+     */
+    private static boolean isTransportFailure(Throwable error) {
+        if (OfflineOutbox.isConnectivityError(error)) return true;
+        if (!(error instanceof java.io.IOException)) return false;
+        return !HTTP_STATUS_ERROR.matcher(String.valueOf(error.getMessage())).find();
+    }
+
+    private static final java.util.regex.Pattern HTTP_STATUS_ERROR =
+            java.util.regex.Pattern.compile("API Error \\d{3}");
+
+    /** Send one probe request and wait for it. Returns its error, or null if it completed. */
+    private Throwable probe(LanguageModelClient client, RequestSpec spec) {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicReference<Subscription> subscription = new AtomicReference<>();
+        try {
+            Publisher<String> publisher = client.submitPrompt(PROBE_PROMPT, PROBE_SYSTEM_MESSAGE, spec);
+            publisher.subscribe(new Subscriber<String>() {
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription.set(s);
+                    s.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(String s) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    error.set(t);
+                    done.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+            if (!done.await(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Subscription s = subscription.get();
+                if (s != null) s.cancel();
+                return new java.io.InterruptedIOException("Probe timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new java.io.InterruptedIOException("Probe interrupted");
+        } catch (Throwable t) {
+            return t;
+        }
+        return error.get();
+    }
+}
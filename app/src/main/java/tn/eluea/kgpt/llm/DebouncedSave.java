@@ -0,0 +1,54 @@
+package tn.eluea.kgpt.llm;
+
+import android.util.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Debounced persistence for the in-memory trackers ({@link UsageTracker},
+ * {@link ProviderHealthTracker}, {@link RequestTracer}).
+ *
+ * The first {@link #request} schedules the save after the delay; requests made until it runs are
+ * absorbed. The flag is cleared before the save runs, so a change made while saving schedules
+ * another one. All instances share one daemon thread.
+ */
+final class DebouncedSave {
+    private static final String TAG = "KGPT-Save";
+
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "KGPT-Save");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final long delayMs;
+    private final Runnable save;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    DebouncedSave(long delayMs, Runnable save) {
+        this.delayMs = delayMs;
+        this.save = save;
+    }
+
+    void request() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        try {
+            TIMER.schedule(this::run, delayMs, TimeUnit.MILLISECONDS);
+        } catch (Throwable t) {
+            scheduled.set(false);
+        }
+    }
+
+    private void run() {
+        scheduled.set(false);
+        try {
+            save.run();
+        } catch (Throwable t) {
+            Log.w(TAG, "Save failed: " + t.getMessage());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package tn.eluea.kgpt.llm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rolling time-to-first-token samples per endpoint (model + sub-model + base URL).
+ *
+ * Used to decide when a request is "slower than usual" and worth hedging: the threshold is the
+ * p90 of the recent samples, so it adapts to each provider instead of a fixed timeout.
+ *
+ * NOTE: Process-local, like {@link ConversationMemoryStore}.
+ */
+public class FirstTokenLatencyTracker {
+
+    private static final int WINDOW = 32;          // samples kept per endpoint
+    private static final int MIN_SAMPLES = 5;      // below this the p90 is not trusted
+    private static final int MAX_ENDPOINTS = 16;
+
+    /** Used until enough samples are collected. */
+    public static final long DEFAULT_HEDGE_DELAY_MS = 3000;
+    public static final long MIN_HEDGE_DELAY_MS = 800;
+    public static final long MAX_HEDGE_DELAY_MS = 20000;
+
+    private static FirstTokenLatencyTracker sInstance;
+
+    private static final class Samples {
+        final long[] ring = new long[WINDOW];
+        int count = 0;
+        int next = 0;
+
+        void add(long ms) {
+            ring[next] = ms;
+            next = (next + 1) % WINDOW;
+            if (count < WINDOW) count++;
+        }
+
+        long percentile(double p) {
+            long[] sorted = Arrays.copyOf(ring, count);
+            Arrays.sort(sorted);
+            int idx = (int) Math.ceil(p * count) - 1;
+            if (idx < 0) idx = 0;
+            if (idx >= count) idx = count - 1;
+            return sorted[idx];
+        }
+    }
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Samples> endpoints = new LinkedHashMap<String, Samples>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Samples> eldest) {
+            return size() > MAX_ENDPOINTS;
+        }
+    };
+
+    public static FirstTokenLatencyTracker getInstance() {
+        if (sInstance == null) {
+            synchronized (FirstTokenLatencyTracker.class) {
+                if (sInstance == null) sInstance = new FirstTokenLatencyTracker();
+            }
+        }
+        return sInstance;
+    }
+
+    public static String keyOf(LanguageModel model, String subModel, String baseUrl) {
+        return (model == null ? "" : model.name()) + "|"
+                + (subModel == null ? "" : subModel.trim()) + "|"
+                + (baseUrl == null ? "" : baseUrl.trim());
+    }
+
+    public void record(String key, long ttftMs) {
+        if (key == null || ttftMs < 0) return;
+        synchronized (lock) {
+            Samples s = endpoints.get(key);
+            if (s == null) {
+                s = new Samples();
+                endpoints.put(key, s);
+            }
+            s.add(ttftMs);
+        }
+    }
+
+    /** p90 time-to-first-token in ms, or -1 if not enough samples yet. */
+    public long getP90(String key) {
+        synchronized (lock) {
+            Samples s = endpoints.get(key);
+            if (s == null || s.count < MIN_SAMPLES) return -1;
+            return s.percentile(0.9);
+        }
+    }
+
+    /** How long to wait for the first token before firing a hedge request. */
+    public long getHedgeDelayMs(String key) {
+        long p90 = getP90(key);
+        long ms = p90 > 0 ? p90 : DEFAULT_HEDGE_DELAY_MS;
+        if (ms < MIN_HEDGE_DELAY_MS) ms = MIN_HEDGE_DELAY_MS;
+        if (ms > MAX_HEDGE_DELAY_MS) ms = MAX_HEDGE_DELAY_MS;
+        return ms;
+    }
+}
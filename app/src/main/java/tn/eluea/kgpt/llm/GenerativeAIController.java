@@ -29,6 +29,7 @@ import java.util.Locale;
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.listener.GenerativeAIListener;
 import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.client.RequestSpec;
 import tn.eluea.kgpt.listener.ConfigChangeListener;
 import tn.eluea.kgpt.llm.internet.InternetProvider;
 import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
@@ -46,45 +47,52 @@ public class GenerativeAIController implements ConfigChangeListener {
     private final UiInteractor mInteractor;
     private ExternalInternetProvider mExternalClient = null;
 
-    private List<GenerativeAIListener> mListeners = new ArrayList<>();
+    // Iterated on the UI thread for every delivery; copy-on-write keeps that lock-free.
+    private final List<GenerativeAIListener> mListeners = new java.util.concurrent.CopyOnWriteArrayList<>();
     private InternetProvider mInternetProvider = new SimpleInternetProvider();
 
-    /**
+    /*
      * All model/network work must run off the IME main thread.
      * Many providers in this codebase use blocking HttpURLConnection calls.
      * Running them on the input method (keyboard) main thread can ANR/kill the IME ("keyboard crash").
+     * Requests run on the shared LlmExecutor, in the lane given by the caller. The lane slot covers
+     * building and sending the request; the response is parsed on the executor's I/O pool.
      */
-    private static final java.util.concurrent.ExecutorService REQUEST_EXECUTOR =
-            java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
-                Thread t = new Thread(r, "KGPT-LLM");
+    private static final java.util.concurrent.ScheduledExecutorService HEDGE_TIMER =
+            java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "KGPT-LLM-HedgeTimer");
                 t.setDaemon(true);
                 return t;
             });
 
-
-
     // =============================
     // Request lifecycle (cancel / concurrency / auto-downgrade)
     // =============================
     private final Object mRequestLock = new Object();
     private volatile Subscription mCurrentSubscription = null;
     private volatile boolean mRequestInFlight = false;
-    private volatile PendingRequest mPendingRequest = null;
+    private volatile Request mPendingRequest = null;
 
     private final java.util.concurrent.atomic.AtomicInteger mRequestSeq = new java.util.concurrent.atomic.AtomicInteger(0);
     private volatile int mActiveRequestId = 0;
-
-    private static final class PendingRequest {
-        final String prompt;
-        final String systemMessage;
-        final String roleIdOverride;
-        final boolean useConversationMemory;
-
-        PendingRequest(String prompt, String systemMessage, String roleIdOverride, boolean useConversationMemory) {
+    private volatile Request mActiveRequest = null;
+    private volatile RequestTracer.Trace mActiveTrace = null;
+
+    /** A request as the caller made it, before role and memory resolution. */
+    public static final class Request {
+        public final String prompt;
+        public final String systemMessage;
+        public final String roleIdOverride;
+        public final boolean useConversationMemory;
+        public final LlmExecutor.Lane lane;
+
+        Request(String prompt, String systemMessage, String roleIdOverride, boolean useConversationMemory,
+                       LlmExecutor.Lane lane) {
             this.prompt = prompt;
             this.systemMessage = systemMessage;
             this.roleIdOverride = roleIdOverride;
             this.useConversationMemory = useConversationMemory;
+            this.lane = lane;
         }
     }
 
@@ -100,16 +108,127 @@ public class GenerativeAIController implements ConfigChangeListener {
         }
     }
 
+    /**
+     * One chain of attempts within a hedged request (the primary, or the hedge started when the
+     * primary is slower than its learned p90 time-to-first-token).
+     */
+    private static final class Leg {
+        final HedgeRace race;
+        volatile Subscription subscription;
+        boolean dead = false; // guarded by race
+
+        Leg(HedgeRace race) {
+            this.race = race;
+        }
+    }
+
+    /**
+     * Primary vs hedge: the first leg to stream wins and the other one is cancelled through its
+     * Subscription. Installed as mCurrentSubscription so cancel-previous reaches both legs.
+     */
+    private static final class HedgeRace implements Subscription {
+        final Leg primary = new Leg(this);
+        final Leg hedge = new Leg(this);
+        final int hedgeIndex;
+        Leg winner = null;
+        boolean hedgeStarted = false;
+        boolean hedgeDisabled = false;
+        boolean cancelled = false;
+        // Next attempt of the primary's own chain when it failed while the hedge was still
+        // running, or -1. A hedge that fails too resumes there.
+        int primaryResumeIndex = -1;
+        volatile java.util.concurrent.ScheduledFuture<?> timer;
+
+        HedgeRace(int hedgeIndex) {
+            this.hedgeIndex = hedgeIndex;
+        }
+
+        Leg other(Leg leg) {
+            return leg == primary ? hedge : primary;
+        }
+
+        /** @return true if {@code leg} is (now) the winner and may deliver output. */
+        boolean claim(Leg leg) {
+            Leg loser;
+            synchronized (this) {
+                if (cancelled) return false;
+                if (winner != null) return winner == leg;
+                winner = leg;
+                hedgeDisabled = true;
+                loser = other(leg);
+            }
+            stopTimer();
+            cancelLeg(loser);
+            return true;
+        }
+
+        /** The primary failed before the hedge fired: fall back to plain sequential downgrade. */
+        synchronized void disableHedge() {
+            hedgeDisabled = true;
+        }
+
+        synchronized boolean isLoser(Leg leg) {
+            return cancelled || (winner != null && winner != leg);
+        }
+
+        void stopTimer() {
+            java.util.concurrent.ScheduledFuture<?> f = timer;
+            if (f != null) {
+                try { f.cancel(false); } catch (Throwable ignored) {}
+            }
+        }
+
+        private static void cancelLeg(Leg leg) {
+            Subscription s = leg.subscription;
+            if (s != null) {
+                try { s.cancel(); } catch (Throwable ignored) {}
+            }
+        }
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                hedgeDisabled = true;
+            }
+            stopTimer();
+            cancelLeg(primary);
+            cancelLeg(hedge);
+        }
+    }
+
     /**
      * Per-user-request auto-downgrade state.
      * Used to retry once when the provider rejects certain optional parameters.
      */
     private static final class ParamDowngradeState {
+        // Prompt of the first attempt, with conversation history: every continuation builds on it.
+        final String basePrompt;
         boolean retriedSamplingParams = false;
         boolean retriedReasoning = false;
         boolean retriedMaxTokens = false;
+        boolean retriedStreamUsage = false;
+        // Follow-up requests issued after output-limit stops.
+        int continuations = 0;
+        // End of the output so far, handed to the next (continuation) attempt to trim echoed text.
+        String spliceTail = null;
+
+        ParamDowngradeState(String basePrompt) {
+            this.basePrompt = basePrompt;
+        }
     }
 
+    /** Follow-up requests per user request when the output keeps hitting the token limit. */
+    private static final int MAX_CONTINUATIONS = 2;
+    /** How much of the partial output is sent back as context for a continuation. */
+    private static final int CONTINUATION_CONTEXT_CHARS = 4000;
+    /** A continuation's first characters are held back until this many arrived, to trim echoed text. */
+    private static final int SPLICE_HOLD_CHARS = 48;
+
     public GenerativeAIController() {
         mSPManager = SPManager.getInstance();
         mInteractor = UiInteractor.getInstance();
@@ -218,6 +337,16 @@ public class GenerativeAIController implements ConfigChangeListener {
      * based on the "Conversation memory" level in Labs.
      */
     public void generateResponse(String prompt, String systemMessage, String roleIdOverride, boolean useConversationMemory) {
+        generateResponse(prompt, systemMessage, roleIdOverride, useConversationMemory, LlmExecutor.Lane.INTERACTIVE);
+    }
+
+    /**
+     * Same as above, running the request in the given {@link LlmExecutor} lane
+     * (e.g. {@link LlmExecutor.Lane#TEXT_ACTION} so it doesn't compete with inline requests).
+     */
+    public void generateResponse(String prompt, String systemMessage, String roleIdOverride, boolean useConversationMemory,
+                                 LlmExecutor.Lane lane) {
+        final LlmExecutor.Lane requestLane = lane != null ? lane : LlmExecutor.Lane.INTERACTIVE;
         // Ensure we don't block UI thread. Network work is already off main thread.
         Log.d(TAG, "Getting response for text length: " + (prompt == null ? 0 : prompt.length()));
 
@@ -238,7 +367,7 @@ public class GenerativeAIController implements ConfigChangeListener {
                     return;
                 }
                 if (policy == SPManager.REQUEST_POLICY_QUEUE_LATEST) {
-                    mPendingRequest = new PendingRequest(prompt, systemMessage, roleIdOverride, useConversationMemory);
+                    mPendingRequest = new Request(prompt, systemMessage, roleIdOverride, useConversationMemory, requestLane);
                     return;
                 }
 
@@ -254,8 +383,14 @@ public class GenerativeAIController implements ConfigChangeListener {
             mRequestInFlight = true;
             mPendingRequest = null;
 
+            // Whatever still runs was superseded (cancel-previous), finished traces ignore this.
+            RequestTracer.Trace previousTrace = mActiveTrace;
+            if (previousTrace != null) previousTrace.end("cancelled");
+
             myRequestId = mRequestSeq.incrementAndGet();
             mActiveRequestId = myRequestId;
+            mActiveRequest = new Request(prompt, systemMessage, roleIdOverride, useConversationMemory, requestLane);
+            mActiveTrace = RequestTracer.getInstance().start(myRequestId);
         }
 
         // Resolve active role / system message
@@ -348,6 +483,49 @@ public class GenerativeAIController implements ConfigChangeListener {
             }
         } catch (Throwable ignored) {}
 
+        // 4) Health: endpoints whose circuit breaker is open (failing repeatedly) are tried last
+        //    instead of first on every trigger, and an endpoint with clearly better tracked
+        //    latency / error rate goes ahead of a worse one. Configured order is kept otherwise.
+        try {
+            List<Attempt> ordered = ProviderHealthTracker.getInstance().orderByHealth(attempts,
+                    a -> endpointKeyOf(a.client, a.baseUrlOverride));
+            if (ordered != attempts) {
+                Log.d(TAG, "Attempts reordered by endpoint health");
+                ArrayList<Attempt> copy = new ArrayList<>(ordered);
+                attempts.clear();
+                attempts.addAll(copy);
+            }
+        } catch (Throwable ignored) {}
+
+        // 5) Hedging: if the first attempt has no first token by its learned p90, race the first
+        //    other endpoint (base URL or model) in parallel instead of waiting for a full failure.
+        HedgeRace race = null;
+        long hedgeDelayMs = 0;
+        try {
+            if ((flags & SPManager.DOWNGRADE_FLAG_HEDGE) != 0 && !attempts.isEmpty() && attempts.get(0).client != null) {
+                Attempt first = attempts.get(0);
+                String firstKey = endpointKeyOf(first.client, first.baseUrlOverride);
+                int hedgeIndex = -1;
+                for (int i = 1; i < attempts.size(); i++) {
+                    Attempt a = attempts.get(i);
+                    if (a.streamModeOverride == null && a.client != null
+                            && !firstKey.equals(endpointKeyOf(a.client, a.baseUrlOverride))) {
+                        hedgeIndex = i;
+                        break;
+                    }
+                }
+                if (hedgeIndex > 0) {
+                    race = new HedgeRace(hedgeIndex);
+                    hedgeDelayMs = FirstTokenLatencyTracker.getInstance().getHedgeDelayMs(firstKey);
+                    synchronized (mRequestLock) {
+                        if (mActiveRequestId == myRequestId) mCurrentSubscription = race;
+                    }
+                }
+            }
+        } catch (Throwable ignored) {
+            race = null;
+        }
+
         // Notify prepare (once per user request)
         if (mInteractor != null) {
             mInteractor.runOnUiThread(() -> {
@@ -367,27 +545,142 @@ public class GenerativeAIController implements ConfigChangeListener {
         final int finalReasoningThinkingMode = reasoningThinkingMode;
         final StringBuilder assistantBuffer = new StringBuilder();
 
-        final ParamDowngradeState paramState = new ParamDowngradeState();
+        final ParamDowngradeState paramState = new ParamDowngradeState(finalPrompt);
+        final Leg primaryLeg = race != null ? race.primary : null;
+
+        if (race != null) {
+            final HedgeRace finalRace = race;
+            try {
+                race.timer = HEDGE_TIMER.schedule(() -> fireHedge(
+                        finalRace,
+                        requestLane,
+                        myRequestId,
+                        attempts,
+                        finalPrompt,
+                        finalSystemMessage,
+                        originalPrompt,
+                        finalResolvedRoleId,
+                        finalUseConversationMemory,
+                        assistantBuffer,
+                        finalMaxTokensOverride,
+                        finalNormalThinking,
+                        finalReasoningThinkingMode
+                ), hedgeDelayMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+            } catch (Throwable ignored) {}
+        }
 
         // Start the first attempt
-        REQUEST_EXECUTOR.execute(() -> startAttemptInternal(
-                myRequestId,
-                attempts,
-                0,
-                finalPrompt,
-                finalSystemMessage,
-                originalPrompt,
-                finalResolvedRoleId,
-                finalUseConversationMemory,
-                assistantBuffer,
-                finalMaxTokensOverride,
-                finalNormalThinking,
-                finalReasoningThinkingMode,
-                paramState
-        ));
+        try {
+            LlmExecutor.getInstance().execute(requestLane, () -> startAttemptInternal(
+                    requestLane,
+                    myRequestId,
+                    attempts,
+                    0,
+                    finalPrompt,
+                    finalSystemMessage,
+                    originalPrompt,
+                    finalResolvedRoleId,
+                    finalUseConversationMemory,
+                    assistantBuffer,
+                    finalMaxTokensOverride,
+                    finalNormalThinking,
+                    finalReasoningThinkingMode,
+                    paramState,
+                    primaryLeg
+            ));
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            finishWithError(myRequestId, e);
+        }
+    }
+
+    /**
+     * First attempt from {@code from} on worth sending. Attempts on an endpoint whose circuit is
+     * open (it failed repeatedly, possibly during this very request) are skipped while a later
+     * one is still closed. {@code skip} is an attempt the hedge leg already made, or -1.
+     *
+     * @return attempts.size() when none is left.
+     */
+    private static int nextAttemptIndex(List<Attempt> attempts, int from, int skip) {
+        int firstLeft = -1;
+        for (int i = from; i < attempts.size(); i++) {
+            if (i == skip) continue;
+            if (firstLeft < 0) firstLeft = i;
+            Attempt a = attempts.get(i);
+            boolean open = false;
+            try {
+                open = ProviderHealthTracker.getInstance().isOpen(endpointKeyOf(a.client, a.baseUrlOverride));
+            } catch (Throwable ignored) {}
+            if (!open) return i;
+        }
+        return firstLeft >= 0 ? firstLeft : attempts.size();
+    }
+
+    private static String endpointKeyOf(LanguageModelClient client, String baseUrlOverride) {
+        if (client == null) return null;
+        String baseUrl = (baseUrlOverride != null && !baseUrlOverride.isEmpty()) ? baseUrlOverride : client.getBaseUrl();
+        return FirstTokenLatencyTracker.keyOf(client.getLanguageModel(), client.getSubModel(), baseUrl);
+    }
+
+    /**
+     * Start the hedge leg if the primary still has not produced anything. Overrides travel in
+     * each attempt's RequestSpec and clients keep no per-request state, so both legs run on the
+     * same attempt list and clients.
+     */
+    private void fireHedge(
+            final HedgeRace race,
+            final LlmExecutor.Lane lane,
+            final int requestId,
+            final ArrayList<Attempt> attempts,
+            final String prompt,
+            final String systemMessage,
+            final String originalPrompt,
+            final String resolvedRoleId,
+            final boolean useConversationMemory,
+            final StringBuilder assistantBuffer,
+            final int maxTokensOverride,
+            final float normalThinking,
+            final int reasoningThinkingMode
+    ) {
+        if (mActiveRequestId != requestId) return;
+        synchronized (race) {
+            if (race.cancelled || race.hedgeDisabled || race.hedgeStarted || race.winner != null || race.primary.dead) {
+                return;
+            }
+            race.hedgeStarted = true;
+        }
+
+        Log.d(TAG, "Primary has no first token yet, hedging with attempt " + race.hedgeIndex);
+        try {
+            LlmExecutor.getInstance().execute(lane, () -> startAttemptInternal(
+                    lane,
+                    requestId,
+                    attempts,
+                    race.hedgeIndex,
+                    prompt,
+                    systemMessage,
+                    originalPrompt,
+                    resolvedRoleId,
+                    useConversationMemory,
+                    assistantBuffer,
+                    maxTokensOverride,
+                    normalThinking,
+                    reasoningThinkingMode,
+                    new ParamDowngradeState(prompt),
+                    race.hedge
+            ));
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            boolean primaryGone;
+            synchronized (race) {
+                race.hedge.dead = true;
+                primaryGone = race.primary.dead && race.winner == null;
+            }
+            // The primary may have failed meanwhile and left the request to this leg.
+            if (primaryGone) finishWithError(requestId, e);
+        }
     }
 
     private void startAttemptInternal(
+            final LlmExecutor.Lane lane,
             final int requestId,
             final ArrayList<Attempt> attempts,
             final int attemptIndex,
@@ -400,7 +693,8 @@ public class GenerativeAIController implements ConfigChangeListener {
             final int maxTokensOverride,
             final float normalThinking,
             final int reasoningThinkingMode,
-            final ParamDowngradeState paramState
+            final ParamDowngradeState paramState,
+            final Leg leg
     ) {
         if (attempts == null || attempts.isEmpty()) {
             finishWithError(requestId, new RuntimeException("No request attempt available"));
@@ -416,29 +710,31 @@ public class GenerativeAIController implements ConfigChangeListener {
             return;
         }
 
+        // Lost the race (or the request was cancelled) while waiting on the executor.
+        if (leg != null && leg.race.isLoser(leg)) {
+            return;
+        }
+
+        final RequestTracer.Trace trace = mActiveTrace;
+        if (trace != null) trace.stamp(RequestTracer.Stage.ATTEMPT);
+
         final Attempt attempt = attempts.get(attemptIndex);
         final LanguageModelClient client = attempt.client;
+        final String endpointKey = endpointKeyOf(client, attempt.baseUrlOverride);
+        final long attemptStartMs = android.os.SystemClock.elapsedRealtime();
 
         Publisher<String> publisher;
 
-        // Apply temporary overrides (max_tokens / base_url / streaming mode).
-        String _prevMaxTokens = null;
-        String _prevBaseUrl = null;
-        try { if (client != null) _prevMaxTokens = client.getField(LanguageModelField.MaxTokens); } catch (Throwable ignored) {}
-        try { if (client != null) _prevBaseUrl = client.getField(LanguageModelField.BaseUrl); } catch (Throwable ignored) {}
-        final String prevMaxTokens = _prevMaxTokens;
-        final String prevBaseUrl = _prevBaseUrl;
-
-        String _prevTemperature = null;
-        try { if (client != null) _prevTemperature = client.getField(LanguageModelField.Temperature); } catch (Throwable ignored) {}
-        final String prevTemperature = _prevTemperature;
+        // Per-attempt overrides (max_tokens / base_url / streaming mode / temperature). They travel
+        // with the request; the shared client is never modified.
+        RequestSpec.Builder specBuilder = new RequestSpec.Builder();
 
         // Scheme-2 safety: clamp to cached safe max tokens if known for this specific sub-model.
         int effectiveMaxTokens = maxTokensOverride;
         int requestedMaxTokens = maxTokensOverride;
         try {
             if (client != null && SPManager.isReady() && effectiveMaxTokens > 0) {
-                Integer cap = SPManager.getInstance().getCachedSafeMaxTokens(client.getLanguageModel(), client.getSubModel());
+                Integer cap = ModelCapabilities.getSafeMaxTokens(client.getLanguageModel(), client.getSubModel());
                 if (cap != null && cap > 0 && effectiveMaxTokens > cap) {
                     effectiveMaxTokens = cap;
                 }
@@ -455,26 +751,11 @@ public class GenerativeAIController implements ConfigChangeListener {
                 });
             }
         } catch (Throwable ignoredToastOuter) {}
-try {
-            if (client != null && effectiveMaxTokens > 0) {
-                client.setField(LanguageModelField.MaxTokens, String.valueOf(effectiveMaxTokens));
-            }
-        } catch (Throwable ignored) {}
-
-        try {
-            if (client != null && attempt.baseUrlOverride != null && !attempt.baseUrlOverride.isEmpty()) {
-                client.setField(LanguageModelField.BaseUrl, attempt.baseUrlOverride);
-            }
-        } catch (Throwable ignored) {}
-
-        try {
-            if (attempt.streamModeOverride != null) {
-                SPManager.setThreadStreamingModeOverride(attempt.streamModeOverride);
-            } else {
-                SPManager.clearThreadStreamingModeOverride();
-            }
-        } catch (Throwable ignored) {}
-
+        if (effectiveMaxTokens > 0) {
+            specBuilder.set(LanguageModelField.MaxTokens, String.valueOf(effectiveMaxTokens));
+        }
+        specBuilder.set(LanguageModelField.BaseUrl, attempt.baseUrlOverride);
+        specBuilder.setStreamingMode(attempt.streamModeOverride);
 
         // Apply normal model thinking (temperature) override if the selected model supports it.
         try {
@@ -483,9 +764,15 @@ try {
                 if (v < 0.0f) v = 0.0f;
                 if (v > 1.8f) v = 1.8f;
                 v = Math.round(v * 10.0f) / 10.0f;
-                client.setField(LanguageModelField.Temperature, String.format(Locale.US, "%.1f", v));
+                specBuilder.set(LanguageModelField.Temperature, String.format(Locale.US, "%.1f", v));
             }
         } catch (Throwable ignored) {}
+        // Set by the client when the provider reports it stopped at the output limit.
+        final java.util.concurrent.atomic.AtomicBoolean stoppedAtLimit = new java.util.concurrent.atomic.AtomicBoolean(false);
+        specBuilder.setOnOutputLimit(() -> stoppedAtLimit.set(true));
+        final RequestSpec spec = specBuilder.build();
+        final String spliceTail = paramState != null ? paramState.spliceTail : null;
+        if (paramState != null) paramState.spliceTail = null;
 
         // Apply reasoning model thinking (system-message hint) if the selected model supports it.
         String effectiveSystemMessage = systemMessage;
@@ -496,43 +783,99 @@ try {
         } catch (Throwable ignored) {}
 
         // Choose publisher
+        boolean coalesced = false;
         if (client == null) {
             publisher = new SimpleStringPublisher("Missing model client. Please configure your model in settings.");
         } else if (client.getApiKey() == null || client.getApiKey().isEmpty()) {
             publisher = new SimpleStringPublisher("Missing API Key. Please configure your API key in KeyboardGPT settings.");
         } else {
-            publisher = client.submitPrompt(prompt, effectiveSystemMessage);
+            // An identical request still in flight (double trigger) is joined instead of resent.
+            final String submitSystemMessage = effectiveSystemMessage;
+            RequestTracer.setCurrent(trace);
+            InFlightRequests.Submission submission = InFlightRequests.getInstance().submit(
+                    client, spec, prompt, submitSystemMessage, () -> {
+                        ProviderHealthTracker.getInstance().onAttempt(endpointKey);
+                        return client.submitPrompt(prompt, submitSystemMessage, spec);
+                    });
+            publisher = submission.publisher;
+            coalesced = submission.coalesced;
         }
+        RequestTracer.clearCurrent();
+        // submitPrompt returns once the response headers arrived (connect + server queueing).
+        final long connectMs = android.os.SystemClock.elapsedRealtime() - attemptStartMs;
+        // A joined request did not measure the endpoint; the request that opened it reports.
+        final boolean realRequest = !coalesced && client != null && client.getApiKey() != null && !client.getApiKey().isEmpty();
 
+        final ChunkBatcher chunks = new ChunkBatcher();
         publisher.subscribe(new Subscriber<String>() {
             boolean completed = false;
             boolean hasError = false;
+            boolean firstToken = false;
+            long firstTokenAtMs = 0;
+            int streamedChars = 0;
+            // Continuation output held back until the overlap with spliceTail can be judged.
+            StringBuilder spliceHead = spliceTail != null ? new StringBuilder() : null;
+
+            private void emit(String s) {
+                if (spliceHead != null) {
+                    spliceHead.append(s);
+                    if (spliceHead.length() < SPLICE_HOLD_CHARS) return;
+                    s = trimEcho(spliceTail, spliceHead.toString());
+                    spliceHead = null;
+                    if (s.isEmpty()) return;
+                }
+                try { assistantBuffer.append(s); } catch (Throwable ignored) {}
+                chunks.add(s);
+            }
 
-            private void cleanupOverrides() {
-                try { SPManager.clearThreadStreamingModeOverride(); } catch (Throwable ignored) {}
-                try {
-                    if (client != null && prevMaxTokens != null) {
-                        client.setField(LanguageModelField.MaxTokens, prevMaxTokens);
-                    }
-                } catch (Throwable ignored) {}
-                try {
-                    if (client != null && prevBaseUrl != null) {
-                        client.setField(LanguageModelField.BaseUrl, prevBaseUrl);
-                    }
-                } catch (Throwable ignored) {}
+            private void flushSpliceHead() {
+                if (spliceHead == null) return;
+                String s = trimEcho(spliceTail, spliceHead.toString());
+                spliceHead = null;
+                if (s.isEmpty()) return;
+                try { assistantBuffer.append(s); } catch (Throwable ignored) {}
+                chunks.add(s);
+            }
+
+            /** Issue a follow-up "continue" request if this output was cut off by the token limit. */
+            private boolean continueIfCutOff() {
+                if (!stoppedAtLimit.get() || paramState == null) return false;
+                if (paramState.continuations >= MAX_CONTINUATIONS || assistantBuffer.length() == 0) return false;
                 try {
-                    if (client != null && prevTemperature != null) {
-                        client.setField(LanguageModelField.Temperature, prevTemperature);
+                    if (!SPManager.isReady()
+                            || (SPManager.getInstance().getAutoDowngradeFlags() & SPManager.DOWNGRADE_FLAG_CONTINUE) == 0) {
+                        return false;
                     }
-                } catch (Throwable ignored) {}
+                } catch (Throwable t) {
+                    return false;
+                }
+                paramState.continuations++;
+                String partial = assistantBuffer.toString();
+                paramState.spliceTail = partial.length() > SPLICE_HOLD_CHARS * 4
+                        ? partial.substring(partial.length() - SPLICE_HOLD_CHARS * 4) : partial;
+                // Not this attempt's prompt: from the second round on, that is a continuation already.
+                final String continuePrompt = buildContinuationPrompt(paramState.basePrompt, partial);
+                Log.d(TAG, "Output hit the token limit; continuing (" + paramState.continuations + "/" + MAX_CONTINUATIONS + ")");
+                retryInLane(lane, requestId, () -> startAttemptInternal(lane, requestId, attempts, attemptIndex, continuePrompt, systemMessage,
+                        originalPrompt, resolvedRoleId, useConversationMemory, assistantBuffer,
+                        maxTokensOverride, normalThinking, reasoningThinkingMode, paramState, leg));
+                return true;
             }
 
             @Override
             public void onSubscribe(Subscription s) {
+                if (leg != null) {
+                    leg.subscription = s;
+                    // The other leg may have won while we were connecting.
+                    if (leg.race.isLoser(leg)) {
+                        try { s.cancel(); } catch (Throwable ignored) {}
+                        return;
+                    }
+                }
                 // Store subscription for cancellation/concurrency
                 synchronized (mRequestLock) {
                     if (mActiveRequestId == requestId) {
-                        mCurrentSubscription = s;
+                        mCurrentSubscription = leg != null ? leg.race : s;
                     }
                 }
                 try {
@@ -548,16 +891,25 @@ try {
                     return;
                 }
 
-                try { assistantBuffer.append(s); } catch (Throwable ignored) {}
-
-                if (mInteractor != null) {
-                    final String chunk = s;
-                    mInteractor.runOnUiThread(() -> {
-                        for (GenerativeAIListener l : mListeners) {
-                            l.onAINext(chunk);
-                        }
-                    });
+                if (!firstToken) {
+                    firstToken = true;
+                    firstTokenAtMs = android.os.SystemClock.elapsedRealtime();
+                    if (trace != null) trace.stamp(RequestTracer.Stage.FIRST_DELTA);
+                    if (realRequest) {
+                        try {
+                            long ttft = firstTokenAtMs - attemptStartMs;
+                            FirstTokenLatencyTracker.getInstance().record(endpointKey, ttft);
+                            ProviderHealthTracker.getInstance().recordConnect(endpointKey, connectMs);
+                            ProviderHealthTracker.getInstance().recordFirstToken(endpointKey, ttft);
+                        } catch (Throwable ignored) {}
+                    }
+                } else {
+                    streamedChars += s.length();
                 }
+
+                if (leg != null && !leg.race.claim(leg)) return;
+
+                emit(s);
             }
 
             @Override
@@ -567,6 +919,19 @@ try {
                 hasError = true;
                 completed = true;
 
+                // Cancelled because the other leg won: nothing to report.
+                if (leg != null && leg.race.isLoser(leg)) {
+                    return;
+                }
+
+                // A continuation failed: the output delivered so far stands as the answer.
+                if (spliceTail != null) {
+                    Log.w(TAG, "Continuation failed; keeping the partial output", t);
+                    flushSpliceHead();
+                    completeRequest();
+                    return;
+                }
+
                 // 1) Parameter downgrade retry (max tokens) - retry same attempt once.
                 boolean canRetryMaxTok = paramState != null
                         && !paramState.retriedMaxTokens
@@ -580,20 +945,7 @@ try {
                     paramState.retriedMaxTokens = true;
 
                     int current = maxTokensOverride;
-                    int safe = current;
-                    Integer suggested = tn.eluea.kgpt.llm.ModelCapabilities.extractSuggestedMaxTokens(t);
-                    if (suggested != null && suggested > 0) {
-                        safe = Math.min(current, suggested);
-                    }
-
-                    // If we couldn't infer a number (or failed to reduce), fall back to a sane conservative output limit.
-                    if (safe <= 0 || safe >= current) {
-                        if (current > 8192) safe = 8192;
-                        else if (current > 4096) safe = 4096;
-                        else if (current > 2048) safe = 2048;
-                        else if (current > 1024) safe = 1024;
-                        else safe = Math.max(256, current / 2);
-                    }
+                    int safe = ModelCapabilities.safeMaxTokensAfter(t, current);
 if (safe < current) {
                         try {
                             if (mInteractor != null) {
@@ -610,10 +962,10 @@ if (safe < current) {
                             }
                         } catch (Throwable ignored) {}
 
-                        cleanupOverrides();
-                        startAttemptInternal(requestId, attempts, attemptIndex, prompt, systemMessage,
+                        final int safeMaxTokens = safe;
+                        retryInLane(lane, requestId, () -> startAttemptInternal(lane, requestId, attempts, attemptIndex, prompt, systemMessage,
                                 originalPrompt, resolvedRoleId, useConversationMemory, assistantBuffer,
-                                safe, normalThinking, reasoningThinkingMode, paramState);
+                                safeMaxTokens, normalThinking, reasoningThinkingMode, paramState, leg));
                         return;
                     }
                 }
@@ -634,22 +986,79 @@ if (safe < current) {
                         }
                     } catch (Throwable ignored) {}
 
-                    cleanupOverrides();
-
                     // Retry the SAME attempt (same stream/baseUrl/model), but now the client will omit sampling params.
-                    startAttemptInternal(requestId, attempts, attemptIndex, prompt, systemMessage,
+                    retryInLane(lane, requestId, () -> startAttemptInternal(lane, requestId, attempts, attemptIndex, prompt, systemMessage,
+                            originalPrompt, resolvedRoleId, useConversationMemory, assistantBuffer,
+                            maxTokensOverride, normalThinking, reasoningThinkingMode, paramState, leg));
+                    return;
+                }
+
+                // 3) The endpoint rejects stream_options (usage chunk): remember that and retry without it.
+                boolean canRetryStreamUsage = paramState != null
+                        && !paramState.retriedStreamUsage
+                        && assistantBuffer.length() == 0
+                        && tn.eluea.kgpt.llm.ModelCapabilities.isUnsupportedParamError(t, "stream_options");
+
+                if (canRetryStreamUsage) {
+                    paramState.retriedStreamUsage = true;
+                    try {
+                        if (client != null && SPManager.isReady()) {
+                            SPManager.getInstance().setCachedSupportsStreamUsage(client.getLanguageModel(), client.getSubModel(), false);
+                        }
+                    } catch (Throwable ignored) {}
+
+                    retryInLane(lane, requestId, () -> startAttemptInternal(lane, requestId, attempts, attemptIndex, prompt, systemMessage,
                             originalPrompt, resolvedRoleId, useConversationMemory, assistantBuffer,
-                            maxTokensOverride, normalThinking, reasoningThinkingMode, paramState);
+                            maxTokensOverride, normalThinking, reasoningThinkingMode, paramState, leg));
                     return;
                 }
 
-                cleanupOverrides();
+                if (realRequest) {
+                    try { ProviderHealthTracker.getInstance().recordFailure(endpointKey); } catch (Throwable ignored) {}
+                }
+
+                int nextIndex = attemptIndex + 1;
+                int triedByHedge = -1;
+                if (leg != null) {
+                    HedgeRace race = leg.race;
+                    synchronized (race) {
+                        Leg other = race.other(leg);
+                        if (race.cancelled || race.winner == other) return;
+                        leg.dead = true;
+                        if (race.winner == null) {
+                            if (leg == race.primary && !race.hedgeStarted) {
+                                // Hedge never fired: behave exactly like the sequential downgrade.
+                                race.hedgeDisabled = true;
+                            } else if (!other.dead) {
+                                // The other leg is still trying; let it finish the request.
+                                if (leg == race.primary) race.primaryResumeIndex = nextIndex;
+                                return;
+                            } else {
+                                if (leg == race.hedge && race.primaryResumeIndex >= 0) {
+                                    // The primary stopped its chain for the hedge: its own
+                                    // downgrades (e.g. stream -> non-stream) come next.
+                                    nextIndex = race.primaryResumeIndex;
+                                    race.primaryResumeIndex = -1;
+                                }
+                                triedByHedge = race.hedgeIndex;
+                            }
+                        }
+                    }
+                    race.stopTimer();
+                }
+                nextIndex = nextAttemptIndex(attempts, nextIndex, triedByHedge);
 
                 // 3) Existing auto-downgrade retry only if we haven't emitted anything yet.
-                boolean canRetry = (assistantBuffer.length() == 0) && (attemptIndex + 1 < attempts.size());
+                boolean canRetry = (assistantBuffer.length() == 0) && (nextIndex < attempts.size());
                 if (canRetry) {
-                    startAttemptInternal(requestId, attempts, attemptIndex + 1, prompt, systemMessage,
-                            originalPrompt, resolvedRoleId, useConversationMemory, assistantBuffer, maxTokensOverride, normalThinking, reasoningThinkingMode, paramState);
+                    if (leg != null) {
+                        synchronized (leg.race) {
+                            leg.dead = false;
+                        }
+                    }
+                    final int retryIndex = nextIndex;
+                    retryInLane(lane, requestId, () -> startAttemptInternal(lane, requestId, attempts, retryIndex, prompt, systemMessage,
+                            originalPrompt, resolvedRoleId, useConversationMemory, assistantBuffer, maxTokensOverride, normalThinking, reasoningThinkingMode, paramState, leg));
                     return;
                 }
 
@@ -662,7 +1071,25 @@ if (safe < current) {
                 if (completed || hasError) return;
                 completed = true;
 
-                cleanupOverrides();
+                // A leg that completes without output still wins (and ends) the race.
+                if (leg != null && !leg.race.claim(leg)) return;
+
+                if (realRequest) {
+                    try {
+                        long streamMs = firstToken ? android.os.SystemClock.elapsedRealtime() - firstTokenAtMs : 0;
+                        ProviderHealthTracker.getInstance().recordSuccess(endpointKey, streamedChars, streamMs);
+                    } catch (Throwable ignored) {}
+                }
+
+                flushSpliceHead();
+                // Cut off by the output limit: the follow-up streams into the same renderer.
+                if (continueIfCutOff()) return;
+
+                completeRequest();
+            }
+
+            /** Save the turn and report completion. */
+            private void completeRequest() {
 
                 // Save turn into memory
                 try {
@@ -686,17 +1113,98 @@ if (safe < current) {
                     });
                 }
 
+                if (trace != null) trace.end("ok");
                 finishAndMaybeRunPending(requestId);
             }
         });
     }
 
+    /**
+     * Chunk fan-out for one attempt. Chunks arriving while a delivery is still queued on the main
+     * looper are appended to it, so a fast stream posts at most one message per UI turn instead of
+     * one per chunk. Deliveries keep their order relative to the prepare / complete / error posts,
+     * which go through the same looper queue.
+     */
+    private final class ChunkBatcher implements Runnable {
+        private final StringBuilder pending = new StringBuilder();
+        private boolean posted = false;
+
+        void add(String chunk) {
+            if (mInteractor == null) return;
+            synchronized (this) {
+                pending.append(chunk);
+                if (posted) return;
+                posted = true;
+            }
+            mInteractor.runOnUiThread(this);
+        }
+
+        @Override
+        public void run() {
+            final String batch;
+            synchronized (this) {
+                posted = false;
+                if (pending.length() == 0) return;
+                batch = pending.toString();
+                pending.setLength(0);
+            }
+            for (GenerativeAIListener l : mListeners) {
+                l.onAINext(batch);
+            }
+        }
+    }
+
+    /**
+     * User prompt of a follow-up request: the first attempt's prompt (conversation history
+     * included), then the end of the answer that was cut off, with the instruction to carry on
+     * from the exact point it stopped.
+     */
+    private static String buildContinuationPrompt(String basePrompt, String partial) {
+        String context = partial.length() > CONTINUATION_CONTEXT_CHARS
+                ? partial.substring(partial.length() - CONTINUATION_CONTEXT_CHARS) : partial;
+        return basePrompt
+                + "\n\n---\nYour previous answer was cut off by the output length limit. It ended with:\n"
+                + context
+                + "\n---\nContinue exactly where it stopped. Do not repeat any of it and do not add any preface.";
+    }
+
+    /**
+     * Drop the start of a continuation that repeats the end of the previous output (models often
+     * restate the last words before going on). Only overlaps of at least 8 characters count.
+     */
+    static String trimEcho(String tail, String head) {
+        if (tail == null || tail.isEmpty() || head == null || head.isEmpty()) return head == null ? "" : head;
+        int max = Math.min(tail.length(), head.length());
+        for (int len = max; len >= 8; len--) {
+            if (tail.regionMatches(tail.length() - len, head, 0, len)) return head.substring(len);
+        }
+        return head;
+    }
+
+    /** Retries are signalled on an I/O thread; run them in the request's lane like the first attempt. */
+    private void retryInLane(LlmExecutor.Lane lane, int requestId, Runnable attempt) {
+        try {
+            LlmExecutor.getInstance().execute(lane, attempt);
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            finishWithError(requestId, e);
+        }
+    }
+
     private void finishWithError(final int requestId, final Throwable t) {
+        RequestTracer.Trace trace = mActiveTrace;
+        if (trace != null && mActiveRequestId == requestId) {
+            trace.end("error: " + (t == null ? "unknown" : t.getClass().getSimpleName()));
+        }
+        // Listeners get the request that failed with the error, not whatever was sent last.
+        final Request request;
+        synchronized (mRequestLock) {
+            request = mActiveRequestId == requestId ? mActiveRequest : null;
+        }
         // Notify error
         if (mInteractor != null) {
             mInteractor.runOnUiThread(() -> {
                 for (GenerativeAIListener l : mListeners) {
-                    l.onAIError(t);
+                    l.onAIError(t, request);
                 }
             });
         }
@@ -704,7 +1212,7 @@ if (safe < current) {
     }
 
     private void finishAndMaybeRunPending(final int requestId) {
-        PendingRequest pending = null;
+        Request pending = null;
         synchronized (mRequestLock) {
             if (mActiveRequestId != requestId) {
                 return;
@@ -716,7 +1224,8 @@ if (safe < current) {
         }
 
         if (pending != null) {
-            generateResponse(pending.prompt, pending.systemMessage, pending.roleIdOverride, pending.useConversationMemory);
+            generateResponse(pending.prompt, pending.systemMessage, pending.roleIdOverride, pending.useConversationMemory,
+                    pending.lane);
         }
     }
 
@@ -725,6 +1234,11 @@ if (safe < current) {
         return mModelClient.getLanguageModel();
     }
 
+    /** Timings of the latest request, for stages stamped outside the controller. */
+    public RequestTracer.Trace getActiveTrace() {
+        return mActiveTrace;
+    }
+
     public LanguageModelClient getModelClient() {
         return mModelClient;
     }
@@ -0,0 +1,237 @@
+package tn.eluea.kgpt.llm;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.reactivestreams.Publisher;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.client.RequestSpec;
+import tn.eluea.kgpt.llm.publisher.ReplayPublisher;
+
+/**
+ * Table of in-flight requests keyed by the effective request (endpoint, all client fields with
+ * the request's overrides, streaming mode, prompt and system message).
+ *
+ * An identical request arriving within {@link #JOIN_WINDOW_MS} of the first one, while that
+ * one's upstream is still live, attaches to its stream through a {@link ReplayPublisher}
+ * (already emitted chunks are replayed) instead of opening a second connection. This absorbs
+ * double triggers: editors repeating selection updates, or a text action reaching us through
+ * two paths.
+ *
+ * Because a double trigger under the cancel-previous policy cancels the first request before
+ * the second one arrives, a stream whose subscribers all cancelled stays open until the join
+ * window closes. An entry leaves the table as soon as its upstream completes, fails or is
+ * cancelled, so a later identical request always opens a fresh one.
+ */
+public final class InFlightRequests {
+    private static final String TAG = "KGPT-InFlight";
+
+    public static final long JOIN_WINDOW_MS = 3000;
+
+    private static volatile InFlightRequests sInstance;
+
+    private static final java.util.concurrent.ScheduledExecutorService TIMER =
+            java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "KGPT-InFlight");
+                t.setDaemon(true);
+                return t;
+            });
+
+    /** What {@link #submit} handed out. */
+    public static final class Submission {
+        public final Publisher<String> publisher;
+        /** True if this request joined a stream opened by an earlier identical request. */
+        public final boolean coalesced;
+
+        Submission(Publisher<String> publisher, boolean coalesced) {
+            this.publisher = publisher;
+            this.coalesced = coalesced;
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final ReplayPublisher publisher;
+        final long createdAtMs;
+        long lastJoinAtMs;
+
+        Entry(String key, ReplayPublisher publisher, long now) {
+            this.key = key;
+            this.publisher = publisher;
+            this.createdAtMs = now;
+            this.lastJoinAtMs = now;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private long opened = 0;
+    private long coalesced = 0;
+
+    public static InFlightRequests getInstance() {
+        if (sInstance == null) {
+            synchronized (InFlightRequests.class) {
+                if (sInstance == null) sInstance = new InFlightRequests();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Join the identical in-flight request, or open a new one with {@code open} (called on this
+     * thread, typically {@link LanguageModelClient#submitPrompt}). {@code spec} must be the one
+     * the request is sent with, since its overrides are part of the key.
+     */
+    public Submission submit(LanguageModelClient client, RequestSpec spec, String prompt, String systemMessage,
+                             Supplier<Publisher<String>> open) {
+        String key = keyOf(client, spec, prompt, systemMessage);
+        if (key == null) return new Submission(open.get(), false);
+
+        final Entry entry;
+        synchronized (lock) {
+            long now = SystemClock.elapsedRealtime();
+            pruneLocked(now);
+            Entry existing = entries.get(key);
+            if (existing != null && !existing.publisher.isTerminated()) {
+                existing.lastJoinAtMs = now;
+                coalesced++;
+                Log.d(TAG, "Joined in-flight request " + shortKey(key)
+                        + " (" + (now - existing.createdAtMs) + "ms old)");
+                return new Submission(existing.publisher, true);
+            }
+            // Registered before the (blocking) open, so a duplicate arriving meanwhile joins it.
+            entry = new Entry(key, new ReplayPublisher(listener), now);
+            entries.put(key, entry);
+            opened++;
+        }
+
+        Publisher<String> upstream;
+        try {
+            upstream = open.get();
+        } catch (Throwable t) {
+            upstream = new tn.eluea.kgpt.llm.publisher.ExceptionPublisher(t);
+        }
+        entry.publisher.connect(upstream);
+        return new Submission(entry.publisher, false);
+    }
+
+    private final ReplayPublisher.IdleListener listener = new ReplayPublisher.IdleListener() {
+        @Override
+        public void onIdle(ReplayPublisher publisher) {
+            InFlightRequests.this.onIdle(publisher);
+        }
+
+        @Override
+        public void onTerminated(ReplayPublisher publisher) {
+            synchronized (lock) {
+                Entry entry = findLocked(publisher);
+                if (entry != null) entries.remove(entry.key);
+            }
+        }
+    };
+
+    /** Last subscriber left: keep the stream for late duplicates, then cancel it. */
+    private void onIdle(ReplayPublisher publisher) {
+        final Entry entry;
+        final long idleAtMs = SystemClock.elapsedRealtime();
+        synchronized (lock) {
+            entry = findLocked(publisher);
+        }
+        long delayMs = entry == null ? 0 : Math.max(0, entry.createdAtMs + JOIN_WINDOW_MS - idleAtMs);
+        try {
+            TIMER.schedule(() -> cancelIfStillIdle(publisher, idleAtMs), delayMs,
+                    java.util.concurrent.TimeUnit.MILLISECONDS);
+        } catch (Throwable t) {
+            cancelIfStillIdle(publisher, idleAtMs);
+        }
+    }
+
+    private void cancelIfStillIdle(ReplayPublisher publisher, long idleAtMs) {
+        synchronized (lock) {
+            Entry entry = findLocked(publisher);
+            // Someone was handed the stream after it went idle and may be about to subscribe.
+            if (entry != null && entry.lastJoinAtMs > idleAtMs) return;
+            if (publisher.getSubscriberCount() > 0 || publisher.isTerminated()) return;
+            if (entry != null) entries.remove(entry.key);
+        }
+        Log.d(TAG, "Cancelling abandoned request");
+        publisher.cancelUpstream();
+    }
+
+    private Entry findLocked(ReplayPublisher publisher) {
+        for (Entry e : entries.values()) {
+            if (e.publisher == publisher) return e;
+        }
+        return null;
+    }
+
+    private void pruneLocked(long now) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (now - e.createdAtMs >= JOIN_WINDOW_MS
+                    || e.publisher.isTerminated()
+                    || e.publisher.isUpstreamCancelled()) {
+                it.remove();
+            }
+        }
+    }
+
+    // =============================
+    // Key
+    // =============================
+
+    /** SHA-256 of everything that shapes the request, or null if it cannot be computed. */
+    static String keyOf(LanguageModelClient client, RequestSpec spec, String prompt, String systemMessage) {
+        if (client == null) return null;
+        try {
+            StringBuilder sb = new StringBuilder(256 + (prompt == null ? 0 : prompt.length()));
+            sb.append(client.getLanguageModel().name()).append('\u0000');
+            for (LanguageModelField field : LanguageModelField.values()) {
+                String v = null;
+                try { v = client.getField(spec, field); } catch (Throwable ignored) {}
+                sb.append(field.name()).append('=').append(v).append('\u0000');
+            }
+            // Streaming changes the payload and how it is parsed.
+            try {
+                SPManager sp = SPManager.getInstance();
+                sb.append(sp.getStreamingOutputEnabled()).append('/')
+                        .append(LanguageModelClient.getStreamingMode(spec)).append('\u0000');
+            } catch (Throwable ignored) {}
+            sb.append(systemMessage).append('\u0000').append(prompt);
+
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) hex.append(String.format(Locale.US, "%02x", b));
+            return hex.toString();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static String shortKey(String key) {
+        return key.length() > 12 ? key.substring(0, 12) : key;
+    }
+
+    // =============================
+    // Metrics
+    // =============================
+
+    public String describe() {
+        synchronized (lock) {
+            return String.format(Locale.US, "inFlight=%d opened=%d coalesced=%d",
+                    entries.size(), opened, coalesced);
+        }
+    }
+}
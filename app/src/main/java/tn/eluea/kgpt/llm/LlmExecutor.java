@@ -0,0 +1,268 @@
+package tn.eluea.kgpt.llm;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared execution engine for blocking LLM work (HttpURLConnection requests, model list fetches).
+ *
+ * Work is queued per {@link Lane}. A free worker always takes the highest-priority lane that is
+ * below its concurrency cap, so an inline IME request is never stuck behind a text action or a
+ * model fetch, while each lane still has its own bound. Queue time is measured per lane.
+ *
+ * Blocking stream I/O (the relay copying a socket into the pipe, the publisher loop parsing that
+ * pipe) is not LLM "work": it must always make progress, otherwise a request holding a lane slot
+ * would wait on its own relay. It runs on {@link #io()}, outside the lane bounds, in a pool of
+ * its own that is bounded too.
+ */
+public final class LlmExecutor {
+    private static final String TAG = "KGPT-LlmExecutor";
+
+    public enum Lane {
+        /** Requests triggered from the keyboard (inline commands, $ triggers, role prompts). */
+        INTERACTIVE(3, 16),
+        /** Text actions (selection menu / share-to-KGPT). */
+        TEXT_ACTION(2, 16),
+        /** Model list fetches, probes and other work nobody is waiting on. */
+        BACKGROUND(1, 32);
+
+        final int maxRunning;
+        final int maxQueued;
+
+        Lane(int maxRunning, int maxQueued) {
+            this.maxRunning = maxRunning;
+            this.maxQueued = maxQueued;
+        }
+    }
+
+    // The lane caps add up to more than MAX_WORKERS on purpose: a lane may use its whole cap
+    // while the others are idle, and a freed worker goes to the highest-priority lane first.
+    private static final int MAX_WORKERS = 5;
+    private static final double QUEUE_EWMA_ALPHA = 0.2;
+
+    // Stream I/O: about one long-lived task per open stream (publisher loop or relay) plus short
+    // aborts. Well above what the lanes can have open; past it, a few tasks wait and the rest
+    // are rejected so a runaway caller cannot grow threads without limit.
+    private static final int IO_MAX_THREADS = 16;
+    private static final int IO_MAX_QUEUED = 16;
+
+    private static volatile LlmExecutor sInstance;
+
+    /** Per-lane counters and queue-time statistics. Guarded by the engine lock. */
+    public static final class LaneStats {
+        public int queued;
+        public int running;
+        public long submitted;
+        public long started;
+        public long completed;
+        public long rejected;
+        public double queueMsEwma;
+        public long queueMsMax;
+
+        LaneStats copy() {
+            LaneStats s = new LaneStats();
+            s.queued = queued;
+            s.running = running;
+            s.submitted = submitted;
+            s.started = started;
+            s.completed = completed;
+            s.rejected = rejected;
+            s.queueMsEwma = queueMsEwma;
+            s.queueMsMax = queueMsMax;
+            return s;
+        }
+    }
+
+    private static final class Task {
+        final Lane lane;
+        final Runnable runnable;
+        final long enqueuedAtMs;
+
+        Task(Lane lane, Runnable runnable) {
+            this.lane = lane;
+            this.runnable = runnable;
+            this.enqueuedAtMs = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private final Object lock = new Object();
+    private final Lane[] lanes = Lane.values();
+    private final List<ArrayDeque<Task>> queues;
+    private final LaneStats[] stats;
+    private final Executor[] laneExecutors;
+    private int runningTotal = 0;
+
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService io;
+
+    private LlmExecutor() {
+        queues = new ArrayList<>(lanes.length);
+        stats = new LaneStats[lanes.length];
+        laneExecutors = new Executor[lanes.length];
+        for (Lane lane : lanes) {
+            queues.add(new ArrayDeque<>());
+            stats[lane.ordinal()] = new LaneStats();
+            laneExecutors[lane.ordinal()] = r -> execute(lane, r);
+        }
+        // Threads are handed out by dispatch() only, so a SynchronousQueue never has to queue.
+        // Headroom above MAX_WORKERS: a worker that just went idle may not be reusable yet.
+        workers = new ThreadPoolExecutor(0, MAX_WORKERS * 2, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemonFactory("KGPT-LLM"));
+        ThreadPoolExecutor ioPool = new ThreadPoolExecutor(IO_MAX_THREADS, IO_MAX_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(IO_MAX_QUEUED), daemonFactory("KGPT-LLM-IO"),
+                (r, pool) -> {
+                    throw new RejectedExecutionException("LLM I/O pool is full (" + IO_MAX_THREADS
+                            + " running, " + IO_MAX_QUEUED + " queued)");
+                });
+        ioPool.allowCoreThreadTimeOut(true);
+        io = ioPool;
+    }
+
+    public static LlmExecutor getInstance() {
+        if (sInstance == null) {
+            synchronized (LlmExecutor.class) {
+                if (sInstance == null) sInstance = new LlmExecutor();
+            }
+        }
+        return sInstance;
+    }
+
+    private static java.util.concurrent.ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger seq = new AtomicInteger(0);
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** An {@link Executor} view of one lane. */
+    public Executor lane(Lane lane) {
+        return laneExecutors[lane.ordinal()];
+    }
+
+    /**
+     * Bounded pool for blocking stream I/O (see class doc).
+     * {@code execute} throws {@link RejectedExecutionException} once it is full.
+     */
+    public ExecutorService io() {
+        return io;
+    }
+
+    /**
+     * Queue {@code task} on {@code lane}.
+     *
+     * @throws RejectedExecutionException if the lane's queue is full
+     */
+    public void execute(Lane lane, Runnable task) {
+        if (task == null) throw new NullPointerException("task");
+        synchronized (lock) {
+            LaneStats s = stats[lane.ordinal()];
+            ArrayDeque<Task> q = queues.get(lane.ordinal());
+            if (q.size() >= lane.maxQueued) {
+                s.rejected++;
+                throw new RejectedExecutionException("LLM lane " + lane + " is full (" + q.size() + " queued)");
+            }
+            q.addLast(new Task(lane, task));
+            s.submitted++;
+            s.queued = q.size();
+        }
+        dispatch();
+    }
+
+    /** Start workers for queued tasks as far as the bounds allow. */
+    private void dispatch() {
+        while (true) {
+            final Task task;
+            synchronized (lock) {
+                task = pollNextLocked();
+                if (task == null) return;
+            }
+            try {
+                workers.execute(() -> runLoop(task));
+            } catch (Throwable t) {
+                // Should not happen (bounded by MAX_WORKERS); run inline rather than lose the task.
+                Log.e(TAG, "Worker start failed, running inline: " + t.getMessage());
+                runLoop(task);
+            }
+        }
+    }
+
+    /** Highest-priority queued task whose lane is below its cap, marked as running. */
+    private Task pollNextLocked() {
+        if (runningTotal >= MAX_WORKERS) return null;
+        for (Lane lane : lanes) {
+            LaneStats s = stats[lane.ordinal()];
+            ArrayDeque<Task> q = queues.get(lane.ordinal());
+            if (q.isEmpty() || s.running >= lane.maxRunning) continue;
+
+            Task next = q.pollFirst();
+            s.queued = q.size();
+            s.running++;
+            runningTotal++;
+            long waited = SystemClock.elapsedRealtime() - next.enqueuedAtMs;
+            s.queueMsEwma = s.started == 0
+                    ? waited
+                    : s.queueMsEwma + QUEUE_EWMA_ALPHA * (waited - s.queueMsEwma);
+            s.started++;
+            if (waited > s.queueMsMax) s.queueMsMax = waited;
+            return next;
+        }
+        return null;
+    }
+
+    /** Run {@code first}, then keep taking queued work on this thread until none is eligible. */
+    private void runLoop(Task first) {
+        Task task = first;
+        while (task != null) {
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                Log.e(TAG, "Task failed on lane " + task.lane, t);
+            }
+            synchronized (lock) {
+                LaneStats s = stats[task.lane.ordinal()];
+                s.running--;
+                s.completed++;
+                runningTotal--;
+                task = pollNextLocked();
+            }
+        }
+    }
+
+    // =============================
+    // Metrics
+    // =============================
+
+    public LaneStats getStats(Lane lane) {
+        synchronized (lock) {
+            return stats[lane.ordinal()].copy();
+        }
+    }
+
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (lock) {
+            for (Lane lane : lanes) {
+                LaneStats s = stats[lane.ordinal()];
+                if (sb.length() > 0) sb.append(" | ");
+                sb.append(String.format(Locale.US, "%s run=%d q=%d done=%d rej=%d wait=%.0fms max=%dms",
+                        lane, s.running, s.queued, s.completed, s.rejected, s.queueMsEwma, s.queueMsMax));
+            }
+        }
+        return sb.toString();
+    }
+}
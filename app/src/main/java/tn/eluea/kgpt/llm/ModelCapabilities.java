@@ -1,109 +1,316 @@
 package tn.eluea.kgpt.llm;
 
 import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 import tn.eluea.kgpt.SPManager;
 
 /**
  * Lightweight capability checks for sub-model strings.
  * Used to disable UI controls and avoid sending unsupported parameters.
+ *
+ * Answers come from two sources: capabilities learned at runtime (cached in SPManager) and
+ * name-based rules. The rules are data ({@link #DEFAULT_RULES}, replaceable through
+ * {@code SPManager.setModelCapabilityRulesJson}) compiled once into lowercase prefix / substring
+ * matchers. Both are resolved together the first time a (provider, sub-model) pair is asked about
+ * and memoised in-process, so the per-request checks are a map lookup instead of a dozen string
+ * scans and several provider IPC reads. Learned values written in this process invalidate their
+ * entry at once; entries are re-read after {@link #ENTRY_TTL_MS} to pick up other processes.
+ * A rules change in any process reloads the rules through SPManager's change listener.
  */
 public final class ModelCapabilities {
+    private static final String TAG = "KGPT-ModelCaps";
 
     private ModelCapabilities() {}
 
+    // =============================
+    // Rules
+    // =============================
+
+    public static final String CAP_TEMPERATURE = "temperature";
+    public static final String CAP_REASONING = "reasoning";
+    public static final String CAP_MAX_TOKENS = "max_tokens";
+    public static final String CAP_STREAM_USAGE = "stream_usage";
+    public static final String CAP_SYSTEM_INSTRUCTION = "system_instruction";
+
+    private static final int BIT_TEMPERATURE = 1;
+    private static final int BIT_REASONING = 2;
+    private static final int BIT_MAX_TOKENS = 4;
+    private static final int BIT_STREAM_USAGE = 8;
+    private static final int BIT_SYSTEM_INSTRUCTION = 16;
+    private static final int ALL_BITS = BIT_TEMPERATURE | BIT_REASONING | BIT_MAX_TOKENS | BIT_STREAM_USAGE
+            | BIT_SYSTEM_INSTRUCTION;
+
     /**
-     * Whether the given model is expected to accept a temperature-like parameter.
-     *
-     * We infer from the model id string. This is intentionally conservative for
-     * non-text modalities (image / tts / transcribe / reranker, etc.).
+     * Built-in rules. {@code defaults} apply when no rule matches; rules are tried in order and the
+     * first one that matches decides each of its {@code caps}. A rule matches when the provider is
+     * in {@code providers} (if given) and the lowercased sub-model starts with one of
+     * {@code prefix} or contains one of {@code contains} (if either is given).
      */
-    public static boolean supportsTemperature(LanguageModel provider, String subModel) {
-        // 1) Cached runtime knowledge (most reliable)
-        try {
-            if (SPManager.isReady()) {
-                Boolean cached = SPManager.getInstance().getCachedSupportsTemperature(provider, subModel);
-                if (cached != null) return cached;
+    public static final String DEFAULT_RULES = "{"
+            + "\"defaults\":{\"temperature\":true,\"reasoning\":false,\"max_tokens\":true,\"stream_usage\":false,"
+            + "\"system_instruction\":true},"
+            + "\"rules\":["
+            // Non-text utility endpoints (rerank / embeddings / speech / images / moderation).
+            + "{\"caps\":[\"temperature\",\"reasoning\",\"max_tokens\"],\"value\":false,"
+            + "\"contains\":[\"rerank\",\"ranker\",\"embed\",\"transcribe\",\"tts\",\"whisper\","
+            + "\"gpt-image\",\"dall-e\",\"image-preview\",\"pro-image\",\"moderation\",\"safety\"]},"
+            // GPT-5.* reject sampling params and take reasoning hints.
+            + "{\"caps\":[\"temperature\"],\"value\":false,\"prefix\":[\"gpt-5\"],\"contains\":[\"gpt-5.\"]},"
+            + "{\"caps\":[\"reasoning\"],\"value\":true,\"prefix\":[\"gpt-5\"],\"contains\":[\"gpt-5.\",\"thinking\"]},"
+            // Providers known to accept stream_options.include_usage.
+            + "{\"caps\":[\"stream_usage\"],\"value\":true,\"providers\":[\"ChatGPT\",\"OpenRouter\",\"Chutes\"]},"
+            // Gemini models without systemInstruction ("Developer instruction is not enabled").
+            + "{\"caps\":[\"system_instruction\"],\"value\":false,\"providers\":[\"Gemini\"],"
+            + "\"prefix\":[\"gemini-1.0\",\"gemini-pro\",\"gemma\"]}"
+            + "]}";
+
+    private static final class Rule {
+        final int caps;
+        final boolean value;
+        final java.util.EnumSet<LanguageModel> providers; // null = any
+        final String[] prefixes;
+        final String[] contains;
+
+        Rule(int caps, boolean value, java.util.EnumSet<LanguageModel> providers, String[] prefixes, String[] contains) {
+            this.caps = caps;
+            this.value = value;
+            this.providers = providers;
+            this.prefixes = prefixes;
+            this.contains = contains;
+        }
+
+        boolean matches(LanguageModel provider, String m) {
+            if (providers != null && (provider == null || !providers.contains(provider))) return false;
+            if (prefixes.length == 0 && contains.length == 0) return true;
+            for (String p : prefixes) {
+                if (m.startsWith(p)) return true;
             }
-        } catch (Throwable ignored) {}
+            for (String c : contains) {
+                if (m.contains(c)) return true;
+            }
+            return false;
+        }
+    }
 
-        if (TextUtils.isEmpty(subModel)) {
-            // If unknown, assume supported for text models.
-            return true;
+    private static final class RuleSet {
+        final int defaults;
+        final Rule[] rules;
+
+        RuleSet(int defaults, Rule[] rules) {
+            this.defaults = defaults;
+            this.rules = rules;
         }
 
-        String m = subModel.trim().toLowerCase();
+        /** Bitmask of the capabilities the rules grant to this sub-model. */
+        int evaluate(LanguageModel provider, String subModel) {
+            String m = subModel == null ? "" : subModel.trim().toLowerCase(java.util.Locale.ROOT);
+            int result = defaults;
+            int decided = 0;
+            for (Rule r : rules) {
+                int open = r.caps & ~decided;
+                if (open == 0 || !r.matches(provider, m)) continue;
+                result = r.value ? (result | open) : (result & ~open);
+                decided |= open;
+                if (decided == ALL_BITS) break;
+            }
+            return result;
+        }
+    }
 
-        // Reasoning-first families often reject sampling params on some providers.
-        // Based on the user's screenshot list, GPT-5.* should be treated as not temperature-adjustable.
-        if (m.startsWith("gpt-5") || m.contains("gpt-5.")) {
-            return false;
+    private static volatile RuleSet sRules = null;
+
+    /** Compile a rules document. Throws on malformed input. */
+    private static RuleSet compile(String json) throws org.json.JSONException {
+        org.json.JSONObject root = new org.json.JSONObject(json);
+        int defaults = 0;
+        org.json.JSONObject d = root.optJSONObject("defaults");
+        if (d != null) {
+            java.util.Iterator<String> it = d.keys();
+            while (it.hasNext()) {
+                String cap = it.next();
+                if (d.optBoolean(cap, false)) defaults |= bitOf(cap);
+            }
+        }
+        org.json.JSONArray arr = root.optJSONArray("rules");
+        java.util.ArrayList<Rule> rules = new java.util.ArrayList<>();
+        for (int i = 0; arr != null && i < arr.length(); i++) {
+            org.json.JSONObject o = arr.getJSONObject(i);
+            int caps = 0;
+            org.json.JSONArray c = o.optJSONArray("caps");
+            for (int j = 0; c != null && j < c.length(); j++) caps |= bitOf(c.optString(j));
+            if (caps == 0) continue;
+
+            java.util.EnumSet<LanguageModel> providers = null;
+            org.json.JSONArray p = o.optJSONArray("providers");
+            if (p != null) {
+                providers = java.util.EnumSet.noneOf(LanguageModel.class);
+                for (int j = 0; j < p.length(); j++) {
+                    try { providers.add(LanguageModel.valueOf(p.optString(j))); } catch (IllegalArgumentException ignored) {}
+                }
+            }
+            rules.add(new Rule(caps, o.optBoolean("value", false), providers,
+                    lowerAll(o.optJSONArray("prefix")), lowerAll(o.optJSONArray("contains"))));
         }
+        return new RuleSet(defaults, rules.toArray(new Rule[0]));
+    }
 
-        // Ranking / reranking models
-        if (m.contains("rerank") || m.contains("reranker") || m.contains("ranker")) {
-            return false;
+    private static int bitOf(String cap) {
+        if (CAP_TEMPERATURE.equals(cap)) return BIT_TEMPERATURE;
+        if (CAP_REASONING.equals(cap)) return BIT_REASONING;
+        if (CAP_MAX_TOKENS.equals(cap)) return BIT_MAX_TOKENS;
+        if (CAP_STREAM_USAGE.equals(cap)) return BIT_STREAM_USAGE;
+        if (CAP_SYSTEM_INSTRUCTION.equals(cap)) return BIT_SYSTEM_INSTRUCTION;
+        return 0;
+    }
+
+    private static String[] lowerAll(org.json.JSONArray arr) {
+        if (arr == null) return new String[0];
+        java.util.ArrayList<String> out = new java.util.ArrayList<>(arr.length());
+        for (int i = 0; i < arr.length(); i++) {
+            String v = arr.optString(i, "").trim().toLowerCase(java.util.Locale.ROOT);
+            if (!v.isEmpty()) out.add(v);
         }
+        return out.toArray(new String[0]);
+    }
 
-        // Embedding models
-        if (m.contains("embedding") || m.contains("text-embedding") || m.contains("embed")) {
-            return false;
+    private static RuleSet rules() {
+        RuleSet r = sRules;
+        if (r != null) return r;
+        synchronized (ModelCapabilities.class) {
+            if (sRules == null) sRules = loadRules();
+            return sRules;
         }
+    }
 
-        // Speech / audio utility models
-        if (m.contains("transcribe") || m.contains("tts") || m.contains("whisper")) {
-            return false;
+    private static RuleSet loadRules() {
+        String custom = null;
+        try {
+            if (SPManager.isReady()) custom = SPManager.getInstance().getModelCapabilityRulesJson();
+        } catch (Throwable ignored) {}
+        if (!TextUtils.isEmpty(custom)) {
+            try {
+                return compile(custom);
+            } catch (Throwable t) {
+                Log.w(TAG, "Invalid capability rules, using built-in ones: " + t.getMessage());
+            }
+        }
+        try {
+            return compile(DEFAULT_RULES);
+        } catch (org.json.JSONException e) {
+            throw new IllegalStateException(e);
         }
+    }
 
-        // Image generation / image-only endpoints
-        if (m.contains("gpt-image") || m.contains("dall-e") || m.contains("image-preview") || m.contains("pro-image")) {
-            return false;
+    /** Re-read the rules (after {@code setModelCapabilityRulesJson}) and forget every memoised answer. */
+    public static void reloadRules() {
+        synchronized (ModelCapabilities.class) {
+            sRules = null;
         }
+        invalidateAll();
+    }
 
-        // Generic moderation / safety endpoints
-        if (m.contains("moderation") || m.contains("safety")) {
-            return false;
+    // =============================
+    // Memoised lookups
+    // =============================
+
+    /** Entries are re-resolved after this long, so values learned by another process show up. */
+    private static final long ENTRY_TTL_MS = 60_000L;
+    private static final int MAX_ENTRIES_PER_PROVIDER = 256;
+
+    private static final class Entry {
+        final int caps;
+        final Integer safeMaxTokens;
+        final long loadedAtMs;
+
+        Entry(int caps, Integer safeMaxTokens, long loadedAtMs) {
+            this.caps = caps;
+            this.safeMaxTokens = safeMaxTokens;
+            this.loadedAtMs = loadedAtMs;
         }
+    }
+
+    private static final ConcurrentHashMap<String, Entry>[] ENTRIES = newTables();
 
-        return true;
+    @SuppressWarnings("unchecked")
+    private static ConcurrentHashMap<String, Entry>[] newTables() {
+        ConcurrentHashMap<String, Entry>[] t =
+                new ConcurrentHashMap[LanguageModel.values().length + 1];
+        for (int i = 0; i < t.length; i++) t[i] = new ConcurrentHashMap<>();
+        return t;
     }
 
-    /**
-     * Whether "推理模型思考" should be enabled for the given model.
-     *
-     * Heuristic based on model id strings from the user's screenshot list:
-     * - OpenAI GPT-5 family (gpt-5 / gpt-5.*)
-     * - Claude / Gemini variants that contain "thinking"
-     *
-     * Also conservative exclusions for non-text modalities.
-     */
-    public static boolean supportsReasoningThinking(LanguageModel provider, String subModel) {
-        // 1) Cached runtime knowledge (most reliable)
+    private static ConcurrentHashMap<String, Entry> tableOf(LanguageModel provider) {
+        return ENTRIES[provider == null ? ENTRIES.length - 1 : provider.ordinal()];
+    }
+
+    private static Entry entry(LanguageModel provider, String subModel) {
+        String key = subModel == null ? "" : subModel;
+        ConcurrentHashMap<String, Entry> table = tableOf(provider);
+        Entry e = table.get(key);
+        long now = android.os.SystemClock.elapsedRealtime();
+        if (e != null && now - e.loadedAtMs < ENTRY_TTL_MS) return e;
+
+        e = resolve(provider, subModel, now);
+        if (table.size() >= MAX_ENTRIES_PER_PROVIDER) table.clear();
+        table.put(key, e);
+        return e;
+    }
+
+    /** Rules first, then whatever was learned at runtime overrides them. */
+    private static Entry resolve(LanguageModel provider, String subModel, long now) {
+        int caps = rules().evaluate(provider, subModel);
+        Integer safeMaxTokens = null;
         try {
             if (SPManager.isReady()) {
-                Boolean cached = SPManager.getInstance().getCachedSupportsReasoningThinking(provider, subModel);
-                if (cached != null) return cached;
+                SPManager sp = SPManager.getInstance();
+                caps = apply(caps, BIT_TEMPERATURE, sp.getCachedSupportsTemperature(provider, subModel));
+                caps = apply(caps, BIT_REASONING, sp.getCachedSupportsReasoningThinking(provider, subModel));
+                caps = apply(caps, BIT_STREAM_USAGE, sp.getCachedSupportsStreamUsage(provider, subModel));
+                safeMaxTokens = sp.getCachedSafeMaxTokens(provider, subModel);
             }
         } catch (Throwable ignored) {}
+        return new Entry(caps, safeMaxTokens, now);
+    }
 
-        if (TextUtils.isEmpty(subModel)) {
-            return false;
-        }
+    private static int apply(int caps, int bit, Boolean learned) {
+        if (learned == null) return caps;
+        return learned ? (caps | bit) : (caps & ~bit);
+    }
 
-        String m = subModel.trim().toLowerCase();
+    /** Forget the memoised answers for one sub-model (its learned capabilities changed). */
+    public static void invalidate(LanguageModel provider, String subModel) {
+        tableOf(provider).remove(subModel == null ? "" : subModel);
+    }
 
-        // Exclude non-text modalities first.
-        if (m.contains("rerank") || m.contains("reranker") || m.contains("ranker")) return false;
-        if (m.contains("embedding") || m.contains("text-embedding") || m.contains("embed")) return false;
-        if (m.contains("transcribe") || m.contains("tts") || m.contains("whisper")) return false;
-        if (m.contains("gpt-image") || m.contains("dall-e") || m.contains("image-preview") || m.contains("pro-image")) return false;
-        if (m.contains("moderation") || m.contains("safety")) return false;
+    public static void invalidateAll() {
+        for (ConcurrentHashMap<String, Entry> t : ENTRIES) t.clear();
+    }
 
-        // Reasoning-capable indicators.
-        if (m.contains("thinking")) return true;
-        if (m.startsWith("gpt-5") || m.contains("gpt-5.")) return true;
+    // =============================
+    // Capabilities
+    // =============================
 
-        return false;
+    /**
+     * Whether the given model is expected to accept a temperature-like parameter.
+     *
+     * Learned value if any, else inferred from the model id. Intentionally conservative for
+     * non-text modalities (image / tts / transcribe / reranker, etc.) and GPT-5.*.
+     */
+    public static boolean supportsTemperature(LanguageModel provider, String subModel) {
+        return (entry(provider, subModel).caps & BIT_TEMPERATURE) != 0;
+    }
+
+    /**
+     * Whether "推理模型思考" should be enabled for the given model.
+     *
+     * Learned value if any, else by model id: the OpenAI GPT-5 family and variants that contain
+     * "thinking", excluding non-text modalities.
+     */
+    public static boolean supportsReasoningThinking(LanguageModel provider, String subModel) {
+        return (entry(provider, subModel).caps & BIT_REASONING) != 0;
     }
 
     /**
@@ -113,15 +320,31 @@ public final class ModelCapabilities {
      * often reject it.
      */
     public static boolean supportsMaxTokens(LanguageModel provider, String subModel) {
-        if (TextUtils.isEmpty(subModel)) return true;
-        String m = subModel.trim().toLowerCase();
-
-        if (m.contains("rerank") || m.contains("reranker") || m.contains("ranker")) return false;
-        if (m.contains("embedding") || m.contains("text-embedding") || m.contains("embed")) return false;
-        if (m.contains("transcribe") || m.contains("tts") || m.contains("whisper")) return false;
-        if (m.contains("gpt-image") || m.contains("dall-e") || m.contains("image-preview") || m.contains("pro-image")) return false;
-        if (m.contains("moderation") || m.contains("safety")) return false;
-        return true;
+        return (entry(provider, subModel).caps & BIT_MAX_TOKENS) != 0;
+    }
+
+    /**
+     * Whether to ask a streaming OpenAI-compatible endpoint for a final usage chunk
+     * ({@code stream_options.include_usage}).
+     *
+     * Only providers known to accept it; others either report usage unasked (Groq, Mistral,
+     * Perplexity) or may reject the unknown field, and fall back to a local estimate.
+     */
+    public static boolean supportsStreamUsage(LanguageModel provider, String subModel) {
+        return (entry(provider, subModel).caps & BIT_STREAM_USAGE) != 0;
+    }
+
+    /**
+     * Whether a Gemini model takes the system prompt as {@code systemInstruction}. Without it the
+     * prompt has to ride along as a leading user turn.
+     */
+    public static boolean supportsSystemInstruction(LanguageModel provider, String subModel) {
+        return (entry(provider, subModel).caps & BIT_SYSTEM_INSTRUCTION) != 0;
+    }
+
+    /** Learned safe max output tokens for the model, or null if none was learned. */
+    public static Integer getSafeMaxTokens(LanguageModel provider, String subModel) {
+        return entry(provider, subModel).safeMaxTokens;
     }
 
     /**
@@ -146,6 +369,26 @@ public final class ModelCapabilities {
         return false;
     }
 
+    // NOTE: Android/AGP often compiles Java sources with -source 8.
+    // Therefore DO NOT use Java 15+ string escapes like "\s" in string literals.
+    // Always double-escape backslashes for regex patterns: "\\s", "\\d", etc.
+    private static final java.util.regex.Pattern[] LIMIT_PATTERNS = new java.util.regex.Pattern[] {
+            // max_tokens must be <= 4096
+            java.util.regex.Pattern.compile("(?i)max[_\\s-]*tokens[^\\d]{0,80}(?:<=|<|less\\s+than\\s+or\\s+equal\\s+to)\\s*(\\d{2,7})"),
+            // max_completion_tokens must be <= 4096
+            java.util.regex.Pattern.compile("(?i)max[_\\s-]*(?:completion[_\\s-]*tokens|max[_\\s-]*completion[_\\s-]*tokens|maxoutputtokens|max[_\\s-]*output[_\\s-]*tokens)[^\\d]{0,80}(?:<=|<|less\\s+than\\s+or\\s+equal\\s+to)\\s*(\\d{2,7})"),
+            // between 1 and 4096
+            java.util.regex.Pattern.compile("(?i)max[_\\s-]*tokens[^\\d]{0,80}between\\s*\\d{1,7}\\s*and\\s*(\\d{2,7})"),
+            // maximum context length is 8192 tokens
+            java.util.regex.Pattern.compile("(?i)maximum\\s+(?:context\\s+(?:length|window)|output\\s+tokens)[^\\d]{0,40}(\\d{2,7})\\s*tokens"),
+            // context window: 8192 tokens
+            java.util.regex.Pattern.compile("(?i)context\\s+(?:length|window)[^\\d]{0,40}(\\d{2,7})\\s*tokens"),
+            // limit is 8192 tokens
+            java.util.regex.Pattern.compile("(?i)limit[^\\d]{0,40}(\\d{2,7})\\s*tokens"),
+    };
+    private static final java.util.regex.Pattern TOKENS_COUNT_PATTERN = java.util.regex.Pattern.compile("(?i)(\\d{2,7})\\s*tokens");
+    private static final java.util.regex.Pattern NUMBER_PATTERN = java.util.regex.Pattern.compile("(\\d{3,7})");
+
     /**
      * Attempts to extract a suggested safe max token value from an error message.
      * Returns null if not found.
@@ -162,25 +405,7 @@ public final class ModelCapabilities {
         // High-confidence patterns (avoid accidentally capturing HTTP status codes like 400/422/429).
         // Prefer limits expressed with "max_tokens" / "maximum context length" / "<= N".
         try {
-            // NOTE: Android/AGP often compiles Java sources with -source 8.
-            // Therefore DO NOT use Java 15+ string escapes like "\s" in string literals.
-            // Always double-escape backslashes for regex patterns: "\\s", "\\d", etc.
-            java.util.regex.Pattern[] ps = new java.util.regex.Pattern[] {
-                    // max_tokens must be <= 4096
-                    java.util.regex.Pattern.compile("(?i)max[_\\s-]*tokens[^\\d]{0,80}(?:<=|<|less\\s+than\\s+or\\s+equal\\s+to)\\s*(\\d{2,7})"),
-                    // max_completion_tokens must be <= 4096
-                    java.util.regex.Pattern.compile("(?i)max[_\\s-]*(?:completion[_\\s-]*tokens|max[_\\s-]*completion[_\\s-]*tokens|maxoutputtokens|max[_\\s-]*output[_\\s-]*tokens)[^\\d]{0,80}(?:<=|<|less\\s+than\\s+or\\s+equal\\s+to)\\s*(\\d{2,7})"),
-                    // between 1 and 4096
-                    java.util.regex.Pattern.compile("(?i)max[_\\s-]*tokens[^\\d]{0,80}between\\s*\\d{1,7}\\s*and\\s*(\\d{2,7})"),
-                    // maximum context length is 8192 tokens
-                    java.util.regex.Pattern.compile("(?i)maximum\\s+(?:context\\s+(?:length|window)|output\\s+tokens)[^\\d]{0,40}(\\d{2,7})\\s*tokens"),
-                    // context window: 8192 tokens
-                    java.util.regex.Pattern.compile("(?i)context\\s+(?:length|window)[^\\d]{0,40}(\\d{2,7})\\s*tokens"),
-                    // limit is 8192 tokens
-                    java.util.regex.Pattern.compile("(?i)limit[^\\d]{0,40}(\\d{2,7})\\s*tokens"),
-            };
-
-            for (java.util.regex.Pattern p : ps) {
+            for (java.util.regex.Pattern p : LIMIT_PATTERNS) {
                 java.util.regex.Matcher mm = p.matcher(raw);
                 if (mm.find()) {
                     String g = mm.group(1);
@@ -196,7 +421,7 @@ public final class ModelCapabilities {
         // and not a "requested X tokens" count.
         try {
             java.util.ArrayList<Integer> cands = new java.util.ArrayList<>();
-            java.util.regex.Matcher mt = java.util.regex.Pattern.compile("(?i)(\\d{2,7})\\s*tokens").matcher(raw);
+            java.util.regex.Matcher mt = TOKENS_COUNT_PATTERN.matcher(raw);
             while (mt.find()) {
                 String g = mt.group(1);
                 if (g == null) continue;
@@ -222,7 +447,7 @@ public final class ModelCapabilities {
         // Fallback: pick the most plausible integer, skipping HTTP status codes when larger limits exist.
         try {
             java.util.ArrayList<Integer> all = new java.util.ArrayList<>();
-            java.util.regex.Matcher matcher = java.util.regex.Pattern.compile("(\\d{3,7})").matcher(raw);
+            java.util.regex.Matcher matcher = NUMBER_PATTERN.matcher(raw);
             while (matcher.find()) {
                 String g = matcher.group(1);
                 if (g == null) continue;
@@ -248,6 +473,28 @@ public final class ModelCapabilities {
         return null;
     }
 
+    /**
+     * Output limit to retry with after {@code t} rejected {@code current} max tokens: the limit the
+     * error names if there is one (a context-window number is still safer than something huge),
+     * else the next conservative step down. Returns {@code current} or more if no reduction applies.
+     */
+    public static int safeMaxTokensAfter(Throwable t, int current) {
+        int safe = current;
+        Integer suggested = extractSuggestedMaxTokens(t);
+        if (suggested != null && suggested > 0) {
+            safe = Math.min(current, suggested);
+        }
+        // If we couldn't infer a number (or failed to reduce), fall back to a sane conservative output limit.
+        if (safe <= 0 || safe >= current) {
+            if (current > 8192) safe = 8192;
+            else if (current > 4096) safe = 4096;
+            else if (current > 2048) safe = 2048;
+            else if (current > 1024) safe = 1024;
+            else safe = Math.max(256, current / 2);
+        }
+        return safe;
+    }
+
     /**
      * Best-effort detection for "unsupported parameter" style failures.
      * Used for auto-downgrade (retry without that parameter) and capability caching.
@@ -0,0 +1,383 @@
+package tn.eluea.kgpt.llm;
+
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import tn.eluea.kgpt.SPManager;
+
+/**
+ * Provider model lists ({@code GET <baseUrl>/models}) and search over the cached copy.
+ *
+ * Fetching sends the ETag / Last-Modified of the last successful download, so an unchanged list
+ * costs a 304 and no body. The body is parsed as a stream: only model ids are kept, everything
+ * else in each entry (OpenRouter sends pricing, descriptions, architecture...) is skipped without
+ * being materialised. {@code SPManager.setCachedModels} diffs against the stored list and only
+ * writes when something changed.
+ *
+ * {@link #search} answers the model picker from a per-provider trigram index built once per
+ * cached list, ranked exact > prefix > word prefix > substring, ties in list order.
+ */
+public final class ModelCatalog {
+    private static final String TAG = "KGPT_ModelCatalog";
+
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 20_000;
+    private static final int MAX_ERROR_BODY_CHARS = 2_000;
+
+    private static volatile ModelCatalog sInstance;
+
+    private final Object lock = new Object();
+    private final Map<LanguageModel, Index> indexes = new HashMap<>();
+
+    public static ModelCatalog getInstance() {
+        if (sInstance == null) {
+            synchronized (ModelCatalog.class) {
+                if (sInstance == null) sInstance = new ModelCatalog();
+            }
+        }
+        return sInstance;
+    }
+
+    // =============================
+    // Fetch
+    // =============================
+
+    /**
+     * Download the provider's model list. Returns the cached list when the server answers 304,
+     * an empty list when the body holds no models. Blocking; call from a background lane.
+     */
+    public List<String> fetch(LanguageModel model, String baseUrl, String apiKey) throws Exception {
+        if (model == null || baseUrl == null || baseUrl.trim().isEmpty()) return new ArrayList<>();
+
+        String url = baseUrl.trim();
+        while (url.endsWith("/")) url = url.substring(0, url.length() - 1);
+        url = url + "/models";
+        String key = apiKey != null ? apiKey.trim() : "";
+
+        SPManager sp = SPManager.isReady() ? SPManager.getInstance() : null;
+        // Validators only apply to the list we actually hold: same URL, same key, non-empty cache.
+        Validators validators = sp != null ? Validators.load(sp, model) : null;
+        List<String> cached = sp != null ? sp.getCachedModels(model) : Collections.emptyList();
+        boolean conditional = validators != null
+                && validators.matches(url, key)
+                && !cached.isEmpty()
+                && baseUrl.trim().equals(sp.getCachedModelsBaseUrl(model));
+
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            con.setRequestMethod("GET");
+            con.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            con.setReadTimeout(READ_TIMEOUT_MS);
+            con.setRequestProperty("Accept", "application/json");
+            if (!key.isEmpty()) {
+                if (model == LanguageModel.Gemini) {
+                    con.setRequestProperty("x-goog-api-key", key);
+                } else {
+                    con.setRequestProperty("Authorization", "Bearer " + key);
+                }
+            }
+            if (conditional) {
+                if (!TextUtils.isEmpty(validators.etag)) con.setRequestProperty("If-None-Match", validators.etag);
+                if (!TextUtils.isEmpty(validators.lastModified)) con.setRequestProperty("If-Modified-Since", validators.lastModified);
+            }
+
+            int code = con.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && conditional) {
+                Log.d(TAG, model.name() + ": model list not modified (" + cached.size() + ")");
+                return new ArrayList<>(cached);
+            }
+            if (code < 200 || code >= 300) {
+                throw new Exception("HTTP " + code + " " + readErrorBody(con.getErrorStream()));
+            }
+
+            List<String> models;
+            try (InputStream is = con.getInputStream()) {
+                models = parseModels(is);
+            } catch (android.util.MalformedJsonException | IllegalStateException e) {
+                // Not a model list (e.g. an HTML page behind a 200): nothing to cache.
+                Log.d(TAG, model.name() + ": unreadable model list: " + e.getMessage());
+                models = new ArrayList<>();
+            }
+            if (sp != null && !models.isEmpty()) {
+                new Validators(url, Validators.hashKey(key), con.getHeaderField("ETag"),
+                        con.getHeaderField("Last-Modified")).save(sp, model);
+            }
+            return models;
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * Stream-parse a model list: OpenAI / OpenRouter {@code {data:[{id}]}}, Gemini
+     * {@code {models:[{name:"models/x"}]}} and relays' {@code {result:[...]}}; entries may also be
+     * bare strings. The first non-empty array wins in that order. Ids are trimmed, de-duplicated
+     * and lose Gemini's {@code models/} prefix.
+     */
+    static List<String> parseModels(InputStream is) throws IOException {
+        Map<String, List<String>> found = new HashMap<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        try {
+            reader.setLenient(true);
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) return new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (("data".equals(name) || "models".equals(name) || "result".equals(name))
+                        && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    found.put(name, readIds(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } finally {
+            try { reader.close(); } catch (Throwable ignored) {}
+        }
+
+        for (String key : new String[]{"data", "models", "result"}) {
+            List<String> ids = found.get(key);
+            if (ids == null || ids.isEmpty()) continue;
+            LinkedHashSet<String> out = new LinkedHashSet<>();
+            for (String id : ids) {
+                String v = id.trim();
+                if (v.startsWith("models/")) v = v.substring("models/".length());
+                if (!v.isEmpty()) out.add(v);
+            }
+            if (!out.isEmpty()) return new ArrayList<>(out);
+        }
+        return new ArrayList<>();
+    }
+
+    private static List<String> readIds(JsonReader reader) throws IOException {
+        List<String> ids = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JsonToken token = reader.peek();
+            if (token == JsonToken.STRING) {
+                ids.add(reader.nextString());
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                String id = null;
+                String name = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (("id".equals(field) || "name".equals(field)) && reader.peek() == JsonToken.STRING) {
+                        if ("id".equals(field)) id = reader.nextString();
+                        else name = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                String v = !TextUtils.isEmpty(id) ? id : name;
+                if (!TextUtils.isEmpty(v)) ids.add(v);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return ids;
+    }
+
+    private static String readErrorBody(InputStream is) {
+        if (is == null) return "";
+        StringBuilder sb = new StringBuilder();
+        try (InputStreamReader r = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+            char[] buf = new char[1024];
+            int n;
+            while (sb.length() < MAX_ERROR_BODY_CHARS && (n = r.read(buf)) > 0) sb.append(buf, 0, n);
+        } catch (Throwable ignored) {
+        }
+        return sb.length() > MAX_ERROR_BODY_CHARS ? sb.substring(0, MAX_ERROR_BODY_CHARS) : sb.toString();
+    }
+
+    /** Conditional GET state of the last successful download for one provider. */
+    private static final class Validators {
+        final String url;
+        final String keyHash;
+        final String etag;
+        final String lastModified;
+
+        private Validators(String url, String keyHash, String etag, String lastModified) {
+            this.url = url;
+            this.keyHash = keyHash;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(String url, String apiKey) {
+            return this.url.equals(url) && keyHash.equals(hashKey(apiKey))
+                    && (!TextUtils.isEmpty(etag) || !TextUtils.isEmpty(lastModified));
+        }
+
+        static Validators load(SPManager sp, LanguageModel model) {
+            try {
+                JSONObject all = new JSONObject(sp.getModelCatalogMetaJson());
+                JSONObject o = all.optJSONObject(model.name());
+                if (o == null) return null;
+                return new Validators(o.optString("url", ""), o.optString("key", ""),
+                        o.optString("etag", null), o.optString("lm", null));
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+
+        void save(SPManager sp, LanguageModel model) {
+            try {
+                JSONObject all = new JSONObject(sp.getModelCatalogMetaJson());
+                JSONObject o = new JSONObject()
+                        .put("url", url)
+                        .put("key", keyHash)
+                        .put("at", System.currentTimeMillis());
+                if (!TextUtils.isEmpty(etag)) o.put("etag", etag);
+                if (!TextUtils.isEmpty(lastModified)) o.put("lm", lastModified);
+                all.put(model.name(), o);
+                sp.setModelCatalogMetaJson(all.toString());
+            } catch (Throwable ignored) {
+            }
+        }
+
+        // Only tells whether the key changed; the key itself is never stored here.
+        static String hashKey(String apiKey) {
+            return Integer.toHexString(apiKey == null ? 0 : apiKey.hashCode());
+        }
+    }
+
+    // =============================
+    // Search
+    // =============================
+
+    /** Cached models of {@code model} matching every whitespace-separated term of {@code query}, best first. */
+    public List<String> search(LanguageModel model, String query) {
+        if (model == null || !SPManager.isReady()) return new ArrayList<>();
+        List<String> models = SPManager.getInstance().getCachedModels(model);
+        Index index;
+        synchronized (lock) {
+            index = indexes.get(model);
+            if (index == null || !index.isFor(models)) {
+                index = new Index(models);
+                indexes.put(model, index);
+            }
+        }
+        return index.search(query);
+    }
+
+    /** The cached list of {@code model} changed; its index is rebuilt on the next search. */
+    public void invalidateIndex(LanguageModel model) {
+        synchronized (lock) {
+            indexes.remove(model);
+        }
+    }
+
+    static final class Index {
+        private static final int[] EMPTY = new int[0];
+
+        private final List<String> source;
+        private final String[] names;
+        private final String[] lower;
+        private final Map<String, int[]> trigrams;
+
+        Index(List<String> models) {
+            source = models;
+            ArrayList<String> n = new ArrayList<>(models.size());
+            for (String m : models) {
+                if (m == null) continue;
+                String v = m.trim();
+                if (!v.isEmpty()) n.add(v);
+            }
+            names = n.toArray(new String[0]);
+            lower = new String[names.length];
+            Map<String, ArrayList<Integer>> postings = new HashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                lower[i] = names[i].toLowerCase(Locale.ROOT);
+                String s = lower[i];
+                for (int j = 0; j + 3 <= s.length(); j++) {
+                    ArrayList<Integer> list = postings.get(s.substring(j, j + 3));
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        postings.put(s.substring(j, j + 3), list);
+                    }
+                    // Ascending ids; skip a repeat of the same trigram within one name.
+                    if (list.isEmpty() || list.get(list.size() - 1) != i) list.add(i);
+                }
+            }
+            trigrams = new HashMap<>(postings.size() * 2);
+            for (Map.Entry<String, ArrayList<Integer>> e : postings.entrySet()) {
+                ArrayList<Integer> l = e.getValue();
+                int[] ids = new int[l.size()];
+                for (int k = 0; k < ids.length; k++) ids[k] = l.get(k);
+                trigrams.put(e.getKey(), ids);
+            }
+        }
+
+        boolean isFor(List<String> models) {
+            return source == models || source.equals(models);
+        }
+
+        List<String> search(String query) {
+            String q = query != null ? query.trim().toLowerCase(Locale.ROOT) : "";
+            if (q.isEmpty()) return new ArrayList<>(Arrays.asList(names));
+            String[] terms = q.split("\\s+");
+
+            // Candidates: the shortest posting list among the terms' trigrams, or everything if
+            // no term is long enough to have one. Every candidate is verified below.
+            int[] candidates = null;
+            for (String t : terms) {
+                for (int j = 0; j + 3 <= t.length(); j++) {
+                    int[] ids = trigrams.get(t.substring(j, j + 3));
+                    if (ids == null) return new ArrayList<>();
+                    if (candidates == null || ids.length < candidates.length) candidates = ids;
+                }
+            }
+
+            int n = candidates != null ? candidates.length : names.length;
+            int[] ranked = new int[n];
+            int count = 0;
+            for (int k = 0; k < n; k++) {
+                int i = candidates != null ? candidates[k] : k;
+                int rank = rank(lower[i], terms);
+                if (rank >= 0) ranked[count++] = (rank << 24) | i;
+            }
+            Arrays.sort(ranked, 0, count);
+            ArrayList<String> out = new ArrayList<>(count);
+            for (int k = 0; k < count; k++) out.add(names[ranked[k] & 0xFFFFFF]);
+            return out;
+        }
+
+        /** -1 if some term is missing, otherwise 0 (exact) .. 3 (substring) for the first term. */
+        private static int rank(String name, String[] terms) {
+            for (String t : terms) {
+                if (!name.contains(t)) return -1;
+            }
+            String first = terms[0];
+            if (name.equals(first)) return 0;
+            if (name.startsWith(first)) return 1;
+            int at = name.indexOf(first);
+            while (at > 0) {
+                char c = name.charAt(at - 1);
+                if (c == '/' || c == '-' || c == '_' || c == '.' || c == ':' || c == ' ') return 2;
+                at = name.indexOf(first, at + 1);
+            }
+            return 3;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package tn.eluea.kgpt.llm;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.SPManager;
+
+/**
+ * Daily refresh of every provider model list the user has already fetched.
+ *
+ * Goes through {@link ModelCatalog#fetch}, so an unchanged list is a 304 and
+ * {@code SPManager.setCachedModels} writes nothing. Providers without a cached list, base URL
+ * or API key are left alone; the picker keeps working from the cache if a refresh fails.
+ */
+public class ModelCatalogWorker extends Worker {
+    private static final String TAG = "KGPT_ModelCatalog";
+    private static final String WORK_NAME = "kgpt_model_catalog_refresh";
+    private static final long INTERVAL_HOURS = 24;
+
+    public ModelCatalogWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (!SPManager.isReady()) return Result.success();
+        SPManager sp = SPManager.getInstance();
+
+        int refreshed = 0;
+        int failed = 0;
+        for (LanguageModel provider : LanguageModel.values()) {
+            if (isStopped()) break;
+            try {
+                if (sp.getCachedModels(provider).isEmpty()) continue;
+                String baseUrl = sp.getCachedModelsBaseUrl(provider);
+                String apiKey = sp.getApiKey(provider);
+                if (TextUtils.isEmpty(baseUrl) || TextUtils.isEmpty(apiKey)) continue;
+
+                List<String> models = ModelCatalog.getInstance().fetch(provider, baseUrl, apiKey);
+                if (models.isEmpty()) continue;
+                sp.setCachedModels(provider, baseUrl, models);
+                refreshed++;
+            } catch (Exception e) {
+                failed++;
+                Log.d(TAG, "Refresh failed for " + provider.name() + ": " + e.getMessage());
+            }
+        }
+        Log.i(TAG, "Model lists refreshed: " + refreshed + ", failed: " + failed);
+        return Result.success();
+    }
+
+    /** Schedule the daily refresh. Keeps an existing schedule. */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+
+        PeriodicWorkRequest workRequest = new PeriodicWorkRequest.Builder(
+                ModelCatalogWorker.class,
+                INTERVAL_HOURS,
+                TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .setInitialDelay(1, TimeUnit.HOURS)
+                .build();
+
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP,
+                workRequest);
+    }
+}
@@ -0,0 +1,349 @@
+package tn.eluea.kgpt.llm;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import tn.eluea.kgpt.SPManager;
+
+/**
+ * Rolling health model per endpoint (provider + sub-model + base URL).
+ *
+ * Keeps an EWMA of connect time, time-to-first-token and output rate, an EWMA error rate and a
+ * circuit breaker. {@link GenerativeAIController} uses it to order its attempts: endpoints whose
+ * circuit is open go last and are skipped while a healthy one is left, and an endpoint moves
+ * ahead of another when its tracked latency and error rate are clearly better.
+ *
+ * Persisted (debounced) through SPManager so the state survives the IME process being killed.
+ */
+public class ProviderHealthTracker {
+    private static final String TAG = "KGPT-Health";
+
+    private static final double ALPHA = 0.3;
+    private static final int MAX_ENDPOINTS = 24;
+
+    // Circuit breaker
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+    private static final int FAILURES_TO_OPEN = 3;
+    private static final long BASE_COOLDOWN_MS = 30_000L;
+    private static final long MAX_COOLDOWN_MS = 10 * 60_000L;
+
+    private static final long SAVE_DELAY_MS = 5_000L;
+
+    // Ordering: only endpoints with this many samples are compared at all.
+    private static final int MIN_SAMPLES_TO_ORDER = 3;
+    // What a failed attempt costs before the next one starts (timeouts, error round trip).
+    private static final double FAILURE_COST_MS = 8_000;
+    // An endpoint only overtakes one whose score is this much worse, so the order does not flap.
+    private static final double REORDER_FACTOR = 1.5;
+    private static final double REORDER_MIN_GAP_MS = 250;
+
+    private static ProviderHealthTracker sInstance;
+
+    /** Health of one endpoint. Guarded by the tracker lock. */
+    public static final class Health {
+        public double connectMs = -1;
+        public double ttftMs = -1;
+        public double tokensPerSec = -1;
+        public double errorRate = 0;
+        public int samples = 0;
+        public int consecutiveFailures = 0;
+        public int state = STATE_CLOSED;
+        /** Wall-clock time the open circuit may be probed again. */
+        public long openUntil = 0;
+        long cooldownMs = BASE_COOLDOWN_MS;
+
+        JSONObject toJson() throws org.json.JSONException {
+            JSONObject o = new JSONObject();
+            o.put("c", connectMs);
+            o.put("t", ttftMs);
+            o.put("s", tokensPerSec);
+            o.put("e", errorRate);
+            o.put("n", samples);
+            o.put("f", consecutiveFailures);
+            o.put("st", state);
+            o.put("u", openUntil);
+            o.put("cd", cooldownMs);
+            return o;
+        }
+
+        static Health fromJson(JSONObject o) {
+            Health h = new Health();
+            h.connectMs = o.optDouble("c", -1);
+            h.ttftMs = o.optDouble("t", -1);
+            h.tokensPerSec = o.optDouble("s", -1);
+            h.errorRate = o.optDouble("e", 0);
+            h.samples = o.optInt("n", 0);
+            h.consecutiveFailures = o.optInt("f", 0);
+            h.state = o.optInt("st", STATE_CLOSED);
+            h.openUntil = o.optLong("u", 0);
+            h.cooldownMs = o.optLong("cd", BASE_COOLDOWN_MS);
+            // A probe that was in flight when the process died never reported back.
+            if (h.state == STATE_HALF_OPEN) h.state = STATE_OPEN;
+            return h;
+        }
+
+        Health copy() {
+            Health h = new Health();
+            h.connectMs = connectMs;
+            h.ttftMs = ttftMs;
+            h.tokensPerSec = tokensPerSec;
+            h.errorRate = errorRate;
+            h.samples = samples;
+            h.consecutiveFailures = consecutiveFailures;
+            h.state = state;
+            h.openUntil = openUntil;
+            h.cooldownMs = cooldownMs;
+            return h;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Health> endpoints = new LinkedHashMap<String, Health>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Health> eldest) {
+            return size() > MAX_ENDPOINTS;
+        }
+    };
+    private boolean loaded = false;
+    private final DebouncedSave saver = new DebouncedSave(SAVE_DELAY_MS, this::save);
+
+    public static ProviderHealthTracker getInstance() {
+        if (sInstance == null) {
+            synchronized (ProviderHealthTracker.class) {
+                if (sInstance == null) sInstance = new ProviderHealthTracker();
+            }
+        }
+        return sInstance;
+    }
+
+    // =============================
+    // Recording
+    // =============================
+
+    public void recordConnect(String key, long ms) {
+        if (key == null || ms < 0) return;
+        synchronized (lock) {
+            Health h = getOrCreateLocked(key);
+            h.connectMs = ewma(h.connectMs, ms);
+        }
+    }
+
+    public void recordFirstToken(String key, long ms) {
+        if (key == null || ms < 0) return;
+        synchronized (lock) {
+            Health h = getOrCreateLocked(key);
+            h.ttftMs = ewma(h.ttftMs, ms);
+        }
+    }
+
+    /**
+     * A request finished normally.
+     *
+     * @param outputChars characters streamed after the first token
+     * @param streamMs    time from first token to completion
+     */
+    public void recordSuccess(String key, int outputChars, long streamMs) {
+        if (key == null) return;
+        synchronized (lock) {
+            Health h = getOrCreateLocked(key);
+            if (outputChars > 0 && streamMs > 0) {
+                // ~4 chars per token is close enough to compare endpoints with each other.
+                double tps = (outputChars / 4.0) * 1000.0 / streamMs;
+                h.tokensPerSec = ewma(h.tokensPerSec, tps);
+            }
+            h.errorRate = h.errorRate * (1 - ALPHA);
+            h.samples++;
+            h.consecutiveFailures = 0;
+            h.state = STATE_CLOSED;
+            h.openUntil = 0;
+            h.cooldownMs = BASE_COOLDOWN_MS;
+        }
+        scheduleSave();
+    }
+
+    public void recordFailure(String key) {
+        if (key == null) return;
+        boolean opened = false;
+        synchronized (lock) {
+            Health h = getOrCreateLocked(key);
+            h.errorRate = h.errorRate * (1 - ALPHA) + ALPHA;
+            h.samples++;
+            h.consecutiveFailures++;
+            if (h.state == STATE_HALF_OPEN) {
+                // Probe failed: back off longer.
+                h.cooldownMs = Math.min(MAX_COOLDOWN_MS, h.cooldownMs * 2);
+                h.state = STATE_OPEN;
+                h.openUntil = System.currentTimeMillis() + h.cooldownMs;
+                opened = true;
+            } else if (h.state == STATE_CLOSED && h.consecutiveFailures >= FAILURES_TO_OPEN) {
+                h.state = STATE_OPEN;
+                h.openUntil = System.currentTimeMillis() + h.cooldownMs;
+                opened = true;
+            }
+        }
+        if (opened) Log.d(TAG, "Circuit open for " + key);
+        scheduleSave();
+    }
+
+    // =============================
+    // Queries
+    // =============================
+
+    /** True while the circuit is open and its cooldown has not elapsed. Does not change state. */
+    public boolean isOpen(String key) {
+        if (key == null) return false;
+        synchronized (lock) {
+            Health h = getLocked(key);
+            return h != null && h.state == STATE_OPEN && System.currentTimeMillis() < h.openUntil;
+        }
+    }
+
+    /**
+     * Called right before a request is sent. An open circuit whose cooldown elapsed becomes
+     * half-open and lets this request through as the probe.
+     */
+    public void onAttempt(String key) {
+        if (key == null) return;
+        synchronized (lock) {
+            Health h = getLocked(key);
+            if (h != null && h.state == STATE_OPEN && System.currentTimeMillis() >= h.openUntil) {
+                h.state = STATE_HALF_OPEN;
+            }
+        }
+    }
+
+    /** Snapshot of an endpoint's health, or null if never seen. */
+    public Health get(String key) {
+        if (key == null) return null;
+        synchronized (lock) {
+            Health h = getLocked(key);
+            return h == null ? null : h.copy();
+        }
+    }
+
+    /**
+     * Stable reorder by tracked health.
+     * - Endpoints with an open circuit go behind all others, keeping their relative order.
+     * - Among the rest, an endpoint moves ahead of the ones before it whose expected cost
+     *   (EWMA time-to-first-token plus error rate times {@link #FAILURE_COST_MS}) is clearly
+     *   worse. Endpoints without enough samples keep their configured slot and are not
+     *   overtaken, so a newly configured primary is still tried first.
+     *
+     * @return {@code items} itself when the order does not change.
+     */
+    public <T> List<T> orderByHealth(List<T> items, java.util.function.Function<T, String> keyOf) {
+        ArrayList<T> ordered = new ArrayList<>(items.size());
+        ArrayList<Double> scores = new ArrayList<>(items.size());
+        ArrayList<T> open = new ArrayList<>();
+        for (T item : items) {
+            String key = null;
+            try { key = keyOf.apply(item); } catch (Throwable ignored) {}
+            if (isOpen(key)) {
+                open.add(item);
+                continue;
+            }
+            Double score = score(key);
+            int pos = ordered.size();
+            while (pos > 0 && clearlyWorse(scores.get(pos - 1), score)) pos--;
+            ordered.add(pos, item);
+            scores.add(pos, score);
+        }
+        if (ordered.isEmpty()) return items;
+        ordered.addAll(open);
+        return ordered.equals(items) ? items : ordered;
+    }
+
+    /** Expected cost of one attempt in ms, or null without enough samples. */
+    private Double score(String key) {
+        if (key == null) return null;
+        synchronized (lock) {
+            Health h = getLocked(key);
+            if (h == null || h.samples < MIN_SAMPLES_TO_ORDER) return null;
+            double latency = h.ttftMs >= 0 ? h.ttftMs : Math.max(0, h.connectMs);
+            return latency + h.errorRate * FAILURE_COST_MS;
+        }
+    }
+
+    private static boolean clearlyWorse(Double a, Double b) {
+        return a != null && b != null && a > b * REORDER_FACTOR + REORDER_MIN_GAP_MS;
+    }
+
+    public String describe(String key) {
+        Health h = get(key);
+        if (h == null) return key + ": no data";
+        return String.format(Locale.US, "%s: connect=%.0fms ttft=%.0fms tps=%.1f err=%.2f state=%d n=%d",
+                key, h.connectMs, h.ttftMs, h.tokensPerSec, h.errorRate, h.state, h.samples);
+    }
+
+    // =============================
+    // Internals / persistence
+    // =============================
+
+    private static double ewma(double prev, double v) {
+        return prev < 0 ? v : prev + ALPHA * (v - prev);
+    }
+
+    private Health getLocked(String key) {
+        ensureLoadedLocked();
+        return endpoints.get(key);
+    }
+
+    private Health getOrCreateLocked(String key) {
+        Health h = getLocked(key);
+        if (h == null) {
+            h = new Health();
+            endpoints.put(key, h);
+        }
+        return h;
+    }
+
+    private void ensureLoadedLocked() {
+        if (loaded) return;
+        if (!SPManager.isReady()) return;
+        loaded = true;
+        try {
+            String raw = SPManager.getInstance().getProviderHealthJson();
+            if (raw == null || raw.trim().isEmpty()) return;
+            JSONObject root = new JSONObject(raw);
+            Iterator<String> it = root.keys();
+            while (it.hasNext()) {
+                String k = it.next();
+                JSONObject o = root.optJSONObject(k);
+                if (o != null && !endpoints.containsKey(k)) endpoints.put(k, Health.fromJson(o));
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to load provider health: " + t.getMessage());
+        }
+    }
+
+    private void scheduleSave() {
+        saver.request();
+    }
+
+    private void save() {
+        String json;
+        synchronized (lock) {
+            if (!SPManager.isReady()) return;
+            try {
+                JSONObject root = new JSONObject();
+                for (Map.Entry<String, Health> e : endpoints.entrySet()) {
+                    root.put(e.getKey(), e.getValue().toJson());
+                }
+                json = root.toString();
+            } catch (Throwable t) {
+                return;
+            }
+        }
+        SPManager.getInstance().setProviderHealthJson(json);
+    }
+}
@@ -0,0 +1,363 @@
+package tn.eluea.kgpt.llm;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.llm.internet.MeteredResponseStream;
+
+/**
+ * Per-request stage timings, from the trigger being parsed to the first text reaching the editor.
+ *
+ * Every stage is stamped once with a monotonic clock. The stages before a request id exists
+ * (parse, dispatch, hand-off) are collected on a pending trace on the main thread;
+ * {@link GenerativeAIController} adopts it when {@code mRequestSeq} hands out the id. Network
+ * stages are stamped from the lane thread running the request, which publishes its trace with
+ * {@link #setCurrent}.
+ *
+ * The last {@link #RING_SIZE} traces are kept in memory; finished ones are saved (debounced)
+ * through SPManager so {@code LogExporter} can include them from the app process. While a
+ * Perfetto / systrace capture is recording, each stage also shows up as an async section.
+ */
+public final class RequestTracer {
+    private static final String TAG = "KGPT-Trace";
+
+    public static final int RING_SIZE = 32;
+    /** A pending trace older than this belongs to a trigger that never became a request. */
+    private static final long PENDING_MAX_AGE_NS = 5_000_000_000L;
+    private static final long SAVE_DELAY_MS = 5_000L;
+
+    public enum Stage {
+        /** Text update received, parse starts. */
+        TRIGGER("trigger"),
+        PARSED("parsed"),
+        /** Trigger text deleted, BrainDispatcher routes the result. */
+        DISPATCH("dispatch"),
+        /** AiResponseManager queues the request on its lane. */
+        HANDOFF("handoff"),
+        /** The lane ran it and the controller assigned the request id. */
+        SUBMIT("submit"),
+        /** First attempt started on the lane (after the controller's own executor hop). */
+        ATTEMPT("attempt"),
+        /** Socket (and TLS) connected, request body about to be written. */
+        CONNECTED("connected"),
+        /** Status line received. */
+        FIRST_BYTE("first byte"),
+        /** First non-empty text emitted by the response parser. */
+        FIRST_DELTA("first delta"),
+        /** First text committed to the editor by the streaming renderer. */
+        FIRST_COMMIT("first commit"),
+        END("end");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    /** Timings of one request. Stamps are first-wins, so retries keep the first attempt's stages. */
+    public static final class Trace implements MeteredResponseStream.TransferListener {
+        final long cookie;
+        final long wallStartMs;
+        final long[] atNs = new long[Stage.values().length];
+        int requestId = 0;
+        String outcome = null;
+        // Response bytes read by the parser, and whether the stream was cut by a cancel.
+        long bytesIn = -1;
+        boolean aborted = false;
+        // Bytes on the wire, after compression: equal to the above for uncompressed bodies.
+        long wireIn = -1;
+        long bytesOut = -1;
+        long wireOut = -1;
+        // Open async systrace section, if any.
+        private String sectionName = null;
+
+        Trace(long cookie) {
+            this.cookie = cookie;
+            this.wallStartMs = System.currentTimeMillis();
+        }
+
+        public void stamp(Stage stage) {
+            stampAt(stage, SystemClock.elapsedRealtimeNanos());
+        }
+
+        synchronized void stampAt(Stage stage, long ns) {
+            if (outcome != null || atNs[stage.ordinal()] != 0) return;
+            atNs[stage.ordinal()] = ns;
+            nextSection(stage == Stage.END ? null : "KGPT#" + requestId + " " + stage.label);
+        }
+
+        /**
+         * Response body transfer, recorded when the stream is closed or aborted. Accepted after
+         * {@link #end}: a cancel ends the trace before the transport has torn down.
+         */
+        @Override
+        public void recordTransfer(long bytes, boolean aborted) {
+            recordTransfer(bytes, bytes, aborted);
+        }
+
+        @Override
+        public synchronized void recordTransfer(long bytes, long wireBytes, boolean aborted) {
+            if (bytesIn >= 0) return;
+            bytesIn = bytes;
+            wireIn = wireBytes;
+            this.aborted = aborted;
+        }
+
+        /** Request body as serialized, and as sent (gzipped or not). First attempt wins. */
+        public synchronized void recordRequestBody(long bytes, long wireBytes) {
+            if (bytesOut >= 0) return;
+            bytesOut = bytes;
+            wireOut = wireBytes;
+        }
+
+        /** Close the trace. {@code outcome} is e.g. "ok", "error: ...", "cancelled". */
+        public void end(String outcome) {
+            synchronized (this) {
+                if (this.outcome != null) return;
+                atNs[Stage.END.ordinal()] = SystemClock.elapsedRealtimeNanos();
+                this.outcome = outcome == null ? "ok" : outcome;
+                nextSection(null);
+            }
+            RequestTracer.getInstance().scheduleSave();
+        }
+
+        private void nextSection(String name) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+            try {
+                if (sectionName != null) {
+                    android.os.Trace.endAsyncSection(sectionName, (int) cookie);
+                    sectionName = null;
+                }
+                if (name != null && android.os.Trace.isEnabled()) {
+                    android.os.Trace.beginAsyncSection(name, (int) cookie);
+                    sectionName = name;
+                }
+            } catch (Throwable ignored) {
+            }
+        }
+
+        synchronized JSONObject toJson() throws org.json.JSONException {
+            long origin = originNs();
+            JSONArray t = new JSONArray();
+            for (long ns : atNs) t.put(ns == 0 ? -1 : (ns - origin) / 1000);
+            JSONObject o = new JSONObject()
+                    .put("id", requestId)
+                    .put("w", wallStartMs)
+                    .put("o", outcome == null ? "running" : outcome)
+                    .put("t", t);
+            if (bytesIn >= 0) o.put("in", bytesIn).put("win", wireIn).put("ab", aborted);
+            if (bytesOut >= 0) o.put("out", bytesOut).put("wout", wireOut);
+            return o;
+        }
+
+        private long originNs() {
+            for (long ns : atNs) {
+                if (ns != 0) return ns;
+            }
+            return 0;
+        }
+    }
+
+    private static volatile RequestTracer sInstance;
+
+    private static final ThreadLocal<Trace> sCurrent = new ThreadLocal<>();
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Trace> ring = new ArrayDeque<>(RING_SIZE);
+    private Trace pending = null;
+    private long nextCookie = 1;
+    private final DebouncedSave saver = new DebouncedSave(SAVE_DELAY_MS, this::save);
+
+    public static RequestTracer getInstance() {
+        if (sInstance == null) {
+            synchronized (RequestTracer.class) {
+                if (sInstance == null) sInstance = new RequestTracer();
+            }
+        }
+        return sInstance;
+    }
+
+    // =============================
+    // Stamping
+    // =============================
+
+    /** A parse produced a result that is about to be dispatched. Replaces any older pending trace. */
+    public void beginPending(long triggerNs, long parsedNs) {
+        Trace t;
+        synchronized (lock) {
+            t = new Trace(nextCookie++);
+            pending = t;
+        }
+        t.stampAt(Stage.TRIGGER, triggerNs);
+        t.stampAt(Stage.PARSED, parsedNs);
+    }
+
+    public void stampPending(Stage stage) {
+        Trace t;
+        synchronized (lock) {
+            t = pending;
+        }
+        if (t != null) t.stamp(stage);
+    }
+
+    /**
+     * The controller assigned {@code requestId}: adopt the pending trace if it is recent, otherwise
+     * start a new one (requests that did not come through the parser, e.g. text actions).
+     */
+    public Trace start(int requestId) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        Trace t;
+        synchronized (lock) {
+            t = pending;
+            pending = null;
+            if (t == null || now - t.originNs() > PENDING_MAX_AGE_NS) t = new Trace(nextCookie++);
+            t.requestId = requestId;
+            if (ring.size() >= RING_SIZE) ring.pollFirst();
+            ring.addLast(t);
+        }
+        t.stampAt(Stage.SUBMIT, now);
+        return t;
+    }
+
+    /** Publish the trace of the request this thread is sending, for the transport to stamp. */
+    public static void setCurrent(Trace trace) {
+        if (trace == null) sCurrent.remove();
+        else sCurrent.set(trace);
+    }
+
+    public static void clearCurrent() {
+        sCurrent.remove();
+    }
+
+    /** The trace published by {@link #setCurrent} on this thread, or null. */
+    public static Trace current() {
+        return sCurrent.get();
+    }
+
+    public static void stampCurrent(Stage stage) {
+        Trace t = sCurrent.get();
+        if (t != null) t.stamp(stage);
+    }
+
+    // =============================
+    // Export
+    // =============================
+
+    public List<Trace> getRecent() {
+        synchronized (lock) {
+            return new ArrayList<>(ring);
+        }
+    }
+
+    /** Recent traces as text, newest last. */
+    public String dump() {
+        return format(toJson());
+    }
+
+    private String toJson() {
+        JSONArray arr = new JSONArray();
+        for (Trace t : getRecent()) {
+            try {
+                arr.put(t.toJson());
+            } catch (Throwable ignored) {
+            }
+        }
+        return arr.toString();
+    }
+
+    /**
+     * Human-readable table of saved traces: every stage as milliseconds since the trigger, with
+     * the step from the previous stage in brackets.
+     */
+    public static String format(String json) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== KGPT request traces (ms since first stage, +step) ===\n");
+        try {
+            JSONArray arr = new JSONArray(json == null || json.trim().isEmpty() ? "[]" : json);
+            if (arr.length() == 0) sb.append("(none)\n");
+            SimpleDateFormat sdf = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+            Stage[] stages = Stage.values();
+            long abortedBytes = 0;
+            int abortedCount = 0;
+            long bodyBytes = 0;
+            long wireBytes = 0;
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o == null) continue;
+                sb.append('#').append(o.optInt("id")).append(' ')
+                        .append(sdf.format(new Date(o.optLong("w")))).append(' ')
+                        .append(o.optString("o")).append('\n');
+                if (o.has("out")) {
+                    appendBytes(sb, "bytes out", o.optLong("out"), o.optLong("wout", o.optLong("out")), "");
+                    bodyBytes += o.optLong("out");
+                    wireBytes += o.optLong("wout", o.optLong("out"));
+                }
+                if (o.has("in")) {
+                    boolean ab = o.optBoolean("ab");
+                    appendBytes(sb, "bytes in", o.optLong("in"), o.optLong("win", o.optLong("in")),
+                            ab ? "  (aborted)" : "");
+                    bodyBytes += o.optLong("in");
+                    wireBytes += o.optLong("win", o.optLong("in"));
+                    if (ab) {
+                        abortedCount++;
+                        abortedBytes += o.optLong("in");
+                    }
+                }
+                JSONArray t = o.optJSONArray("t");
+                if (t == null) continue;
+                long prev = -1;
+                for (int s = 0; s < stages.length && s < t.length(); s++) {
+                    long us = t.optLong(s, -1);
+                    if (us < 0) continue;
+                    sb.append(String.format(Locale.US, "    %-13s %8.1f", stages[s].label, us / 1000.0));
+                    if (prev >= 0) sb.append(String.format(Locale.US, "  (+%.1f)", (us - prev) / 1000.0));
+                    sb.append('\n');
+                    prev = us;
+                }
+            }
+            if (bodyBytes > 0) {
+                sb.append(String.format(Locale.US, "Transferred: %d bytes on the wire for %d bytes of body (%.0f%%)\n",
+                        wireBytes, bodyBytes, 100.0 * wireBytes / bodyBytes));
+            }
+            if (abortedCount > 0) {
+                sb.append(String.format(Locale.US, "Aborted: %d request(s), %d bytes received before cancel\n",
+                        abortedCount, abortedBytes));
+            }
+        } catch (Throwable t) {
+            sb.append("Unreadable traces: ").append(t.getMessage()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendBytes(StringBuilder sb, String label, long body, long wire, String suffix) {
+        sb.append(String.format(Locale.US, "    %-13s %8d", label, body));
+        if (wire != body) sb.append(String.format(Locale.US, "  (%d on the wire)", wire));
+        sb.append(suffix).append('\n');
+    }
+
+    private void scheduleSave() {
+        saver.request();
+    }
+
+    private void save() {
+        if (!SPManager.isReady()) return;
+        try {
+            SPManager.getInstance().setRequestTracesJson(toJson());
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to save traces: " + t.getMessage());
+        }
+    }
+}
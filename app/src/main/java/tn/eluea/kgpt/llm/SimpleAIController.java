@@ -29,6 +29,7 @@ import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.listener.GenerativeAIListener;
 import tn.eluea.kgpt.roles.RoleManager;
 import tn.eluea.kgpt.llm.client.LanguageModelClient;
+import tn.eluea.kgpt.llm.client.RequestSpec;
 import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
 import tn.eluea.kgpt.llm.publisher.SimpleStringPublisher;
 
@@ -43,13 +44,10 @@ public class SimpleAIController {
     /**
      * Run all blocking network calls off the main thread.
      * SimpleInternetProvider uses blocking HttpURLConnection.
+     * This controller serves text actions, so it uses that lane of the shared LlmExecutor.
      */
-    private static final java.util.concurrent.ExecutorService REQUEST_EXECUTOR =
-            java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
-                Thread t = new Thread(r, "KGPT-LLM-App");
-                t.setDaemon(true);
-                return t;
-            });
+    private static final java.util.concurrent.Executor REQUEST_EXECUTOR =
+            LlmExecutor.getInstance().lane(LlmExecutor.Lane.TEXT_ACTION);
     
     private LanguageModelClient mModelClient = null;
     private final SPManager mSPManager;
@@ -171,7 +169,7 @@ public class SimpleAIController {
         // Scheme-2 safety: if we have a cached safe max tokens for this model, clamp to it.
         try {
             if (mModelClient != null && SPManager.isReady()) {
-                Integer cap = SPManager.getInstance().getCachedSafeMaxTokens(mModelClient.getLanguageModel(), mModelClient.getSubModel());
+                Integer cap = ModelCapabilities.getSafeMaxTokens(mModelClient.getLanguageModel(), mModelClient.getSubModel());
                 if (cap != null && cap > 0 && maxTokensOverride > cap) {
                     maxTokensOverride = cap;
                 }
@@ -191,36 +189,28 @@ public class SimpleAIController {
         final String systemMessageFinal = systemMessage;
         final int reasoningThinkingModeFinal = reasoningThinkingMode;
 
-        String prevMaxTokens = null;
-        try { if (mModelClient != null) prevMaxTokens = mModelClient.getField(LanguageModelField.MaxTokens); } catch (Throwable ignored) {}
-        final String prevMaxTokensFinal = prevMaxTokens;
-        String prevTemperature = null;
-        try { if (mModelClient != null) prevTemperature = mModelClient.getField(LanguageModelField.Temperature); } catch (Throwable ignored) {}
-        final String prevTemperatureFinal = prevTemperature;
         // Track the effective max tokens used for scheme-2 retry.
         final int[] maxTokensEffective = new int[]{maxTokensOverride};
 
-        try {
-            if (mModelClient != null && maxTokensEffective[0] > 0) {
-                mModelClient.setField(LanguageModelField.MaxTokens, String.valueOf(maxTokensEffective[0]));
-            }
-        } catch (Throwable ignored) {}
-
+        // Temperature override, sent with each request (the shared client is not modified).
+        String temperature = null;
         try {
             if (mModelClient != null && tn.eluea.kgpt.llm.ModelCapabilities.supportsTemperature(mModelClient.getLanguageModel(), mModelClient.getSubModel())) {
                 float v = normalThinking;
                 if (v < 0.0f) v = 0.0f;
                 if (v > 1.8f) v = 1.8f;
                 v = Math.round(v * 10.0f) / 10.0f;
-                mModelClient.setField(LanguageModelField.Temperature, String.format(Locale.US, "%.1f", v));
+                temperature = String.format(Locale.US, "%.1f", v);
             }
         } catch (Throwable ignored) {}
+        final String temperatureFinal = temperature;
 
         Publisher<String> publisher;
 
         final StringBuilder assistantBuffer = new StringBuilder();
         final boolean[] retriedSamplingParams = new boolean[]{false};
         final boolean[] retriedMaxTokens = new boolean[]{false};
+        final boolean[] retriedStreamUsage = new boolean[]{false};
 
         final Runnable[] startRequest = new Runnable[1];
         startRequest[0] = () -> {
@@ -234,27 +224,20 @@ public class SimpleAIController {
                         effectiveSystemMessage = tn.eluea.kgpt.ui.lab.ReasoningModelThinkingOptions.applyToSystemMessage(systemMessageFinal, reasoningThinkingModeFinal);
                     }
                 } catch (Throwable ignored) {}
-                pub = mModelClient.submitPrompt(promptFinal, effectiveSystemMessage);
+                final String submitSystemMessage = effectiveSystemMessage;
+                final RequestSpec spec = new RequestSpec.Builder()
+                        .set(LanguageModelField.MaxTokens, maxTokensEffective[0] > 0 ? String.valueOf(maxTokensEffective[0]) : null)
+                        .set(LanguageModelField.Temperature, temperatureFinal)
+                        .build();
+                // An identical request still in flight (double trigger) is joined instead of resent.
+                pub = InFlightRequests.getInstance().submit(mModelClient, spec, promptFinal, submitSystemMessage,
+                        () -> mModelClient.submitPrompt(promptFinal, submitSystemMessage, spec)).publisher;
             }
 
             pub.subscribe(new Subscriber<String>() {
             boolean completed = false;
             boolean hasError = false;
 
-            private void restoreOverrides() {
-                try {
-                    if (mModelClient != null && prevMaxTokensFinal != null) {
-                        mModelClient.setField(LanguageModelField.MaxTokens, prevMaxTokensFinal);
-                    }
-                } catch (Throwable ignored) {}
-
-                try {
-                    if (mModelClient != null && prevTemperatureFinal != null) {
-                        mModelClient.setField(LanguageModelField.Temperature, prevTemperatureFinal);
-                    }
-                } catch (Throwable ignored) {}
-            }
-
 @Override
             public void onSubscribe(Subscription s) {
                 s.request(Long.MAX_VALUE);
@@ -309,6 +292,28 @@ public class SimpleAIController {
                     }
                 }
 
+                // Same for stream_options (final usage chunk): usage falls back to a local estimate.
+                boolean canRetryStreamUsage = !retriedStreamUsage[0]
+                        && assistantBuffer.length() == 0
+                        && tn.eluea.kgpt.llm.ModelCapabilities.isUnsupportedParamError(t, "stream_options");
+
+                if (canRetryStreamUsage) {
+                    retriedStreamUsage[0] = true;
+                    try {
+                        if (mModelClient != null && SPManager.isReady()) {
+                            SPManager.getInstance().setCachedSupportsStreamUsage(mModelClient.getLanguageModel(), mModelClient.getSubModel(), false);
+                        }
+                    } catch (Throwable ignored) {}
+
+                    Log.w(TAG, "stream_options rejected by model; retrying without it", t);
+                    try {
+                        REQUEST_EXECUTOR.execute(startRequest[0]);
+                        return;
+                    } catch (Throwable ignored) {
+                        // Fall through to normal error handling.
+                    }
+                }
+
                 // Scheme-2 safety: if the provider rejects the requested output token length,
                 // retry once with a smaller safe value and cache it for this sub-model.
                 boolean canRetryMaxTok = !retriedMaxTokens[0]
@@ -322,29 +327,10 @@ public class SimpleAIController {
                     retriedMaxTokens[0] = true;
 
                     int current = maxTokensEffective[0];
-                    int safe = current;
-                    Integer suggested = tn.eluea.kgpt.llm.ModelCapabilities.extractSuggestedMaxTokens(t);
-                    if (suggested != null && suggested > 0) {
-                        // Be conservative: if this is a context-window number, using it directly as output
-                        // is still safer than requesting something huge.
-                        safe = Math.min(current, suggested);
-                    }
-                    // If we couldn't infer a number (or failed to reduce), fall back to a sane conservative output limit.
-                    if (safe <= 0 || safe >= current) {
-                        if (current > 8192) safe = 8192;
-                        else if (current > 4096) safe = 4096;
-                        else if (current > 2048) safe = 2048;
-                        else if (current > 1024) safe = 1024;
-                        else safe = Math.max(256, current / 2);
-                    }
+                    int safe = ModelCapabilities.safeMaxTokensAfter(t, current);
                     // Ensure we actually reduce.
                     if (safe < current) {
                         maxTokensEffective[0] = safe;
-                        try {
-                            if (mModelClient != null) {
-                                mModelClient.setField(LanguageModelField.MaxTokens, String.valueOf(safe));
-                            }
-                        } catch (Throwable ignored) {}
                         try {
                             if (mModelClient != null && SPManager.isReady()) {
                                 SPManager.getInstance().setCachedSafeMaxTokens(mModelClient.getLanguageModel(), mModelClient.getSubModel(), safe);
@@ -364,8 +350,6 @@ public class SimpleAIController {
                 hasError = true;
                 completed = true;
 
-                restoreOverrides();
-
                 Log.e(TAG, "AI request error", t);
 
                 mMainHandler.post(() -> {
@@ -382,8 +366,6 @@ public class SimpleAIController {
                     return;
                 }
                 completed = true;
-                restoreOverrides();
-
                 Log.d(TAG, "AI request completed");
 
                 // Save turn into memory
@@ -409,7 +391,15 @@ public class SimpleAIController {
         };
 
         // Start first attempt
-        REQUEST_EXECUTOR.execute(startRequest[0]);
+        try {
+            REQUEST_EXECUTOR.execute(startRequest[0]);
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            mMainHandler.post(() -> {
+                for (GenerativeAIListener l : mListeners) {
+                    l.onAIError(e);
+                }
+            });
+        }
     }
 
 
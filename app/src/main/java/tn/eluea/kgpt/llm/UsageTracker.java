@@ -0,0 +1,396 @@
+package tn.eluea.kgpt.llm;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import tn.eluea.kgpt.SPManager;
+
+/**
+ * Token usage per provider + sub-model, as a small daily time series.
+ *
+ * Each finished request reports its prompt / completion token counts, as returned by the
+ * provider ({@code usage}, {@code usageMetadata}) or estimated locally when the provider omits
+ * them. Per sub-model we keep {@link #DAYS} daily buckets plus a log2 histogram of completion
+ * sizes, which is what the Lab usage dashboard needs to size the max tokens preset and to spot a
+ * conversation memory that keeps inflating the prompt.
+ *
+ * Persisted (debounced) through SPManager, like {@link ProviderHealthTracker}: requests are
+ * recorded in the IME process and the dashboard reads them from the app process.
+ */
+public class UsageTracker {
+    private static final String TAG = "KGPT-Usage";
+
+    public static final int DAYS = 14;
+    private static final int MAX_SERIES = 24;
+    /** Bin i holds completions below {@code 64 << i} tokens; the last bin is open-ended. */
+    private static final int HIST_BINS = 13;
+    /** Halve the histogram past this many samples so it follows recent usage. */
+    private static final int HIST_DECAY_AT = 2000;
+
+    /** Prompt average (today vs the days before) ratio that flags a runaway context. */
+    private static final double RUNAWAY_RATIO = 2.0;
+    private static final int RUNAWAY_MIN_TOKENS = 1000;
+
+    private static final long SAVE_DELAY_MS = 5_000L;
+
+    private static UsageTracker sInstance;
+
+    /** One day of one sub-model. */
+    public static final class Day {
+        /** Local epoch day. */
+        public long day;
+        public int requests;
+        public long promptTokens;
+        public long completionTokens;
+        /** Requests whose counts were estimated locally. */
+        public int estimated;
+        /** Requests cut off by the output limit. */
+        public int truncated;
+        public int maxPromptTokens;
+
+        JSONArray toJson() {
+            return new JSONArray()
+                    .put(day).put(requests).put(promptTokens).put(completionTokens)
+                    .put(estimated).put(truncated).put(maxPromptTokens);
+        }
+
+        static Day fromJson(JSONArray a) {
+            Day d = new Day();
+            d.day = a.optLong(0);
+            d.requests = a.optInt(1);
+            d.promptTokens = a.optLong(2);
+            d.completionTokens = a.optLong(3);
+            d.estimated = a.optInt(4);
+            d.truncated = a.optInt(5);
+            d.maxPromptTokens = a.optInt(6);
+            return d;
+        }
+
+        Day copy() {
+            Day d = new Day();
+            d.day = day;
+            d.requests = requests;
+            d.promptTokens = promptTokens;
+            d.completionTokens = completionTokens;
+            d.estimated = estimated;
+            d.truncated = truncated;
+            d.maxPromptTokens = maxPromptTokens;
+            return d;
+        }
+    }
+
+    private static final class Series {
+        /** Oldest first, at most DAYS entries. */
+        final ArrayList<Day> days = new ArrayList<>();
+        final int[] hist = new int[HIST_BINS];
+    }
+
+    /** Dashboard view of one sub-model over the kept window. */
+    public static final class Summary {
+        public String key;
+        public String provider;
+        public String subModel;
+        public int requests;
+        public long promptTokens;
+        public long completionTokens;
+        public int estimated;
+        public int truncated;
+        public int maxPromptTokens;
+        /** Upper bound of the histogram bin holding the 95th percentile completion, -1 if unknown. */
+        public int p95CompletionTokens = -1;
+        public double avgPromptToday = -1;
+        public double avgPromptBefore = -1;
+        /** Daily buckets, oldest first, with empty days filled in. */
+        public List<Day> days = new ArrayList<>();
+
+        /** Output limit that covers ~95% of the recent replies with some headroom. */
+        public int getSuggestedMaxTokens() {
+            if (p95CompletionTokens <= 0) return -1;
+            int target = p95CompletionTokens;
+            // Replies already hitting the limit: their real length is unknown, aim one bin higher.
+            if (requests > 0 && truncated * 10 >= requests) target *= 2;
+            return target;
+        }
+
+        public boolean isRunawayPrompt() {
+            return avgPromptToday >= RUNAWAY_MIN_TOKENS
+                    && avgPromptBefore > 0
+                    && avgPromptToday >= avgPromptBefore * RUNAWAY_RATIO;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, Series> series = new LinkedHashMap<String, Series>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Series> eldest) {
+            return size() > MAX_SERIES;
+        }
+    };
+    private boolean loaded = false;
+    private final DebouncedSave saver = new DebouncedSave(SAVE_DELAY_MS, this::save);
+
+    public static UsageTracker getInstance() {
+        if (sInstance == null) {
+            synchronized (UsageTracker.class) {
+                if (sInstance == null) sInstance = new UsageTracker();
+            }
+        }
+        return sInstance;
+    }
+
+    public static String keyOf(LanguageModel model, String subModel) {
+        return (model == null ? "" : model.name()) + "|" + (subModel == null ? "" : subModel.trim());
+    }
+
+    /**
+     * Rough token count for text the provider did not count for us: CJK / kana / hangul
+     * characters as one token each, everything else at ~4 characters per token.
+     */
+    public static int estimateTokens(CharSequence text) {
+        if (text == null || text.length() == 0) return 0;
+        int wide = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (isWideChar(text.charAt(i))) wide++;
+            else other++;
+        }
+        return wide + (other + 3) / 4;
+    }
+
+    public static boolean isWideChar(char c) {
+        return (c >= 0x3040 && c <= 0x30FF)      // kana
+                || (c >= 0x3400 && c <= 0x4DBF)  // CJK ext A
+                || (c >= 0x4E00 && c <= 0x9FFF)  // CJK unified
+                || (c >= 0xAC00 && c <= 0xD7AF)  // hangul
+                || (c >= 0xF900 && c <= 0xFAFF)  // CJK compatibility
+                || (c >= 0xFF00 && c <= 0xFFEF); // full-width forms
+    }
+
+    // =============================
+    // Recording
+    // =============================
+
+    /**
+     * A request finished (or was abandoned after output started).
+     *
+     * @param estimated true if the counts are local estimates rather than provider figures
+     * @param truncated true if the reply stopped at the output limit
+     */
+    public void record(String key, int promptTokens, int completionTokens,
+                       boolean estimated, boolean truncated) {
+        if (key == null || promptTokens < 0 || completionTokens < 0) return;
+        long today = today();
+        synchronized (lock) {
+            ensureLoadedLocked();
+            Series s = series.get(key);
+            if (s == null) {
+                s = new Series();
+                series.put(key, s);
+            }
+            Day d = s.days.isEmpty() ? null : s.days.get(s.days.size() - 1);
+            if (d == null || d.day != today) {
+                d = new Day();
+                d.day = today;
+                s.days.add(d);
+            }
+            while (!s.days.isEmpty() && s.days.get(0).day <= today - DAYS) s.days.remove(0);
+
+            d.requests++;
+            d.promptTokens += promptTokens;
+            d.completionTokens += completionTokens;
+            if (estimated) d.estimated++;
+            if (truncated) d.truncated++;
+            if (promptTokens > d.maxPromptTokens) d.maxPromptTokens = promptTokens;
+
+            s.hist[binOf(completionTokens)]++;
+            int total = 0;
+            for (int v : s.hist) total += v;
+            if (total > HIST_DECAY_AT) {
+                for (int i = 0; i < s.hist.length; i++) s.hist[i] /= 2;
+            }
+        }
+        scheduleSave();
+    }
+
+    // =============================
+    // Queries
+    // =============================
+
+    /** Drop the in-memory copy so the next query re-reads what the IME process saved. */
+    public void reload() {
+        synchronized (lock) {
+            series.clear();
+            loaded = false;
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            series.clear();
+            loaded = true;
+        }
+        if (SPManager.isReady()) SPManager.getInstance().setUsageStatsJson("");
+    }
+
+    /** All sub-models, most recently used first. */
+    public List<Summary> getSummaries() {
+        long today = today();
+        ArrayList<Summary> out = new ArrayList<>();
+        synchronized (lock) {
+            ensureLoadedLocked();
+            for (Map.Entry<String, Series> e : series.entrySet()) {
+                out.add(0, summarizeLocked(e.getKey(), e.getValue(), today));
+            }
+        }
+        return out;
+    }
+
+    public Summary getSummary(String key) {
+        if (key == null) return null;
+        synchronized (lock) {
+            ensureLoadedLocked();
+            Series s = series.get(key);
+            return s == null ? null : summarizeLocked(key, s, today());
+        }
+    }
+
+    public String describe(String key) {
+        Summary s = getSummary(key);
+        if (s == null) return key + ": no data";
+        return String.format(Locale.US, "%s: req=%d in=%d out=%d est=%d trunc=%d p95out=%d",
+                key, s.requests, s.promptTokens, s.completionTokens, s.estimated, s.truncated,
+                s.p95CompletionTokens);
+    }
+
+    private static Summary summarizeLocked(String key, Series s, long today) {
+        Summary sum = new Summary();
+        sum.key = key;
+        int sep = key.indexOf('|');
+        sum.provider = sep < 0 ? key : key.substring(0, sep);
+        sum.subModel = sep < 0 ? "" : key.substring(sep + 1);
+
+        long beforePrompt = 0;
+        int beforeRequests = 0;
+        int idx = 0;
+        for (long day = today - DAYS + 1; day <= today; day++) {
+            Day d = null;
+            while (idx < s.days.size() && s.days.get(idx).day < day) idx++;
+            if (idx < s.days.size() && s.days.get(idx).day == day) d = s.days.get(idx).copy();
+            if (d == null) {
+                d = new Day();
+                d.day = day;
+            }
+            sum.days.add(d);
+            sum.requests += d.requests;
+            sum.promptTokens += d.promptTokens;
+            sum.completionTokens += d.completionTokens;
+            sum.estimated += d.estimated;
+            sum.truncated += d.truncated;
+            sum.maxPromptTokens = Math.max(sum.maxPromptTokens, d.maxPromptTokens);
+            if (day == today) {
+                if (d.requests > 0) sum.avgPromptToday = (double) d.promptTokens / d.requests;
+            } else {
+                beforePrompt += d.promptTokens;
+                beforeRequests += d.requests;
+            }
+        }
+        if (beforeRequests > 0) sum.avgPromptBefore = (double) beforePrompt / beforeRequests;
+
+        int total = 0;
+        for (int v : s.hist) total += v;
+        if (total > 0) {
+            int need = (int) Math.ceil(total * 0.95);
+            int acc = 0;
+            for (int i = 0; i < s.hist.length; i++) {
+                acc += s.hist[i];
+                if (acc >= need) {
+                    sum.p95CompletionTokens = 64 << i;
+                    break;
+                }
+            }
+        }
+        return sum;
+    }
+
+    // =============================
+    // Internals / persistence
+    // =============================
+
+    private static int binOf(int tokens) {
+        int bin = 0;
+        while (bin < HIST_BINS - 1 && tokens >= (64 << bin)) bin++;
+        return bin;
+    }
+
+    private static long today() {
+        long now = System.currentTimeMillis();
+        return (now + TimeZone.getDefault().getOffset(now)) / 86_400_000L;
+    }
+
+    private void ensureLoadedLocked() {
+        if (loaded) return;
+        if (!SPManager.isReady()) return;
+        loaded = true;
+        try {
+            String raw = SPManager.getInstance().getUsageStatsJson();
+            if (raw == null || raw.trim().isEmpty()) return;
+            JSONObject root = new JSONObject(raw);
+            Iterator<String> it = root.keys();
+            while (it.hasNext()) {
+                String k = it.next();
+                JSONObject o = root.optJSONObject(k);
+                if (o == null || series.containsKey(k)) continue;
+                Series s = new Series();
+                JSONArray days = o.optJSONArray("d");
+                if (days != null) {
+                    for (int i = 0; i < days.length(); i++) {
+                        JSONArray a = days.optJSONArray(i);
+                        if (a != null) s.days.add(Day.fromJson(a));
+                    }
+                }
+                JSONArray hist = o.optJSONArray("h");
+                if (hist != null) {
+                    for (int i = 0; i < Math.min(HIST_BINS, hist.length()); i++) s.hist[i] = hist.optInt(i);
+                }
+                series.put(k, s);
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to load usage stats: " + t.getMessage());
+        }
+    }
+
+    private void scheduleSave() {
+        saver.request();
+    }
+
+    private void save() {
+        String json;
+        synchronized (lock) {
+            if (!SPManager.isReady()) return;
+            try {
+                JSONObject root = new JSONObject();
+                for (Map.Entry<String, Series> e : series.entrySet()) {
+                    JSONArray days = new JSONArray();
+                    for (Day d : e.getValue().days) days.put(d.toJson());
+                    JSONArray hist = new JSONArray();
+                    for (int v : e.getValue().hist) hist.put(v);
+                    root.put(e.getKey(), new JSONObject().put("d", days).put("h", hist));
+                }
+                json = root.toString();
+            } catch (Throwable t) {
+                return;
+            }
+        }
+        SPManager.getInstance().setUsageStatsJson(json);
+    }
+}
@@ -30,7 +30,7 @@ import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
 
 public class ChatGPTClient extends LanguageModelClient {
     @Override
-    public Publisher<String> submitPrompt(String prompt, String systemMessage) {
+    public Publisher<String> submitPrompt(String prompt, String systemMessage, RequestSpec spec) {
         if (getApiKey() == null || getApiKey().isEmpty()) {
             return LanguageModelClient.MISSING_API_KEY_PUBLISHER;
         }
@@ -39,7 +39,7 @@ public class ChatGPTClient extends LanguageModelClient {
             systemMessage = getDefaultSystemMessage();
         }
 
-        String url = getBaseUrl() + "/chat/completions";
+        String url = getBaseUrl(spec) + "/chat/completions";
         HttpURLConnection con;
         try {
             con = (HttpURLConnection) new URL(url).openConnection();
@@ -59,7 +59,7 @@ public class ChatGPTClient extends LanguageModelClient {
             // If user uses an OpenAI-compatible relay (usually ends with /v1),
             // OpenRouter-style model names like "openai/gpt-4o-mini" should be converted to "gpt-4o-mini".
             try {
-                String base = getBaseUrl();
+                String base = getBaseUrl(spec);
                 if (getLanguageModel() == tn.eluea.kgpt.llm.LanguageModel.OpenRouter
                         && base != null
                         && base.contains("/v1")
@@ -76,7 +76,7 @@ public class ChatGPTClient extends LanguageModelClient {
             boolean fallbackNonStreamTmp = true;
             try {
                 streamingEnabledTmp = SPManager.getInstance().getStreamingOutputEnabled();
-                streamingModeTmp = SPManager.getInstance().getStreamingOutputModeForRequest();
+                streamingModeTmp = getStreamingMode(spec);
                 fallbackNonStreamTmp = SPManager.getInstance().getStreamingOutputFallbackNonStreamEnabled();
             } catch (Throwable ignored) {}
             final boolean streamingEnabled = streamingEnabledTmp;
@@ -85,29 +85,36 @@ public class ChatGPTClient extends LanguageModelClient {
 
             final boolean streamRequest = streamingEnabled && streamingMode != SPManager.STREAM_MODE_TYPEWRITER;
             rootJson.put("stream", streamRequest);
+            // Ask for a final usage chunk; without it usage is estimated locally.
+            if (streamRequest && ModelCapabilities.supportsStreamUsage(getLanguageModel(), getSubModel())) {
+                rootJson.put("stream_options", new JSONObject().put("include_usage", true));
+            }
             // Some utility/non-text endpoints reject max_tokens; gate by capability.
             if (ModelCapabilities.supportsMaxTokens(getLanguageModel(), getSubModel())) {
-                rootJson.put("max_tokens", getIntField(LanguageModelField.MaxTokens));
+                rootJson.put("max_tokens", getIntField(spec, LanguageModelField.MaxTokens));
             }
 
             // Some models (especially non-chat / reasoning-only endpoints) reject sampling params.
             // Gate these fields by capability (with runtime cache + heuristics).
             if (ModelCapabilities.supportsTemperature(getLanguageModel(), getSubModel())) {
-                rootJson.put("temperature", getDoubleField(LanguageModelField.Temperature));
-                rootJson.put("top_p", getDoubleField(LanguageModelField.TopP));
+                rootJson.put("temperature", getDoubleField(spec, LanguageModelField.Temperature));
+                rootJson.put("top_p", getDoubleField(spec, LanguageModelField.TopP));
             }
 
+            final RequestUsage usage = new RequestUsage(getLanguageModel(), getSubModel(), prompt, systemMessage,
+                    getIntField(spec, LanguageModelField.MaxTokens), spec);
             InternetRequestPublisher publisher = new InternetRequestPublisher(
-                    (s, reader) -> {
+                    usage.collect((s, reader) -> {
                         if (streamRequest) {
                             // OpenAI-compatible streaming (SSE/JSONL/Auto)
-                            OpenAICompatStreamParser.parse(s, reader, streamingMode, fallbackNonStream);
+                            OpenAICompatStreamParser.parse(s, reader, streamingMode, fallbackNonStream, usage);
                             return;
                         }
 
                         // Non-streaming response
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
+                        usage.report(responseJson);
                         if (responseJson.has("choices")) {
                             JSONArray choices = responseJson.getJSONArray("choices");
                             for (int i = 0; i < choices.length(); i++) {
@@ -127,7 +134,7 @@ public class ChatGPTClient extends LanguageModelClient {
                         } else {
                             throw new JSONException("no \"choices\" attribute found");
                         }
-                    },
+                    }),
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
@@ -157,7 +164,7 @@ public class ChatGPTClient extends LanguageModelClient {
                             throw new RuntimeException(response);
                         }
                     });
-            InputStream inputStream = sendRequest(con, rootJson.toString(), publisher);
+            InputStream inputStream = sendRequest(con, rootJson.toString(), streamRequest, publisher);
             publisher.setInputStream(inputStream);
             return publisher;
         } catch (Throwable t) {
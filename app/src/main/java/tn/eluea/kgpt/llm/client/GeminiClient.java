@@ -29,7 +29,7 @@ import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
 
 public class GeminiClient extends LanguageModelClient {
     @Override
-    public Publisher<String> submitPrompt(String prompt, String systemMessage) {
+    public Publisher<String> submitPrompt(String prompt, String systemMessage, RequestSpec spec) {
         if (getApiKey() == null || getApiKey().isEmpty()) {
             return LanguageModelClient.MISSING_API_KEY_PUBLISHER;
         }
@@ -38,7 +38,7 @@ public class GeminiClient extends LanguageModelClient {
             systemMessage = getDefaultSystemMessage();
         }
 
-        String url = String.format("%s/models/%s:generateContent", getBaseUrl(), getSubModel());
+        String url = String.format("%s/models/%s:generateContent", getBaseUrl(spec), getSubModel());
         HttpURLConnection con;
         try {
             con = (HttpURLConnection) new URL(url).openConnection();
@@ -48,27 +48,19 @@ public class GeminiClient extends LanguageModelClient {
 
             // Build contents array with proper format
             JSONArray contentsJson = new JSONArray();
-            
-            // Add system message as first user message
-            JSONObject systemContent = new JSONObject();
-            systemContent.put("role", "user");
-            JSONArray systemParts = new JSONArray();
-            systemParts.put(new JSONObject().put("text", systemMessage));
-            systemContent.put("parts", systemParts);
-            contentsJson.put(systemContent);
-            
-            // Add model acknowledgment
-            JSONObject modelAck = new JSONObject();
-            modelAck.put("role", "model");
-            JSONArray modelParts = new JSONArray();
-            modelParts.put(new JSONObject().put("text", "Understood. I will follow these instructions."));
-            modelAck.put("parts", modelParts);
-            contentsJson.put(modelAck);
-            
+            JSONObject systemInstruction = null;
+            JSONArray userParts = new JSONArray();
+            if (ModelCapabilities.supportsSystemInstruction(getLanguageModel(), getSubModel())) {
+                systemInstruction = new JSONObject()
+                        .put("parts", new JSONArray().put(new JSONObject().put("text", systemMessage)));
+            } else {
+                // No systemInstruction on this model: the system message is the user turn's first part.
+                userParts.put(new JSONObject().put("text", systemMessage));
+            }
+
             // Add user prompt
             JSONObject userContent = new JSONObject();
             userContent.put("role", "user");
-            JSONArray userParts = new JSONArray();
             userParts.put(new JSONObject().put("text", prompt));
             userContent.put("parts", userParts);
             contentsJson.put(userContent);
@@ -77,14 +69,14 @@ public class GeminiClient extends LanguageModelClient {
             JSONObject generationConfigJson = new JSONObject();
             // Some utility/non-text endpoints reject token limits; gate by capability.
             if (ModelCapabilities.supportsMaxTokens(getLanguageModel(), getSubModel())) {
-                generationConfigJson.put("maxOutputTokens", getIntField(LanguageModelField.MaxTokens));
+                generationConfigJson.put("maxOutputTokens", getIntField(spec, LanguageModelField.MaxTokens));
             }
 
             // Some endpoints reject sampling params; gate by capability.
             if (ModelCapabilities.supportsTemperature(getLanguageModel(), getSubModel())) {
                 generationConfigJson
-                        .put("temperature", getDoubleField(LanguageModelField.Temperature))
-                        .put("topP", getDoubleField(LanguageModelField.TopP));
+                        .put("temperature", getDoubleField(spec, LanguageModelField.Temperature))
+                        .put("topP", getDoubleField(spec, LanguageModelField.TopP));
             }
             
             // Safety settings
@@ -100,14 +92,18 @@ public class GeminiClient extends LanguageModelClient {
             
             // Build root JSON
             JSONObject rootJson = new JSONObject();
+            if (systemInstruction != null) rootJson.put("systemInstruction", systemInstruction);
             rootJson.put("contents", contentsJson);
-            rootJson.put("generationConfig", generationConfigJson);
+            if (generationConfigJson.length() > 0) rootJson.put("generationConfig", generationConfigJson);
             rootJson.put("safetySettings", safetySettings);
 
+            final RequestUsage usage = new RequestUsage(getLanguageModel(), getSubModel(), prompt, systemMessage,
+                    getIntField(spec, LanguageModelField.MaxTokens), spec);
             InternetRequestPublisher publisher = new InternetRequestPublisher(
-                    (s, reader) -> {
+                    usage.collect((s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
+                        usage.report(responseJson);
                         if (responseJson.has("candidates")) {
                             JSONArray candidates = responseJson.getJSONArray("candidates");
                             for (int i = 0; i < candidates.length(); i++) {
@@ -130,7 +126,7 @@ public class GeminiClient extends LanguageModelClient {
                         } else {
                             throw new JSONException("No \"candidates\" attribute found in response");
                         }
-                    },
+                    }),
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
                         try {
@@ -174,6 +170,12 @@ public class GeminiClient extends LanguageModelClient {
         }
     }
 
+    /** Google's API front end takes gzip request bodies; a relay at another base URL may not. */
+    @Override
+    protected boolean acceptsCompressedRequests(URL url) {
+        return "generativelanguage.googleapis.com".equalsIgnoreCase(url.getHost());
+    }
+
     @Override
     public LanguageModel getLanguageModel() {
         return LanguageModel.Gemini;
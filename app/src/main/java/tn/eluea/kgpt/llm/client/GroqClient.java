@@ -34,7 +34,7 @@ public class GroqClient extends ChatGPTClient {
         return LanguageModel.Groq;
     }
 
-    public Publisher<String> submitPrompt(String prompt, String systemMessage) {
+    public Publisher<String> submitPrompt(String prompt, String systemMessage, RequestSpec spec) {
         if (getApiKey() == null || getApiKey().isEmpty()) {
             return LanguageModelClient.MISSING_API_KEY_PUBLISHER;
         }
@@ -43,7 +43,7 @@ public class GroqClient extends ChatGPTClient {
             systemMessage = getDefaultSystemMessage();
         }
 
-        String url = getBaseUrl() + "/chat/completions";
+        String url = getBaseUrl(spec) + "/chat/completions";
         HttpURLConnection con;
         try {
             con = (HttpURLConnection) new URL(url).openConnection();
@@ -66,7 +66,7 @@ public class GroqClient extends ChatGPTClient {
             boolean fallbackNonStreamTmp = true;
             try {
                 streamingEnabledTmp = SPManager.getInstance().getStreamingOutputEnabled();
-                streamingModeTmp = SPManager.getInstance().getStreamingOutputModeForRequest();
+                streamingModeTmp = getStreamingMode(spec);
                 fallbackNonStreamTmp = SPManager.getInstance().getStreamingOutputFallbackNonStreamEnabled();
             } catch (Throwable ignored) {}
             final boolean streamingEnabled = streamingEnabledTmp;
@@ -77,23 +77,26 @@ public class GroqClient extends ChatGPTClient {
             rootJson.put("stream", streamRequest);
             // Some utility/non-text endpoints reject max tokens; gate by capability.
             if (ModelCapabilities.supportsMaxTokens(getLanguageModel(), getSubModel())) {
-                rootJson.put("max_completion_tokens", getIntField(LanguageModelField.MaxTokens));
+                rootJson.put("max_completion_tokens", getIntField(spec, LanguageModelField.MaxTokens));
             }
 
             if (ModelCapabilities.supportsTemperature(getLanguageModel(), getSubModel())) {
-                rootJson.put("temperature", getDoubleField(LanguageModelField.Temperature));
-                rootJson.put("top_p", getDoubleField(LanguageModelField.TopP));
+                rootJson.put("temperature", getDoubleField(spec, LanguageModelField.Temperature));
+                rootJson.put("top_p", getDoubleField(spec, LanguageModelField.TopP));
             }
 
+            final RequestUsage usage = new RequestUsage(getLanguageModel(), getSubModel(), prompt, systemMessage,
+                    getIntField(spec, LanguageModelField.MaxTokens), spec);
             InternetRequestPublisher publisher = new InternetRequestPublisher(
-                    (s, reader) -> {
+                    usage.collect((s, reader) -> {
                         if (streamRequest) {
-                            OpenAICompatStreamParser.parse(s, reader, streamingMode, fallbackNonStream);
+                            OpenAICompatStreamParser.parse(s, reader, streamingMode, fallbackNonStream, usage);
                             return;
                         }
 
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
+                        usage.report(responseJson);
                         if (responseJson.has("choices")) {
                             JSONArray choices = responseJson.getJSONArray("choices");
                             if (choices.length() > 0) {
@@ -104,7 +107,7 @@ public class GroqClient extends ChatGPTClient {
                             throw new JSONException("choices has length 0");
                         }
                         throw new JSONException("no \"choices\" attribute found");
-                    },
+                    }),
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
@@ -121,7 +124,7 @@ public class GroqClient extends ChatGPTClient {
                         }
                     }
             );
-            InputStream inputStream = sendRequest(con, rootJson.toString(), publisher);
+            InputStream inputStream = sendRequest(con, rootJson.toString(), streamRequest, publisher);
             publisher.setInputStream(inputStream);
             return publisher;
         } catch (Throwable t) {
@@ -18,38 +18,63 @@ import org.reactivestreams.Publisher;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
 import android.util.Log;
 
+import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.internet.Http2InternetProvider;
+import tn.eluea.kgpt.llm.internet.HttpEncoding;
 import tn.eluea.kgpt.llm.internet.InternetProvider;
 import tn.eluea.kgpt.llm.internet.SimpleInternetProvider;
+import tn.eluea.kgpt.llm.publisher.SimpleStringPublisher;
 import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
 public abstract class LanguageModelClient {
     private static final String TAG = "KGPT_LMClient";
-    private Map<LanguageModelField, String> mFields = new HashMap<>();
+    // Configured fields. Replaced (never mutated) on write, so requests read them without locking.
+    private volatile Map<LanguageModelField, String> mFields = new HashMap<>();
 
     private InternetProvider mInternetProvider = new SimpleInternetProvider();
 
-    abstract public Publisher<String> submitPrompt(String prompt, String systemMessage);
+    public Publisher<String> submitPrompt(String prompt, String systemMessage) {
+        return submitPrompt(prompt, systemMessage, RequestSpec.DEFAULT);
+    }
+
+    /** Send one request. {@code spec} overrides fields for this request only; the client is not modified. */
+    abstract public Publisher<String> submitPrompt(String prompt, String systemMessage, RequestSpec spec);
 
     abstract public LanguageModel getLanguageModel();
 
     public void setField(LanguageModelField field, String value) {
-        mFields.put(field, value);
+        synchronized (this) {
+            Map<LanguageModelField, String> fields = new HashMap<>(mFields);
+            fields.put(field, value);
+            mFields = fields;
+        }
     }
 
     public String getField(LanguageModelField field) {
         return mFields.getOrDefault(field, getLanguageModel().getDefault(field));
     }
 
+    /** The value a request made with {@code spec} uses for {@code field}. */
+    public String getField(RequestSpec spec, LanguageModelField field) {
+        if (spec != null && spec.has(field)) return spec.get(field);
+        return getField(field);
+    }
+
     public double getDoubleField(LanguageModelField field) {
+        return getDoubleField(RequestSpec.DEFAULT, field);
+    }
+
+    public double getDoubleField(RequestSpec spec, LanguageModelField field) {
         try {
-            String doubleStr = mFields.getOrDefault(field, getLanguageModel().getDefault(field));
+            String doubleStr = getField(spec, field);
             if (doubleStr != null) {
                 return Double.parseDouble(doubleStr);
             }
@@ -60,8 +85,12 @@ public abstract class LanguageModelClient {
     }
 
     public int getIntField(LanguageModelField field) {
+        return getIntField(RequestSpec.DEFAULT, field);
+    }
+
+    public int getIntField(RequestSpec spec, LanguageModelField field) {
         try {
-            String intStr = mFields.getOrDefault(field, getLanguageModel().getDefault(field));
+            String intStr = getField(spec, field);
             if (intStr != null) {
                 return Integer.parseInt(intStr);
             }
@@ -84,6 +113,16 @@ public abstract class LanguageModelClient {
         return getField(LanguageModelField.BaseUrl);
     }
 
+    public String getBaseUrl(RequestSpec spec) {
+        return getField(spec, LanguageModelField.BaseUrl);
+    }
+
+    /** Streaming mode of a request made with {@code spec}: its override, else the user setting. */
+    public static int getStreamingMode(RequestSpec spec) {
+        if (spec != null && spec.getStreamingMode() != null) return spec.getStreamingMode();
+        return SPManager.getInstance().getStreamingOutputMode();
+    }
+
     public static LanguageModelClient forModel(LanguageModel model) {
         switch (model) {
             case Gemini:
@@ -108,10 +147,7 @@ public abstract class LanguageModelClient {
         }
     }
 
-    static Publisher<String> MISSING_API_KEY_PUBLISHER = subscriber -> {
-        subscriber.onNext("Missing API Key");
-        subscriber.onComplete();
-    };
+    static Publisher<String> MISSING_API_KEY_PUBLISHER = new SimpleStringPublisher("Missing API Key");
 
     @NonNull
     @Override
@@ -127,8 +163,41 @@ public abstract class LanguageModelClient {
         mInternetProvider = internetProvider;
     }
 
+    /** Send a request whose reply is one whole body (not a stream). */
     protected InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl)
             throws IOException {
-        return mInternetProvider.sendRequest(con, body, irl);
+        return sendRequest(con, body, false, irl);
+    }
+
+    /**
+     * Send a request. Whole-body replies may come back gzipped; streamed ones are asked for
+     * uncompressed. The body itself is gzipped only where {@link #acceptsCompressedRequests} says so.
+     */
+    protected InputStream sendRequest(HttpURLConnection con, String body, boolean streaming,
+                                      InternetRequestListener irl) throws IOException {
+        HttpEncoding.negotiateResponse(con, streaming);
+        if (acceptsCompressedRequests(con.getURL())) {
+            HttpEncoding.compressRequestBody(con, body);
+        }
+        irl.onRequestConnection(con);
+        return transport().sendRequest(con, body, irl);
+    }
+
+    /** The HTTP/2 transport when enabled for this provider, else the one set by the controller. */
+    private InternetProvider transport() {
+        try {
+            if (SPManager.isReady() && SPManager.getInstance().getHttp2Enabled(getLanguageModel())) {
+                return Http2InternetProvider.getInstance();
+            }
+        } catch (Throwable ignored) {}
+        return mInternetProvider;
+    }
+
+    /**
+     * Whether {@code url} takes a gzip Content-Encoding on request bodies. Few APIs do, and a
+     * relay in front of one may not, so this is off unless the provider knows its endpoint.
+     */
+    protected boolean acceptsCompressedRequests(URL url) {
+        return false;
     }
 }
@@ -30,7 +30,7 @@ import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
 
 public class MistralClient extends LanguageModelClient {
     @Override
-    public Publisher<String> submitPrompt(String prompt, String systemMessage) {
+    public Publisher<String> submitPrompt(String prompt, String systemMessage, RequestSpec spec) {
         if (getApiKey() == null || getApiKey().isEmpty()) {
             return LanguageModelClient.MISSING_API_KEY_PUBLISHER;
         }
@@ -39,7 +39,7 @@ public class MistralClient extends LanguageModelClient {
             systemMessage = getDefaultSystemMessage();
         }
 
-        String url = getBaseUrl() + "/chat/completions";
+        String url = getBaseUrl(spec) + "/chat/completions";
         HttpURLConnection con;
         try {
             con = (HttpURLConnection) new URL(url).openConnection();
@@ -62,7 +62,7 @@ public class MistralClient extends LanguageModelClient {
             boolean fallbackNonStreamTmp = true;
             try {
                 streamingEnabledTmp = SPManager.getInstance().getStreamingOutputEnabled();
-                streamingModeTmp = SPManager.getInstance().getStreamingOutputModeForRequest();
+                streamingModeTmp = getStreamingMode(spec);
                 fallbackNonStreamTmp = SPManager.getInstance().getStreamingOutputFallbackNonStreamEnabled();
             } catch (Throwable ignored) {}
             final boolean streamingEnabled = streamingEnabledTmp;
@@ -73,23 +73,26 @@ public class MistralClient extends LanguageModelClient {
             rootJson.put("stream", streamRequest);
             // Some utility/non-text endpoints reject max_tokens; gate by capability.
             if (ModelCapabilities.supportsMaxTokens(getLanguageModel(), getSubModel())) {
-                rootJson.put("max_tokens", getIntField(LanguageModelField.MaxTokens));
+                rootJson.put("max_tokens", getIntField(spec, LanguageModelField.MaxTokens));
             }
 
             if (ModelCapabilities.supportsTemperature(getLanguageModel(), getSubModel())) {
-                rootJson.put("temperature", getDoubleField(LanguageModelField.Temperature));
-                rootJson.put("top_p", getDoubleField(LanguageModelField.TopP));
+                rootJson.put("temperature", getDoubleField(spec, LanguageModelField.Temperature));
+                rootJson.put("top_p", getDoubleField(spec, LanguageModelField.TopP));
             }
 
+            final RequestUsage usage = new RequestUsage(getLanguageModel(), getSubModel(), prompt, systemMessage,
+                    getIntField(spec, LanguageModelField.MaxTokens), spec);
             InternetRequestPublisher publisher = new InternetRequestPublisher(
-                    (s, reader) -> {
+                    usage.collect((s, reader) -> {
                         if (streamRequest) {
-                            OpenAICompatStreamParser.parse(s, reader, streamingMode, fallbackNonStream);
+                            OpenAICompatStreamParser.parse(s, reader, streamingMode, fallbackNonStream, usage);
                             return;
                         }
 
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
+                        usage.report(responseJson);
                         if (responseJson.has("choices")) {
                             JSONArray choices = responseJson.getJSONArray("choices");
                             for (int i = 0; i < choices.length(); i++) {
@@ -109,7 +112,7 @@ public class MistralClient extends LanguageModelClient {
                         } else {
                             throw new JSONException("no \"choices\" attribute found");
                         }
-                    },
+                    }),
                     (s, reader) -> {
                         String response = reader.lines().collect(Collectors.joining(""));
                         JSONObject responseJson = new JSONObject(response);
@@ -128,7 +131,7 @@ public class MistralClient extends LanguageModelClient {
                             throw new IllegalArgumentException(response);
                         }
                     });
-            InputStream inputStream = sendRequest(con, rootJson.toString(), publisher);
+            InputStream inputStream = sendRequest(con, rootJson.toString(), streamRequest, publisher);
             publisher.setInputStream(inputStream);
             return publisher;
         } catch (Throwable t) {
@@ -32,6 +32,18 @@ public final class OpenAICompatStreamParser {
                              BufferedReader reader,
                              int streamingMode,
                              boolean fallbackNonStreamEnabled) throws Throwable {
+        parse(subscriber, reader, streamingMode, fallbackNonStreamEnabled, null);
+    }
+
+    /**
+     * Same as {@link #parse(Subscriber, BufferedReader, int, boolean)}, also handing every frame to
+     * {@code usage} (the final usage chunk carries no text).
+     */
+    public static void parse(Subscriber<? super String> subscriber,
+                             BufferedReader reader,
+                             int streamingMode,
+                             boolean fallbackNonStreamEnabled,
+                             RequestUsage usage) throws Throwable {
 
         boolean treatAsSse = (streamingMode == SPManager.STREAM_MODE_SSE);
         boolean decided = (streamingMode == SPManager.STREAM_MODE_SSE || streamingMode == SPManager.STREAM_MODE_JSONL);
@@ -73,7 +85,7 @@ public final class OpenAICompatStreamParser {
                         break;
                     }
 
-                    String piece = tryExtractDelta(p);
+                    String piece = tryExtractDelta(p, usage);
                     if (piece != null && !piece.isEmpty()) {
                         subscriber.onNext(piece);
                         if (emitted != null) emitted.append(piece);
@@ -84,7 +96,7 @@ public final class OpenAICompatStreamParser {
             }
 
             // JSONL
-            String piece = tryExtractDelta(trimmed);
+            String piece = tryExtractDelta(trimmed, usage);
             if (piece != null && !piece.isEmpty()) {
                 subscriber.onNext(piece);
                 if (emitted != null) emitted.append(piece);
@@ -254,8 +266,13 @@ public final class OpenAICompatStreamParser {
     }
 
     private static String tryExtractDelta(String jsonOrGarbage) {
+        return tryExtractDelta(jsonOrGarbage, null);
+    }
+
+    private static String tryExtractDelta(String jsonOrGarbage, RequestUsage usage) {
         try {
             JSONObject obj = new JSONObject(jsonOrGarbage);
+            if (usage != null) usage.report(obj);
 
             // OpenAI / compatible streaming
             JSONArray choices = obj.optJSONArray("choices");
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.client;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import tn.eluea.kgpt.llm.LanguageModelField;
+
+/**
+ * Per-request parameters passed to {@link LanguageModelClient#submitPrompt(String, String, RequestSpec)}.
+ *
+ * Immutable: field overrides (max tokens, base URL, temperature...) win over the client's
+ * configured fields for this request only, and the streaming mode overrides the user setting.
+ * Nothing is written back to the shared client, so hedged or parallel attempts on the same
+ * client cannot see each other's values.
+ */
+public final class RequestSpec {
+    /** No overrides: the client's fields and the user's streaming mode. */
+    public static final RequestSpec DEFAULT = new Builder().build();
+
+    private final Map<LanguageModelField, String> mFields;
+    private final Integer mStreamingMode;
+    private final Runnable mOnOutputLimit;
+
+    private RequestSpec(Builder builder) {
+        mFields = builder.fields.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new EnumMap<>(builder.fields));
+        mStreamingMode = builder.streamingMode;
+        mOnOutputLimit = builder.onOutputLimit;
+    }
+
+    /** True if this request overrides {@code field}. */
+    public boolean has(LanguageModelField field) {
+        return mFields.containsKey(field);
+    }
+
+    /** The overriding value, or null if the client's own value applies. */
+    public String get(LanguageModelField field) {
+        return mFields.get(field);
+    }
+
+    /** Streaming mode for this request ({@code SPManager.STREAM_MODE_*}), or null for the user setting. */
+    public Integer getStreamingMode() {
+        return mStreamingMode;
+    }
+
+    /**
+     * Called (on the parsing thread, before completion is signalled) when the provider reports the
+     * response stopped at the output token limit. Null if nobody asked.
+     */
+    public Runnable getOnOutputLimit() {
+        return mOnOutputLimit;
+    }
+
+    public Builder buildUpon() {
+        Builder b = new Builder();
+        b.fields.putAll(mFields);
+        b.streamingMode = mStreamingMode;
+        b.onOutputLimit = mOnOutputLimit;
+        return b;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestSpec" + mFields + (mStreamingMode != null ? " stream=" + mStreamingMode : "");
+    }
+
+    public static final class Builder {
+        private final EnumMap<LanguageModelField, String> fields = new EnumMap<>(LanguageModelField.class);
+        private Integer streamingMode = null;
+        private Runnable onOutputLimit = null;
+
+        /** Override {@code field}; a null or empty value keeps the client's own value. */
+        public Builder set(LanguageModelField field, String value) {
+            if (value == null || value.isEmpty()) fields.remove(field);
+            else fields.put(field, value);
+            return this;
+        }
+
+        public Builder setStreamingMode(Integer mode) {
+            streamingMode = mode;
+            return this;
+        }
+
+        public Builder setOnOutputLimit(Runnable callback) {
+            onOutputLimit = callback;
+            return this;
+        }
+
+        public RequestSpec build() {
+            return new RequestSpec(this);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.client;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.UsageTracker;
+import tn.eluea.kgpt.llm.publisher.InternetRequestPublisher;
+
+/**
+ * Usage collection for one request.
+ *
+ * Wraps the success parser of an {@link InternetRequestPublisher}: counts the text it emits,
+ * picks up the usage blocks it {@link #report reports}, and records the result in
+ * {@link UsageTracker} once the parse ends (completed, failed or cancelled). Provider counts win;
+ * whatever the provider did not report is estimated from the prompt and the emitted text.
+ */
+public final class RequestUsage {
+    private final String mKey;
+    private final String mPrompt;
+    private final String mSystemMessage;
+    private final int mMaxTokens;
+    private final Runnable mOnOutputLimit;
+    private final AtomicBoolean mCommitted = new AtomicBoolean(false);
+
+    // Written by the parser thread only.
+    private int mWideChars = 0;
+    private int mOtherChars = 0;
+    private volatile int mPromptTokens = -1;
+    private volatile int mCompletionTokens = -1;
+    private volatile boolean mStoppedAtLimit = false;
+
+    public RequestUsage(LanguageModel model, String subModel, String prompt, String systemMessage,
+                        int maxTokens, RequestSpec spec) {
+        mKey = UsageTracker.keyOf(model, subModel);
+        mPrompt = prompt;
+        mSystemMessage = systemMessage;
+        mMaxTokens = maxTokens;
+        mOnOutputLimit = spec != null ? spec.getOnOutputLimit() : null;
+    }
+
+    /** Wrap a success callback so its output is counted and committed when it returns. */
+    public InternetRequestPublisher.Callback collect(InternetRequestPublisher.Callback callback) {
+        return (subscriber, reader) -> {
+            try {
+                callback.callback(new CountingSubscriber(subscriber), reader);
+            } finally {
+                commit();
+            }
+        };
+    }
+
+    /**
+     * Offer a response object (a whole reply or one stream chunk). Picks up OpenAI-style
+     * {@code usage} (also Groq's {@code x_groq.usage}), Gemini {@code usageMetadata}, and a
+     * finish reason meaning the output limit was hit (reported to the request spec's
+     * output-limit callback). Unrelated objects are ignored.
+     */
+    public void report(JSONObject obj) {
+        if (obj == null) return;
+        try {
+            JSONObject usage = obj.optJSONObject("usage");
+            if (usage == null) {
+                JSONObject groq = obj.optJSONObject("x_groq");
+                if (groq != null) usage = groq.optJSONObject("usage");
+            }
+            if (usage != null) {
+                int in = usage.optInt("prompt_tokens", usage.optInt("input_tokens", -1));
+                int out = usage.optInt("completion_tokens", usage.optInt("output_tokens", -1));
+                if (in >= 0) mPromptTokens = in;
+                if (out >= 0) mCompletionTokens = out;
+            }
+
+            JSONObject meta = obj.optJSONObject("usageMetadata");
+            if (meta != null) {
+                int in = meta.optInt("promptTokenCount", -1);
+                int out = meta.optInt("candidatesTokenCount", -1);
+                // Thinking tokens are billed as output.
+                int thoughts = meta.optInt("thoughtsTokenCount", 0);
+                if (in >= 0) mPromptTokens = in;
+                if (out >= 0) mCompletionTokens = out + Math.max(0, thoughts);
+            }
+
+            boolean atLimit = false;
+            JSONArray choices = obj.optJSONArray("choices");
+            if (choices != null && choices.length() > 0) {
+                JSONObject c0 = choices.optJSONObject(0);
+                if (c0 != null && "length".equals(c0.optString("finish_reason", null))) atLimit = true;
+            }
+            JSONArray candidates = obj.optJSONArray("candidates");
+            if (candidates != null && candidates.length() > 0) {
+                JSONObject c0 = candidates.optJSONObject(0);
+                if (c0 != null && "MAX_TOKENS".equals(c0.optString("finishReason", null))) atLimit = true;
+            }
+            if (atLimit && !mStoppedAtLimit) {
+                mStoppedAtLimit = true;
+                if (mOnOutputLimit != null) mOnOutputLimit.run();
+            }
+        } catch (Throwable ignored) {
+        }
+    }
+
+    /** Record once. Later calls are ignored. */
+    public void commit() {
+        if (!mCommitted.compareAndSet(false, true)) return;
+        int prompt = mPromptTokens;
+        int completion = mCompletionTokens;
+        boolean estimated = prompt < 0 || completion < 0;
+        if (prompt < 0) {
+            prompt = UsageTracker.estimateTokens(mSystemMessage) + UsageTracker.estimateTokens(mPrompt);
+        }
+        if (completion < 0) {
+            completion = mWideChars + (mOtherChars + 3) / 4;
+        }
+        // Nothing came back and nothing was counted: the request never really ran.
+        if (completion == 0 && mPromptTokens < 0) return;
+        boolean truncated = mStoppedAtLimit || (mMaxTokens > 0 && completion >= mMaxTokens);
+        try {
+            UsageTracker.getInstance().record(mKey, prompt, completion, estimated, truncated);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private final class CountingSubscriber implements Subscriber<String> {
+        private final Subscriber<? super String> mDownstream;
+
+        CountingSubscriber(Subscriber<? super String> downstream) {
+            mDownstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            mDownstream.onSubscribe(s);
+        }
+
+        @Override
+        public void onNext(String s) {
+            if (s != null) {
+                for (int i = 0; i < s.length(); i++) {
+                    if (UsageTracker.isWideChar(s.charAt(i))) mWideChars++;
+                    else mOtherChars++;
+                }
+            }
+            mDownstream.onNext(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            mDownstream.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            mDownstream.onComplete();
+        }
+    }
+}
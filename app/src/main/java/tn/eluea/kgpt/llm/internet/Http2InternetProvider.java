@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.internet;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import tn.eluea.kgpt.llm.RequestTracer;
+import tn.eluea.kgpt.llm.service.InternetRequestListener;
+
+/**
+ * Sends requests through one shared OkHttp client, which negotiates HTTP/2 over TLS: hedged
+ * attempts and parallel requests to the same host become streams on one connection instead of
+ * one socket (and one handshake) each.
+ *
+ * Clients prepare an {@link HttpURLConnection} as for the other transports; only its URL,
+ * method and request headers are used, it is never connected. The listener is handed a stand-in
+ * connection whose {@code disconnect()} cancels the call, so cancelling works as before.
+ */
+public class Http2InternetProvider implements InternetProvider {
+    private static final String TAG = "KGPT_Http2Internet";
+
+    private static volatile Http2InternetProvider sInstance;
+
+    private final OkHttpClient mClient;
+
+    public static Http2InternetProvider getInstance() {
+        if (sInstance == null) {
+            synchronized (Http2InternetProvider.class) {
+                if (sInstance == null) sInstance = new Http2InternetProvider();
+            }
+        }
+        return sInstance;
+    }
+
+    private Http2InternetProvider() {
+        mClient = new OkHttpClient.Builder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                // One connection per provider host is the point; a few spare for relays.
+                .connectionPool(new ConnectionPool(4, 5, TimeUnit.MINUTES))
+                .eventListener(new EventListener() {
+                    @Override
+                    public void requestHeadersStart(Call call) {
+                        RequestTracer.Trace trace = call.request().tag(RequestTracer.Trace.class);
+                        if (trace != null) trace.stamp(RequestTracer.Stage.CONNECTED);
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl) throws IOException {
+        Log.d(TAG, "Sending request to " + con.getURL());
+
+        boolean gzipBody = HttpEncoding.isGzipBody(con);
+        boolean gzipReply = HttpEncoding.acceptsGzip(con);
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        byte[] input = HttpEncoding.encodeBody(raw, gzipBody);
+        RequestTracer.Trace trace = RequestTracer.current();
+        if (trace != null) trace.recordRequestBody(raw.length, input.length);
+
+        // Explicit Accept-Encoding (from the client) also keeps OkHttp from gunzipping on its own,
+        // so the metered stream sees wire bytes.
+        Request.Builder builder = new Request.Builder().url(con.getURL());
+        for (Map.Entry<String, List<String>> header : con.getRequestProperties().entrySet()) {
+            if (header.getKey() == null) continue;
+            for (String value : header.getValue()) builder.addHeader(header.getKey(), value);
+        }
+        String contentType = con.getRequestProperty("Content-Type");
+        MediaType mediaType = MediaType.parse(contentType != null ? contentType : "application/json");
+        builder.method(con.getRequestMethod(), RequestBody.create(input, mediaType));
+        builder.tag(RequestTracer.Trace.class, trace);
+
+        Call call = mClient.newCall(builder.build());
+        irl.onRequestConnection(new CallConnection(con.getURL(), call));
+
+        Response response = call.execute();
+        int responseCode = response.code();
+        RequestTracer.stampCurrent(RequestTracer.Stage.FIRST_BYTE);
+        Log.d(TAG, "Response code = " + responseCode + " (" + response.protocol() + ")");
+        HttpEncoding.onResponseCode(con.getURL(), gzipBody, responseCode);
+        irl.onRequestStatusCode(responseCode);
+
+        ResponseBody responseBody = response.body();
+        if (responseCode >= 400 || responseBody == null) {
+            String errorMessage = readErrorBody(responseBody, gzipReply);
+            response.close();
+            Log.e(TAG, "Request failed with code " + responseCode + ": " + errorMessage);
+            throw new IOException("API Error " + responseCode + ": " + errorMessage);
+        }
+
+        return new MeteredResponseStream(responseBody.byteStream(), gzipReply, trace) {
+            @Override
+            protected void onAbort() {
+                Log.d(TAG, "Aborted after " + getWireBytesRead() + " bytes");
+                // Resets this stream only; other requests on the connection carry on.
+                call.cancel();
+            }
+        };
+    }
+
+    private static String readErrorBody(ResponseBody body, boolean gzipReply) {
+        if (body == null) return "Unknown Error";
+        try (InputStream in = gzipReply ? HttpEncoding.decoding(body.byteStream()) : body.byteStream()) {
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "Error reading error stream: " + e.getMessage();
+        }
+    }
+
+    /** What the listener holds on to: disconnecting it cancels the call. */
+    private static final class CallConnection extends HttpURLConnection {
+        private final Call call;
+
+        CallConnection(URL url, Call call) {
+            super(url);
+            this.call = call;
+        }
+
+        @Override
+        public void disconnect() {
+            call.cancel();
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.internet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-Encoding handling shared by the transports.
+ *
+ * The client decides on the request headers (what the reply may be compressed with, whether
+ * the body is gzipped); the transports read those headers back, encode the body and decode the
+ * reply. Setting Accept-Encoding ourselves turns off the platform's transparent gzip, which is
+ * what lets {@link MeteredResponseStream} count the bytes that actually came over the wire.
+ */
+public final class HttpEncoding {
+    /** Smaller bodies are sent as-is: the gzip framing would eat most of the saving. */
+    public static final int GZIP_MIN_BYTES = 1024;
+
+    private static final String GZIP = "gzip";
+
+    // Hosts that failed a gzipped request; they get plain bodies until the process restarts.
+    private static final Set<String> sGzipRejectedHosts = ConcurrentHashMap.newKeySet();
+
+    private HttpEncoding() {
+    }
+
+    /**
+     * Whole-body replies may come gzipped. Streamed replies ask for identity: a compressing
+     * proxy would hold tokens back until it has a block worth deflating.
+     */
+    public static void negotiateResponse(HttpURLConnection con, boolean streaming) {
+        con.setRequestProperty("Accept-Encoding", streaming ? "identity" : GZIP);
+    }
+
+    /** Mark the request body for gzip, if it is large enough and the host has not refused one. */
+    public static void compressRequestBody(HttpURLConnection con, String body) {
+        if (body == null || body.length() < GZIP_MIN_BYTES) return;
+        if (sGzipRejectedHosts.contains(hostOf(con.getURL()))) return;
+        con.setRequestProperty("Content-Encoding", GZIP);
+    }
+
+    /** Whether the reply may be gzipped. Call before the connection is opened. */
+    public static boolean acceptsGzip(HttpURLConnection con) {
+        return GZIP.equalsIgnoreCase(con.getRequestProperty("Accept-Encoding"));
+    }
+
+    /** Whether the request body is to be gzipped. Call before the connection is opened. */
+    public static boolean isGzipBody(HttpURLConnection con) {
+        return GZIP.equalsIgnoreCase(con.getRequestProperty("Content-Encoding"));
+    }
+
+    /** The UTF-8 body as sent on the wire. */
+    public static byte[] encodeBody(byte[] raw, boolean gzip) throws IOException {
+        if (!gzip) return raw;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Remember a host that rejected a gzipped body (415 Unsupported Media Type), so its next
+     * requests go plain. A 400 is not taken as a rejection: providers answer bad parameters,
+     * oversized prompts and unknown models with it too. The rejected request itself still fails;
+     * the user's retry succeeds.
+     */
+    public static void onResponseCode(URL url, boolean gzipBody, int responseCode) {
+        if (gzipBody && responseCode == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+            sGzipRejectedHosts.add(hostOf(url));
+        }
+    }
+
+    /**
+     * {@code in}, gunzipped if it starts with the gzip magic. Sniffed on the first read, so
+     * wrapping never blocks, and it works where the Content-Encoding header is not at hand (the
+     * relayed external transport).
+     */
+    public static InputStream decoding(InputStream in) {
+        return new SniffingGzipStream(in);
+    }
+
+    private static String hostOf(URL url) {
+        return url == null ? "" : url.getHost() + ":" + url.getPort();
+    }
+
+    private static final class SniffingGzipStream extends InputStream {
+        private final PushbackInputStream source;
+        private InputStream delegate;
+
+        SniffingGzipStream(InputStream in) {
+            source = new PushbackInputStream(in, 2);
+        }
+
+        private InputStream delegate() throws IOException {
+            if (delegate != null) return delegate;
+            byte[] head = new byte[2];
+            int n = 0;
+            while (n < 2) {
+                int r = source.read(head, n, 2 - n);
+                if (r < 0) break;
+                n += r;
+            }
+            if (n > 0) source.unread(head, 0, n);
+            boolean gzipped = n == 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b;
+            delegate = gzipped ? new GZIPInputStream(source) : source;
+            return delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return delegate().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate == null ? 0 : delegate.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (delegate != null) delegate.close();
+            else source.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.internet;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Response body as returned by an {@link InternetProvider}: counts the bytes read and can be
+ * aborted.
+ *
+ * {@link #close()} is the normal end (the parser is done, EOF or not). {@link #abort()} is a
+ * cancel: the transport tears the request down right away (disconnect, stop the relay) and the
+ * bytes received so far are recorded as aborted. Either way the transfer is reported once to
+ * the {@link TransferListener} given at construction (the request's trace).
+ *
+ * A stream built with {@code decodeGzip} gunzips a compressed body; the wire count is then the
+ * compressed size and {@link #getBytesRead()} the decoded one.
+ */
+public abstract class MeteredResponseStream extends FilterInputStream {
+    /** Receives the outcome of one response body transfer. */
+    public interface TransferListener {
+        void recordTransfer(long bytes, boolean aborted);
+
+        /** {@code wireBytes} is what came over the network, before any gunzip. */
+        default void recordTransfer(long bytes, long wireBytes, boolean aborted) {
+            recordTransfer(bytes, aborted);
+        }
+    }
+
+    private final TransferListener mListener;
+    private final WireCounter mWire;
+    private final AtomicBoolean mFinished = new AtomicBoolean(false);
+    // Written by the reading thread only.
+    private volatile long mBytes = 0;
+    private volatile boolean mEof = false;
+
+    /** {@code listener} may be null. */
+    protected MeteredResponseStream(InputStream in, TransferListener listener) {
+        this(in, false, listener);
+    }
+
+    /** {@code decodeGzip}: the body may be gzipped (sniffed, see {@link HttpEncoding#decoding}). */
+    protected MeteredResponseStream(InputStream in, boolean decodeGzip, TransferListener listener) {
+        super(null);
+        mWire = new WireCounter(in);
+        this.in = decodeGzip ? HttpEncoding.decoding(mWire) : mWire;
+        mListener = listener;
+    }
+
+    /** Tear down the transport. Called once, from the aborting thread, before the stream is closed. */
+    protected abstract void onAbort();
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b < 0) mEof = true;
+        else mBytes++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n < 0) mEof = true;
+        else mBytes += n;
+        return n;
+    }
+
+    public long getBytesRead() {
+        return mBytes;
+    }
+
+    public long getWireBytesRead() {
+        return mWire.count;
+    }
+
+    protected boolean isEof() {
+        return mEof;
+    }
+
+    /** Cancel the request. A no-op once the stream was closed or aborted. */
+    public void abort() {
+        if (!mFinished.compareAndSet(false, true)) return;
+        if (mListener != null) mListener.recordTransfer(mBytes, mWire.count, !mEof);
+        try { onAbort(); } catch (Throwable ignored) {}
+        try { super.close(); } catch (Throwable ignored) {}
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mFinished.compareAndSet(false, true) && mListener != null) {
+            mListener.recordTransfer(mBytes, mWire.count, false);
+        }
+        super.close();
+    }
+
+    private static final class WireCounter extends FilterInputStream {
+        volatile long count = 0;
+
+        WireCounter(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    /** Abort {@code stream} if it is metered, otherwise just close it. */
+    public static void abortOrClose(InputStream stream) {
+        if (stream == null) return;
+        if (stream instanceof MeteredResponseStream) {
+            ((MeteredResponseStream) stream).abort();
+        } else {
+            try { stream.close(); } catch (Throwable ignored) {}
+        }
+    }
+}
@@ -16,20 +16,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import android.util.Log;
 
+import tn.eluea.kgpt.llm.RequestTracer;
 import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
 public class SimpleInternetProvider implements InternetProvider {
     private static final String TAG = "KGPT_SimpleInternet";
-    ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Override
     public InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl) throws IOException {
@@ -39,46 +35,43 @@ public class SimpleInternetProvider implements InternetProvider {
         con.setConnectTimeout(30000);
         con.setReadTimeout(60000);
 
+        // Read the encoding choices before connecting: request properties are gone afterwards.
+        boolean gzipBody = HttpEncoding.isGzipBody(con);
+        boolean gzipReply = HttpEncoding.acceptsGzip(con);
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        byte[] input = HttpEncoding.encodeBody(raw, gzipBody);
+        RequestTracer.Trace trace = RequestTracer.current();
+        if (trace != null) trace.recordRequestBody(raw.length, input.length);
+
         try (OutputStream os = con.getOutputStream()) {
-            byte[] input = body.getBytes(StandardCharsets.UTF_8);
+            RequestTracer.stampCurrent(RequestTracer.Stage.CONNECTED);
             os.write(input, 0, input.length);
         }
 
         int responseCode = con.getResponseCode();
+        RequestTracer.stampCurrent(RequestTracer.Stage.FIRST_BYTE);
         Log.d(TAG, "Response code = " + responseCode);
+        HttpEncoding.onResponseCode(con.getURL(), gzipBody, responseCode);
         irl.onRequestStatusCode(responseCode);
 
         // Handle error responses immediately
         if (responseCode >= 400) {
-            String errorMessage = readStreamFully(con.getErrorStream());
+            InputStream errorStream = con.getErrorStream();
+            if (errorStream != null && gzipReply) errorStream = HttpEncoding.decoding(errorStream);
+            String errorMessage = readStreamFully(errorStream);
             Log.e(TAG, "Request failed with code " + responseCode + ": " + errorMessage);
             throw new IOException("API Error " + responseCode + ": " + errorMessage);
         }
 
-        PipedInputStream inputStream = new PipedInputStream();
-        PipedOutputStream outputStream = new PipedOutputStream(inputStream);
-
-        // For successful responses, stream the content
-        InputStream responseStream = con.getInputStream();
-
-        executor.execute(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(responseStream))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    outputStream.write((line + System.lineSeparator()).getBytes());
-                    outputStream.flush();
-                }
-                outputStream.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Error streaming response: " + e.getMessage());
-                try {
-                    outputStream.close();
-                } catch (IOException ignored) {
-                }
+        // The parser reads the socket stream itself: no relay thread, and a cancel disconnects
+        // the connection instead of leaving a copy loop downloading the rest of the reply.
+        return new MeteredResponseStream(con.getInputStream(), gzipReply, trace) {
+            @Override
+            protected void onAbort() {
+                Log.d(TAG, "Aborted after " + getWireBytesRead() + " bytes");
+                con.disconnect();
             }
-        });
-
-        return inputStream;
+        };
     }
 
     private String readStreamFully(InputStream stream) {
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import android.util.Log;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import tn.eluea.kgpt.llm.LlmExecutor;
+
+/**
+ * Subscription over a blocking source (a response stream or a pipe).
+ *
+ * Nothing is read before the first {@link #request(long)}, nor before onSubscribe has returned
+ * (§1.3; publishers hand the subscription over with {@link #attach()}). The source is then
+ * drained on the shared I/O executor by {@link #produce}, which emits through a gate: the gate's
+ * onNext blocks the producer while the subscriber has no outstanding demand, so a slow
+ * subscriber stops the reads (and with them the TCP window) instead of having chunks queued up
+ * for it.
+ *
+ * All signals come from the producer thread.
+ * {@link #cancel()} stops delivery immediately and closes the source, which unblocks a producer
+ * waiting in a read.
+ */
+abstract class BlockingSourceSubscription implements Subscription {
+    private static final String TAG = "KGPT_BlockingSource";
+
+    private final Subscriber<? super String> mSubscriber;
+    private final Object mLock = new Object();
+    private final AtomicBoolean mTerminated = new AtomicBoolean(false);
+    private final AtomicBoolean mSourceClosed = new AtomicBoolean(false);
+
+    // Guarded by mLock
+    private long mRequested = 0;
+    private boolean mSubscribed = false;
+    private boolean mStarted = false;
+    private boolean mStopped = false;
+    private Throwable mPendingError = null;
+
+    private volatile boolean mCancelled = false;
+
+    // Terminal signals the parser raised itself through the gate.
+    private volatile boolean mProducerCompleted = false;
+    private volatile Throwable mProducerError = null;
+
+    private final Subscriber<String> mGate = new Subscriber<String>() {
+        @Override
+        public void onSubscribe(Subscription s) {
+        }
+
+        @Override
+        public void onNext(String item) {
+            if (item == null) return;
+            if (!awaitDemand()) return;
+            mSubscriber.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (mProducerError == null) mProducerError = t;
+            stop();
+        }
+
+        @Override
+        public void onComplete() {
+            mProducerCompleted = true;
+            stop();
+        }
+    };
+
+    BlockingSourceSubscription(Subscriber<? super String> subscriber) {
+        mSubscriber = subscriber;
+    }
+
+    /**
+     * Read the source and emit through {@code sink}. Runs once, on the I/O executor. Returning
+     * normally completes the stream; throwing fails it.
+     */
+    protected abstract void produce(Subscriber<? super String> sink) throws Throwable;
+
+    /** Abort the source. Called at most once, on cancel or failure, from any thread. */
+    protected abstract void closeSource();
+
+    /** True once the subscriber cancelled. The producer may still be unwinding. */
+    protected boolean isCancelled() {
+        synchronized (mLock) {
+            return mCancelled;
+        }
+    }
+
+    /** Call onSubscribe, then allow the producer to start (§1.3). */
+    void attach() {
+        mSubscriber.onSubscribe(this);
+        boolean start;
+        synchronized (mLock) {
+            mSubscribed = true;
+            start = maybeStartLocked();
+        }
+        if (start) launch();
+    }
+
+    @Override
+    public void request(long n) {
+        boolean start;
+        boolean illegal = false;
+        synchronized (mLock) {
+            // §3.6: no-op once cancelled or terminated.
+            if (mStopped) return;
+            if (n <= 0) {
+                // §3.9: delivered by the producer, so it is still serialised with onNext.
+                mPendingError = new IllegalArgumentException("Demand must be positive, got " + n);
+                mStopped = true;
+                illegal = true;
+            } else {
+                long sum = mRequested + n;
+                mRequested = sum < 0 ? Long.MAX_VALUE : sum;  // §3.17
+            }
+            mLock.notifyAll();
+            start = maybeStartLocked();
+        }
+        if (illegal) abortSource();
+        if (start) launch();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (mLock) {
+            if (mCancelled) return;
+            mCancelled = true;
+            mStopped = true;
+            mStarted = true;
+            mLock.notifyAll();
+        }
+        // Closing a TLS socket can write; keep that off the caller's (often the main) thread.
+        try {
+            LlmExecutor.getInstance().io().execute(this::abortSource);
+        } catch (Throwable t) {
+            abortSource();
+        }
+    }
+
+    private boolean maybeStartLocked() {
+        if (mStarted || !mSubscribed) return false;
+        if (mRequested == 0 && mPendingError == null) return false;
+        mStarted = true;
+        return true;
+    }
+
+    private void launch() {
+        try {
+            LlmExecutor.getInstance().io().execute(this::run);
+        } catch (Throwable t) {
+            abortSource();
+            signalError(t);
+        }
+    }
+
+    private void run() {
+        boolean skip;
+        synchronized (mLock) {
+            skip = mPendingError != null || mCancelled;
+        }
+        Throwable error = null;
+        if (!skip) {
+            try {
+                produce(mGate);
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+
+        Throwable pending;
+        synchronized (mLock) {
+            mStopped = true;
+            pending = mPendingError;
+        }
+        if (mCancelled) {
+            abortSource();
+            return;
+        }
+        if (pending != null) {
+            signalError(pending);
+            return;
+        }
+        if (error == null && !mProducerCompleted) error = mProducerError;
+        if (error != null) {
+            Log.e(TAG, "Stream failed", error);
+            abortSource();
+            signalError(error);
+        } else {
+            signalComplete();
+        }
+    }
+
+    /** Block the producer until there is demand. False once delivery has stopped. */
+    private boolean awaitDemand() {
+        synchronized (mLock) {
+            while (mRequested == 0 && !mStopped) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    mStopped = true;
+                }
+            }
+            if (mStopped) return false;
+            if (mRequested != Long.MAX_VALUE) mRequested--;
+            return true;
+        }
+    }
+
+    private void stop() {
+        synchronized (mLock) {
+            mStopped = true;
+            mLock.notifyAll();
+        }
+    }
+
+    private void abortSource() {
+        if (!mSourceClosed.compareAndSet(false, true)) return;
+        try {
+            closeSource();
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private void signalError(Throwable t) {
+        if (!mTerminated.compareAndSet(false, true)) return;
+        mSubscriber.onError(t);
+    }
+
+    private void signalComplete() {
+        if (!mTerminated.compareAndSet(false, true)) return;
+        mSubscriber.onComplete();
+    }
+
+    /** Unicast publishers turn away later subscribers (§1.11), after the mandatory onSubscribe (§1.9). */
+    static void rejectSubscriber(Subscriber<? super String> subscriber, String reason) {
+        subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException(reason));
+    }
+}
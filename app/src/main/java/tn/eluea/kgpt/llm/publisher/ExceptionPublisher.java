@@ -13,6 +13,7 @@ package tn.eluea.kgpt.llm.publisher;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 public class ExceptionPublisher implements Publisher<String> {
     private final Throwable mThrowable;
@@ -23,7 +24,17 @@ public class ExceptionPublisher implements Publisher<String> {
 
     @Override
     public void subscribe(Subscriber<? super String> s) {
+        if (s == null) throw new NullPointerException("subscriber");  // §1.9
+        // onSubscribe first (§1.9); an error needs no demand (§1.4) and ends the stream (§1.7).
+        s.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
         s.onError(mThrowable);
-        s.onComplete();
     }
 }
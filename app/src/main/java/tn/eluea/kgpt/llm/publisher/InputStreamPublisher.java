@@ -13,20 +13,21 @@ package tn.eluea.kgpt.llm.publisher;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
-import org.reactivestreams.Subscription;
 
 import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
+/**
+ * Emits an input stream line by line, honouring demand. Single-subscriber. Reads on the shared
+ * I/O executor; cancelling closes the stream.
+ */
 public class InputStreamPublisher implements Publisher<String> {
     private final InputStream mInputStream;
     private final Function<String, String> mReplace;
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean mSubscribed = new AtomicBoolean(false);
 
     public InputStreamPublisher(InputStream inputStream, Function<String, String> replace) {
         mInputStream = inputStream;
@@ -35,41 +36,30 @@ public class InputStreamPublisher implements Publisher<String> {
 
     @Override
     public void subscribe(Subscriber<? super String> subscriber) {
-        Subscription subscription = new Subscription() {
-            private volatile boolean cancelled = false;
+        if (subscriber == null) throw new NullPointerException("subscriber");  // §1.9
+        if (!mSubscribed.compareAndSet(false, true)) {
+            BlockingSourceSubscription.rejectSubscriber(subscriber, "Stream already consumed");
+            return;
+        }
 
+        new BlockingSourceSubscription(subscriber) {
             @Override
-            public void request(long n) {
-                if (n <= 0) {
-                    subscriber.onError(new IllegalArgumentException("Demand must be positive"));
-                    return;
-                }
-
-                executor.submit(() -> {
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream))) {
-                        String line;
-                        while (!cancelled && (line = reader.readLine()) != null) {
-                            subscriber.onNext(mReplace.apply(line));
-                        }
-                        if (!cancelled) {
-                            subscriber.onComplete();
-                        }
-                    } catch (IOException e) {
-                        if (!cancelled) {
-                            subscriber.onError(e);
-                        }
+            protected void produce(Subscriber<? super String> sink) throws Throwable {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        sink.onNext(mReplace.apply(line));
                     }
-                });
+                }
             }
 
             @Override
-            public void cancel() {
-                cancelled = true;
-                executor.shutdown();
+            protected void closeSource() {
+                try {
+                    mInputStream.close();
+                } catch (Throwable ignored) {
+                }
             }
-
-        };
-
-        subscriber.onSubscribe(subscription);
+        }.attach();
     }
 }
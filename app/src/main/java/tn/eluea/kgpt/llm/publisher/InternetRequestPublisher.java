@@ -13,21 +13,31 @@ package tn.eluea.kgpt.llm.publisher;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
-import org.reactivestreams.Subscription;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
 
 import android.util.Log;
 
+import tn.eluea.kgpt.llm.internet.MeteredResponseStream;
 import tn.eluea.kgpt.llm.service.InternetRequestListener;
 
+/**
+ * Publisher for one HTTP response. Single-subscriber: the response can only be read once.
+ *
+ * The status code wait and the parse both run on the shared I/O executor once the subscriber
+ * requests, never inside {@code request()}. Demand is honoured chunk by chunk (see
+ * {@link BlockingSourceSubscription}); cancelling aborts the response stream, which makes the
+ * transport disconnect (or stop its relay) right away rather than after the server finishes the
+ * reply, and records the bytes received so far as aborted.
+ */
 public class InternetRequestPublisher implements
         Publisher<String>, InternetRequestListener {
     private static final String TAG = "KGPT_InternetPub";
@@ -35,7 +45,10 @@ public class InternetRequestPublisher implements
     private final Object mLock = new Object();
     private final Callback mOnStatusCodeSuccess;
     private final Callback mOnStatusCodeError;
-    private InputStream mInputStream = null;
+    private final AtomicBoolean mSubscribed = new AtomicBoolean(false);
+    private volatile InputStream mInputStream = null;
+    private volatile HttpURLConnection mConnection = null;
+    private volatile boolean mClosed = false;
 
     public InternetRequestPublisher(Callback onStatusCodeSuccess,
                                     Callback onStatusCodeError) {
@@ -45,57 +58,89 @@ public class InternetRequestPublisher implements
 
     @Override
     public void subscribe(Subscriber<? super String> subscriber) {
-        subscriber.onSubscribe(new Subscription() {
-            @Override
-            public void request(long n) {
-                if (n <= 0) {
-                    subscriber.onError(new IllegalArgumentException("Demand must be positive"));
-                    return;
-                }
+        if (subscriber == null) throw new NullPointerException("subscriber");  // §1.9
+        if (!mSubscribed.compareAndSet(false, true)) {
+            BlockingSourceSubscription.rejectSubscriber(subscriber, "Response already consumed");
+            return;
+        }
 
-                synchronized (mLock) {
-                    while (mStatusCode.get() == -1) {
-                        Log.d(TAG, "Waiting for status code");
-                        try {
-                            mLock.wait();
-                        } catch (InterruptedException e) {
-                        }
+        new BlockingSourceSubscription(subscriber) {
+            @Override
+            protected void produce(Subscriber<? super String> sink) throws Throwable {
+                int statusCode = awaitStatusCode();
+                if (mClosed) return;
+
+                Log.d(TAG, "Received status code " + statusCode);
+                // Reads end (EOF) as soon as the subscriber cancels, so the parser stops here
+                // instead of racing the abort for the stream (some transports close under a lock
+                // that a blocked read holds).
+                InputStream body = new FilterInputStream(mInputStream) {
+                    @Override
+                    public int read() throws IOException {
+                        return isCancelled() ? -1 : super.read();
                     }
-                }
 
-                Log.d(TAG, "Received status code " + mStatusCode);
-                boolean hasError = false;
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return isCancelled() ? -1 : super.read(b, off, len);
+                    }
+                };
+                BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
                 try {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(mInputStream, StandardCharsets.UTF_8));
-                    if (mStatusCode.get() == 200) {
-                        mOnStatusCodeSuccess.callback(subscriber, reader);
+                    if (statusCode == 200) {
+                        mOnStatusCodeSuccess.callback(sink, reader);
                     } else {
-                        mOnStatusCodeError.callback(subscriber, reader);
+                        mOnStatusCodeError.callback(sink, reader);
                     }
-                    reader.close();
-                    mInputStream.close();
-                } catch (Throwable t) {
-                    Log.e(TAG, "Error", t);
-                    hasError = true;
-                    subscriber.onError(t);
-                }
-
-                if (!hasError) {
-                    subscriber.onComplete();
+                } finally {
+                    if (isCancelled()) {
+                        // The parse stopped because of the cancel: tear the transport down too.
+                        MeteredResponseStream.abortOrClose(mInputStream);
+                    }
+                    try { reader.close(); } catch (Throwable ignored) {}
+                    try { mInputStream.close(); } catch (Throwable ignored) {}
                 }
             }
 
             @Override
-            public void cancel() {
+            protected void closeSource() {
+                close();
+            }
+        }.attach();
+    }
+
+    private int awaitStatusCode() {
+        synchronized (mLock) {
+            while (mStatusCode.get() == -1 && !mClosed) {
+                Log.d(TAG, "Waiting for status code");
                 try {
-                    synchronized (mLock) {
-                        mStatusCode.set(499); // client cancelled
-                        mLock.notifyAll();
-                    }
-                } catch (Throwable ignored) {}
-                try { if (mInputStream != null) mInputStream.close(); } catch (Throwable ignored) {}
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
-});
+            return mStatusCode.get();
+        }
+    }
+
+    /** Abort the request: wake the status wait, close the stream and drop the connection. */
+    private void close() {
+        synchronized (mLock) {
+            mClosed = true;
+            mLock.notifyAll();
+        }
+        MeteredResponseStream.abortOrClose(mInputStream);
+        try { HttpURLConnection con = mConnection; if (con != null) con.disconnect(); } catch (Throwable ignored) {}
+    }
+
+    @Override
+    public void onRequestConnection(HttpURLConnection con) {
+        mConnection = con;
+        // Cancelled before the request was even sent.
+        if (mClosed) {
+            try { con.disconnect(); } catch (Throwable ignored) {}
+        }
     }
 
     @Override
@@ -113,6 +158,9 @@ public class InternetRequestPublisher implements
 
     public void setInputStream(InputStream inputStream) {
         mInputStream = inputStream;
+        if (mClosed && inputStream != null) {
+            MeteredResponseStream.abortOrClose(inputStream);
+        }
     }
 
     public interface Callback {
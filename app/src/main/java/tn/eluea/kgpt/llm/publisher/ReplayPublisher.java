@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.llm.publisher;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multicasts one upstream response to any number of subscribers. Every subscriber gets the
+ * chunks emitted so far first (replay), then the live ones, each at its own demand.
+ *
+ * The upstream is consumed in full once {@link #connect} is called; subscribers may arrive
+ * before or after that. When the last subscriber cancels, the upstream is not cancelled here:
+ * the {@link IdleListener} decides (it may still expect another subscriber). It is also told
+ * when the upstream terminates.
+ */
+public class ReplayPublisher implements Publisher<String> {
+
+    public interface IdleListener {
+        /** Every subscriber cancelled while the upstream is still running. */
+        void onIdle(ReplayPublisher publisher);
+
+        /** The upstream completed, failed or was cancelled; nobody new should be handed this publisher. */
+        default void onTerminated(ReplayPublisher publisher) {}
+    }
+
+    private final Object mLock = new Object();
+    private final IdleListener mIdleListener;
+
+    // Guarded by mLock
+    private final ArrayList<String> mChunks = new ArrayList<>();
+    private final ArrayList<Inner> mSubscribers = new ArrayList<>();
+    private boolean mTerminated = false;
+    private Throwable mError = null;
+    private Subscription mUpstream = null;
+    private boolean mConnected = false;
+    private boolean mUpstreamCancelled = false;
+
+    public ReplayPublisher(IdleListener idleListener) {
+        mIdleListener = idleListener;
+    }
+
+    /** Start consuming {@code upstream}. Only the first call has an effect. */
+    public void connect(Publisher<String> upstream) {
+        synchronized (mLock) {
+            if (mConnected) return;
+            mConnected = true;
+        }
+        upstream.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                boolean cancelNow;
+                synchronized (mLock) {
+                    mUpstream = s;
+                    cancelNow = mUpstreamCancelled;
+                }
+                if (cancelNow) {
+                    s.cancel();
+                    return;
+                }
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String chunk) {
+                if (chunk == null) return;
+                synchronized (mLock) {
+                    if (mTerminated) return;
+                    mChunks.add(chunk);
+                }
+                drainAll();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                terminate(t == null ? new NullPointerException("upstream error") : t);
+            }
+
+            @Override
+            public void onComplete() {
+                terminate(null);
+            }
+        });
+    }
+
+    /** Stop the upstream. Anyone who still subscribes (or is attached) gets a CancellationException. */
+    public void cancelUpstream() {
+        Subscription s;
+        synchronized (mLock) {
+            if (mUpstreamCancelled) return;
+            mUpstreamCancelled = true;
+            s = mUpstream;
+        }
+        if (s != null) {
+            try { s.cancel(); } catch (Throwable ignored) {}
+        }
+        terminate(new java.util.concurrent.CancellationException("Shared request cancelled"));
+    }
+
+    public boolean isTerminated() {
+        synchronized (mLock) {
+            return mTerminated;
+        }
+    }
+
+    public boolean hasFailed() {
+        synchronized (mLock) {
+            return mTerminated && mError != null;
+        }
+    }
+
+    public boolean isUpstreamCancelled() {
+        synchronized (mLock) {
+            return mUpstreamCancelled;
+        }
+    }
+
+    public int getSubscriberCount() {
+        synchronized (mLock) {
+            return mSubscribers.size();
+        }
+    }
+
+    private void terminate(Throwable error) {
+        synchronized (mLock) {
+            if (mTerminated) return;
+            mTerminated = true;
+            mError = error;
+        }
+        if (mIdleListener != null) {
+            try { mIdleListener.onTerminated(this); } catch (Throwable ignored) {}
+        }
+        drainAll();
+    }
+
+    private void drainAll() {
+        Inner[] subscribers;
+        synchronized (mLock) {
+            subscribers = mSubscribers.toArray(new Inner[0]);
+        }
+        for (Inner inner : subscribers) inner.drain();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super String> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber");  // §1.9
+        Inner inner = new Inner(subscriber);
+        subscriber.onSubscribe(inner);
+        // Joined only after onSubscribe returned, so upstream-driven drains never overlap it (§1.3).
+        synchronized (mLock) {
+            if (!inner.cancelled) mSubscribers.add(inner);
+        }
+        inner.drain();
+    }
+
+    private final class Inner implements Subscription {
+        private final Subscriber<? super String> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile Throwable badRequest = null;
+        // Only touched inside drain()
+        private int index = 0;
+        private boolean done = false;
+
+        Inner(Subscriber<? super String> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) return;  // §3.6
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Demand must be positive, got " + n);  // §3.9
+            } else {
+                long r, next;
+                do {
+                    r = requested.get();
+                    if (r == Long.MAX_VALUE) break;
+                    next = r + n;
+                    if (next < 0) next = Long.MAX_VALUE;  // §3.17
+                } while (!requested.compareAndSet(r, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            detach();
+        }
+
+        private void detach() {
+            boolean idle;
+            synchronized (mLock) {
+                idle = mSubscribers.remove(this) && mSubscribers.isEmpty() && !mTerminated;
+            }
+            if (idle && mIdleListener != null) {
+                try { mIdleListener.onIdle(ReplayPublisher.this); } catch (Throwable ignored) {}
+            }
+        }
+
+        /** Serialised delivery loop (only one thread at a time, re-entrant calls just re-loop). */
+        void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            int missed = 1;
+            while (true) {
+                if (cancelled || done) return;
+                Throwable bad = badRequest;
+                if (bad != null) {
+                    done = true;
+                    cancelled = true;
+                    detach();
+                    subscriber.onError(bad);
+                    return;
+                }
+
+                long r = requested.get();
+                long emitted = 0;
+                while (emitted != r) {
+                    if (cancelled) return;
+                    String chunk;
+                    synchronized (mLock) {
+                        chunk = index < mChunks.size() ? mChunks.get(index) : null;
+                    }
+                    if (chunk == null) break;
+                    index++;
+                    subscriber.onNext(chunk);
+                    emitted++;
+                }
+                if (emitted != 0 && r != Long.MAX_VALUE) requested.addAndGet(-emitted);
+
+                boolean terminal;
+                Throwable error;
+                synchronized (mLock) {
+                    terminal = mTerminated && index >= mChunks.size();
+                    error = mError;
+                }
+                if (terminal && !cancelled) {
+                    // Terminal signals need no demand (§1.4, §1.5).
+                    done = true;
+                    synchronized (mLock) {
+                        mSubscribers.remove(this);
+                    }
+                    if (error != null) subscriber.onError(error);
+                    else subscriber.onComplete();
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+    }
+}
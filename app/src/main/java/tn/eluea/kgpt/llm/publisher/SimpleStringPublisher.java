@@ -15,6 +15,9 @@ import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Emits one string on the first request, then completes. */
 public class SimpleStringPublisher implements Publisher<String> {
     private final String mString;
 
@@ -25,16 +28,26 @@ public class SimpleStringPublisher implements Publisher<String> {
 
     @Override
     public void subscribe(Subscriber<? super String> s) {
+        if (s == null) throw new NullPointerException("subscriber");  // §1.9
         s.onSubscribe(new Subscription() {
+            // Set before emitting, so a request() from inside onNext does not recurse (§3.3).
+            private final AtomicBoolean done = new AtomicBoolean(false);
+
             @Override
             public void request(long n) {
+                if (!done.compareAndSet(false, true)) return;
+                if (n <= 0) {
+                    s.onError(new IllegalArgumentException("Demand must be positive, got " + n));  // §3.9
+                    return;
+                }
+                s.onNext(mString);
+                s.onComplete();
             }
 
             @Override
             public void cancel() {
+                done.set(true);
             }
         });
-        s.onNext(mString);
-        s.onComplete();
     }
 }
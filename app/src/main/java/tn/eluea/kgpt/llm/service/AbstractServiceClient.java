@@ -101,11 +101,21 @@ public abstract class AbstractServiceClient {
         Message msg = Message.obtain(null, what);
         msg.setData(message);
         msg.replyTo = incomingMessenger;
+        boolean delivered = false;
         try {
             serviceMessenger.send(msg);
+            delivered = true;
         } catch (RemoteException e) {
             MainHook.log(e);
         }
+        onMessageSent(message, delivered);
+    }
+
+    /**
+     * The message left this process (or failed to). Anything it carries that the service now
+     * holds its own copy of, such as file descriptors, can be released here.
+     */
+    protected void onMessageSent(Bundle message, boolean delivered) {
     }
 
     private void queueMessage(Bundle message, int what) {
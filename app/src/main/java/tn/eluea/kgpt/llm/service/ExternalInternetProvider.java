@@ -13,34 +13,42 @@ package tn.eluea.kgpt.llm.service;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Queue;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import tn.eluea.kgpt.MainHook;
 import tn.eluea.kgpt.core.network.InternetService;
 import tn.eluea.kgpt.core.network.InternetServiceMessageType;
+import tn.eluea.kgpt.llm.RequestTracer;
+import tn.eluea.kgpt.llm.internet.HttpEncoding;
 import tn.eluea.kgpt.llm.internet.InternetProvider;
+import tn.eluea.kgpt.llm.internet.MeteredResponseStream;
 
+/**
+ * Sends requests through {@link InternetService} in the KGPT app process.
+ *
+ * Each request carries the write end of a reliable pipe; the service copies the response body
+ * into it as raw bytes and the caller reads the other end directly, so the body never goes
+ * through Binder messages. Only small control messages (status code, completion, error) come
+ * back over the Messenger. Cancelling the stream sends a cancel so the service disconnects.
+ *
+ * The body is encoded here and the reply decoded here: the service moves bytes exactly as they
+ * go over the wire, so a gzipped reply crosses the pipe compressed too.
+ */
 public class ExternalInternetProvider extends AbstractServiceClient implements InternetProvider {
-    private boolean handlerRunning = false;
+    private final AtomicLong lastRequestId = new AtomicLong(-1);
+
+    private final Map<Long, PendingRequest> listeners = new ConcurrentHashMap<>();
 
     public ExternalInternetProvider(Context context) {
         super(context,
@@ -48,126 +56,133 @@ public class ExternalInternetProvider extends AbstractServiceClient implements I
                 "tn.eluea.kgpt");
     }
 
-    private long lastRequestId = -1;
-
-    private Map<Long, InternetRequestSubscriber> listeners = new HashMap<>();
-
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
-
-    private Queue<Bundle> messageQueue = new LinkedList<>();
-
     @Override
     public InputStream sendRequest(HttpURLConnection con, String body, InternetRequestListener irl) throws IOException {
-        lastRequestId++;
+        long requestId = lastRequestId.incrementAndGet();
+        ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createReliablePipe();
 
-        URL url = con.getURL();
         HashMap<String, List<String>> headers = InternetService.extractHeaders(con);
-        String requestMethod = con.getRequestMethod();
+        boolean gzipBody = HttpEncoding.isGzipBody(con);
+        boolean gzipReply = HttpEncoding.acceptsGzip(con);
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        byte[] wire = HttpEncoding.encodeBody(raw, gzipBody);
+        RequestTracer.Trace trace = RequestTracer.current();
+        if (trace != null) trace.recordRequestBody(raw.length, wire.length);
 
         Bundle requestBundle = new Bundle();
-        requestBundle.putSerializable("request_id", lastRequestId);
-        requestBundle.putSerializable("url", url);
-        requestBundle.putSerializable("request_headers", headers);
-        requestBundle.putString("request_method", requestMethod);
-        requestBundle.putString("request_body", body);
-
-        listeners.put(lastRequestId, new InternetRequestSubscriber(irl));
+        requestBundle.putLong(InternetService.KEY_REQUEST_ID, requestId);
+        requestBundle.putString(InternetService.KEY_URL, con.getURL().toString());
+        requestBundle.putSerializable(InternetService.KEY_HEADERS, headers);
+        requestBundle.putString(InternetService.KEY_METHOD, con.getRequestMethod());
+        requestBundle.putByteArray(InternetService.KEY_BODY, wire);
+        requestBundle.putParcelable(InternetService.KEY_BODY_FD, pipe[1]);
+
+        listeners.put(requestId, new PendingRequest(irl, con.getURL(), gzipBody));
         sendMessage(requestBundle, InternetService.SEND_REQUEST_WHAT);
 
-        return Objects.requireNonNull(listeners.get(lastRequestId)).is;
+        return new PipeInputStream(requestId, pipe[0], gzipReply, trace);
     }
 
-    private void serviceHandler() {
-        handlerRunning = true;
-        Bundle message;
-        while ((message = messageQueue.poll()) != null) {
-            handleServiceMessage(message, message.getInt("what"));
+    @Override
+    protected void onMessageSent(Bundle message, boolean delivered) {
+        ParcelFileDescriptor fd = message.getParcelable(InternetService.KEY_BODY_FD);
+        if (fd == null) return;
+        // The service holds its own copy now. Ours must go, or the reader never sees EOF.
+        try {
+            if (delivered) fd.close();
+            else fd.closeWithError("Internet service unreachable");
+        } catch (IOException e) {
+            MainHook.log(e);
+        }
+        if (!delivered) {
+            PendingRequest pending = listeners.remove(message.getLong(InternetService.KEY_REQUEST_ID));
+            if (pending != null) pending.irl.onRequestStatusCode(0);
         }
-        handlerRunning = false;
     }
 
-    private void handleServiceMessage(Bundle message, int what) {
-        if (what != InternetService.REQUEST_RESULT_WHAT) {
+    @Override
+    protected void onServiceMessage(Bundle message, int what) {
+        if (what != InternetService.REQUEST_RESULT_WHAT || !message.containsKey(InternetService.KEY_REQUEST_ID)) {
             return;
         }
-        if (message.containsKey("request_id")) {
-            long requestId = message.getLong("request_id");
-            InternetRequestSubscriber irs = listeners.get(requestId);
-            if (irs != null) {
-                InternetServiceMessageType responseType = (InternetServiceMessageType)
-                        message.getSerializable("message_type");
-                if (responseType != null) {
-                    int statusCode;
-                    String chunk;
-                    switch (responseType) {
-                        case STATUS_CODE:
-                            statusCode = message.getInt("status_code");
-                            irs.irl.onRequestStatusCode(statusCode);
-                            break;
-                        case INPUT_STREAM:
-                            chunk = message.getString("inputstream_chunk");
-                            handleInputStreamChunk(chunk, irs);
-                            break;
-                        case COMPLETE:
-                            MainHook.log("Done reading, closing outputStream");
-
-                            irs.irl.onRequestComplete();
-                            disposeIrs(irs);
-                            listeners.remove(requestId);
-                            break;
-                        default:
-                            break;
-                    }
-                }
-            }
+        long requestId = message.getLong(InternetService.KEY_REQUEST_ID);
+        PendingRequest pending = listeners.get(requestId);
+        if (pending == null) return;
+        InternetRequestListener irl = pending.irl;
+
+        InternetServiceMessageType type = (InternetServiceMessageType)
+                message.getSerializable(InternetService.KEY_MESSAGE_TYPE);
+        if (type == null) return;
+        switch (type) {
+            case STATUS_CODE:
+                int code = message.getInt(InternetService.KEY_STATUS_CODE);
+                HttpEncoding.onResponseCode(pending.url, pending.gzipBody, code);
+                irl.onRequestStatusCode(code);
+                break;
+            case COMPLETE:
+                listeners.remove(requestId);
+                irl.onRequestComplete();
+                break;
+            case ERROR:
+                // No HTTP status will come: release the status wait. Reading the pipe then
+                // fails with the service's error.
+                listeners.remove(requestId);
+                MainHook.log("External request failed: " + message.getString(InternetService.KEY_ERROR));
+                irl.onRequestStatusCode(0);
+                break;
+            default:
+                break;
         }
     }
 
-    @Override
-    protected void onServiceMessage(Bundle message, int what) {
-        message.putInt("what", what);
-        messageQueue.add(message);
-        if (!handlerRunning) {
-            executor.execute(this::serviceHandler);
+    private static final class PendingRequest {
+        final InternetRequestListener irl;
+        final URL url;
+        final boolean gzipBody;
+
+        PendingRequest(InternetRequestListener irl, URL url, boolean gzipBody) {
+            this.irl = irl;
+            this.url = url;
+            this.gzipBody = gzipBody;
         }
     }
 
-    private void disposeIrs(InternetRequestSubscriber irs) {
-        try {
-            if (irs.os != null) {
-                irs.os.close();
-                irs.os = null;
-            }
-            if (irs.is != null) {
-                irs.is.close();
-                irs.is = null;
-            }
-        } catch (IOException e) {
-            MainHook.log(e);
+    /**
+     * Read end of the body pipe. Reports the writer's error (or death) instead of a clean EOF; an
+     * abort asks the service to disconnect the real connection.
+     */
+    private final class PipeInputStream extends MeteredResponseStream {
+        private final long requestId;
+        private final ParcelFileDescriptor fd;
+
+        PipeInputStream(long requestId, ParcelFileDescriptor fd, boolean gzipReply, RequestTracer.Trace trace) {
+            super(new ParcelFileDescriptor.AutoCloseInputStream(fd), gzipReply, trace);
+            this.requestId = requestId;
+            this.fd = fd;
         }
 
-    }
-
-    private void handleInputStreamChunk(String chunk, InternetRequestSubscriber irs) {
-        try {
-            irs.os.write((chunk + System.lineSeparator()).getBytes());
-            irs.os.flush();
-        } catch (IOException e) {
-            MainHook.log(e);
+        @Override
+        protected void onAbort() {
+            listeners.remove(requestId);
+            if (isEof()) return;
+            // Closing our end would only stop the relay at its next write; this stops the download.
+            Bundle cancel = new Bundle();
+            cancel.putLong(InternetService.KEY_REQUEST_ID, requestId);
+            sendMessage(cancel, InternetService.CANCEL_REQUEST_WHAT);
         }
-        MainHook.log("Done handling chunk \"" + chunk + "\"");
-    }
 
-    private class InternetRequestSubscriber {
-        public final InternetRequestListener irl;
-        public InputStream is;
-        public OutputStream os;
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) fd.checkError();
+            return b;
+        }
 
-        private InternetRequestSubscriber(InternetRequestListener irl) throws IOException {
-            this.irl = irl;
-            PipedInputStream pipedInputStream = new PipedInputStream();
-            this.is = pipedInputStream;
-            this.os = new PipedOutputStream(pipedInputStream);
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) fd.checkError();
+            return n;
         }
     }
 }
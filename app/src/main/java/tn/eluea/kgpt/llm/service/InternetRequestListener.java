@@ -11,7 +11,11 @@
  */
 package tn.eluea.kgpt.llm.service;
 
+import java.net.HttpURLConnection;
+
 public interface InternetRequestListener {
+    /** The connection about to be sent, so the listener can abort it (e.g. on cancel). */
+    default void onRequestConnection(HttpURLConnection con) {}
     void onRequestStatusCode(int code);
     void onRequestComplete();
 }
@@ -66,6 +66,17 @@ public class TextParser implements ConfigChangeListener {
     private String quickJumpCacheRaw = null;
     private List<QuickJumpEntry> quickJumpCacheItems = Collections.emptyList();
 
+    // Trigger tail pre-check (see mayEndWithTrigger). Symbols of the enabled directives, or null
+    // when a user-edited regex has no recognizable symbol and the whole buffer must be read.
+    private static final int TRIGGER_TAIL_MARGIN = 64;
+    private static final long TRIGGER_TAIL_REFRESH_MS = 2000;
+    private volatile List<String> directiveSymbols = Collections.emptyList();
+    private volatile String[] triggerTails = null;
+    private volatile int triggerTailWindow = 0;
+    private String triggerTailRolesRaw = null;
+    private String triggerTailQuickJumpRaw = null;
+    private long triggerTailBuiltMs = 0;
+
 
     public TextParser() {
         UiInteractor.getInstance().registerConfigChangeListener(this);
@@ -129,12 +140,17 @@ public class TextParser implements ConfigChangeListener {
     private void updatePatterns(List<ParsePattern> parsePatterns) {
         directives.clear();
         aiTriggerEnabled = false;
+        List<String> symbols = new ArrayList<>();
 
         for (ParsePattern parsePattern : parsePatterns) {
             // Only add enabled patterns
             if (parsePattern.isEnabled()) {
                 directives.add(new ParseDirective(parsePattern.getPattern(),
                         ParseResultFactory.of(parsePattern.getType())));
+                if (symbols != null) {
+                    String sym = knownSymbolOf(parsePattern);
+                    if (sym == null) symbols = null; else symbols.add(sym);
+                }
             }
 
             // Track AI trigger symbol and enabled state
@@ -146,6 +162,142 @@ public class TextParser implements ConfigChangeListener {
                 aiTriggerEnabled = parsePattern.isEnabled();
             }
         }
+        directiveSymbols = symbols;
+        // Rebuild on next use.
+        triggerTailRolesRaw = null;
+        triggerTailBuiltMs = 0;
+    }
+
+    /**
+     * Symbol that the pattern's match must end with, or null if the regex was edited into
+     * something we can't reason about.
+     */
+    private static String knownSymbolOf(ParsePattern parsePattern) {
+        try {
+            PatternType type = parsePattern.getType();
+            String regex = parsePattern.getPattern().pattern();
+            String symbol = PatternType.regexToSymbol(regex);
+            if (symbol == null || symbol.isEmpty()) return null;
+            if (regex.equals(type.defaultPattern)) return symbol;
+            if (regex.equals(PatternType.symbolToRegex(symbol, type.groupCount))) return symbol;
+        } catch (Throwable ignored) {
+        }
+        return null;
+    }
+
+    // =============================
+    // Trigger tail pre-check
+    // =============================
+
+    /**
+     * How many chars before the cursor are enough for {@link #mayEndWithTrigger} (longest
+     * trigger plus a margin for trailing whitespace and text action commands).
+     *
+     * @return 0 if unknown; callers must then read the full buffer.
+     */
+    public int getTriggerTailWindow() {
+        refreshTriggerTailsIfNeeded();
+        return triggerTails != null ? triggerTailWindow : 0;
+    }
+
+    /**
+     * Cheap, conservative check on the text right before the cursor. False means no trigger
+     * whose result depends on text outside this tail can fire, so the IME does not need to
+     * read the whole editor buffer. App triggers are not part of it: they only ever look at
+     * the trigger word itself, which the tail window always covers.
+     */
+    public boolean mayEndWithTrigger(CharSequence tail) {
+        if (tail == null) return true;
+        refreshTriggerTailsIfNeeded();
+        String[] tails = triggerTails;
+        if (tails == null) return true;
+
+        int end = tail.length();
+        while (end > 0 && Character.isWhitespace(tail.charAt(end - 1))) end--;
+        if (end == 0) return false;
+
+        for (String t : tails) {
+            int start = end - t.length();
+            if (start < 0) continue;
+            boolean match = true;
+            for (int i = 0; i < t.length(); i++) {
+                if (tail.charAt(start + i) != t.charAt(i)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) return true;
+        }
+
+        // Text actions: "... $command"
+        int i = end;
+        while (i > 0) {
+            char c = tail.charAt(i - 1);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) i--;
+            else break;
+        }
+        return i < end && i > 0 && tail.charAt(i - 1) == '$';
+    }
+
+    private void refreshTriggerTailsIfNeeded() {
+        long now = android.os.SystemClock.uptimeMillis();
+        // Called on every text update: inside the refresh window no config is read at all,
+        // both getters below are ConfigClient queries into another process.
+        if (triggerTailBuiltMs != 0 && (now - triggerTailBuiltMs) < TRIGGER_TAIL_REFRESH_MS) {
+            return;
+        }
+        String rolesRaw = null;
+        String qjRaw = null;
+        try {
+            SPManager sp = SPManager.getInstance();
+            if (sp != null) {
+                rolesRaw = sp.getRolesJson();
+                qjRaw = sp.getQuickJumpConfig();
+            }
+        } catch (Throwable ignored) {}
+        if (rolesRaw == null) rolesRaw = "";
+        if (qjRaw == null) qjRaw = "";
+
+        boolean unchanged = triggerTailBuiltMs != 0
+                && rolesRaw.equals(triggerTailRolesRaw)
+                && qjRaw.equals(triggerTailQuickJumpRaw);
+        triggerTailBuiltMs = now;
+        if (unchanged) return;
+        triggerTailRolesRaw = rolesRaw;
+        triggerTailQuickJumpRaw = qjRaw;
+
+        List<String> symbols = directiveSymbols;
+        if (symbols == null) {
+            triggerTails = null;
+            return;
+        }
+
+        java.util.LinkedHashSet<String> tails = new java.util.LinkedHashSet<>(symbols);
+        int longest = 0;
+        try {
+            for (RoleManager.Role r : RoleManager.loadRoles(rolesRaw)) {
+                String trig = r != null && r.trigger != null ? r.trigger.trim() : "";
+                if (!trig.isEmpty()) tails.add(trig);
+            }
+        } catch (Throwable ignored) {}
+        try {
+            for (QuickJumpEntry e : QuickJumpManager.load(qjRaw)) {
+                String trig = e != null && e.enabled && e.trigger != null ? e.trigger.trim() : "";
+                if (!trig.isEmpty()) tails.add(trig);
+            }
+        } catch (Throwable ignored) {}
+        try {
+            if (appTriggerManager != null) {
+                for (AppTrigger t : appTriggerManager.getAppTriggers()) {
+                    String trig = t != null ? t.getTrigger() : null;
+                    if (trig != null) longest = Math.max(longest, trig.length() + 1);
+                }
+            }
+        } catch (Throwable ignored) {}
+        for (String t : tails) longest = Math.max(longest, t.length());
+
+        triggerTailWindow = longest + TRIGGER_TAIL_MARGIN;
+        triggerTails = tails.toArray(new String[0]);
     }
     private ParseResult adjustAiTriggerToCursorLineIfNeeded(
             ParseResult original,
@@ -29,7 +29,11 @@ public class ParseDirective {
         this.factory = factory;
     }
 
-    public ParseResult parse(String text) {
+    /**
+     * Accepts any CharSequence so callers can match against a buffer view (e.g. the
+     * IME shadow buffer) without copying it into a String first.
+     */
+    public ParseResult parse(CharSequence text) {
         Matcher matcher = pattern.matcher(text);
         if (matcher.find()) {
             List<String> groups = new ArrayList<>();
@@ -51,7 +55,7 @@ public class ParseDirective {
      * @param startOverride The absolute index to use as the start of the
      *                      ParseResult
      */
-    public ParseResult parseWithStartOverride(String text, int offset, int startOverride) {
+    public ParseResult parseWithStartOverride(CharSequence text, int offset, int startOverride) {
         Matcher matcher = pattern.matcher(text);
         if (matcher.find()) {
             List<String> groups = new ArrayList<>();
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui;
+
+import android.view.inputmethod.EditorInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers, per target app and editor field, which InputConnection read actually returns
+ * text. Every read is a Binder call into the target app, so probing all of them on every
+ * selection update is what makes heavy editors feel laggy.
+ *
+ * Main thread only.
+ */
+final class EditorReadCapabilities {
+
+    static final int METHOD_UNKNOWN = 0;
+    /** getExtractedText(): full buffer in one call. */
+    static final int METHOD_EXTRACTED = 1;
+    /** getSurroundingText() (API 31+): before + after the cursor in one call. */
+    static final int METHOD_SURROUNDING = 2;
+    /** getTextBeforeCursor() + getTextAfterCursor(). */
+    static final int METHOD_BEFORE_AFTER = 3;
+
+    // A learned method that returns null this many times in a row is forgotten and re-probed.
+    private static final int MAX_FAILURES = 2;
+    private static final int MAX_ENTRIES = 64;
+
+    static final class Entry {
+        int method = METHOD_UNKNOWN;
+        int failures = 0;
+    }
+
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    Entry get(EditorInfo ei) {
+        String key = keyOf(ei);
+        Entry e = entries.get(key);
+        if (e == null) {
+            e = new Entry();
+            entries.put(key, e);
+        }
+        return e;
+    }
+
+    void recordSuccess(Entry e, int method) {
+        e.method = method;
+        e.failures = 0;
+    }
+
+    void recordFailure(Entry e, int method) {
+        if (e.method != method) return;
+        if (++e.failures >= MAX_FAILURES) {
+            e.method = METHOD_UNKNOWN;
+            e.failures = 0;
+        }
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    static String keyOf(EditorInfo ei) {
+        if (ei == null) return "";
+        // fieldId is the view id inside the target app; inputType tells apart fields that share it.
+        return ei.packageName + "#" + ei.fieldId + "#" + ei.inputType;
+    }
+}
@@ -12,15 +12,19 @@
 package tn.eluea.kgpt.ui;
 
 import android.inputmethodservice.InputMethodService;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.ExtractedText;
 import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.SurroundingText;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import tn.eluea.kgpt.BuildConfig;
 import tn.eluea.kgpt.listener.InputEventListener;
@@ -36,6 +40,9 @@ public class IMSController {
     private InputMethodService ims = null;
     private String typedText = "";
     private int cursor = 0;
+    // Last trigger tail read without the full buffer. Kept apart from typedText so snapshot
+    // readers still see the whole text of the last full read.
+    private String typedTail = "";
     private volatile boolean inputNotify = false;
     private volatile boolean inputLock = false;
     private volatile long inputLockStartTime = 0;
@@ -57,14 +64,29 @@ public class IMSController {
     private static final long INPUT_EVENT_DEBOUNCE_MS = 20;
 
     // Shadow buffer: supports editors that return null for getTextBeforeCursor/getExtractedText.
-    private final StringBuilder shadow = new StringBuilder();
+    private ShadowTextBuffer shadow = new ShadowTextBuffer(SHADOW_MAX);
     private boolean composingActive = false;
     private int composingLen = 0;
     private static final int SHADOW_MAX = 2048;
 
-    // Shadow buffer belongs to a specific target app. Without this, text typed in KGPT's own
-    // settings dialogs (or another app) may leak into the next app and break trigger parsing.
-    private String shadowPackage = null;
+    // Shadow buffer belongs to a specific editor field. Without this, text typed in KGPT's own
+    // settings dialogs (or another field) may leak into the next one and break trigger parsing.
+    // A few recent fields keep their own buffer so switching back and forth does not lose it;
+    // a kept buffer is only reused if the field's cursor is still where the buffer left it.
+    private String shadowField = null;
+    // Bumped on every onStartInput, see getInputSessionId().
+    private static final String INPUT_SESSION_PREFIX = java.util.UUID.randomUUID() + "#";
+    private volatile long inputSession = 0;
+    private static final int SHADOW_LRU_SIZE = 4;
+    // Edits mirrored into the shadow this recently are still being reported by the editor.
+    private static final long SHADOW_ANCHOR_WINDOW_MS = 300;
+    private final LinkedHashMap<String, ShadowTextBuffer> shadowsByField =
+            new LinkedHashMap<String, ShadowTextBuffer>(8, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ShadowTextBuffer> eldest) {
+                    return size() > SHADOW_LRU_SIZE;
+                }
+            };
 
 // Track where the latest typedText snapshot came from.
 private static final int BUFFER_SRC_UNKNOWN = 0;
@@ -202,51 +224,142 @@ public boolean isLastBufferFromShadow() {
         if (ims == null)
             return;
 
+        syncShadowSelection(newSelEnd);
+
         InputConnection ic = ims.getCurrentInputConnection();
         if (ic == null) {
             return;
         }
 
-        // Primary path: prefer ExtractedText (full buffer when supported by the editor)
-        try {
-            ExtractedText extractedText = ic.getExtractedText(new ExtractedTextRequest(), 0);
-            if (extractedText != null && extractedText.text != null) {
-                typedText = extractedText.text.toString();
-                int selEnd = extractedText.selectionEnd;
-                lastBufferSource = BUFFER_SRC_EXTRACTED;
-                int candidateCursor = (selEnd >= 0 ? selEnd : newSelEnd);
-                cursor = Math.max(0, Math.min(candidateCursor, typedText.length()));
-                    lastBufferSource = BUFFER_SRC_EXTRACTED;
-                    notifyTextUpdate();
-                return;
+        // Prefer ExtractedText (full buffer when supported by the editor); some custom editors
+        // return null for it, then a local buffer around the cursor keeps triggers working.
+        readEditorAndNotify(ic, newSelEnd, true, 8192, 1024);
+    }
+
+    // =============================
+    // Adaptive editor reads
+    // =============================
+
+    private final EditorReadCapabilities readCaps = new EditorReadCapabilities();
+
+    /**
+     * Reads the editor text with the method learned for the current field and notifies
+     * listeners. In the common case this is exactly one Binder call:
+     * - extracted-text editors: one getExtractedText()
+     * - cursor-relative editors: one getTextBeforeCursor() sized to the longest trigger; the
+     *   full window is only read when that tail may end with a trigger.
+     * Unknown fields are probed in the caller's preferred order and the winner is remembered.
+     *
+     * @param selEndHint cursor to use when the editor does not report one, or -1 for end of text
+     * @return true if listeners were notified
+     */
+    private boolean readEditorAndNotify(InputConnection ic, int selEndHint, boolean extractedFirst,
+            int maxBefore, int maxAfter) {
+        EditorInfo ei = null;
+        try { ei = ims != null ? ims.getCurrentInputEditorInfo() : null; } catch (Throwable ignored) {}
+        EditorReadCapabilities.Entry cap = readCaps.get(ei);
+        int method = cap.method;
+
+        if (method == EditorReadCapabilities.METHOD_SURROUNDING
+                || method == EditorReadCapabilities.METHOD_BEFORE_AFTER) {
+            int tailWindow = requiredTailWindow();
+            if (tailWindow > 0 && tailWindow < maxBefore) {
+                CharSequence tail = null;
+                try { tail = ic.getTextBeforeCursor(tailWindow, 0); } catch (Throwable ignored) {}
+                if (tail == null) {
+                    readCaps.recordFailure(cap, method);
+                } else if (!anyListenerMayTrigger(tail)) {
+                    typedTail = tail.toString();
+                    lastBufferSource = BUFFER_SRC_BEFORE_AFTER;
+                    notifyTextUpdate(typedTail, typedTail.length());
+                    return true;
+                }
             }
-        } catch (Throwable ignored) {
         }
 
-        // Fallback: some custom editors return null for getExtractedText().
-        // Build a local buffer around the cursor using getTextBefore/AfterCursor so triggers still work.
-        try {
-            final int MAX_BEFORE = 8192;
-            final int MAX_AFTER = 1024;
+        if (method != EditorReadCapabilities.METHOD_UNKNOWN) {
+            if (readWith(ic, method, selEndHint, maxBefore, maxAfter)) {
+                notifyTextUpdate();
+                return true;
+            }
+            readCaps.recordFailure(cap, method);
+        }
 
-            CharSequence before = ic.getTextBeforeCursor(MAX_BEFORE, 0);
-            CharSequence after = ic.getTextAfterCursor(MAX_AFTER, 0);
+        int relative = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? EditorReadCapabilities.METHOD_SURROUNDING
+                : EditorReadCapabilities.METHOD_BEFORE_AFTER;
+        int[] order = extractedFirst
+                ? new int[]{EditorReadCapabilities.METHOD_EXTRACTED, relative}
+                : new int[]{relative, EditorReadCapabilities.METHOD_EXTRACTED};
+        for (int m : order) {
+            if (m == method) continue;
+            if (readWith(ic, m, selEndHint, maxBefore, maxAfter)) {
+                readCaps.recordSuccess(cap, m);
+                notifyTextUpdate();
+                return true;
+            }
+        }
+        return false;
+    }
 
-            if (before == null && after == null) {
-                return;
+    /** Fills typedText/cursor with one read method; does not notify. */
+    private boolean readWith(InputConnection ic, int method, int selEndHint, int maxBefore, int maxAfter) {
+        try {
+            switch (method) {
+                case EditorReadCapabilities.METHOD_EXTRACTED: {
+                    ExtractedText extractedText = ic.getExtractedText(new ExtractedTextRequest(), 0);
+                    if (extractedText == null || extractedText.text == null) return false;
+                    typedText = extractedText.text.toString();
+                    int selEnd = extractedText.selectionEnd;
+                    int candidateCursor = selEnd >= 0 ? selEnd : (selEndHint >= 0 ? selEndHint : typedText.length());
+                    cursor = Math.max(0, Math.min(candidateCursor, typedText.length()));
+                    lastBufferSource = BUFFER_SRC_EXTRACTED;
+                    return true;
+                }
+                case EditorReadCapabilities.METHOD_SURROUNDING: {
+                    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return false;
+                    SurroundingText st = ic.getSurroundingText(maxBefore, maxAfter, 0);
+                    if (st == null || st.getText() == null) return false;
+                    typedText = st.getText().toString();
+                    cursor = Math.max(0, Math.min(st.getSelectionEnd(), typedText.length()));
+                    lastBufferSource = BUFFER_SRC_BEFORE_AFTER;
+                    return true;
+                }
+                case EditorReadCapabilities.METHOD_BEFORE_AFTER: {
+                    CharSequence before = ic.getTextBeforeCursor(maxBefore, 0);
+                    CharSequence after = ic.getTextAfterCursor(maxAfter, 0);
+                    if (before == null && after == null) return false;
+                    String b = before != null ? before.toString() : "";
+                    String a = after != null ? after.toString() : "";
+                    typedText = b + a;
+                    cursor = b.length();
+                    lastBufferSource = BUFFER_SRC_BEFORE_AFTER;
+                    return true;
+                }
+                default:
+                    return false;
             }
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
 
-            StringBuilder sb = new StringBuilder();
-            if (before != null) sb.append(before);
-            int localCursor = sb.length();
-            if (after != null) sb.append(after);
+    /** Largest tail any listener needs, or 0 if one of them needs the full buffer. */
+    private int requiredTailWindow() {
+        int max = 0;
+        for (InputEventListener listener : mListeners) {
+            int w = listener.getTriggerTailWindow();
+            if (w <= 0) return 0;
+            max = Math.max(max, w);
+        }
+        return max;
+    }
 
-            typedText = sb.toString();
-            cursor = localCursor;
-            lastBufferSource = BUFFER_SRC_BEFORE_AFTER;
-            notifyTextUpdate();
-        } catch (Throwable ignored) {
+    private boolean anyListenerMayTrigger(CharSequence tail) {
+        for (InputEventListener listener : mListeners) {
+            if (listener.mayTriggerOnTail(tail)) return true;
         }
+        return false;
     }
 
 
@@ -265,11 +378,11 @@ public boolean isLastBufferFromShadow() {
 			if (pkg != null) {
 				if (tn.eluea.kgpt.BuildConfig.APPLICATION_ID.equals(pkg)) {
 					// We're typing inside KGPT's own UI. Clear shadow so it won't leak into other apps.
-					shadowPackage = pkg;
+					ensureShadowForField(ei);
 					resetShadow();
 					return;
 				}
-				ensureShadowForPackage(pkg);
+				ensureShadowForField(ei);
 			}
         } catch (Throwable ignored) {}
         if (ic == null) {
@@ -297,44 +410,30 @@ public boolean isLastBufferFromShadow() {
             // Prefer a local buffer around the cursor: it works in many editors even when getExtractedText() returns null.
             // IMPORTANT: include after-cursor text when possible so UI layers (e.g., Quick Jump menu) can read the
             // "current line" even if the cursor is placed at the beginning of the word/line.
-            try {
-                final int MAX_BEFORE = INPUT_EVENT_MAX_BEFORE;
-                final int MAX_AFTER = 2048;
-
-                CharSequence before = current.getTextBeforeCursor(MAX_BEFORE, 0);
-                CharSequence after = current.getTextAfterCursor(MAX_AFTER, 0);
-
-                if (before != null || after != null) {
-                    String b = before != null ? before.toString() : "";
-                    String a = after != null ? after.toString() : "";
-                    lastBufferSource = BUFFER_SRC_BEFORE_AFTER;
-                    typedText = b + a;
-                    cursor = b.length();
-                    notifyTextUpdate();
-                    return;
-                }
-            } catch (Throwable ignored) {}
-
-            // Fallback to ExtractedText (some editors only support this)
-            try {
-                ExtractedText extractedText = current.getExtractedText(new ExtractedTextRequest(), 0);
-                if (extractedText != null && extractedText.text != null) {
-                    typedText = extractedText.text.toString();
-                    int selEnd = extractedText.selectionEnd;
-                lastBufferSource = BUFFER_SRC_EXTRACTED;
-                    int candidateCursor = (selEnd >= 0 ? selEnd : typedText.length());
-                    cursor = Math.max(0, Math.min(candidateCursor, typedText.length()));
-                    lastBufferSource = BUFFER_SRC_EXTRACTED;
-                    notifyTextUpdate();
-                }
-            } catch (Throwable ignored) {}
+            // ExtractedText is the fallback (some editors only support this).
+            if (readEditorAndNotify(current, -1, false, INPUT_EVENT_MAX_BEFORE, 2048)) {
+                return;
+            }
 
 
 // Fallback to shadow buffer: some editors return null for both methods.
 if (shadow.length() > 0) {
-    typedText = shadow.toString();
-    cursor = typedText.length();
     lastBufferSource = BUFFER_SRC_SHADOW;
+    // Same tail pre-check as for cursor-relative editors, on a view of the buffer: the
+    // whole text is only copied out when a trigger may end at the cursor.
+    int tailWindow = requiredTailWindow();
+    int end = shadow.cursor();
+    if (tailWindow > 0 && tailWindow < end) {
+        CharSequence tail = shadow.subSequence(end - tailWindow, end);
+        if (!anyListenerMayTrigger(tail)) {
+            typedTail = tail.toString();
+            notifyTextUpdate(typedTail, typedTail.length());
+            return;
+        }
+    }
+    // toString() is cached by the buffer until the next edit.
+    typedText = shadow.toString();
+    cursor = end;
     notifyTextUpdate();
 }
         }, INPUT_EVENT_DEBOUNCE_MS);
@@ -342,17 +441,10 @@ if (shadow.length() > 0) {
 
 
 
-private void trimShadowIfNeeded() {
-    if (shadow.length() > SHADOW_MAX) {
-        shadow.delete(0, shadow.length() - SHADOW_MAX);
-    }
-}
-
-    private String getCurrentTargetPackageName() {
+    /** The focused editor, or null when the keyboard is not bound to one. */
+    public EditorInfo getCurrentEditorInfo() {
         try {
-            if (ims == null) return null;
-            EditorInfo ei = ims.getCurrentInputEditorInfo();
-            return ei != null ? ei.packageName : null;
+            return ims != null ? ims.getCurrentInputEditorInfo() : null;
         } catch (Throwable ignored) {
             return null;
         }
@@ -362,29 +454,85 @@ private void trimShadowIfNeeded() {
         return pkg != null && BuildConfig.APPLICATION_ID.equals(pkg);
     }
 
-    private void ensureShadowForPackage(String pkg) {
-        if (pkg == null) return;
-        if (shadowPackage == null) {
-            shadowPackage = pkg;
+    /**
+     * Identifies the current input session: changes on every onStartInput, and differs between
+     * processes, so a value recorded earlier matches only while that same session is active.
+     */
+    public String getInputSessionId() {
+        return INPUT_SESSION_PREFIX + inputSession;
+    }
+
+    /** Called when the IME binds to an editor; drops a kept buffer the editor no longer matches. */
+    public void onStartInput(EditorInfo ei) {
+        inputSession++;
+        if (ei == null || ei.packageName == null) return;
+        if (EditorReadCapabilities.keyOf(ei).equals(shadowField)) {
+            // Same field restarted (e.g. a chat box cleared after sending).
+            if (!shadow.isAnchoredAt(ei.initialSelEnd)) resetShadow();
             return;
         }
-        if (!pkg.equals(shadowPackage)) {
+        ensureShadowForField(ei);
+    }
+
+    private void ensureShadowForField(EditorInfo ei) {
+        if (ei == null || ei.packageName == null) return;
+        String key = EditorReadCapabilities.keyOf(ei);
+        if (shadowField == null) {
+            // Text typed before the target was known belongs to it.
+            shadowField = key;
+            shadowsByField.put(key, shadow);
+            return;
+        }
+        if (!key.equals(shadowField)) {
+            ShadowTextBuffer next = shadowsByField.get(key);
+            if (next == null) {
+                next = new ShadowTextBuffer(SHADOW_MAX);
+                shadowsByField.put(key, next);
+            } else if (!next.isAnchoredAt(ei.initialSelEnd)) {
+                // Another view with the same id, or the app changed the text meanwhile.
+                next.clear();
+            }
+            shadow = next;
+            shadowField = key;
+            // Composing state is not tracked per field; the previous composing span is gone.
+            composingActive = false;
+            composingLen = 0;
+        }
+    }
+
+    /**
+     * Moves the shadow cursor with the editor's. Right after a mirrored edit the editor reports
+     * where that edit left the cursor, which is where the buffer's cursor already is, so the
+     * report pins the offset mapping. Any other report is the user moving the cursor.
+     */
+    private void syncShadowSelection(int selEnd) {
+        if (selEnd < 0) return;
+        EditorInfo ei = getCurrentEditorInfo();
+        if (ei == null || isKgptPackage(ei.packageName)) return;
+        ensureShadowForField(ei);
+        if (shadow.length() == 0
+                || System.currentTimeMillis() - lastEditorMutationMs <= SHADOW_ANCHOR_WINDOW_MS) {
+            shadow.anchorCursorAt(selEnd);
+            return;
+        }
+        int index = shadow.toIndex(selEnd);
+        if (index >= 0) {
+            shadow.moveCursor(index);
+        } else {
+            // The cursor left the mirrored text; what is around it now is unknown.
             resetShadow();
-            shadowPackage = pkg;
+            shadow.anchorCursorAt(selEnd);
         }
+        composingActive = false;
+        composingLen = 0;
     }
 
     private void shadowDeleteFromEnd(int count) {
         if (count <= 0) return;
         try {
-            String pkg = getCurrentTargetPackageName();
-            ensureShadowForPackage(pkg);
+            ensureShadowForField(getCurrentEditorInfo());
 
-            int len = shadow.length();
-            if (len <= 0) return;
-
-            int start = Math.max(0, len - count);
-            shadow.delete(start, len);
+            shadow.deleteBefore(count);
         } catch (Exception ignored) {
         }
     }
@@ -401,25 +549,23 @@ public void onInputEventText(CharSequence cs, boolean composing) {
     String s = cs.toString();
     if (s.isEmpty()) return;
 
-	String pkg = getCurrentTargetPackageName();
-	if (isKgptPackage(pkg)) {
-		shadowPackage = pkg;
+	EditorInfo ei = getCurrentEditorInfo();
+	if (ei != null && isKgptPackage(ei.packageName)) {
+		ensureShadowForField(ei);
 		resetShadow();
 		return;
 	}
-	ensureShadowForPackage(pkg);
+	ensureShadowForField(ei);
 
     markEditorMutation(composing);
 
     // If we were composing, replace the previous composing tail with the new one
-    if (composingActive && composingLen > 0 && shadow.length() >= composingLen) {
-        int start = Math.max(0, shadow.length() - composingLen);
-        shadow.delete(start, shadow.length());
+    if (composingActive && composingLen > 0 && shadow.cursor() >= composingLen) {
+        shadow.deleteBefore(composingLen);
         composingLen = 0;
     }
 
-    shadow.append(s);
-    trimShadowIfNeeded();
+    shadow.insert(s);
 
     if (composing) {
         composingActive = true;
@@ -433,13 +579,13 @@ public void onInputEventText(CharSequence cs, boolean composing) {
 public void onInputEventFinishComposing() {
     if (inputNotify) return;
 
-    String pkg = getCurrentTargetPackageName();
-    if (isKgptPackage(pkg)) {
-        shadowPackage = pkg;
+    EditorInfo ei = getCurrentEditorInfo();
+    if (ei != null && isKgptPackage(ei.packageName)) {
+        ensureShadowForField(ei);
         resetShadow();
         return;
     }
-    ensureShadowForPackage(pkg);
+    ensureShadowForField(ei);
 
     markEditorMutation(true);
 
@@ -452,21 +598,18 @@ public void onInputEventDelete(int before, int after) {
     before = Math.max(0, before);
     after = Math.max(0, after);
 
-    String pkg = getCurrentTargetPackageName();
-    if (isKgptPackage(pkg)) {
-        shadowPackage = pkg;
+    EditorInfo ei = getCurrentEditorInfo();
+    if (ei != null && isKgptPackage(ei.packageName)) {
+        ensureShadowForField(ei);
         resetShadow();
         return;
     }
-    ensureShadowForPackage(pkg);
+    ensureShadowForField(ei);
 
     markEditorMutation(false);
 
-    if ((before > 0) && (shadow.length() > 0)) {
-        int start = Math.max(0, shadow.length() - before);
-        shadow.delete(start, shadow.length());
-    }
-    // We don't track cursor-after deletions accurately in tail-mode; ignore 'after'.
+    shadow.deleteBefore(before);
+    shadow.deleteAfter(after);
 
     composingActive = false;
     composingLen = 0;
@@ -475,31 +618,32 @@ public void onInputEventDelete(int before, int after) {
 public void onInputEventReplace(int start, int end, CharSequence cs) {
     if (inputNotify) return;
 
-    String pkg = getCurrentTargetPackageName();
-    if (isKgptPackage(pkg)) {
-        shadowPackage = pkg;
+    EditorInfo ei = getCurrentEditorInfo();
+    if (ei != null && isKgptPackage(ei.packageName)) {
+        ensureShadowForField(ei);
         resetShadow();
         return;
     }
-    ensureShadowForPackage(pkg);
+    ensureShadowForField(ei);
 
     markEditorMutation(false);
 
     composingActive = false;
     composingLen = 0;
-    if (cs != null) {
-        String s = cs.toString();
-        if (!s.isEmpty()) {
-            shadow.append(s);
-            trimShadowIfNeeded();
-        }
+    String s = cs != null ? cs.toString() : "";
+    int startIndex = shadow.toIndex(Math.min(start, end));
+    int endIndex = shadow.toIndex(Math.max(start, end));
+    if (startIndex >= 0 && endIndex >= 0) {
+        shadow.replace(startIndex, endIndex, s);
+    } else if (!s.isEmpty()) {
+        shadow.insert(s);
     }
 }
 
     
 
 public void resetShadow() {
-    try { shadow.setLength(0); } catch (Throwable ignored) {}
+    try { shadow.clear(); } catch (Throwable ignored) {}
     composingActive = false;
     composingLen = 0;
 }
@@ -526,8 +670,12 @@ public void addListener(InputEventListener listener) {
     }
 
     private void notifyTextUpdate() {
+        notifyTextUpdate(typedText, cursor);
+    }
+
+    private void notifyTextUpdate(String text, int cursor) {
         for (InputEventListener listener : mListeners) {
-            listener.onTextUpdate(typedText, cursor);
+            listener.onTextUpdate(text, cursor);
         }
     }
 
@@ -537,7 +685,12 @@ public void addListener(InputEventListener listener) {
 
     public void unregisterService(InputMethodService ims) {
         this.ims = null;
-        try { shadow.setLength(0); } catch (Throwable ignored) {}
+        try {
+            readCaps.clear();
+            shadow.clear();
+            shadowsByField.clear();
+            shadowField = null;
+        } catch (Throwable ignored) {}
         composingActive = false;
         composingLen = 0;
     }
@@ -625,6 +778,47 @@ public void addListener(InputEventListener listener) {
         scheduleDeferred();
     }
 
+    /**
+     * Finish composing and commit {@code text} inside one batch edit, so the editor applies
+     * both and reports the selection change once. Used by the streaming renderer once per frame.
+     *
+     * @return true if written immediately; false if queued for when the InputConnection is back,
+     *         or if the commit itself failed and may have been applied in part.
+     */
+    public boolean commitBatched(String text) {
+        if (text == null || text.isEmpty()) return true;
+        // Text still queued from an earlier frame goes first, or this frame would overtake it.
+        if (hasPending()) {
+            deferredHandler.removeCallbacks(deferredRunnable);
+            deferredRunnable.run();
+        }
+        InputConnection ic = hasPending() ? null : getIC();
+        if (ic != null) {
+            boolean began = false;
+            boolean commitSent = false;
+            try {
+                began = ic.beginBatchEdit();
+                ic.finishComposingText();
+                commitSent = true;
+                ic.commitText(text, 1);
+                return true;
+            } catch (Throwable t) {
+                Logger.error("IMS commitBatched failed: " + t.getMessage());
+                // The editor may already hold part of this batch; queueing the text again
+                // could insert it twice.
+                if (commitSent) return false;
+            } finally {
+                if (began) {
+                    try { ic.endBatchEdit(); } catch (Throwable ignored) {}
+                }
+            }
+        }
+        pendingFinishComposing = true;
+        pendingCommitBuffer.append(text);
+        scheduleDeferred();
+        return false;
+    }
+
     /**
      * Commit text with a custom cursor positioning behavior.
      *
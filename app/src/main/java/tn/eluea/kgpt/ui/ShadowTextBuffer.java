@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Gap buffer mirror of the target editor, fed from InputConnection events.
+ *
+ * - Inserts/deletes at the cursor are O(1) amortized (no shifting of the whole text).
+ * - The cursor follows the editor's selection ({@link #toIndex(int)} maps editor offsets once
+ *   {@link #anchorCursorAt(int)} has pinned them), so edits away from the end only shift the
+ *   chars between the old and the new cursor.
+ * - Over-long text is trimmed from the head lazily by moving {@link #head}, the space is
+ *   reclaimed the next time the gap has to grow.
+ * - {@link #toString()} is cached until the next mutation, so repeated fallback reads do
+ *   not copy the text again.
+ * - {@link #subSequence(int, int)} returns a view, not a copy. A view is only valid until the
+ *   next mutation and throws {@link ConcurrentModificationException} after that.
+ *
+ * Not thread-safe: used from the IME main thread only.
+ */
+final class ShadowTextBuffer implements CharSequence {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int maxLength;
+
+    private char[] buf;
+    // Live text is buf[head, gapStart) + buf[gapEnd, buf.length). The cursor sits at gapStart.
+    private int head = 0;
+    private int gapStart = 0;
+    private int gapEnd;
+
+    // Editor offset of index 0, or -1 until a selection update pins it.
+    private int origin = -1;
+
+    private int modCount = 0;
+    private String snapshot = "";
+
+    ShadowTextBuffer(int maxLength) {
+        this.maxLength = Math.max(1, maxLength);
+        this.buf = new char[Math.min(INITIAL_CAPACITY, this.maxLength)];
+        this.gapEnd = buf.length;
+    }
+
+    @Override
+    public int length() {
+        return (gapStart - head) + (buf.length - gapEnd);
+    }
+
+    public int cursor() {
+        return gapStart - head;
+    }
+
+    @Override
+    public char charAt(int index) {
+        int pre = gapStart - head;
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+        return index < pre ? buf[head + index] : buf[gapEnd + (index - pre)];
+    }
+
+    /** Inserts text at the cursor and moves the cursor after it. */
+    public void insert(CharSequence s) {
+        if (s == null) return;
+        int n = s.length();
+        if (n == 0) return;
+        if (n > maxLength) {
+            // Only the tail can survive trimming anyway.
+            s = s.subSequence(n - maxLength, n);
+            n = maxLength;
+        }
+        ensureGap(n);
+        if (s instanceof String) {
+            ((String) s).getChars(0, n, buf, gapStart);
+        } else {
+            for (int i = 0; i < n; i++) buf[gapStart + i] = s.charAt(i);
+        }
+        gapStart += n;
+        trimHead();
+        mutated();
+    }
+
+    /** Deletes up to {@code count} chars before the cursor. */
+    public void deleteBefore(int count) {
+        int n = Math.min(Math.max(0, count), cursor());
+        if (n == 0) return;
+        gapStart -= n;
+        mutated();
+    }
+
+    /** Deletes up to {@code count} chars after the cursor. */
+    public void deleteAfter(int count) {
+        int n = Math.min(Math.max(0, count), buf.length - gapEnd);
+        if (n == 0) return;
+        gapEnd += n;
+        mutated();
+    }
+
+    /** Replaces [start, end) with {@code s} and leaves the cursor after it. */
+    public void replace(int start, int end, CharSequence s) {
+        int len = length();
+        int e = Math.max(0, Math.min(end, len));
+        int st = Math.max(0, Math.min(start, e));
+        moveCursor(e);
+        deleteBefore(e - st);
+        insert(s);
+    }
+
+    /** Records that the cursor is at {@code editorOffset} in the target editor. */
+    public void anchorCursorAt(int editorOffset) {
+        origin = editorOffset >= cursor() ? editorOffset - cursor() : -1;
+    }
+
+    /** True if the cursor is known to be at {@code editorOffset} in the target editor. */
+    public boolean isAnchoredAt(int editorOffset) {
+        return origin >= 0 && origin + cursor() == editorOffset;
+    }
+
+    /**
+     * Buffer index of an editor offset, or -1 when the mapping is unknown or the offset falls
+     * outside the mirrored text.
+     */
+    public int toIndex(int editorOffset) {
+        if (origin < 0) return -1;
+        int index = editorOffset - origin;
+        return index >= 0 && index <= length() ? index : -1;
+    }
+
+    /** Moves the cursor, shifting only the chars between the old and the new position. */
+    public void moveCursor(int position) {
+        int pos = Math.max(0, Math.min(position, length()));
+        int cur = cursor();
+        if (pos == cur) return;
+        if (pos < cur) {
+            int n = cur - pos;
+            System.arraycopy(buf, gapStart - n, buf, gapEnd - n, n);
+            gapStart -= n;
+            gapEnd -= n;
+        } else {
+            int n = pos - cur;
+            System.arraycopy(buf, gapEnd, buf, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+        // Content is unchanged, but views index through the gap.
+        modCount++;
+    }
+
+    public void clear() {
+        if (buf.length > INITIAL_CAPACITY * 4) buf = new char[INITIAL_CAPACITY];
+        head = 0;
+        gapStart = 0;
+        gapEnd = buf.length;
+        origin = -1;
+        mutated();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        return new Window(start, end, modCount);
+    }
+
+    @Override
+    public String toString() {
+        String s = snapshot;
+        if (s == null) {
+            int pre = gapStart - head;
+            int post = buf.length - gapEnd;
+            StringBuilder sb = new StringBuilder(pre + post);
+            sb.append(buf, head, pre).append(buf, gapEnd, post);
+            s = sb.toString();
+            snapshot = s;
+        }
+        return s;
+    }
+
+    private void mutated() {
+        modCount++;
+        snapshot = null;
+    }
+
+    /** Drops the oldest chars once the text is longer than maxLength. */
+    private void trimHead() {
+        int overflow = length() - maxLength;
+        if (overflow <= 0) return;
+        int pre = gapStart - head;
+        if (overflow <= pre) {
+            head += overflow;
+            if (origin >= 0) origin += overflow;
+        } else {
+            // Cursor is close to the start: drop everything before it and the rest after it.
+            head = gapStart;
+            gapEnd += overflow - pre;
+            if (origin >= 0) origin += pre;
+        }
+    }
+
+    /** Makes room for {@code n} chars at the cursor, compacting away trimmed head space first. */
+    private void ensureGap(int n) {
+        if (gapEnd - gapStart >= n) return;
+        int pre = gapStart - head;
+        int post = buf.length - gapEnd;
+        int needed = pre + post + n;
+        char[] target = buf;
+        if (buf.length < needed) {
+            // Keep some slack above maxLength so head trimming only compacts every few hundred chars.
+            int cap = Math.max(needed, Math.min(buf.length * 2, maxLength + maxLength / 4 + n));
+            target = new char[cap];
+        }
+        System.arraycopy(buf, head, target, 0, pre);
+        if (target != buf) {
+            System.arraycopy(buf, gapEnd, target, target.length - post, post);
+        }
+        buf = target;
+        head = 0;
+        gapStart = pre;
+        gapEnd = target.length - post;
+    }
+
+    private final class Window implements CharSequence {
+        private final int start;
+        private final int end;
+        private final int expectedModCount;
+
+        Window(int start, int end, int expectedModCount) {
+            this.start = start;
+            this.end = end;
+            this.expectedModCount = expectedModCount;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (expectedModCount != modCount) throw new ConcurrentModificationException();
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+            }
+            return ShadowTextBuffer.this.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int s, int e) {
+            if (s < 0 || e > end - start || s > e) {
+                throw new IndexOutOfBoundsException("start " + s + ", end " + e + ", length " + (end - start));
+            }
+            return new Window(start + s, start + e, expectedModCount);
+        }
+
+        @Override
+        public String toString() {
+            if (expectedModCount != modCount) throw new ConcurrentModificationException();
+            StringBuilder sb = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) sb.append(ShadowTextBuffer.this.charAt(i));
+            return sb.toString();
+        }
+    }
+}
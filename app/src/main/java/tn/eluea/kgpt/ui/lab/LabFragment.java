@@ -50,6 +50,7 @@ import tn.eluea.kgpt.llm.LanguageModel;
 import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.llm.SubModelSuggestions;
 import tn.eluea.kgpt.llm.ModelCapabilities;
+import tn.eluea.kgpt.llm.UsageTracker;
 import tn.eluea.kgpt.ui.UiInteractor;
 import android.widget.EditText;
 import android.text.TextWatcher;
@@ -578,6 +579,20 @@ public class LabFragment extends Fragment implements ProviderListDialogFragment.
             ));
         }
 
+        // Token usage dashboard (recorded per provider + sub-model by the IME process)
+        View rowUsage = view.findViewById(R.id.row_usage_stats);
+        TextView tvUsage = view.findViewById(R.id.tv_usage_stats_value);
+
+        Runnable refreshUsage = () -> {
+            if (tvUsage != null) tvUsage.setText(getUsageSummary());
+            if (tvMaxTokens != null) tvMaxTokens.setText(getOutputLengthSummary(safeGetMaxTokensLimit()));
+        };
+        refreshUsage.run();
+
+        if (rowUsage != null) {
+            rowUsage.setOnClickListener(v -> showUsageDialog(refreshUsage));
+        }
+
 
         // Generating Content settings (placeholder + trailing keyword + haptic)
         View rowGenContent = view.findViewById(R.id.row_generating_content);
@@ -1501,6 +1516,114 @@ private interface IntConsumer {
                 .show();
     }
 
+    private String getUsageSummary() {
+        long in = 0;
+        long out = 0;
+        try {
+            UsageTracker.getInstance().reload();
+            for (UsageTracker.Summary s : UsageTracker.getInstance().getSummaries()) {
+                in += s.promptTokens;
+                out += s.completionTokens;
+            }
+        } catch (Throwable ignored) {}
+        return getString(R.string.ui_usage_stats_value, formatTokenCount(in), formatTokenCount(out));
+    }
+
+    private static String formatTokenCount(long tokens) {
+        if (tokens >= 1_000_000L) return String.format(java.util.Locale.US, "%.1fM", tokens / 1_000_000d);
+        if (tokens >= 1_000L) return String.format(java.util.Locale.US, "%.1fk", tokens / 1_000d);
+        return String.valueOf(tokens);
+    }
+
+    /** One block character per day, scaled to the busiest day. */
+    private static String usageSparkline(List<UsageTracker.Day> days) {
+        final String blocks = "\u2581\u2582\u2583\u2584\u2585\u2586\u2587\u2588";
+        long max = 0;
+        for (UsageTracker.Day d : days) max = Math.max(max, d.promptTokens + d.completionTokens);
+        StringBuilder sb = new StringBuilder(days.size());
+        for (UsageTracker.Day d : days) {
+            long v = d.promptTokens + d.completionTokens;
+            if (max <= 0 || v <= 0) {
+                sb.append('\u00B7');
+            } else {
+                int idx = (int) Math.min(blocks.length() - 1, (v * blocks.length() - 1) / max);
+                sb.append(blocks.charAt(idx));
+            }
+        }
+        return sb.toString();
+    }
+
+    private void showUsageDialog(@Nullable Runnable onChanged) {
+        if (getContext() == null) return;
+
+        List<UsageTracker.Summary> summaries;
+        try {
+            UsageTracker.getInstance().reload();
+            summaries = UsageTracker.getInstance().getSummaries();
+        } catch (Throwable t) {
+            summaries = new ArrayList<>();
+        }
+
+        UsageTracker.Summary current = null;
+        try {
+            LanguageModel lm = SPManager.getInstance().getLanguageModel();
+            current = UsageTracker.getInstance().getSummary(
+                    UsageTracker.keyOf(lm, SPManager.getInstance().getSubModel(lm)));
+        } catch (Throwable ignored) {}
+
+        StringBuilder sb = new StringBuilder();
+        if (summaries.isEmpty()) {
+            sb.append(getString(R.string.ui_usage_stats_empty));
+        }
+        for (UsageTracker.Summary s : summaries) {
+            if (sb.length() > 0) sb.append("\n\n");
+            sb.append(s.provider).append(" \u00B7 ").append(s.subModel).append('\n');
+            sb.append(usageSparkline(s.days)).append('\n');
+            sb.append(getString(R.string.ui_usage_stats_line, s.requests,
+                    formatTokenCount(s.promptTokens), formatTokenCount(s.completionTokens)));
+            if (s.requests > 0 && s.estimated > 0) {
+                sb.append('\n').append(getString(R.string.ui_usage_stats_estimated, s.estimated * 100 / s.requests));
+            }
+            int suggested = s.getSuggestedMaxTokens();
+            if (suggested > 0) {
+                sb.append('\n').append(getString(R.string.ui_usage_stats_suggest, s.p95CompletionTokens, suggested));
+            }
+            if (s.requests > 0 && s.truncated > 0) {
+                sb.append('\n').append(getString(R.string.ui_usage_stats_truncated, s.truncated * 100 / s.requests));
+            }
+            if (s.isRunawayPrompt()) {
+                sb.append('\n').append(getString(R.string.ui_usage_stats_runaway,
+                        formatTokenCount(Math.round(s.avgPromptToday)),
+                        formatTokenCount(Math.round(s.avgPromptBefore))));
+            }
+        }
+
+        MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.ui_usage_stats)
+                .setMessage(sb.toString())
+                .setNegativeButton(android.R.string.cancel, null);
+
+        final int suggested = current == null ? -1 : Math.min(131072, current.getSuggestedMaxTokens());
+        if (suggested > 0 && suggested != safeGetMaxTokensLimit()) {
+            builder.setPositiveButton(R.string.ui_usage_stats_apply, (dialog, which) -> {
+                try {
+                    SPManager.getInstance().setMaxTokensLimit(suggested);
+                    android.widget.Toast.makeText(requireContext(),
+                            getString(R.string.ui_usage_stats_applied, suggested),
+                            android.widget.Toast.LENGTH_SHORT).show();
+                } catch (Throwable ignored) {}
+                if (onChanged != null) onChanged.run();
+            });
+        }
+        if (!summaries.isEmpty()) {
+            builder.setNeutralButton(R.string.ui_usage_stats_clear, (dialog, which) -> {
+                try { UsageTracker.getInstance().clear(); } catch (Throwable ignored) {}
+                if (onChanged != null) onChanged.run();
+            });
+        }
+        builder.show();
+    }
+
     private String getAutoDowngradeSummary() {
         int flags = 0;
         try { flags = SPManager.getInstance().getAutoDowngradeFlags(); } catch (Throwable ignored) {}
@@ -1509,6 +1632,9 @@ private interface IntConsumer {
         if ((flags & SPManager.DOWNGRADE_FLAG_STREAM) != 0) parts.add(getString(R.string.ui_auto_downgrade_stream));
         if ((flags & SPManager.DOWNGRADE_FLAG_BASEURL) != 0) parts.add(getString(R.string.ui_auto_downgrade_baseurl));
         if ((flags & SPManager.DOWNGRADE_FLAG_MODEL) != 0) parts.add(getString(R.string.ui_auto_downgrade_model));
+        if ((flags & SPManager.DOWNGRADE_FLAG_HEDGE) != 0) parts.add(getString(R.string.ui_auto_downgrade_hedge));
+        if ((flags & SPManager.DOWNGRADE_FLAG_CONTINUE) != 0) parts.add(getString(R.string.ui_auto_downgrade_continue));
+        if ((flags & SPManager.DOWNGRADE_FLAG_PROBE) != 0) parts.add(getString(R.string.ui_auto_downgrade_probe));
 
         if (parts.isEmpty()) return getString(R.string.ui_off);
         StringBuilder sb = new StringBuilder();
@@ -1527,6 +1653,9 @@ private interface IntConsumer {
         SwitchMaterial swStream = dialogView.findViewById(R.id.switch_downgrade_stream);
         SwitchMaterial swBaseUrl = dialogView.findViewById(R.id.switch_downgrade_baseurl);
         SwitchMaterial swModel = dialogView.findViewById(R.id.switch_downgrade_model);
+        SwitchMaterial swHedge = dialogView.findViewById(R.id.switch_downgrade_hedge);
+        SwitchMaterial swContinue = dialogView.findViewById(R.id.switch_downgrade_continue);
+        SwitchMaterial swProbe = dialogView.findViewById(R.id.switch_downgrade_probe);
         TextInputEditText etBaseUrl = dialogView.findViewById(R.id.et_backup_baseurl);
         View rowModel = dialogView.findViewById(R.id.row_backup_model);
         TextView tvModelValue = dialogView.findViewById(R.id.tv_backup_model_value);
@@ -1543,6 +1672,9 @@ private interface IntConsumer {
         if (swStream != null) swStream.setChecked((flags & SPManager.DOWNGRADE_FLAG_STREAM) != 0);
         if (swBaseUrl != null) swBaseUrl.setChecked((flags & SPManager.DOWNGRADE_FLAG_BASEURL) != 0);
         if (swModel != null) swModel.setChecked((flags & SPManager.DOWNGRADE_FLAG_MODEL) != 0);
+        if (swHedge != null) swHedge.setChecked((flags & SPManager.DOWNGRADE_FLAG_HEDGE) != 0);
+        if (swContinue != null) swContinue.setChecked((flags & SPManager.DOWNGRADE_FLAG_CONTINUE) != 0);
+        if (swProbe != null) swProbe.setChecked((flags & SPManager.DOWNGRADE_FLAG_PROBE) != 0);
 
         if (etBaseUrl != null && baseUrl != null) etBaseUrl.setText(baseUrl);
 
@@ -1605,6 +1737,9 @@ private interface IntConsumer {
                     if (swStream != null && swStream.isChecked()) newFlags |= SPManager.DOWNGRADE_FLAG_STREAM;
                     if (swBaseUrl != null && swBaseUrl.isChecked()) newFlags |= SPManager.DOWNGRADE_FLAG_BASEURL;
                     if (swModel != null && swModel.isChecked()) newFlags |= SPManager.DOWNGRADE_FLAG_MODEL;
+                    if (swHedge != null && swHedge.isChecked()) newFlags |= SPManager.DOWNGRADE_FLAG_HEDGE;
+                    if (swContinue != null && swContinue.isChecked()) newFlags |= SPManager.DOWNGRADE_FLAG_CONTINUE;
+                    if (swProbe != null && swProbe.isChecked()) newFlags |= SPManager.DOWNGRADE_FLAG_PROBE;
 
                     String newBase = "";
                     if (etBaseUrl != null && etBaseUrl.getText() != null) {
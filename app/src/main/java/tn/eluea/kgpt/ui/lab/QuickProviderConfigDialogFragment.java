@@ -21,13 +21,7 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -35,7 +29,9 @@ import java.util.List;
 import tn.eluea.kgpt.R;
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.ModelCatalog;
 import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.LlmExecutor;
 
 /**
  * 二级弹窗：快捷拦截配置（Quick Config Dialog）
@@ -214,11 +210,11 @@ if (btnFetch != null) {
                 btnFetch.setEnabled(false);
                 btnFetch.setText(R.string.fetch_models_loading);
 
-                new Thread(() -> {
+                LlmExecutor.getInstance().execute(LlmExecutor.Lane.BACKGROUND, () -> {
                     try {
                         // NOTE: variables captured by runOnUiThread() must be effectively-final.
                         // Avoid re-assigning the list to keep Java lambdas happy on older toolchains.
-                        List<String> fetched = fetchModelsFromEndpoint(provider, baseUrl, apiKey);
+                        List<String> fetched = ModelCatalog.getInstance().fetch(provider, baseUrl, apiKey);
                         final List<String> models = (fetched != null) ? fetched : new ArrayList<>();
 
                         // Persist
@@ -262,7 +258,7 @@ if (btnFetch != null) {
                             });
                         }
                     }
-                }).start();
+                });
             });
         }
 
@@ -319,123 +315,6 @@ if (btnFetch != null) {
         return s;
     }
 
-    private List<String> fetchModelsFromEndpoint(@NonNull LanguageModel model, @NonNull String baseUrl, @NonNull String apiKey) throws Exception {
-        String url = baseUrl;
-        while (url.endsWith("/")) url = url.substring(0, url.length() - 1);
-        url = url + "/models";
-
-        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-        con.setRequestMethod("GET");
-        con.setConnectTimeout(15000);
-        con.setReadTimeout(20000);
-        con.setRequestProperty("Accept", "application/json");
-
-        String key = apiKey.trim();
-        if (!key.isEmpty()) {
-            if (model == LanguageModel.Gemini) {
-                con.setRequestProperty("x-goog-api-key", key);
-            } else {
-                con.setRequestProperty("Authorization", "Bearer " + key);
-            }
-        }
-
-        int code = con.getResponseCode();
-        InputStream is = (code >= 200 && code < 300) ? con.getInputStream() : con.getErrorStream();
-        String body = readAll(is);
-
-        if (code < 200 || code >= 300) {
-            throw new Exception("HTTP " + code + " " + body);
-        }
-
-        return parseModelsFromResponse(model, body);
-    }
-
-    private String readAll(InputStream is) throws Exception {
-        if (is == null) return "";
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while ((line = br.readLine()) != null) {
-            sb.append(line);
-        }
-        br.close();
-        return sb.toString();
-    }
-
-    private List<String> parseModelsFromResponse(@NonNull LanguageModel model, String body) {
-        List<String> list = new ArrayList<>();
-        if (body == null) return list;
-
-        try {
-            JSONObject root = new JSONObject(body);
-
-            // OpenAI / OpenRouter style: { data: [ { id: ... }, ... ] }
-            if (root.has("data") && root.optJSONArray("data") != null) {
-                JSONArray arr = root.optJSONArray("data");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String id = ((JSONObject) it).optString("id", "");
-                        if (id.isEmpty()) id = ((JSONObject) it).optString("name", "");
-                        if (!id.isEmpty()) list.add(id);
-                    } else if (it instanceof String) {
-                        list.add((String) it);
-                    }
-                }
-            }
-
-            // Gemini style: { models: [ { name: "models/xxx" }, ... ] }
-            if (list.isEmpty() && root.has("models") && root.optJSONArray("models") != null) {
-                JSONArray arr = root.optJSONArray("models");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String name = ((JSONObject) it).optString("name", "");
-                        if (!TextUtils.isEmpty(name)) {
-                            // GeminiClient expects raw id (without "models/")
-                            if (model == LanguageModel.Gemini && name.startsWith("models/")) {
-                                name = name.substring("models/".length());
-                            }
-                            list.add(name);
-                        }
-                    } else if (it instanceof String) {
-                        String name = (String) it;
-                        if (model == LanguageModel.Gemini && name.startsWith("models/")) {
-                            name = name.substring("models/".length());
-                        }
-                        if (!TextUtils.isEmpty(name)) list.add(name);
-                    }
-                }
-            }
-
-            // Some relays: { result: [ ... ] }
-            if (list.isEmpty() && root.has("result") && root.optJSONArray("result") != null) {
-                JSONArray arr = root.optJSONArray("result");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String id = ((JSONObject) it).optString("id", "");
-                        if (id.isEmpty()) id = ((JSONObject) it).optString("name", "");
-                        if (!id.isEmpty()) list.add(id);
-                    } else if (it instanceof String) {
-                        list.add((String) it);
-                    }
-                }
-            }
-        } catch (Exception ignored) {
-        }
-
-        // Normalize & de-dup
-        ArrayList<String> out = new ArrayList<>();
-        for (String s : list) {
-            if (s == null) continue;
-            String v = s.trim();
-            if (v.isEmpty()) continue;
-            if (!out.contains(v)) out.add(v);
-        }
-        return out;
-    }
-
     private static int getProviderIconRes(@NonNull LanguageModel p) {
         switch (p) {
             case Gemini:
@@ -22,17 +22,11 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.materialswitch.MaterialSwitch;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.textfield.TextInputEditText;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -41,7 +35,9 @@ import java.util.List;
 import tn.eluea.kgpt.R;
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.ModelCatalog;
 import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.LlmExecutor;
 
 /**
  * Provider settings list (single merged page for Model + API Keys).
@@ -103,6 +99,13 @@ public class ProviderSettingsAdapter extends RecyclerView.Adapter<ProviderSettin
         // Auto-save API key (silent) + password toggle is handled by TextInputLayout in XML
         attachApiKeyAutoSave(holder, model);
 
+        holder.switchHttp2.setOnCheckedChangeListener(null);
+        holder.switchHttp2.setChecked(SPManager.isReady() && SPManager.getInstance().getHttp2Enabled(model));
+        holder.switchHttp2.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (!SPManager.isReady()) return;
+            SPManager.getInstance().setHttp2Enabled(model, isChecked);
+        });
+
         // Click left area: select provider only
         holder.layoutSelect.setOnClickListener(v -> {
             if (!SPManager.isReady()) {
@@ -171,9 +174,10 @@ public class ProviderSettingsAdapter extends RecyclerView.Adapter<ProviderSettin
             Toast.makeText(context, context.getString(R.string.fetch_models_loading), Toast.LENGTH_SHORT).show();
 
             final int bindPos = holder.getBindingAdapterPosition();
-            new Thread(() -> {
+            LlmExecutor.getInstance().execute(LlmExecutor.Lane.BACKGROUND, () -> {
                 try {
-                    List<String> models = fetchModelsFromEndpoint(model, baseUrl, apiKey);
+                    List<String> models = ModelCatalog.getInstance().fetch(model, baseUrl, apiKey);
+                    Collections.sort(models);
                     fragment.requireActivity().runOnUiThread(() -> {
                         holder.btnFetchModels.setEnabled(true);
                         if (models == null || models.isEmpty()) {
@@ -195,7 +199,7 @@ public class ProviderSettingsAdapter extends RecyclerView.Adapter<ProviderSettin
                         Toast.makeText(context, context.getString(R.string.fetch_models_failed) + ": " + e.getMessage(), Toast.LENGTH_LONG).show();
                     });
                 }
-            }).start();
+            });
         });
     }
 
@@ -423,137 +427,6 @@ public class ProviderSettingsAdapter extends RecyclerView.Adapter<ProviderSettin
         return s;
     }
 
-    private List<String> fetchModelsFromEndpoint(@NonNull LanguageModel model, @NonNull String baseUrl, @NonNull String apiKey) throws Exception {
-        String url = baseUrl;
-        while (url.endsWith("/")) url = url.substring(0, url.length() - 1);
-        url = url + "/models";
-
-        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-        con.setRequestMethod("GET");
-        con.setConnectTimeout(15000);
-        con.setReadTimeout(20000);
-        con.setRequestProperty("Accept", "application/json");
-
-        String key = apiKey.trim();
-        if (!key.isEmpty()) {
-            if (model == LanguageModel.Gemini) {
-                con.setRequestProperty("x-goog-api-key", key);
-            } else {
-                con.setRequestProperty("Authorization", "Bearer " + key);
-            }
-        }
-
-        int code = con.getResponseCode();
-        InputStream is = (code >= 200 && code < 300) ? con.getInputStream() : con.getErrorStream();
-        String body = readAll(is);
-
-        if (code < 200 || code >= 300) {
-            throw new Exception("HTTP " + code + " " + body);
-        }
-
-        return parseModelsFromResponse(model, body);
-    }
-
-    private String readAll(InputStream is) throws Exception {
-        if (is == null) return "";
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while ((line = br.readLine()) != null) {
-            sb.append(line);
-        }
-        br.close();
-        return sb.toString();
-    }
-
-    private List<String> parseModelsFromResponse(@NonNull LanguageModel model, String body) {
-        List<String> list = new ArrayList<>();
-        if (body == null) return list;
-
-        try {
-            JSONObject root = new JSONObject(body);
-
-            // OpenAI / OpenRouter style: { data: [ { id: ... }, ... ] }
-            if (root.has("data") && root.optJSONArray("data") != null) {
-                JSONArray arr = root.optJSONArray("data");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String id = ((JSONObject) it).optString("id", "");
-                        if (id.isEmpty()) id = ((JSONObject) it).optString("name", "");
-                        if (!id.isEmpty()) list.add(id);
-                    } else if (it instanceof String) {
-                        String name = (String) it;
-                    if (model == LanguageModel.Gemini && name.startsWith("models/")) {
-                        name = name.substring("models/".length());
-                    }
-                    list.add(name);
-                    }
-                }
-            }
-
-            // Gemini style: { models: [ { name: "models/xxx" }, ... ] }
-            if (list.isEmpty() && root.has("models") && root.optJSONArray("models") != null) {
-                JSONArray arr = root.optJSONArray("models");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String name = ((JSONObject) it).optString("name", "");
-                        if (!name.isEmpty()) {
-                            if (model == LanguageModel.Gemini && name.startsWith("models/")) {
-                                name = name.substring("models/".length());
-                            }
-                            list.add(name);
-                        }
-                    } else if (it instanceof String) {
-                        list.add((String) it);
-                    }
-                }
-            }
-
-            // Some relays: { result: [ ... ] }
-            if (list.isEmpty() && root.has("result") && root.optJSONArray("result") != null) {
-                JSONArray arr = root.optJSONArray("result");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String id = ((JSONObject) it).optString("id", "");
-                        if (id.isEmpty()) id = ((JSONObject) it).optString("name", "");
-                        if (!id.isEmpty()) list.add(id);
-                    } else if (it instanceof String) {
-                        list.add((String) it);
-                    }
-                }
-            }
-        } catch (Exception ignored) {
-        }
-
-        // Normalize Gemini names
-        if (model == LanguageModel.Gemini) {
-            List<String> normalized = new ArrayList<>();
-            for (String s : list) {
-                if (s == null) continue;
-                String x = s.trim();
-                if (x.startsWith("models/")) x = x.substring("models/".length());
-                normalized.add(x);
-            }
-            list = normalized;
-        }
-
-        // Sort and remove duplicates
-        Collections.sort(list);
-        List<String> unique = new ArrayList<>();
-        String last = null;
-        for (String s : list) {
-            if (s == null) continue;
-            if (last == null || !last.equals(s)) {
-                unique.add(s);
-                last = s;
-            }
-        }
-        return unique;
-    }
-
     public static class VH extends RecyclerView.ViewHolder {
         MaterialCardView card;
         View rowHeader;
@@ -569,6 +442,7 @@ public class ProviderSettingsAdapter extends RecyclerView.Adapter<ProviderSettin
         TextInputEditText etApiKey;
         TextInputEditText etBaseUrl;
         MaterialButton btnFetchModels;
+        MaterialSwitch switchHttp2;
 
         public VH(@NonNull View itemView) {
             super(itemView);
@@ -586,6 +460,7 @@ public class ProviderSettingsAdapter extends RecyclerView.Adapter<ProviderSettin
             etApiKey = itemView.findViewById(R.id.et_api_key);
             etBaseUrl = itemView.findViewById(R.id.et_base_url);
             btnFetchModels = itemView.findViewById(R.id.btn_fetch_models);
+            switchHttp2 = itemView.findViewById(R.id.switch_http2);
         }
 
         void setExpanded(boolean expanded) {
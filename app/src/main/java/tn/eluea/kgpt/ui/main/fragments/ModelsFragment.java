@@ -32,15 +32,9 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.text.Editable;
 import android.text.TextWatcher;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import tn.eluea.kgpt.roles.RoleManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
@@ -65,11 +59,13 @@ import java.util.Map;
 import tn.eluea.kgpt.R;
 import tn.eluea.kgpt.SPManager;
 import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.ModelCatalog;
 import tn.eluea.kgpt.llm.LanguageModelField;
 import tn.eluea.kgpt.ui.main.BottomSheetHelper;
 import tn.eluea.kgpt.ui.main.FloatingBottomSheet;
 import tn.eluea.kgpt.ui.main.adapters.ModelsAdapter;
 import tn.eluea.kgpt.util.PrefsCompat;
+import tn.eluea.kgpt.llm.LlmExecutor;
 
 public class ModelsFragment extends Fragment implements ModelsAdapter.OnModelSelectedListener {
 
@@ -615,9 +611,10 @@ VALID_MODELS.put(LanguageModel.GLM, new java.util.HashSet<>(java.util.Arrays.asL
             btnFetchModels.setEnabled(false);
             Toast.makeText(requireContext(), "正在获取模型列表…", Toast.LENGTH_SHORT).show();
 
-            new Thread(() -> {
+            LlmExecutor.getInstance().execute(LlmExecutor.Lane.BACKGROUND, () -> {
                 try {
-                    List<String> models = fetchModelsFromEndpoint(selectedModel, baseUrl, apiKey);
+                    List<String> models = ModelCatalog.getInstance().fetch(selectedModel, baseUrl, apiKey);
+                    Collections.sort(models);
                     requireActivity().runOnUiThread(() -> {
                         btnFetchModels.setEnabled(true);
                         if (models == null || models.isEmpty()) {
@@ -636,141 +633,10 @@ VALID_MODELS.put(LanguageModel.GLM, new java.util.HashSet<>(java.util.Arrays.asL
                                 Toast.LENGTH_LONG).show();
                     });
                 }
-            }).start();
+            });
         });
     }
 
-    private List<String> fetchModelsFromEndpoint(LanguageModel model, String baseUrl, String apiKey) throws Exception {
-        if (baseUrl == null || baseUrl.trim().isEmpty()) return new ArrayList<>();
-
-        String url = baseUrl;
-        while (url.endsWith("/")) url = url.substring(0, url.length() - 1);
-        url = url + "/models";
-
-        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-        con.setRequestMethod("GET");
-        con.setConnectTimeout(15000);
-        con.setReadTimeout(20000);
-        con.setRequestProperty("Accept", "application/json");
-
-        if (apiKey != null && !apiKey.trim().isEmpty()) {
-            if (model == LanguageModel.Gemini) {
-                con.setRequestProperty("x-goog-api-key", apiKey.trim());
-            } else {
-                con.setRequestProperty("Authorization", "Bearer " + apiKey.trim());
-            }
-        }
-
-        int code = con.getResponseCode();
-        InputStream is = (code >= 200 && code < 300) ? con.getInputStream() : con.getErrorStream();
-        String body = readAll(is);
-
-        if (code < 200 || code >= 300) {
-            throw new Exception("HTTP " + code + " " + body);
-        }
-
-        return parseModelsFromResponse(model, body);
-    }
-
-    private String readAll(InputStream is) throws Exception {
-        if (is == null) return "";
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while ((line = br.readLine()) != null) {
-            sb.append(line);
-        }
-        br.close();
-        return sb.toString();
-    }
-
-    private List<String> parseModelsFromResponse(LanguageModel model, String body) {
-        List<String> list = new ArrayList<>();
-        if (body == null) return list;
-
-        try {
-            JSONObject root = new JSONObject(body);
-
-            // OpenAI / OpenRouter style: { data: [ { id: ... }, ... ] }
-            if (root.has("data") && root.optJSONArray("data") != null) {
-                JSONArray arr = root.optJSONArray("data");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String id = ((JSONObject) it).optString("id", "");
-                        if (id.isEmpty()) id = ((JSONObject) it).optString("name", "");
-                        if (!id.isEmpty()) list.add(id);
-                    } else if (it instanceof String) {
-                        String name = (String) it;
-                    if (model == LanguageModel.Gemini && name.startsWith("models/")) {
-                        name = name.substring("models/".length());
-                    }
-                    list.add(name);
-                    }
-                }
-            }
-
-            // Gemini style: { models: [ { name: "models/xxx" }, ... ] }
-            if (list.isEmpty() && root.has("models") && root.optJSONArray("models") != null) {
-                JSONArray arr = root.optJSONArray("models");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String name = ((JSONObject) it).optString("name", "");
-                        if (!name.isEmpty()) {
-                            if (model == LanguageModel.Gemini && name.startsWith("models/")) {
-                                name = name.substring("models/".length());
-                            }
-                            list.add(name);
-                        }
-                    } else if (it instanceof String) {
-                        list.add((String) it);
-                    }
-                }
-            }
-
-            // Some relays: { result: [ ... ] }
-            if (list.isEmpty() && root.has("result") && root.optJSONArray("result") != null) {
-                JSONArray arr = root.optJSONArray("result");
-                for (int i = 0; i < arr.length(); i++) {
-                    Object it = arr.opt(i);
-                    if (it instanceof JSONObject) {
-                        String id = ((JSONObject) it).optString("id", "");
-                        if (id.isEmpty()) id = ((JSONObject) it).optString("name", "");
-                        if (!id.isEmpty()) list.add(id);
-                    } else if (it instanceof String) {
-                        list.add((String) it);
-                    }
-                }
-            }
-        } catch (Exception ignored) {}
-
-        // Normalize Gemini names
-        if (model == LanguageModel.Gemini) {
-            List<String> normalized = new ArrayList<>();
-            for (String s : list) {
-                if (s == null) continue;
-                String x = s.trim();
-                if (x.startsWith("models/")) x = x.substring("models/".length());
-                normalized.add(x);
-            }
-            list = normalized;
-        }
-
-        // Sort and remove duplicates
-        Collections.sort(list);
-        List<String> unique = new ArrayList<>();
-        String last = null;
-        for (String s : list) {
-            if (s == null) continue;
-            if (last == null || !last.equals(s)) {
-                unique.add(s);
-                last = s;
-            }
-        }
-        return unique;
-    }
-
     private void showModelPicker(List<String> models) {
         FloatingBottomSheet sheet = BottomSheetHelper.showFloating(requireContext(), R.layout.bottom_sheet_model_picker);
         View view = sheet.findViewById(android.R.id.content);
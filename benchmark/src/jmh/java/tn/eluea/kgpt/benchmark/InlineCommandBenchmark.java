@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
+import tn.eluea.kgpt.text.parse.result.InlineCommandParseResult;
+import tn.eluea.kgpt.text.parse.result.InlineCommandParseResultFactory;
+
+/**
+ * "preserved text /cmd prompt$" detection. MISS is the hot case: it runs on every
+ * keystroke while the AI trigger is enabled.
+ */
+@State(Scope.Benchmark)
+public class InlineCommandBenchmark {
+
+    @Param({"ASCII", "CJK", "EMOJI", "BUFFER_8K"})
+    public ParserCorpus.Body body;
+
+    @Param({"MISS", "INLINE_COMMAND", "AI"})
+    public ParserCorpus.Tail tail;
+
+    private String text;
+    private Set<String> commands;
+
+    @Setup
+    public void setUp() {
+        text = ParserCorpus.text(body, tail);
+        commands = new HashSet<>();
+        for (GenerativeAICommand c : ParserCorpus.commands(ParserCorpus.COMMAND_COUNT)) {
+            commands.add(c.getCommandPrefix());
+        }
+    }
+
+    @Benchmark
+    public InlineCommandParseResult parse() {
+        return InlineCommandParseResultFactory.parse(text, "$", commands);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.regex.Pattern;
+
+import tn.eluea.kgpt.text.parse.ParseDirective;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.text.parse.result.ParseResult;
+import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
+
+/**
+ * One regex directive in isolation, with its default pattern. "hit" appends the
+ * pattern's default symbol, otherwise the text ends with a plain letter.
+ */
+@State(Scope.Benchmark)
+public class ParseDirectiveBenchmark {
+
+    @Param({"CommandAI", "CommandCustom", "FormatBold", "WebSearch", "ModelSwitch", "Settings"})
+    public PatternType type;
+
+    @Param({"ASCII", "CJK", "EMOJI", "BUFFER_8K"})
+    public ParserCorpus.Body body;
+
+    @Param({"false", "true"})
+    public boolean hit;
+
+    private ParseDirective directive;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        directive = new ParseDirective(Pattern.compile(type.defaultPattern), ParseResultFactory.of(type));
+        String b = ParserCorpus.body(body);
+        if (!hit) {
+            text = b + "x";
+        } else if (type == PatternType.CommandCustom) {
+            text = b + "%cmd0%";
+        } else {
+            text = b + type.defaultSymbol;
+        }
+    }
+
+    @Benchmark
+    public ParseResult parse() {
+        return directive.parse(text);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
+import tn.eluea.kgpt.instruction.command.SimpleGenerativeAICommand;
+import tn.eluea.kgpt.text.TextParser;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+import tn.eluea.kgpt.ui.lab.apptrigger.AppTrigger;
+import tn.eluea.kgpt.ui.lab.apptrigger.AppTriggerManager;
+
+/**
+ * Realistic inputs for the per-keystroke path.
+ *
+ * A "body" is what the user already typed, a "tail" is what the last keystroke turned it
+ * into. MISS is by far the most common case on device: every keystroke runs the full
+ * parser and nothing matches.
+ */
+public final class ParserCorpus {
+
+    static final int ROLE_COUNT = 64;
+    static final int QUICK_JUMP_COUNT = 40;
+    static final int APP_TRIGGER_COUNT = 16;
+    static final int COMMAND_COUNT = 24;
+
+    static final int BUFFER_8K = 8 * 1024;
+
+    private static final String ASCII =
+            "Could you please rewrite this paragraph so it sounds a little more formal, thanks. ";
+    private static final String CJK =
+            "今天的会议推迟到下午三点，请大家提前准备好季度报告和预算表，谢谢配合。";
+    private static final String EMOJI =
+            "Party tonight 🎉🎉 bring snacks 🍕🍔 and drinks 🥤 see you there 👋😄 ";
+    private static final String MIXED_LINE =
+            "Meeting notes 会议记录 ✅ action items: 1) budget 预算 📊 2) hiring 招聘 👩‍💻\n";
+
+    public enum Body {
+        ASCII,
+        CJK,
+        EMOJI,
+        BUFFER_8K
+    }
+
+    public enum Tail {
+        /** Plain keystroke, nothing matches. */
+        MISS,
+        /** Global AI trigger ($). */
+        AI,
+        /** "text /cmd prompt$" with a configured command. */
+        INLINE_COMMAND,
+        /** Role-specific trigger, e.g. "#r42". */
+        ROLE,
+        /** Quick jump trigger, e.g. "gg17". */
+        QUICK_JUMP,
+        /** Text action, e.g. "$rephrase". */
+        TEXT_ACTION,
+        /** Format directive (bold). */
+        FORMAT
+    }
+
+    private ParserCorpus() {}
+
+    static String body(Body body) {
+        switch (body) {
+            case CJK:
+                return repeatTo(CJK, 160);
+            case EMOJI:
+                return repeatTo(EMOJI, 160);
+            case BUFFER_8K:
+                return repeatTo(MIXED_LINE, BUFFER_8K);
+            case ASCII:
+            default:
+                return repeatTo(ASCII, 160);
+        }
+    }
+
+    static String text(Body body, Tail tail) {
+        String b = body(body);
+        switch (tail) {
+            case AI:
+                return b + "$";
+            case INLINE_COMMAND:
+                return b + " /cmd7 make it shorter$";
+            case ROLE:
+                return b + " #r" + (ROLE_COUNT - 1);
+            case QUICK_JUMP:
+                return b + " gg" + (QUICK_JUMP_COUNT - 1);
+            case TEXT_ACTION:
+                return b + " $rephrase";
+            case FORMAT:
+                return b + "@";
+            case MISS:
+            default:
+                return b + "x";
+        }
+    }
+
+    /**
+     * Repeats {@code unit} until at least {@code length} chars, never splitting a surrogate pair.
+     */
+    static String repeatTo(String unit, int length) {
+        StringBuilder sb = new StringBuilder(length + unit.length());
+        while (sb.length() < length) sb.append(unit);
+        int end = length;
+        if (end > 0 && end < sb.length() && Character.isHighSurrogate(sb.charAt(end - 1))) end--;
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    static String rolesJson(int count) {
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject o = new JSONObject();
+            o.put("id", "role_" + i);
+            o.put("name", "Role " + i);
+            o.put("prompt", "You are assistant #" + i + ". Answer briefly.");
+            o.put("trigger", "#r" + i);
+            arr.put(o);
+        }
+        return arr.toString();
+    }
+
+    static String quickJumpJson(int count) {
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject o = new JSONObject();
+            o.put("id", "qj_" + i);
+            o.put("name", "Search " + i);
+            o.put("trigger", "gg" + i);
+            o.put("url", "https://example.com/search?engine=" + i + "&q={q}");
+            o.put("enabled", true);
+            arr.put(o);
+        }
+        return arr.toString();
+    }
+
+    static List<GenerativeAICommand> commands(int count) {
+        List<GenerativeAICommand> out = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            out.add(new SimpleGenerativeAICommand("cmd" + i, "Apply transformation #" + i));
+        }
+        return out;
+    }
+
+    static List<AppTrigger> appTriggers(int count) {
+        List<AppTrigger> out = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            out.add(new AppTrigger("com.example.app" + i, "App " + i, "open" + i));
+        }
+        return out;
+    }
+
+    /**
+     * Configures the SPManager stub like a heavily customised install and returns a parser
+     * wired to it.
+     */
+    static TextParser newConfiguredParser() {
+        SPManager sp = SPManager.getInstance();
+        sp.setParsePatterns(ParsePattern.getDefaultPatterns());
+        sp.setGenerativeAICommands(commands(COMMAND_COUNT));
+        sp.setRolesJson(rolesJson(ROLE_COUNT));
+        sp.setActiveRoleId("role_0");
+        sp.setQuickJumpConfig(quickJumpJson(QUICK_JUMP_COUNT));
+        sp.setAiTriggerMultilineEnabled(false);
+
+        TextParser parser = new TextParser();
+        parser.setAppTriggerManager(new AppTriggerManager(appTriggers(APP_TRIGGER_COUNT)));
+        parser.setTextActionsEnabled(true);
+        return parser;
+    }
+}
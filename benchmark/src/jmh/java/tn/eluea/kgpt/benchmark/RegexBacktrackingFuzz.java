@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import tn.eluea.kgpt.features.textactions.TextActionCommands;
+import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
+import tn.eluea.kgpt.text.TextParser;
+import tn.eluea.kgpt.text.parse.ParseDirective;
+import tn.eluea.kgpt.text.parse.PatternType;
+import tn.eluea.kgpt.text.parse.result.InlineAskParseResultFactory;
+import tn.eluea.kgpt.text.parse.result.InlineCommandParseResultFactory;
+import tn.eluea.kgpt.text.parse.result.ParseResultFactory;
+import tn.eluea.kgpt.text.transform.format.ConversionMethod;
+import tn.eluea.kgpt.text.transform.format.TextUnicodeConverter;
+
+/**
+ * Fuzz mode for the parser regexes.
+ *
+ * Two checks per target:
+ * 1) Budget: no single input up to 8 KB may take longer than --budget-ms. An input that
+ *    never returns is the classic catastrophic-backtracking signature.
+ * 2) Growth: for each adversarial family the time at 8 KB vs 4 KB is turned into a growth
+ *    exponent. Unanchored find() over a "([\\s\\S]+)\\$$" style pattern is already
+ *    quadratic, so only anything above --max-exponent (default 2.5) is flagged: the editor
+ *    buffer the IME sees can be 8 KB on every keystroke.
+ *
+ * Targets listed in the --baseline file are known to overrun past a given input size on
+ * today's tree. They are only fuzzed up to that size and only the budget applies to them:
+ * at a few hundred chars the growth exponent is too noisy to compare run to run, while a
+ * regression still shows up as an overrun below the recorded size. The run then fails on
+ * regressions and not on debt that is already written down. --write-baseline records the
+ * current overruns.
+ *
+ * Exit code is 1 when something is flagged, so it can gate CI.
+ */
+public final class RegexBacktrackingFuzz {
+
+    private static final int[] SIZES = {128, 256, 512, 1024, 2048, 4096, 8192};
+
+    /** Tokens that interact with the trigger regexes (symbols, separators, multi-byte). */
+    private static final String[] TOKENS = {
+            " ", "  ", "\n", "\t", "/", "$", "%", "@", "|", "~", "_", "??", "#", "*",
+            "a", "Z", "9", "cmd0", "/ask ", "/cmd1 ", "$tr", "#r1", "gg2",
+            "中", "文字", "🎉", "👩‍💻", "模型切换", "AI剪贴板",
+    };
+
+    /** Deterministic worst-case shapes, each repeated to the target size. */
+    private static final String[][] FAMILIES = {
+            {"spaces", " "},
+            {"slash-word-space", "/a "},
+            {"slash-ask", "/ask "},
+            {"dollar-word", "$ab "},
+            {"percent", "%a"},
+            {"question", "?"},
+            {"word-space", "ab "},
+            {"cjk", "中文"},
+            {"emoji", "🎉"},
+            {"newlines", "a\n"},
+    };
+
+    private final long budgetNanos;
+    private final double maxExponent;
+    private final int rounds;
+    private final Random random;
+
+    private ExecutorService worker = newWorker();
+    private final List<String> failures = new ArrayList<>();
+    /** Target -> largest input size it is fuzzed up to. Targets not listed get every size. */
+    private final Map<String, Integer> baseline = new LinkedHashMap<>();
+    /** Targets that were flagged in this run, for --write-baseline. */
+    private final Set<String> flagged = new LinkedHashSet<>();
+    /** First size that overran the budget per target in this run. */
+    private final Map<String, Integer> overruns = new LinkedHashMap<>();
+
+    private RegexBacktrackingFuzz(long seed, int rounds, long budgetMs, double maxExponent) {
+        this.random = new Random(seed);
+        this.rounds = rounds;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        this.maxExponent = maxExponent;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = 0x4B475054L;
+        int rounds = 200;
+        long budgetMs = 250;
+        double maxExponent = 2.5;
+        String baselineFile = null;
+        String writeBaselineFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--budget-ms":
+                    budgetMs = Long.parseLong(args[i + 1]);
+                    break;
+                case "--max-exponent":
+                    maxExponent = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--baseline":
+                    baselineFile = args[i + 1];
+                    break;
+                case "--write-baseline":
+                    writeBaselineFile = args[i + 1];
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+            }
+        }
+
+        RegexBacktrackingFuzz fuzz = new RegexBacktrackingFuzz(seed, rounds, budgetMs, maxExponent);
+        if (baselineFile != null && writeBaselineFile == null) {
+            fuzz.readBaseline(Paths.get(baselineFile));
+        }
+        System.out.println("Parser fuzz: seed=" + seed + " rounds=" + rounds
+                + " budget=" + budgetMs + "ms maxExponent=" + maxExponent
+                + " baseline=" + fuzz.baseline.size() + " target(s)");
+        for (Map.Entry<String, Function<String, Object>> e : targets().entrySet()) {
+            fuzz.run(e.getKey(), e.getValue());
+        }
+        fuzz.worker.shutdownNow();
+
+        if (writeBaselineFile != null) {
+            fuzz.writeBaseline(Paths.get(writeBaselineFile));
+            System.out.println("Baseline written to " + writeBaselineFile
+                    + " (" + fuzz.flagged.size() + " target(s)).");
+            System.exit(0);
+        }
+
+        if (fuzz.failures.isEmpty()) {
+            System.out.println("OK: no catastrophic backtracking detected.");
+            System.exit(0);
+        }
+        System.out.println();
+        System.out.println("FAILED (" + fuzz.failures.size() + "):");
+        for (String f : fuzz.failures) System.out.println("  " + f);
+        System.exit(1);
+    }
+
+    private static Map<String, Function<String, Object>> targets() {
+        Map<String, Function<String, Object>> out = new LinkedHashMap<>();
+
+        TextParser parser = ParserCorpus.newConfiguredParser();
+        out.put("TextParser.parse", s -> parser.parse(s, s.length()));
+
+        Set<String> commands = new HashSet<>();
+        for (GenerativeAICommand c : ParserCorpus.commands(ParserCorpus.COMMAND_COUNT)) {
+            commands.add(c.getCommandPrefix());
+        }
+        out.put("InlineCommandParseResultFactory.parse",
+                s -> InlineCommandParseResultFactory.parse(s, "$", commands));
+        out.put("InlineAskParseResultFactory.parse", s -> InlineAskParseResultFactory.parse(s, "$"));
+        out.put("TextActionCommands.parse", TextActionCommands::parse);
+        out.put("TextUnicodeConverter.convert", s -> TextUnicodeConverter.convert(s, ConversionMethod.BOLD));
+
+        for (PatternType type : PatternType.values()) {
+            ParseDirective d = new ParseDirective(Pattern.compile(type.defaultPattern), ParseResultFactory.of(type));
+            out.put("ParseDirective[" + type.name() + "]", d::parse);
+        }
+        return out;
+    }
+
+    private void readBaseline(Path file) throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String l = line.trim();
+            if (l.isEmpty() || l.startsWith("#")) continue;
+            int tab = l.lastIndexOf('\t');
+            if (tab < 0) continue;
+            baseline.put(l.substring(0, tab).trim(), Integer.parseInt(l.substring(tab + 1).trim()));
+        }
+    }
+
+    /**
+     * Holds each flagged target to two sizes below its first overrun. The runs show about one
+     * size step of jitter between machines; the second step keeps the gate quiet on unchanged
+     * code. A target flagged only for growth keeps every size.
+     */
+    private void writeBaseline(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("# Known parser fuzz debt: target and the largest input (chars) it is fuzzed");
+            out.println("# up to. An overrun below that size fails parserFuzz.");
+            out.println("# Regenerate with ./gradlew :benchmark:parserFuzz -PfuzzWriteBaseline and");
+            out.println("# raise an entry (or drop it) when a fix makes the target faster.");
+            for (String name : flagged) {
+                Integer overrun = overruns.get(name);
+                int size = overrun == null ? SIZES[SIZES.length - 1] : stepsBelow(overrun, 2);
+                out.println(name + "\t" + size);
+            }
+        }
+    }
+
+    private static int stepsBelow(int size, int steps) {
+        for (int i = 0; i < SIZES.length; i++) {
+            if (SIZES[i] == size) return SIZES[Math.max(0, i - steps)];
+        }
+        return SIZES[0];
+    }
+
+    private void run(String name, Function<String, Object> target) {
+        // Warm up so the JIT does not show up as growth.
+        for (int i = 0; i < 200; i++) {
+            if (timeOnce(target, randomInput(128)) < 0) break;
+        }
+
+        // Sizes go up one step at a time and the target stops at the first overrun. A stuck
+        // call then only costs a few budgets before it finishes on its own.
+        Integer limit = baseline.get(name);
+        int sizeCount = SIZES.length;
+        while (limit != null && sizeCount > 1 && SIZES[sizeCount - 1] > limit) sizeCount--;
+
+        long worstRandom = 0;
+        long[][] familyTimes = new long[FAMILIES.length][sizeCount];
+        for (int si = 0; si < sizeCount; si++) {
+            int size = SIZES[si];
+            for (int r = 0; r < Math.max(1, rounds / SIZES.length); r++) {
+                String input = randomInput(size);
+                long t = timeOnce(target, input);
+                if (t < 0) {
+                    overruns.putIfAbsent(name, size);
+                    fail(name, "random input of " + size + " chars exceeded the budget: " + preview(input));
+                    return;
+                }
+                worstRandom = Math.max(worstRandom, t);
+            }
+            for (int fi = 0; fi < FAMILIES.length; fi++) {
+                long t = bestOf(target, ParserCorpus.repeatTo(FAMILIES[fi][1], size));
+                if (t < 0) {
+                    overruns.putIfAbsent(name, size);
+                    fail(name, "family '" + FAMILIES[fi][0] + "' of " + size + " chars exceeded the budget");
+                    return;
+                }
+                familyTimes[fi][si] = t;
+            }
+        }
+
+        double worstExponent = 0;
+        String worstFamily = "";
+        for (int fi = 0; fi < FAMILIES.length && sizeCount > 1 && limit == null; fi++) {
+            long half = familyTimes[fi][sizeCount - 2];
+            long full = familyTimes[fi][sizeCount - 1];
+            // Timings in the low microseconds are noise, not growth.
+            if (half < 20_000) continue;
+            double exponent = Math.log((double) full / half) / Math.log(2);
+            if (exponent > worstExponent) {
+                worstExponent = exponent;
+                worstFamily = FAMILIES[fi][0];
+            }
+            if (exponent > maxExponent) {
+                fail(name, String.format(Locale.ROOT, "family '%s' grows as n^%.2f (%d=%.2fms, %d=%.2fms)",
+                        FAMILIES[fi][0], exponent, SIZES[sizeCount - 2], half / 1e6,
+                        SIZES[sizeCount - 1], full / 1e6));
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-42s worst random=%8.3fms  worst growth=n^%.2f %s%s",
+                name, worstRandom / 1e6, worstExponent, worstFamily.isEmpty() ? "" : "(" + worstFamily + ") ",
+                limit == null ? "" : "[baseline: up to " + SIZES[sizeCount - 1] + " chars]"));
+    }
+
+    private long bestOf(Function<String, Object> target, String input) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long t = timeOnce(target, input);
+            if (t < 0) return -1;
+            best = Math.min(best, t);
+        }
+        return best;
+    }
+
+    /** @return elapsed nanos, or -1 when the call did not finish within the budget. */
+    private long timeOnce(Function<String, Object> target, String input) {
+        Future<Long> f = worker.submit(() -> {
+            long start = System.nanoTime();
+            target.apply(input);
+            return System.nanoTime() - start;
+        });
+        try {
+            return f.get(budgetNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // A running regex cannot be interrupted. Give the stuck call a bounded grace
+            // period so it does not skew the next target, then abandon the daemon worker.
+            f.cancel(true);
+            worker.shutdownNow();
+            try {
+                worker.awaitTermination(budgetNanos * 16, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            worker = newWorker();
+            return -1;
+        } catch (Exception e) {
+            // Exceptions are not this tool's concern; count them as a finished call.
+            return 0;
+        }
+    }
+
+    private String randomInput(int size) {
+        StringBuilder sb = new StringBuilder(size + 16);
+        while (sb.length() < size) {
+            sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private void fail(String target, String message) {
+        flagged.add(target);
+        String line = target + ": " + message;
+        failures.add(line);
+        System.out.println("!! " + line);
+    }
+
+    private static String preview(String s) {
+        String p = s.length() > 60 ? s.substring(0, 60) + "..." : s;
+        return "'" + p.replace("\n", "\\n") + "' (" + s.length() + " chars)";
+    }
+
+    private static ExecutorService newWorker() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "kgpt-parser-fuzz");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
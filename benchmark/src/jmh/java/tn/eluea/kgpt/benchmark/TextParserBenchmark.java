@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tn.eluea.kgpt.text.TextParser;
+import tn.eluea.kgpt.text.parse.result.ParseResult;
+
+/**
+ * Full per-keystroke parse: quick jumps, app triggers, text actions, role triggers,
+ * inline commands, /ask shielding and the regex directives.
+ */
+@State(Scope.Benchmark)
+public class TextParserBenchmark {
+
+    @Param({"ASCII", "CJK", "EMOJI", "BUFFER_8K"})
+    public ParserCorpus.Body body;
+
+    @Param({"MISS", "AI", "INLINE_COMMAND", "ROLE", "QUICK_JUMP", "TEXT_ACTION", "FORMAT"})
+    public ParserCorpus.Tail tail;
+
+    private TextParser parser;
+    private String text;
+    private int cursor;
+    private String tailText;
+
+    @Setup
+    public void setUp() {
+        parser = ParserCorpus.newConfiguredParser();
+        text = ParserCorpus.text(body, tail);
+        cursor = text.length();
+        int window = parser.getTriggerTailWindow();
+        tailText = window > 0 && window < cursor ? text.substring(cursor - window, cursor) : text;
+    }
+
+    @Benchmark
+    public ParseResult parse() {
+        return parser.parse(text, cursor);
+    }
+
+    /** What IMSController runs on the short tail before deciding to read the full buffer. */
+    @Benchmark
+    public boolean tailPreCheck() {
+        return parser.mayEndWithTrigger(tailText);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tn.eluea.kgpt.text.transform.format.ConversionMethod;
+import tn.eluea.kgpt.text.transform.format.TextUnicodeConverter;
+
+/**
+ * Format directives (bold / italic / crossout / underline) applied to the typed text.
+ */
+@State(Scope.Benchmark)
+public class TextUnicodeConverterBenchmark {
+
+    public enum Method {
+        BOLD(ConversionMethod.BOLD),
+        ITALIC(ConversionMethod.ITALIC),
+        CROSSOUT(ConversionMethod.CROSSOUT),
+        UNDERLINE(ConversionMethod.UNDERLINE);
+
+        final ConversionMethod method;
+
+        Method(ConversionMethod method) {
+            this.method = method;
+        }
+    }
+
+    @Param({"BOLD", "ITALIC", "CROSSOUT", "UNDERLINE"})
+    public Method method;
+
+    @Param({"ASCII", "CJK", "EMOJI", "BUFFER_8K"})
+    public ParserCorpus.Body body;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = ParserCorpus.body(body);
+    }
+
+    @Benchmark
+    public String convert() {
+        return TextUnicodeConverter.convert(text, method.method);
+    }
+}
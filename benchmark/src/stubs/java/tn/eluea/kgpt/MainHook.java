@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt;
+
+/** JVM stub. Parser code only uses the logging helpers. */
+public final class MainHook {
+    private MainHook() {}
+
+    public static void log(String message) {
+    }
+
+    public static void log(Throwable t) {
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt;
+
+/** JVM stub for the resource ids referenced by the parser closure. */
+public final class R {
+    private R() {}
+
+    public static final class drawable {
+        public static final int ic_message_text_filled = 1;
+        public static final int ic_shield_tick_filled = 2;
+        public static final int ic_lamp_charge_filled = 3;
+        public static final int ic_arrow_circle_right_filled = 4;
+        public static final int ic_close_circle_filled = 5;
+        public static final int ic_document_text_filled = 6;
+        public static final int ic_palette_filled = 7;
+        public static final int ic_global_search_filled = 8;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tn.eluea.kgpt.instruction.command.GenerativeAICommand;
+import tn.eluea.kgpt.provider.ConfigClient;
+import tn.eluea.kgpt.text.parse.ParsePattern;
+
+/**
+ * JVM stub exposing only what the parser closure reads. Values are plain fields so a
+ * benchmark fixture can set up roles / quick jumps / patterns before creating TextParser.
+ */
+public class SPManager {
+    private static final SPManager instance = new SPManager();
+
+    private final ConfigClient mClient = new ConfigClient();
+
+    private List<ParsePattern> parsePatterns = ParsePattern.getDefaultPatterns();
+    private List<GenerativeAICommand> commands = new ArrayList<>();
+    private String rolesJson = "";
+    private String activeRoleId = "";
+    private String quickJumpConfig = "";
+    private boolean aiTriggerMultilineEnabled = false;
+
+    public static SPManager getInstance() {
+        return instance;
+    }
+
+    public static boolean isReady() {
+        return true;
+    }
+
+    public ConfigClient getConfigClient() {
+        return mClient;
+    }
+
+    public List<ParsePattern> getParsePatterns() {
+        return parsePatterns;
+    }
+
+    public void setParsePatterns(List<ParsePattern> patterns) {
+        parsePatterns = patterns;
+    }
+
+    public List<GenerativeAICommand> getGenerativeAICommands() {
+        return commands;
+    }
+
+    public void setGenerativeAICommands(List<GenerativeAICommand> commands) {
+        this.commands = commands;
+    }
+
+    public String getRolesJson() {
+        return rolesJson;
+    }
+
+    public void setRolesJson(String json) {
+        rolesJson = json;
+    }
+
+    public String getActiveRoleId() {
+        return activeRoleId;
+    }
+
+    public void setActiveRoleId(String id) {
+        activeRoleId = id;
+    }
+
+    public String getQuickJumpConfig() {
+        return quickJumpConfig;
+    }
+
+    public void setQuickJumpConfig(String config) {
+        quickJumpConfig = config;
+    }
+
+    public boolean getAiTriggerMultilineEnabled() {
+        return aiTriggerMultilineEnabled;
+    }
+
+    public void setAiTriggerMultilineEnabled(boolean enabled) {
+        aiTriggerMultilineEnabled = enabled;
+    }
+}
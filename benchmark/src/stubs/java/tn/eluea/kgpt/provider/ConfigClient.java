@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** JVM stub: an in-memory key/value store instead of the ContentProvider bridge. */
+public class ConfigClient {
+
+    public interface OnConfigChangeListener {
+        void onConfigChanged(String key, Object newValue);
+    }
+
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    public void registerListener(String key, OnConfigChangeListener listener) {
+    }
+
+    public void unregisterListener(String key) {
+    }
+
+    public void putBoolean(String key, boolean value) {
+        mValues.put(key, value);
+    }
+
+    public boolean getBooleanNoCache(String key, boolean defaultValue) {
+        Object v = mValues.get(key);
+        return v instanceof Boolean ? (Boolean) v : defaultValue;
+    }
+}
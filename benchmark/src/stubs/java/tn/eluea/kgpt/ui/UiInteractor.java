@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui;
+
+import tn.eluea.kgpt.listener.ConfigChangeListener;
+
+/** JVM stub. The parser only registers itself for config changes. */
+public class UiInteractor {
+    private static final UiInteractor instance = new UiInteractor();
+
+    public static UiInteractor getInstance() {
+        return instance;
+    }
+
+    public void registerConfigChangeListener(ConfigChangeListener listener) {
+    }
+
+    public void unregisterConfigChangeListener(ConfigChangeListener listener) {
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui.lab.apptrigger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** JVM stub: a fixed trigger list instead of PackageManager / ConfigClient lookups. */
+public class AppTriggerManager {
+    private final List<AppTrigger> mTriggers = new ArrayList<>();
+    private boolean mFeatureEnabled = true;
+
+    public AppTriggerManager(List<AppTrigger> triggers) {
+        if (triggers != null) mTriggers.addAll(triggers);
+    }
+
+    public List<AppTrigger> getAppTriggers() {
+        return new ArrayList<>(mTriggers);
+    }
+
+    public boolean isFeatureEnabled() {
+        return mFeatureEnabled;
+    }
+
+    public void setFeatureEnabled(boolean enabled) {
+        mFeatureEnabled = enabled;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.util;
+
+/** JVM stub. Logging is a no-op in benchmarks. */
+public final class Logger {
+    private Logger() {}
+
+    public static void log(String message) {
+    }
+
+    public static void log(String tag, String message) {
+    }
+
+    public static void error(String message) {
+    }
+
+    public static void log(Throwable t) {
+    }
+}
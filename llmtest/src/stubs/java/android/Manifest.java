@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android;
+
+/** JVM stub. Only referenced from imports. */
+public final class Manifest {
+    private Manifest() {}
+
+    public static final class permission {
+        public static final String VIBRATE = "android.permission.VIBRATE";
+    }
+}
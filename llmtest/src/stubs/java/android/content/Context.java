@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.content;
+
+import android.content.res.Resources;
+
+/** JVM stub. The benchmark runs without a context; these only have to compile. */
+public abstract class Context {
+    public static final String VIBRATOR_SERVICE = "vibrator";
+    public static final String AUDIO_SERVICE = "audio";
+
+    public abstract String getString(int resId);
+
+    public abstract String getString(int resId, Object... formatArgs);
+
+    public abstract Context getApplicationContext();
+
+    public abstract Resources getResources();
+
+    public abstract Object getSystemService(String name);
+}
@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.content.pm;
+
+/** JVM stub. Only referenced from imports. */
+public abstract class PackageManager {
+    public static final int PERMISSION_GRANTED = 0;
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.graphics;
+
+/** JVM stub. Parses #RRGGBB and #AARRGGBB. */
+public final class Color {
+    private Color() {}
+
+    public static int parseColor(String colorString) {
+        if (colorString == null || colorString.length() < 7 || colorString.charAt(0) != '#') {
+            throw new IllegalArgumentException("Unknown color");
+        }
+        long color = Long.parseLong(colorString.substring(1), 16);
+        if (colorString.length() == 7) color |= 0xff000000L;
+        return (int) color;
+    }
+}
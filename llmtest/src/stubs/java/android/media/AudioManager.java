@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.media;
+
+/** JVM stub. */
+public class AudioManager {
+    public static final int STREAM_SYSTEM = 1;
+    public static final int STREAM_NOTIFICATION = 5;
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.media;
+
+import android.content.Context;
+import android.net.Uri;
+
+/** JVM stub. */
+public class RingtoneManager {
+    public static final int TYPE_NOTIFICATION = 2;
+    public static final int TYPE_ALARM = 4;
+
+    public static Uri getDefaultUri(int type) {
+        return null;
+    }
+
+    public static Ringtone getRingtone(Context context, Uri ringtoneUri) {
+        return null;
+    }
+}
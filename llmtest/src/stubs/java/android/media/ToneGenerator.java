@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.media;
+
+/** JVM stub. */
+public class ToneGenerator {
+    public static final int TONE_PROP_BEEP = 24;
+    public static final int TONE_PROP_ACK = 25;
+
+    public ToneGenerator(int streamType, int volume) {}
+
+    public boolean startTone(int toneType, int durationMs) { return false; }
+
+    public void release() {}
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+/** JVM stub. Reports an API level below every version check, so platform-only paths are skipped. */
+public final class Build {
+    private Build() {}
+
+    public static final class VERSION {
+        public static final int SDK_INT = 0;
+    }
+
+    public static final class VERSION_CODES {
+        public static final int O = 26;
+        public static final int Q = 29;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** JVM stub backed by a map. */
+public class Bundle {
+    private final Map<String, Object> values = new HashMap<>();
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public boolean getBoolean(String key) {
+        Object v = values.get(key);
+        return v instanceof Boolean && (Boolean) v;
+    }
+
+    public void putBoolean(String key, boolean value) {
+        values.put(key, value);
+    }
+}
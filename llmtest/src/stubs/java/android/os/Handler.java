@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+/** JVM stub posting to a {@link Looper}'s queue. */
+public class Handler {
+    private final Looper looper;
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public final Looper getLooper() {
+        return looper;
+    }
+
+    public final boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        if (delayMillis < 0) delayMillis = 0;
+        looper.enqueue(r, this, System.nanoTime() + delayMillis * 1_000_000L);
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        looper.remove(r, this);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+import java.util.PriorityQueue;
+
+/**
+ * JVM stub. The main looper is a daemon thread named "main" running a time-ordered message
+ * queue, so code that hops to the UI thread (and the Choreographer stub) behaves as on a device.
+ */
+public final class Looper {
+    private static final Looper sMain = new Looper("main");
+
+    private final Thread thread;
+    private final Object lock = new Object();
+    private final PriorityQueue<Message> queue = new PriorityQueue<>();
+    private long seq = 0;
+    private long foreignPosts = 0;
+
+    private static final class Message implements Comparable<Message> {
+        final long whenNs;
+        final long seq;
+        final Runnable callback;
+        final Object token;
+
+        Message(long whenNs, long seq, Runnable callback, Object token) {
+            this.whenNs = whenNs;
+            this.seq = seq;
+            this.callback = callback;
+            this.token = token;
+        }
+
+        @Override
+        public int compareTo(Message o) {
+            int c = Long.compare(whenNs, o.whenNs);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private Looper(String name) {
+        thread = new Thread(this::loop, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static Looper getMainLooper() {
+        return sMain;
+    }
+
+    public static Looper myLooper() {
+        return Thread.currentThread() == sMain.thread ? sMain : null;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /** Messages posted from other threads so far, i.e. thread hops onto this looper. */
+    public long getForeignPostCount() {
+        synchronized (lock) {
+            return foreignPosts;
+        }
+    }
+
+    void enqueue(Runnable callback, Object token, long whenNs) {
+        synchronized (lock) {
+            queue.add(new Message(whenNs, seq++, callback, token));
+            if (Thread.currentThread() != thread) foreignPosts++;
+            lock.notifyAll();
+        }
+    }
+
+    void remove(Runnable callback, Object token) {
+        synchronized (lock) {
+            queue.removeIf(m -> m.callback == callback && m.token == token);
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            Message next;
+            synchronized (lock) {
+                next = queue.peek();
+                long waitNs = next == null ? Long.MAX_VALUE : next.whenNs - System.nanoTime();
+                if (waitNs > 0) {
+                    try {
+                        if (next == null) lock.wait();
+                        else lock.wait(waitNs / 1_000_000L, (int) (waitNs % 1_000_000L));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                queue.poll();
+            }
+            try {
+                next.callback.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+}
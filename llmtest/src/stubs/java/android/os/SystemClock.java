@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+/** JVM stub backed by System.nanoTime(). */
+public final class SystemClock {
+    private SystemClock() {}
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+/** JVM stub. Tracing is never enabled. */
+public final class Trace {
+    private Trace() {}
+
+    public static boolean isEnabled() { return false; }
+    public static void beginAsyncSection(String methodName, int cookie) {}
+    public static void endAsyncSection(String methodName, int cookie) {}
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+/** JVM stub. */
+public class VibrationEffect {
+    public static final int DEFAULT_AMPLITUDE = -1;
+
+    public static VibrationEffect createOneShot(long milliseconds, int amplitude) {
+        return new VibrationEffect();
+    }
+}
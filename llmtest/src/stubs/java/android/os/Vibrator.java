@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.os;
+
+/** JVM stub. Never obtained: the benchmark has no context. */
+public abstract class Vibrator {
+    public abstract boolean hasVibrator();
+
+    public abstract void vibrate(long milliseconds);
+
+    public abstract void vibrate(VibrationEffect effect);
+}
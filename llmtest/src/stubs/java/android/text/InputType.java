@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.text;
+
+/** JVM stub: the constants LanguageModelField is declared with. */
+public interface InputType {
+    int TYPE_CLASS_TEXT = 0x00000001;
+    int TYPE_CLASS_NUMBER = 0x00000002;
+    int TYPE_NUMBER_FLAG_DECIMAL = 0x00002000;
+    int TYPE_TEXT_VARIATION_PASSWORD = 0x00000080;
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.text;
+
+/** JVM stub. Spans are accepted and dropped. */
+public class SpannableString implements Spanned {
+    private final String text;
+
+    public SpannableString(CharSequence source) {
+        text = source.toString();
+    }
+
+    public void setSpan(Object what, int start, int end, int flags) {}
+
+    @Override
+    public int length() { return text.length(); }
+
+    @Override
+    public char charAt(int index) { return text.charAt(index); }
+
+    @Override
+    public CharSequence subSequence(int start, int end) { return text.subSequence(start, end); }
+
+    @Override
+    public String toString() { return text; }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.view;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * JVM stub. Emulates a 60 Hz display on the main looper: frame callbacks run on the first vsync
+ * (a 16.67 ms grid) at or after their due time, with the vsync timestamp as frame time.
+ */
+public final class Choreographer {
+    private static final long FRAME_NS = 16_666_667L;
+    private static final long EPOCH_NS = System.nanoTime();
+    private static final Choreographer sInstance = new Choreographer();
+
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private static final class Pending {
+        final FrameCallback callback;
+        final long dueNs;
+
+        Pending(FrameCallback callback, long dueNs) {
+            this.callback = callback;
+            this.dueNs = dueNs;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Pending> pending = new ArrayList<>();
+    private final Runnable frame = this::doFrame;
+    private long scheduledVsyncNs = Long.MAX_VALUE;
+
+    private Choreographer() {
+    }
+
+    public static Choreographer getInstance() {
+        return sInstance;
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+        postFrameCallbackDelayed(callback, 0);
+    }
+
+    public void postFrameCallbackDelayed(FrameCallback callback, long delayMillis) {
+        synchronized (pending) {
+            long due = System.nanoTime() + Math.max(0, delayMillis) * 1_000_000L;
+            pending.add(new Pending(callback, due));
+            scheduleVsync(due);
+        }
+    }
+
+    public void removeFrameCallback(FrameCallback callback) {
+        synchronized (pending) {
+            pending.removeIf(p -> p.callback == callback);
+        }
+    }
+
+    private static long nextVsync(long atNs) {
+        long frames = (atNs - EPOCH_NS + FRAME_NS - 1) / FRAME_NS;
+        return EPOCH_NS + frames * FRAME_NS;
+    }
+
+    private void scheduleVsync(long dueNs) {
+        long vsync = nextVsync(Math.max(dueNs, System.nanoTime()));
+        if (vsync >= scheduledVsyncNs) return;
+        handler.removeCallbacks(frame);
+        scheduledVsyncNs = vsync;
+        handler.postDelayed(frame, Math.max(0, (vsync - System.nanoTime()) / 1_000_000L));
+    }
+
+    private void doFrame() {
+        long frameTimeNs;
+        List<FrameCallback> run = new ArrayList<>();
+        synchronized (pending) {
+            frameTimeNs = nextVsync(System.nanoTime()) - FRAME_NS;
+            if (frameTimeNs < scheduledVsyncNs) frameTimeNs = scheduledVsyncNs;
+            scheduledVsyncNs = Long.MAX_VALUE;
+            long earliest = Long.MAX_VALUE;
+            for (Iterator<Pending> it = pending.iterator(); it.hasNext(); ) {
+                Pending p = it.next();
+                if (p.dueNs <= frameTimeNs + FRAME_NS / 2) {
+                    run.add(p.callback);
+                    it.remove();
+                } else if (p.dueNs < earliest) {
+                    earliest = p.dueNs;
+                }
+            }
+            if (earliest != Long.MAX_VALUE) scheduleVsync(earliest);
+        }
+        for (FrameCallback callback : run) callback.doFrame(frameTimeNs);
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.view;
+
+/** JVM stub. */
+public final class Gravity {
+    private Gravity() {}
+
+    public static final int TOP = 48;
+    public static final int CENTER_HORIZONTAL = 1;
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package android.widget;
+
+import android.content.Context;
+
+/** JVM stub. Toasts are dropped. */
+public class Toast {
+    public static final int LENGTH_SHORT = 0;
+    public static final int LENGTH_LONG = 1;
+
+    public static Toast makeText(Context context, CharSequence text, int duration) {
+        return new Toast();
+    }
+
+    public void setGravity(int gravity, int xOffset, int yOffset) {}
+
+    public void show() {}
+
+    public void cancel() {}
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package androidx.core.content;
+
+import android.content.Context;
+
+/** JVM stub. Only referenced from imports. */
+public class ContextCompat {
+    public static int checkSelfPermission(Context context, String permission) {
+        return -1;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt;
+
+/** JVM stub. Ids only; without a context the callers fall back to their built-in strings. */
+public final class R {
+    private R() {}
+
+    public static final class string {
+        public static final int choose_model_message = 1;
+        public static final int error_format = 2;
+        public static final int generating_content = 3;
+        public static final int missing_api_key_message = 4;
+        public static final int offline_outbox_queued = 5;
+        public static final int ui_toast_ai_done = 6;
+        public static final int ui_toast_ai_replying = 7;
+        public static final int ui_toast_ai_thinking = 8;
+        public static final int unknown_error = 9;
+    }
+}
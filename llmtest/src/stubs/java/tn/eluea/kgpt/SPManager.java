@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.roles.RoleManager;
+
+/**
+ * JVM stub exposing only what the LLM clients and the response path read. Values are plain
+ * fields (or the real defaults) so a test can switch streaming on / pick a stream mode before
+ * submitting a prompt; nothing is persisted.
+ */
+public class SPManager {
+    public static final int STREAM_MODE_AUTO = 0;
+    public static final int STREAM_MODE_SSE = 1;
+    public static final int STREAM_MODE_JSONL = 2;
+    public static final int STREAM_MODE_TYPEWRITER = 3;
+
+    public static final int STREAM_SPEED_ALGO_LINEAR = 0;
+    public static final int STREAM_SPEED_ALGO_NONLINEAR = 1;
+
+    public static final int STREAM_NL_MODEL_LINEAR_CONSTANT = 0;
+    public static final int STREAM_NL_MODEL_EXPONENTIAL_DECAY = 1;
+    public static final int STREAM_NL_MODEL_SINE_WAVE_JITTER = 2;
+    public static final int STREAM_NL_MODEL_DAMPED_OSCILLATOR = 3;
+    public static final int STREAM_NL_MODEL_SQUARE_WAVE_BURST = 4;
+    public static final int STREAM_NL_MODEL_MARKOV_RANDOM_WALK = 5;
+
+    public static final int STREAM_PREFETCH_OFF = 0;
+    public static final int STREAM_PREFETCH_DEFAULT = 1;
+    public static final int STREAM_PREFETCH_FAST = 2;
+    public static final int STREAM_PREFETCH_STABLE = 3;
+    public static final int STREAM_PREFETCH_CUSTOM = 4;
+
+    public static final int STREAM_GRANULARITY_CHARS = 0;
+    public static final int STREAM_GRANULARITY_WORDS = 1;
+    public static final int STREAM_GRANULARITY_PUNCT = 2;
+
+    public static final int REASONING_MODEL_THINKING_AUTO = 2;
+
+    public static final int DOWNGRADE_FLAG_STREAM = 1;
+    public static final int DOWNGRADE_FLAG_BASEURL = 2;
+    public static final int DOWNGRADE_FLAG_MODEL = 4;
+    public static final int DOWNGRADE_FLAG_HEDGE = 8;
+    public static final int DOWNGRADE_FLAG_CONTINUE = 16;
+    public static final int DOWNGRADE_FLAG_PROBE = 32;
+
+    public static final int REQUEST_POLICY_CANCEL_PREVIOUS = 0;
+    public static final int REQUEST_POLICY_IGNORE_NEW = 1;
+    public static final int REQUEST_POLICY_QUEUE_LATEST = 2;
+
+    public static final int GEN_SOUND_NONE = 0;
+    public static final int GEN_SOUND_SYSTEM_NOTIFICATION = 1;
+    public static final int GEN_SOUND_BEEP = 2;
+    public static final int GEN_SOUND_CLICK = 3;
+
+    public static final int GEN_MARKER_STYLE_PLAIN = 0;
+    public static final int GEN_MARKER_STYLE_COLOR_TAG = 1;
+    public static final int GEN_MARKER_STYLE_RAINBOW_ANIM = 2;
+    public static final int GEN_MARKER_STYLE_TEXT_RAINBOW_ANIM = 3;
+
+    public static final int GEN_MARKER_COLOR_BLUE = 0;
+    public static final int GEN_MARKER_COLOR_RED = 1;
+    public static final int GEN_MARKER_COLOR_GREEN = 2;
+    public static final int GEN_MARKER_COLOR_YELLOW = 3;
+    public static final int GEN_MARKER_COLOR_PURPLE = 4;
+    public static final int GEN_MARKER_COLOR_RANDOM = 5;
+
+    private static final SPManager instance = new SPManager();
+
+    private volatile boolean streamingOutputEnabled = false;
+    private volatile int streamingOutputMode = STREAM_MODE_AUTO;
+    private volatile boolean streamingOutputFallbackNonStreamEnabled = true;
+    private volatile boolean http2Enabled = false;
+    private volatile String modelCapabilityRulesJson = "";
+    private volatile String usageStatsJson = "";
+    private volatile String requestTracesJson = "";
+    private volatile LanguageModel languageModel = null;
+    private final Map<String, String> languageModelFields = new ConcurrentHashMap<>();
+    private volatile int streamingOutputSpeedPercent = 45;
+    private volatile boolean streamingOutputSpeedAutoEnabled = true;
+    private volatile int streamingOutputSpeedAlgorithm = STREAM_SPEED_ALGO_LINEAR;
+    private volatile int streamingOutputGranularity = STREAM_GRANULARITY_CHARS;
+    private volatile boolean generatingContentEnabled = true;
+    private volatile int conversationMemoryLevel = 1;
+    private volatile String providerHealthJson = "";
+
+    public static SPManager getInstance() {
+        return instance;
+    }
+
+    public static boolean isReady() {
+        return true;
+    }
+
+    public boolean getStreamingOutputEnabled() {
+        return streamingOutputEnabled;
+    }
+
+    public void setStreamingOutputEnabled(boolean enabled) {
+        streamingOutputEnabled = enabled;
+    }
+
+    public int getStreamingOutputMode() {
+        return streamingOutputMode;
+    }
+
+    public void setStreamingOutputMode(int mode) {
+        streamingOutputMode = mode;
+    }
+
+    public boolean getStreamingOutputFallbackNonStreamEnabled() {
+        return streamingOutputFallbackNonStreamEnabled;
+    }
+
+    public void setStreamingOutputFallbackNonStreamEnabled(boolean enabled) {
+        streamingOutputFallbackNonStreamEnabled = enabled;
+    }
+
+    public boolean getHttp2Enabled(LanguageModel model) {
+        return http2Enabled;
+    }
+
+    public void setHttp2Enabled(LanguageModel model, boolean enabled) {
+        http2Enabled = enabled;
+    }
+
+    public String getModelCapabilityRulesJson() {
+        return modelCapabilityRulesJson;
+    }
+
+    public void setModelCapabilityRulesJson(String json) {
+        modelCapabilityRulesJson = json;
+    }
+
+    // Nothing is learned at runtime here: the static rules decide.
+    public Boolean getCachedSupportsTemperature(LanguageModel provider, String subModel) {
+        return null;
+    }
+
+    public Boolean getCachedSupportsReasoningThinking(LanguageModel provider, String subModel) {
+        return null;
+    }
+
+    public Boolean getCachedSupportsStreamUsage(LanguageModel provider, String subModel) {
+        return null;
+    }
+
+    public Integer getCachedSafeMaxTokens(LanguageModel provider, String subModel) {
+        return null;
+    }
+
+    public String getUsageStatsJson() {
+        return usageStatsJson;
+    }
+
+    public void setUsageStatsJson(String json) {
+        usageStatsJson = json;
+    }
+
+    public String getRequestTracesJson() {
+        return requestTracesJson;
+    }
+
+    public void setRequestTracesJson(String json) {
+        requestTracesJson = json;
+    }
+
+    // =============================
+    // Provider selection
+    // =============================
+
+    public boolean hasLanguageModel() {
+        return languageModel != null;
+    }
+
+    public LanguageModel getLanguageModel() {
+        return languageModel != null ? languageModel : LanguageModel.Gemini;
+    }
+
+    public void setLanguageModel(LanguageModel model) {
+        languageModel = model;
+    }
+
+    public String getLanguageModelField(LanguageModel model, LanguageModelField field) {
+        String v = languageModelFields.get(model.name() + "." + field);
+        return v != null ? v : model.getDefault(field);
+    }
+
+    public void setLanguageModelField(LanguageModel model, LanguageModelField field, String value) {
+        languageModelFields.put(model.name() + "." + field, value);
+    }
+
+    public int getMaxTokensLimit() {
+        return 0;
+    }
+
+    public float getNormalModelThinking() {
+        return 0.7f;
+    }
+
+    public int getReasoningModelThinkingMode() {
+        return REASONING_MODEL_THINKING_AUTO;
+    }
+
+    public void setCachedSupportsTemperature(LanguageModel provider, String subModel, boolean supported) {
+    }
+
+    public void setCachedSupportsStreamUsage(LanguageModel provider, String subModel, boolean supported) {
+    }
+
+    public void setCachedSafeMaxTokens(LanguageModel provider, String subModel, int safeMaxTokens) {
+    }
+
+    // =============================
+    // Request handling
+    // =============================
+
+    public String getActiveRoleId() {
+        return RoleManager.DEFAULT_ROLE_ID;
+    }
+
+    public String getRolesJson() {
+        return "";
+    }
+
+    public int getConversationMemoryLevel() {
+        return conversationMemoryLevel;
+    }
+
+    public void setConversationMemoryLevel(int level) {
+        conversationMemoryLevel = level;
+    }
+
+    public boolean getAutoSummarizeOldContextEnabled() {
+        return true;
+    }
+
+    public int getRequestConcurrencyPolicy() {
+        return REQUEST_POLICY_CANCEL_PREVIOUS;
+    }
+
+    public int getAutoDowngradeFlags() {
+        return DOWNGRADE_FLAG_STREAM | DOWNGRADE_FLAG_BASEURL | DOWNGRADE_FLAG_MODEL | DOWNGRADE_FLAG_PROBE;
+    }
+
+    public String getAutoDowngradeBackupBaseUrl() {
+        return "";
+    }
+
+    public LanguageModel getAutoDowngradeBackupModel() {
+        return null;
+    }
+
+    public String getProviderHealthJson() {
+        return providerHealthJson;
+    }
+
+    public void setProviderHealthJson(String json) {
+        providerHealthJson = json == null ? "" : json;
+    }
+
+    // =============================
+    // Streaming renderer
+    // =============================
+
+    public int getStreamingOutputSpeedPercent() {
+        return streamingOutputSpeedPercent;
+    }
+
+    public void setStreamingOutputSpeedPercent(int percent) {
+        streamingOutputSpeedPercent = percent;
+    }
+
+    public boolean getStreamingOutputSpeedAutoEnabled() {
+        return streamingOutputSpeedAutoEnabled;
+    }
+
+    public void setStreamingOutputSpeedAutoEnabled(boolean enabled) {
+        streamingOutputSpeedAutoEnabled = enabled;
+    }
+
+    public int getStreamingOutputSpeedAlgorithm() {
+        return streamingOutputSpeedAlgorithm;
+    }
+
+    public void setStreamingOutputSpeedAlgorithm(int algorithm) {
+        streamingOutputSpeedAlgorithm = algorithm;
+    }
+
+    public int getStreamingOutputGranularity() {
+        return streamingOutputGranularity;
+    }
+
+    public void setStreamingOutputGranularity(int granularity) {
+        streamingOutputGranularity = granularity;
+    }
+
+    public int getStreamingPrefetchMode() {
+        return STREAM_PREFETCH_DEFAULT;
+    }
+
+    public int getStreamingPrefetchStartChars() {
+        return 120;
+    }
+
+    public int getStreamingPrefetchLowWatermark() {
+        return 80;
+    }
+
+    public int getStreamingPrefetchTopUpTarget() {
+        return 260;
+    }
+
+    public int getStreamingNonLinearModel() {
+        return STREAM_NL_MODEL_MARKOV_RANDOM_WALK;
+    }
+
+    public double getStreamingNonLinearPauseMultiplier() {
+        return 2.0;
+    }
+
+    public int getStreamingNonLinearSigmaMs() {
+        return 0;
+    }
+
+    public int getNlLinearConstantTBaseMs() { return 50; }
+    public double getNlExpLambda() { return 0.045; }
+    public int getNlExpTMinMs() { return 28; }
+    public int getNlExpTMaxMs() { return 220; }
+    public int getNlSineTBaseMs() { return 60; }
+    public int getNlSineAMs() { return 30; }
+    public double getNlSineOmega() { return (2.0 * Math.PI) / 15.0; }
+    public double getNlSinePhi() { return 0.0; }
+    public int getNlDampTBaseMs() { return 90; }
+    public int getNlDampAMs() { return 85; }
+    public double getNlDampZeta() { return 0.05; }
+    public double getNlDampOmega() { return 1.1; }
+    public double getNlDampPhi() { return 0.0; }
+    public int getNlSquareTBaseMs() { return 95; }
+    public int getNlSquareAMs() { return 70; }
+    public double getNlSquareOmega() { return 0.7; }
+    public int getNlMarkovMuMs() { return 80; }
+    public int getNlMarkovSigmaMs() { return 25; }
+    public double getNlMarkovRho() { return 0.90; }
+    public int getNlMarkovTMinMs() { return 30; }
+    public int getNlMarkovTMaxMs() { return 450; }
+    public double getNlMarkovPThinkProbability() { return 0.02; }
+
+    // =============================
+    // Generating-content marker, toasts, haptics
+    // =============================
+
+    public boolean getGeneratingContentEnabled() {
+        return generatingContentEnabled;
+    }
+
+    public void setGeneratingContentEnabled(boolean enabled) {
+        generatingContentEnabled = enabled;
+    }
+
+    public String getGeneratingContentPrefix() {
+        return "";
+    }
+
+    public String getGeneratingContentSuffix() {
+        return "";
+    }
+
+    public boolean getGeneratingContentToastEnabled() {
+        return true;
+    }
+
+    public int getGeneratingContentMarkerStyle() {
+        return GEN_MARKER_STYLE_PLAIN;
+    }
+
+    public int getGeneratingContentMarkerColor() {
+        return GEN_MARKER_COLOR_BLUE;
+    }
+
+    public int getGeneratingContentMarkerAnimLength() {
+        return 6;
+    }
+
+    public int getGeneratingContentMarkerAnimSpeedPercent() {
+        return 70;
+    }
+
+    public int getGeneratingContentCompleteSound() {
+        return GEN_SOUND_NONE;
+    }
+
+    public boolean getAiReplyVibrateEnabled() {
+        return false;
+    }
+
+    public int getAiReplyVibrateFrequencyPercent() {
+        return 70;
+    }
+
+    public int getAiReplyVibrateIntensityPercent() {
+        return 65;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.core.ai;
+
+/** JVM stub. Always online, nothing is ever queued. */
+public class OfflineOutbox {
+    private static final OfflineOutbox instance = new OfflineOutbox();
+
+    public static OfflineOutbox getInstance() {
+        return instance;
+    }
+
+    public boolean isOnline() {
+        return true;
+    }
+
+    public static boolean isConnectivityError(Throwable t) {
+        return false;
+    }
+
+    public void enqueue(String prompt, String systemMessage, String roleIdOverride) {
+    }
+
+    public void replayAsync() {
+    }
+}
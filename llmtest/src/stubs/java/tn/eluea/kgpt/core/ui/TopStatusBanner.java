@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.core.ui;
+
+import android.content.Context;
+
+/** JVM stub. No overlay is ever available. */
+public class TopStatusBanner {
+    private static final TopStatusBanner instance = new TopStatusBanner();
+
+    public static TopStatusBanner getInstance() {
+        return instance;
+    }
+
+    public boolean canUseOverlay(Context ctx) {
+        return false;
+    }
+
+    public void show(Context ctx, String msg) {
+    }
+
+    public void update(String msg) {
+    }
+
+    public void showDone(Context ctx, String doneMsg) {
+    }
+
+    public void hide() {
+    }
+}
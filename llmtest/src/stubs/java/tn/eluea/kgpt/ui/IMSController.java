@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in for the editor. Text is kept as the part before and the part after the cursor;
+ * every write that lands before the cursor is recorded with its time and thread, and
+ * {@link #startNotifyInput()} (called once a reply is finished or failed) marks the reply done.
+ */
+public class IMSController {
+
+    /** One write before the cursor. */
+    public static final class Commit {
+        public final String text;
+        public final long atNanos;
+        public final String thread;
+
+        Commit(String text, long atNanos, String thread) {
+            this.text = text;
+            this.atNanos = atNanos;
+            this.thread = thread;
+        }
+    }
+
+    private final StringBuilder before = new StringBuilder();
+    private final StringBuilder after = new StringBuilder();
+    private final List<Commit> commits = new ArrayList<>();
+    private boolean done = false;
+    private volatile boolean inputLock = false;
+
+    public static IMSController getInstance() {
+        return UiInteractor.getInstance().getIMSController();
+    }
+
+    // =============================
+    // Editor operations used by the response path
+    // =============================
+
+    public synchronized void commit(String text) {
+        if (text == null || text.isEmpty()) return;
+        before.append(text);
+        commits.add(new Commit(text, System.nanoTime(), Thread.currentThread().getName()));
+    }
+
+    public boolean commitBatched(String text) {
+        commit(text);
+        return true;
+    }
+
+    public synchronized void delete(int count) {
+        int n = Math.min(count, before.length());
+        before.setLength(before.length() - n);
+    }
+
+    public synchronized void commitAfterCursor(String text) {
+        if (text != null) after.insert(0, text);
+    }
+
+    public boolean commitAfterCursor(CharSequence text) {
+        if (text == null || text.length() == 0) return false;
+        commitAfterCursor(text.toString());
+        return true;
+    }
+
+    public synchronized boolean tryDeleteAfterCursorIfMatches(String expected) {
+        if (expected == null || expected.isEmpty()) return false;
+        if (after.indexOf(expected) != 0) return false;
+        after.delete(0, expected.length());
+        return true;
+    }
+
+    public void deleteAfterCursorIfMatches(String expected) {
+        tryDeleteAfterCursorIfMatches(expected);
+    }
+
+    public synchronized boolean replaceAfterCursorIfMatches(String expectedOld, String replacement) {
+        if (expectedOld == null) expectedOld = "";
+        if (replacement == null) replacement = "";
+        if (after.indexOf(expectedOld) != 0) return false;
+        after.replace(0, expectedOld.length(), replacement);
+        return true;
+    }
+
+    public boolean replaceAfterCursorIfMatches(String expectedOld, CharSequence replacement) {
+        return replaceAfterCursorIfMatches(expectedOld, replacement == null ? null : replacement.toString());
+    }
+
+    public void stopNotifyInput() {
+    }
+
+    public synchronized void startNotifyInput() {
+        done = true;
+        notifyAll();
+    }
+
+    public void flush() {
+    }
+
+    public boolean isInputLocked() {
+        return inputLock;
+    }
+
+    public void startInputLock() {
+        inputLock = true;
+    }
+
+    public void endInputLock() {
+        inputLock = false;
+    }
+
+    // =============================
+    // Inspection
+    // =============================
+
+    /** Clear the editor and the recorded commits for the next reply. */
+    public synchronized void reset() {
+        before.setLength(0);
+        after.setLength(0);
+        commits.clear();
+        done = false;
+        inputLock = false;
+    }
+
+    public synchronized String getText() {
+        return before.toString() + after;
+    }
+
+    public synchronized List<Commit> getCommits() {
+        return new ArrayList<>(commits);
+    }
+
+    /** Wait for the reply to finish; false on timeout. */
+    public synchronized boolean awaitDone(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!done) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) return false;
+            wait(left);
+        }
+        return true;
+    }
+}
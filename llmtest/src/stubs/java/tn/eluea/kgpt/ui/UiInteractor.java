@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2025 Amr Aldeeb @Eluea
+ * GitHub: https://github.com/Eluea
+ * Telegram: https://t.me/Eluea
+ *
+ * This file is part of KGPT.
+ * Based on original code from KeyboardGPT by Mino260806.
+ * Original: https://github.com/Mino260806/KeyboardGPT
+ *
+ * Licensed under the GPLv3.
+ */
+package tn.eluea.kgpt.ui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import tn.eluea.kgpt.listener.ConfigChangeListener;
+
+/**
+ * JVM stub. There is no context, so the response path takes its context-free fallbacks; UI work
+ * is posted to the stub main looper like on a device.
+ */
+public class UiInteractor {
+    private static final UiInteractor instance = new UiInteractor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final IMSController imsController = new IMSController();
+
+    public static UiInteractor getInstance() {
+        return instance;
+    }
+
+    public Context getContext() {
+        return null;
+    }
+
+    public IMSController getIMSController() {
+        return imsController;
+    }
+
+    public void runOnUiThread(Runnable r) {
+        if (r == null) return;
+        mainHandler.post(r);
+    }
+
+    public boolean showChoseModelDialog() {
+        return false;
+    }
+
+    public void toastShort(String message) {
+    }
+
+    public void toastLong(String message) {
+    }
+
+    public void registerConfigChangeListener(ConfigChangeListener listener) {
+    }
+
+    public void unregisterConfigChangeListener(ConfigChangeListener listener) {
+    }
+}
@@ -0,0 +1,139 @@
+package tn.eluea.kgpt.llm.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.client.ChatGPTClient;
+import tn.eluea.kgpt.llm.client.RequestSpec;
+import tn.eluea.kgpt.llm.mock.CollectingSubscriber;
+import tn.eluea.kgpt.llm.mock.MockLlmServer;
+import tn.eluea.kgpt.llm.mock.MockResponse;
+import tn.eluea.kgpt.llm.mock.Recordings;
+
+/**
+ * Time-to-first-token and per-chunk overhead of {@link ChatGPTClient} against {@link MockLlmServer}.
+ *
+ * The server sends a chunk every {@code --chunk-delay} ms and stamps each send; the overhead of
+ * a delta is the time from the send of the chunk that carried it to the subscriber's onNext,
+ * i.e. socket read + parse + publisher hop, without the network. TTFT is measured from
+ * submitPrompt() and so also includes connecting and the first chunk delay.
+ *
+ *   ./gradlew :llmtest:streamLatency [-PbenchIterations=200] [-PbenchChunkDelay=2]
+ */
+public final class StreamingLatencyBenchmark {
+
+    private static final class Scenario {
+        final String name;
+        final String recording;
+        final int streamingMode;
+        final int sliceSize;
+        final String text;
+
+        Scenario(String name, String recording, int streamingMode, int sliceSize, String text) {
+            this.name = name;
+            this.recording = recording;
+            this.streamingMode = streamingMode;
+            this.sliceSize = sliceSize;
+            this.text = text;
+        }
+
+        List<String> chunks() {
+            String body = Recordings.load(recording);
+            return sliceSize > 0 ? Recordings.slices(body, sliceSize) : Recordings.lines(body);
+        }
+    }
+
+    private static final Scenario[] SCENARIOS = {
+            new Scenario("sse", Recordings.OPENAI_SSE, SPManager.STREAM_MODE_SSE, 0, Recordings.TEXT),
+            new Scenario("sse-auto", Recordings.OPENAI_SSE, SPManager.STREAM_MODE_AUTO, 0, Recordings.TEXT),
+            new Scenario("jsonl", Recordings.OPENAI_JSONL, SPManager.STREAM_MODE_JSONL, 0, Recordings.TEXT),
+            new Scenario("concatenated", Recordings.OPENAI_CONCATENATED, SPManager.STREAM_MODE_AUTO, 0, Recordings.CONCATENATED_TEXT),
+            new Scenario("noisy-proxy", Recordings.OPENAI_NOISY_PROXY, SPManager.STREAM_MODE_AUTO, 24, Recordings.TEXT),
+    };
+
+    private StreamingLatencyBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = 100;
+        int warmup = 20;
+        long chunkDelay = 2;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--iterations": iterations = Integer.parseInt(args[i + 1]); break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--chunk-delay": chunkDelay = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SPManager.getInstance().setStreamingOutputEnabled(true);
+        try (MockLlmServer server = MockLlmServer.start()) {
+            ChatGPTClient client = new ChatGPTClient();
+            client.setField(LanguageModelField.ApiKey, "bench");
+            client.setField(LanguageModelField.BaseUrl, server.url("/v1"));
+            client.setField(LanguageModelField.SubModel, "gpt-4o-mini");
+
+            System.out.printf(Locale.ROOT, "%d iterations (+%d warm-up), chunk delay %d ms%n", iterations, warmup, chunkDelay);
+            System.out.printf(Locale.ROOT, "%-14s %10s %10s %14s %14s %14s%n",
+                    "scenario", "ttft p50", "ttft p90", "chunk p50", "chunk p90", "chunk max");
+            for (Scenario scenario : SCENARIOS) {
+                List<Long> ttft = new ArrayList<>();
+                List<Long> overhead = new ArrayList<>();
+                for (int i = 0; i < warmup + iterations; i++) {
+                    boolean measured = i >= warmup;
+                    run(server, client, scenario, chunkDelay, measured ? ttft : null, measured ? overhead : null);
+                }
+                System.out.printf(Locale.ROOT, "%-14s %8.2fms %8.2fms %12.1fus %12.1fus %12.1fus%n",
+                        scenario.name,
+                        percentile(ttft, 50) / 1e6, percentile(ttft, 90) / 1e6,
+                        percentile(overhead, 50) / 1e3, percentile(overhead, 90) / 1e3,
+                        percentile(overhead, 100) / 1e3);
+            }
+        } finally {
+            SPManager.getInstance().setStreamingOutputEnabled(false);
+        }
+    }
+
+    private static void run(MockLlmServer server, ChatGPTClient client, Scenario scenario, long chunkDelay,
+                            List<Long> ttft, List<Long> overhead) throws Exception {
+        MockResponse response = MockResponse.stream(scenario.chunks()).setChunkDelay(chunkDelay);
+        server.enqueue(response);
+        RequestSpec spec = new RequestSpec.Builder().setStreamingMode(scenario.streamingMode).build();
+
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        long start = System.nanoTime();
+        client.submitPrompt("Say hello", null, spec).subscribe(subscriber);
+        subscriber.await(30);
+        server.takeRequest();
+        if (subscriber.getError() != null) throw new AssertionError(scenario.name, subscriber.getError());
+        if (!scenario.text.equals(subscriber.getText())) {
+            throw new AssertionError(scenario.name + ": got \"" + subscriber.getText() + "\"");
+        }
+        if (ttft == null) return;
+
+        List<Long> received = subscriber.getReceivedAt();
+        List<Long> sent = response.getSentAt();
+        ttft.add(received.get(0) - start);
+        for (long r : received) {
+            // The chunk that carried this delta is the last one sent before it arrived.
+            long carrier = Long.MIN_VALUE;
+            for (long s : sent) {
+                if (s <= r && s > carrier) carrier = s;
+            }
+            if (carrier != Long.MIN_VALUE) overhead.add(r - carrier);
+        }
+    }
+
+    private static double percentile(List<Long> values, int p) {
+        if (values.isEmpty()) return Double.NaN;
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+}
@@ -0,0 +1,376 @@
+package tn.eluea.kgpt.llm.bench;
+
+import android.os.Looper;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.core.ai.AiResponseManager;
+import tn.eluea.kgpt.listener.GenerativeAIListener;
+import tn.eluea.kgpt.llm.GenerativeAIController;
+import tn.eluea.kgpt.llm.LanguageModel;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.mock.MockLlmServer;
+import tn.eluea.kgpt.llm.mock.MockResponse;
+import tn.eluea.kgpt.llm.mock.Recordings;
+import tn.eluea.kgpt.ui.IMSController;
+
+/**
+ * Latency, allocation and thread hops of a whole reply, from {@link AiResponseManager#generateResponse}
+ * through {@link GenerativeAIController}, the client, the stream parser and the streaming renderer
+ * to the (stand-in) editor, against {@link MockLlmServer}.
+ *
+ * Per scenario (provider format x stream mode) it reports:
+ *   ttft      generateResponse() to the first editor commit;
+ *   deliver   server send of a chunk to the onAINext batch that carried it (parse + UI hop);
+ *   commit    server send to the editor commit holding the end of that batch (adds the renderer);
+ *   alloc     bytes allocated per reply by the app's threads (not the mock server's), and the rate;
+ *   hops      main-looper posts from other threads per reply, and threads that did work.
+ *
+ * The renderer runs at full speed, so the commit figures are the pipeline's cost, not the
+ * configured typing pace. Results go to a JSON file; pass the file of an earlier run as
+ * {@code --baseline} to print the change per metric.
+ *
+ *   ./gradlew :llmtest:streamingPath [-PbenchIterations=50] [-PbenchBaseline=old.json]
+ */
+public final class StreamingPathBenchmark {
+
+    private static final class Scenario {
+        final String name;
+        final LanguageModel provider;
+        final String recording;
+        final int streamingMode;
+        final boolean wholeBody;
+        final int sliceSize;
+        final String text;
+
+        Scenario(String name, LanguageModel provider, String recording, int streamingMode, boolean wholeBody,
+                 int sliceSize, String text) {
+            this.name = name;
+            this.provider = provider;
+            this.recording = recording;
+            this.streamingMode = streamingMode;
+            this.wholeBody = wholeBody;
+            this.sliceSize = sliceSize;
+            this.text = text;
+        }
+
+        MockResponse response(long chunkDelay) {
+            String body = Recordings.load(recording);
+            if (wholeBody) return MockResponse.ok(body);
+            List<String> chunks = sliceSize > 0 ? Recordings.slices(body, sliceSize) : Recordings.lines(body);
+            return MockResponse.stream(chunks).setChunkDelay(chunkDelay);
+        }
+    }
+
+    private static final Scenario[] SCENARIOS = {
+            new Scenario("openai-sse", LanguageModel.ChatGPT, Recordings.OPENAI_SSE,
+                    SPManager.STREAM_MODE_SSE, false, 0, Recordings.TEXT),
+            new Scenario("openai-jsonl", LanguageModel.ChatGPT, Recordings.OPENAI_JSONL,
+                    SPManager.STREAM_MODE_JSONL, false, 0, Recordings.TEXT),
+            new Scenario("openai-auto", LanguageModel.ChatGPT, Recordings.OPENAI_SSE,
+                    SPManager.STREAM_MODE_AUTO, false, 0, Recordings.TEXT),
+            new Scenario("openai-concatenated", LanguageModel.ChatGPT, Recordings.OPENAI_CONCATENATED,
+                    SPManager.STREAM_MODE_AUTO, false, 0, Recordings.CONCATENATED_TEXT),
+            new Scenario("openai-noisy-proxy", LanguageModel.ChatGPT, Recordings.OPENAI_NOISY_PROXY,
+                    SPManager.STREAM_MODE_AUTO, false, 24, Recordings.TEXT),
+            new Scenario("openai-typewriter", LanguageModel.ChatGPT, Recordings.OPENAI_NON_STREAM,
+                    SPManager.STREAM_MODE_TYPEWRITER, true, 0, Recordings.TEXT),
+            // Gemini always replies with a whole body; the renderer types it out.
+            new Scenario("gemini", LanguageModel.Gemini, Recordings.GEMINI_NON_STREAM,
+                    SPManager.STREAM_MODE_AUTO, true, 0, Recordings.TEXT),
+    };
+
+    private static final String[] METRICS = {
+            "ttftP50Ms", "ttftP90Ms", "deliverP50Us", "deliverP90Us", "commitP50Us", "commitP90Us",
+            "allocKbPerReply", "allocMbPerSec", "uiPostsPerReply", "uiPostsPerChunk", "threads",
+    };
+
+    private static int sPromptSeq = 0;
+
+    private StreamingPathBenchmark() {
+    }
+
+    /** What the listener and the editor saw of one reply. */
+    private static final class Probe implements GenerativeAIListener {
+        final List<Long> deliveredAt = new ArrayList<>();
+        final List<Integer> deliveredEnd = new ArrayList<>();
+        final TreeSet<String> threads = new TreeSet<>();
+        int chars = 0;
+        volatile Throwable error;
+
+        @Override
+        public void onAIPrepare() {
+        }
+
+        @Override
+        public void onAINext(String chunk) {
+            chars += chunk.length();
+            deliveredAt.add(System.nanoTime());
+            deliveredEnd.add(chars);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void onAIError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onAIComplete() {
+        }
+    }
+
+    private static final class Samples {
+        final List<Long> ttft = new ArrayList<>();
+        final List<Long> deliver = new ArrayList<>();
+        final List<Long> commit = new ArrayList<>();
+        long allocBytes = 0;
+        long elapsedNs = 0;
+        long uiPosts = 0;
+        long chunks = 0;
+        int replies = 0;
+        final TreeSet<String> threads = new TreeSet<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = 50;
+        int warmup = 10;
+        long chunkDelay = 2;
+        String out = "build/reports/streamingPath/results.json";
+        String baseline = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--iterations": iterations = Integer.parseInt(args[i + 1]); break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--chunk-delay": chunkDelay = Long.parseLong(args[i + 1]); break;
+                case "--out": out = args[i + 1]; break;
+                case "--baseline": baseline = args[i + 1]; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SPManager sp = SPManager.getInstance();
+        sp.setStreamingOutputEnabled(true);
+        sp.setStreamingOutputSpeedPercent(100);
+        sp.setStreamingOutputSpeedAutoEnabled(false);
+        // Only reply text reaches the editor, and every run sends the same prompt.
+        sp.setGeneratingContentEnabled(false);
+        sp.setConversationMemoryLevel(0);
+
+        JSONObject results = new JSONObject();
+        JSONObject config = new JSONObject();
+        config.put("iterations", iterations);
+        config.put("warmup", warmup);
+        config.put("chunkDelayMs", chunkDelay);
+        config.put("java", System.getProperty("java.version"));
+        results.put("config", config);
+        JSONObject scenarios = new JSONObject();
+        results.put("scenarios", scenarios);
+
+        try (MockLlmServer server = MockLlmServer.start()) {
+            System.out.printf(Locale.ROOT, "%d iterations (+%d warm-up), chunk delay %d ms%n", iterations, warmup, chunkDelay);
+            System.out.printf(Locale.ROOT, "%-20s %9s %9s %10s %10s %10s %10s %9s %8s %7s%n",
+                    "scenario", "ttft p50", "ttft p90", "deliv p50", "deliv p90", "commit p50", "commit p90",
+                    "KB/reply", "posts", "threads");
+            for (Scenario scenario : SCENARIOS) {
+                sp.setLanguageModel(scenario.provider);
+                sp.setLanguageModelField(scenario.provider, LanguageModelField.ApiKey, "bench");
+                sp.setLanguageModelField(scenario.provider, LanguageModelField.BaseUrl,
+                        server.url(scenario.provider == LanguageModel.Gemini ? "/v1beta" : "/v1"));
+                sp.setStreamingOutputMode(scenario.streamingMode);
+                GenerativeAIController controller = new GenerativeAIController();
+                AiResponseManager manager = new AiResponseManager(controller, null);
+
+                Samples samples = new Samples();
+                for (int i = 0; i < warmup + iterations; i++) {
+                    run(server, controller, manager, scenario, chunkDelay, i >= warmup ? samples : null);
+                }
+
+                JSONObject r = summarize(samples);
+                scenarios.put(scenario.name, r);
+                System.out.printf(Locale.ROOT, "%-20s %7.2fms %7.2fms %8.1fus %8.1fus %8.1fus %8.1fus %9.1f %8.2f %7d%n",
+                        scenario.name, r.getDouble("ttftP50Ms"), r.getDouble("ttftP90Ms"),
+                        r.getDouble("deliverP50Us"), r.getDouble("deliverP90Us"),
+                        r.getDouble("commitP50Us"), r.getDouble("commitP90Us"),
+                        r.getDouble("allocKbPerReply"), r.getDouble("uiPostsPerReply"), r.getInt("threads"));
+            }
+        }
+
+        File outFile = new File(out);
+        if (outFile.getParentFile() != null) outFile.getParentFile().mkdirs();
+        Files.write(outFile.toPath(), results.toString(2).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + outFile.getPath());
+        if (baseline != null) compare(baseline, results);
+    }
+
+    private static void run(MockLlmServer server, GenerativeAIController controller, AiResponseManager manager,
+                            Scenario scenario, long chunkDelay, Samples samples) throws Exception {
+        IMSController ims = IMSController.getInstance();
+        ims.reset();
+        MockResponse response = scenario.response(chunkDelay);
+        server.enqueue(response);
+        Probe probe = new Probe();
+        controller.addListener(probe);
+
+        Map<Long, Long> allocBefore = allocatedBytes();
+        long postsBefore = Looper.getMainLooper().getForeignPostCount();
+        long start = System.nanoTime();
+        // A distinct prompt each time, or InFlightRequests would join the previous stream.
+        manager.generateResponse("Say hello #" + (++sPromptSeq), null);
+        boolean done = ims.awaitDone(30_000);
+        long end = System.nanoTime();
+        long posts = Looper.getMainLooper().getForeignPostCount() - postsBefore;
+        Map<Long, Long> allocAfter = allocatedBytes();
+
+        // The controller walks its listeners on the main looper; detach the probe there.
+        onMainLooper(() -> controller.removeListener(probe));
+        if (!done) throw new AssertionError(scenario.name + ": no reply within 30 s");
+        if (probe.error != null) throw new AssertionError(scenario.name, probe.error);
+        if (!scenario.text.equals(ims.getText())) {
+            throw new AssertionError(scenario.name + ": editor has \"" + ims.getText() + "\"");
+        }
+        server.takeRequest();
+        if (samples == null) return;
+
+        List<IMSController.Commit> commits = ims.getCommits();
+        List<Long> sent = response.getSentAt();
+        samples.ttft.add(commits.get(0).atNanos - start);
+        for (int i = 0; i < probe.deliveredAt.size(); i++) {
+            long delivered = probe.deliveredAt.get(i);
+            // The chunk that carried this batch is the last one sent before it arrived.
+            long carrier = Long.MIN_VALUE;
+            for (long s : sent) {
+                if (s <= delivered && s > carrier) carrier = s;
+            }
+            if (carrier == Long.MIN_VALUE) continue;
+            samples.deliver.add(delivered - carrier);
+            long committed = commitTimeOf(commits, probe.deliveredEnd.get(i));
+            if (committed != Long.MIN_VALUE) samples.commit.add(committed - carrier);
+        }
+
+        // The benchmark's own thread only waits; its bookkeeping is left out.
+        long self = Thread.currentThread().getId();
+        Map<Long, String> names = threadNames();
+        for (Map.Entry<Long, Long> e : allocAfter.entrySet()) {
+            String name = names.get(e.getKey());
+            if (name == null || name.startsWith("MockLlmServer") || e.getKey() == self) continue;
+            Long before = allocBefore.get(e.getKey());
+            long delta = e.getValue() - (before == null ? 0 : before);
+            if (delta <= 0) continue;
+            samples.allocBytes += delta;
+            // Pool threads are told apart by a trailing number; count them as one kind.
+            samples.threads.add(name.replaceAll("-?\\d+$", ""));
+        }
+        samples.threads.addAll(probe.threads);
+        for (IMSController.Commit c : commits) samples.threads.add(c.thread);
+        samples.elapsedNs += end - start;
+        samples.uiPosts += posts;
+        samples.chunks += probe.deliveredAt.size();
+        samples.replies++;
+    }
+
+    /** Time of the editor commit that brought the text up to {@code endChar} characters. */
+    private static long commitTimeOf(List<IMSController.Commit> commits, int endChar) {
+        int chars = 0;
+        for (IMSController.Commit c : commits) {
+            chars += c.text.length();
+            if (chars >= endChar) return c.atNanos;
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private static void onMainLooper(Runnable r) throws InterruptedException {
+        Object lock = new Object();
+        boolean[] ran = {false};
+        new android.os.Handler(Looper.getMainLooper()).post(() -> {
+            r.run();
+            synchronized (lock) {
+                ran[0] = true;
+                lock.notifyAll();
+            }
+        });
+        synchronized (lock) {
+            while (!ran[0]) lock.wait();
+        }
+    }
+
+    private static Map<Long, Long> allocatedBytes() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] ids = mx.getAllThreadIds();
+        long[] bytes = mx.getThreadAllocatedBytes(ids);
+        Map<Long, Long> out = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) out.put(ids[i], bytes[i]);
+        }
+        return out;
+    }
+
+    private static Map<Long, String> threadNames() {
+        Map<Long, String> out = new HashMap<>();
+        for (Thread t : Thread.getAllStackTraces().keySet()) out.put(t.getId(), t.getName());
+        return out;
+    }
+
+    private static JSONObject summarize(Samples s) {
+        JSONObject r = new JSONObject();
+        r.put("ttftP50Ms", round(percentile(s.ttft, 50) / 1e6));
+        r.put("ttftP90Ms", round(percentile(s.ttft, 90) / 1e6));
+        r.put("deliverP50Us", round(percentile(s.deliver, 50) / 1e3));
+        r.put("deliverP90Us", round(percentile(s.deliver, 90) / 1e3));
+        r.put("commitP50Us", round(percentile(s.commit, 50) / 1e3));
+        r.put("commitP90Us", round(percentile(s.commit, 90) / 1e3));
+        r.put("allocKbPerReply", round(s.allocBytes / 1024.0 / s.replies));
+        r.put("allocMbPerSec", round(s.allocBytes / 1048576.0 / (s.elapsedNs / 1e9)));
+        r.put("uiPostsPerReply", round(s.uiPosts / (double) s.replies));
+        r.put("uiPostsPerChunk", round(s.chunks == 0 ? 0 : s.uiPosts / (double) s.chunks));
+        r.put("threads", s.threads.size());
+        r.put("threadNames", String.join(",", s.threads));
+        return r;
+    }
+
+    private static void compare(String baselinePath, JSONObject results) throws IOException {
+        JSONObject base = new JSONObject(new String(Files.readAllBytes(new File(baselinePath).toPath()),
+                StandardCharsets.UTF_8)).getJSONObject("scenarios");
+        JSONObject now = results.getJSONObject("scenarios");
+        System.out.println();
+        System.out.println("Change against " + baselinePath + " (negative is better for every metric):");
+        for (Scenario scenario : SCENARIOS) {
+            String name = scenario.name;
+            if (!base.has(name) || !now.has(name)) continue;
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-20s", name));
+            for (String metric : METRICS) {
+                double was = base.getJSONObject(name).optDouble(metric, Double.NaN);
+                double is = now.getJSONObject(name).optDouble(metric, Double.NaN);
+                if (Double.isNaN(was) || Double.isNaN(is) || was == 0) continue;
+                line.append(String.format(Locale.ROOT, " %s %+.1f%%", metric, (is - was) / was * 100));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static double round(double v) {
+        return Double.isNaN(v) ? v : Math.round(v * 100) / 100.0;
+    }
+
+    private static double percentile(List<Long> values, int p) {
+        if (values.isEmpty()) return Double.NaN;
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+}
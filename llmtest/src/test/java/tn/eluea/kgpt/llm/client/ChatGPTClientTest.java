@@ -0,0 +1,164 @@
+package tn.eluea.kgpt.llm.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.mock.CollectingSubscriber;
+import tn.eluea.kgpt.llm.mock.MockLlmServer;
+import tn.eluea.kgpt.llm.mock.MockResponse;
+import tn.eluea.kgpt.llm.mock.RecordedRequest;
+import tn.eluea.kgpt.llm.mock.Recordings;
+
+public class ChatGPTClientTest {
+    private MockLlmServer server;
+    private ChatGPTClient client;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = MockLlmServer.start();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        client = new ChatGPTClient();
+        client.setField(LanguageModelField.ApiKey, "test");
+        client.setField(LanguageModelField.BaseUrl, server.url("/v1"));
+        client.setField(LanguageModelField.SubModel, "gpt-4o-mini");
+        SPManager.getInstance().setStreamingOutputEnabled(true);
+        SPManager.getInstance().setStreamingOutputMode(SPManager.STREAM_MODE_AUTO);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        SPManager.getInstance().setStreamingOutputEnabled(false);
+    }
+
+    private CollectingSubscriber submit(RequestSpec spec) throws InterruptedException {
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.submitPrompt("Say hello", "Be brief.", spec).subscribe(subscriber);
+        return subscriber.await(10);
+    }
+
+    @Test
+    public void streamsSseReply() throws Exception {
+        server.enqueue(MockResponse.stream(Recordings.lines(Recordings.load(Recordings.OPENAI_SSE))).setChunkDelay(5));
+        CollectingSubscriber s = submit(RequestSpec.DEFAULT);
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.TEXT);
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals(request.getMethod(), "POST");
+        assertEquals(request.getPath(), "/v1/chat/completions");
+        assertEquals(request.getHeader("Authorization"), "Bearer test");
+        // Streams ask for identity so no proxy holds tokens back to compress them.
+        assertEquals(request.getHeader("Accept-Encoding"), "identity");
+        JSONObject body = new JSONObject(request.getBody());
+        assertTrue(body.getBoolean("stream"));
+        assertEquals(body.getString("model"), "gpt-4o-mini");
+        assertEquals(body.getJSONArray("messages").getJSONObject(0).getString("content"), "Be brief.");
+        assertEquals(body.getJSONArray("messages").getJSONObject(1).getString("content"), "Say hello");
+    }
+
+    @Test
+    public void streamsJsonLinesInJsonlMode() throws Exception {
+        server.enqueue(MockResponse.stream(Recordings.lines(Recordings.load(Recordings.OPENAI_JSONL)))
+                .setContentType("application/x-ndjson"));
+        RequestSpec spec = new RequestSpec.Builder().setStreamingMode(SPManager.STREAM_MODE_JSONL).build();
+        CollectingSubscriber s = submit(spec);
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.TEXT);
+        server.takeRequest();
+    }
+
+    @Test
+    public void streamsThroughNoisyProxy() throws Exception {
+        server.enqueue(MockResponse.stream(Recordings.slices(Recordings.load(Recordings.OPENAI_NOISY_PROXY), 16)));
+        CollectingSubscriber s = submit(RequestSpec.DEFAULT);
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.TEXT);
+        server.takeRequest();
+    }
+
+    @Test
+    public void streamsConcatenatedFrames() throws Exception {
+        server.enqueue(MockResponse.stream(Recordings.lines(Recordings.load(Recordings.OPENAI_CONCATENATED))));
+        CollectingSubscriber s = submit(RequestSpec.DEFAULT);
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.CONCATENATED_TEXT);
+        server.takeRequest();
+    }
+
+    @Test
+    public void typewriterModeSendsWholeBodyRequestAndReadsGzippedReply() throws Exception {
+        server.enqueue(MockResponse.ok(Recordings.load(Recordings.OPENAI_NON_STREAM)).setGzip(true));
+        RequestSpec spec = new RequestSpec.Builder().setStreamingMode(SPManager.STREAM_MODE_TYPEWRITER).build();
+        CollectingSubscriber s = submit(spec);
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.TEXT);
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals(request.getHeader("Accept-Encoding"), "gzip");
+        assertFalse(new JSONObject(request.getBody()).getBoolean("stream"));
+    }
+
+    @Test
+    public void errorStatusFailsTheStream() throws Exception {
+        server.enqueue(MockResponse.error(401, Recordings.load(Recordings.OPENAI_ERROR_401)));
+        CollectingSubscriber s = submit(RequestSpec.DEFAULT);
+        assertNotNull(s.getError());
+        assertTrue(s.getError().getMessage().contains("401"), s.getError().getMessage());
+        assertEquals(s.getText(), "");
+        server.takeRequest();
+    }
+
+    @Test
+    public void connectionResetMidStreamFailsAfterTheDeltasSoFar() throws Exception {
+        server.enqueue(MockResponse.stream(Recordings.lines(Recordings.load(Recordings.OPENAI_SSE))).setDisconnectAfter(3));
+        SPManager.getInstance().setStreamingOutputFallbackNonStreamEnabled(false);
+        try {
+            CollectingSubscriber s = submit(RequestSpec.DEFAULT);
+            assertEquals(s.getText(), "Hello,");
+            assertNotNull(s.getError());
+        } finally {
+            SPManager.getInstance().setStreamingOutputFallbackNonStreamEnabled(true);
+        }
+        server.takeRequest();
+    }
+
+    @Test
+    public void cancelDuringStallStopsTheServerWrite() throws Exception {
+        MockResponse response = MockResponse.stream(Recordings.lines(Recordings.load(Recordings.OPENAI_SSE)))
+                .setChunkDelay(20)
+                .setStall(3, 500);
+        server.enqueue(response);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.submitPrompt("Say hello", null, RequestSpec.DEFAULT).subscribe(subscriber);
+        assertTrue(subscriber.awaitFirst(5000));
+        subscriber.cancel();
+
+        assertTrue(response.awaitWritten(5, TimeUnit.SECONDS));
+        // The reply could not be finished: the client hung up during the stall. (The first write
+        // after the hang-up still succeeds; the reset comes back before the next one.)
+        assertTrue(response.getSentAt().size() < Recordings.lines(Recordings.load(Recordings.OPENAI_SSE)).size());
+        server.takeRequest();
+    }
+}
@@ -0,0 +1,104 @@
+package tn.eluea.kgpt.llm.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import tn.eluea.kgpt.llm.LanguageModelField;
+import tn.eluea.kgpt.llm.mock.CollectingSubscriber;
+import tn.eluea.kgpt.llm.mock.MockLlmServer;
+import tn.eluea.kgpt.llm.mock.MockResponse;
+import tn.eluea.kgpt.llm.mock.RecordedRequest;
+import tn.eluea.kgpt.llm.mock.Recordings;
+
+public class GeminiClientTest {
+    private MockLlmServer server;
+    private GeminiClient client;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = MockLlmServer.start();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        client = new GeminiClient();
+        client.setField(LanguageModelField.ApiKey, "test");
+        client.setField(LanguageModelField.BaseUrl, server.url("/v1beta"));
+        client.setField(LanguageModelField.SubModel, "gemini-2.5-flash");
+    }
+
+    private CollectingSubscriber submit() throws InterruptedException {
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.submitPrompt("Say hello", "Be brief.").subscribe(subscriber);
+        return subscriber.await(10);
+    }
+
+    @Test
+    public void readsWholeBodyReply() throws Exception {
+        server.enqueue(MockResponse.ok(Recordings.load(Recordings.GEMINI_NON_STREAM)));
+        CollectingSubscriber s = submit();
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.TEXT);
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals(request.getPath(), "/v1beta/models/gemini-2.5-flash:generateContent");
+        assertEquals(request.getHeader("x-goog-api-key"), "test");
+        assertEquals(request.getHeader("Accept-Encoding"), "gzip");
+        // Only Google's own front end is trusted with gzip request bodies, not a relay.
+        assertNull(request.getHeader("Content-Encoding"));
+
+        JSONObject body = new JSONObject(request.getBody());
+        assertEquals(body.getJSONObject("systemInstruction").getJSONArray("parts").getJSONObject(0).getString("text"),
+                "Be brief.");
+        JSONArray contents = body.getJSONArray("contents");
+        assertEquals(contents.length(), 1);
+        assertEquals(contents.getJSONObject(0).getJSONArray("parts").length(), 1);
+    }
+
+    @Test
+    public void readsGzippedReplyAfterSlowHeaders() throws Exception {
+        server.enqueue(MockResponse.ok(Recordings.load(Recordings.GEMINI_NON_STREAM)).setGzip(true).setHeadersDelay(50));
+        CollectingSubscriber s = submit();
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.TEXT);
+        server.takeRequest();
+    }
+
+    @Test
+    public void oldModelsGetTheSystemMessageInTheUserTurn() throws Exception {
+        client.setField(LanguageModelField.SubModel, "gemini-1.0-pro");
+        server.enqueue(MockResponse.ok(Recordings.load(Recordings.GEMINI_NON_STREAM)));
+        CollectingSubscriber s = submit();
+        assertNull(s.getError());
+
+        JSONObject body = new JSONObject(server.takeRequest().getBody());
+        assertFalse(body.has("systemInstruction"));
+        JSONArray parts = body.getJSONArray("contents").getJSONObject(0).getJSONArray("parts");
+        assertEquals(parts.getJSONObject(0).getString("text"), "Be brief.");
+        assertEquals(parts.getJSONObject(1).getString("text"), "Say hello");
+    }
+
+    @Test
+    public void quotaErrorFailsTheStream() throws Exception {
+        server.enqueue(MockResponse.error(429, Recordings.load(Recordings.GEMINI_ERROR_429)));
+        CollectingSubscriber s = submit();
+        assertNotNull(s.getError());
+        assertTrue(s.getError().getMessage().contains("429"), s.getError().getMessage());
+        server.takeRequest();
+    }
+}
@@ -0,0 +1,137 @@
+package tn.eluea.kgpt.llm.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import tn.eluea.kgpt.SPManager;
+import tn.eluea.kgpt.llm.mock.CollectingSubscriber;
+import tn.eluea.kgpt.llm.mock.MockLlmServer;
+import tn.eluea.kgpt.llm.mock.MockResponse;
+import tn.eluea.kgpt.llm.mock.Recordings;
+
+public class OpenAICompatStreamParserTest {
+    private MockLlmServer server;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = MockLlmServer.start();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    private static CollectingSubscriber parse(String body, int mode, boolean fallback) throws Throwable {
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        OpenAICompatStreamParser.parse(subscriber, new BufferedReader(new StringReader(body)), mode, fallback);
+        return subscriber;
+    }
+
+    /** Parse the reply of {@code response} as it arrives over a loopback socket. */
+    private CollectingSubscriber parseFromServer(MockResponse response, int mode) throws Exception {
+        server.enqueue(response);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        Thread reader = new Thread(() -> {
+            try (InputStream in = new URL(server.url("/stream")).openStream()) {
+                OpenAICompatStreamParser.parse(subscriber,
+                        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), mode, false);
+                subscriber.onComplete();
+            } catch (Throwable t) {
+                subscriber.onError(t);
+            }
+        }, "parser-test");
+        reader.start();
+        return subscriber;
+    }
+
+    @Test
+    public void sseEmitsEachDeltaAndStopsAtDone() throws Throwable {
+        CollectingSubscriber s = parse(Recordings.load(Recordings.OPENAI_SSE), SPManager.STREAM_MODE_SSE, true);
+        assertEquals(s.getItems(), Arrays.asList("Hello", ",", " world", "!"));
+    }
+
+    @Test
+    public void autoDetectsSse() throws Throwable {
+        CollectingSubscriber s = parse(Recordings.load(Recordings.OPENAI_SSE), SPManager.STREAM_MODE_AUTO, false);
+        assertEquals(s.getText(), Recordings.TEXT);
+    }
+
+    @Test
+    public void autoDetectsJsonLines() throws Throwable {
+        CollectingSubscriber s = parse(Recordings.load(Recordings.OPENAI_JSONL), SPManager.STREAM_MODE_AUTO, false);
+        assertEquals(s.getItems(), Arrays.asList("Hello", ",", " world", "!"));
+    }
+
+    @Test
+    public void jsonLinesModeReadsJsonLines() throws Throwable {
+        CollectingSubscriber s = parse(Recordings.load(Recordings.OPENAI_JSONL), SPManager.STREAM_MODE_JSONL, true);
+        assertEquals(s.getText(), Recordings.TEXT);
+    }
+
+    @Test
+    public void concatenatedFramesAreSplitButDataInsideContentIsNot() throws Throwable {
+        CollectingSubscriber s = parse(Recordings.load(Recordings.OPENAI_CONCATENATED), SPManager.STREAM_MODE_AUTO, false);
+        assertEquals(s.getItems(), Arrays.asList("Hello", ", metadata: ", "{\"k\":1}data: kept", " world", "!"));
+    }
+
+    @Test
+    public void noisyProxyOutputIsCleanedUp() throws Throwable {
+        CollectingSubscriber s = parse(Recordings.load(Recordings.OPENAI_NOISY_PROXY), SPManager.STREAM_MODE_AUTO, true);
+        // Nothing after [DONE], and the tail recovery adds nothing that was already emitted.
+        assertEquals(s.getText(), Recordings.TEXT);
+    }
+
+    @Test
+    public void wholeBodyFromServerIgnoringStreamIsStillRead() throws Throwable {
+        String body = Recordings.load(Recordings.OPENAI_NON_STREAM);
+        // Read as one JSON line (AUTO) or as an SSE line without "data:"; emitted once either way.
+        assertEquals(parse(body, SPManager.STREAM_MODE_AUTO, true).getItems(), Arrays.asList(Recordings.TEXT));
+        assertEquals(parse(body, SPManager.STREAM_MODE_SSE, true).getItems(), Arrays.asList(Recordings.TEXT));
+        assertEquals(parse(body, SPManager.STREAM_MODE_AUTO, false).getItems(), Arrays.asList(Recordings.TEXT));
+    }
+
+    @Test
+    public void framesCutMidJsonAreReassembled() throws Exception {
+        MockResponse response = MockResponse.stream(Recordings.slices(Recordings.load(Recordings.OPENAI_SSE), 7));
+        CollectingSubscriber s = parseFromServer(response, SPManager.STREAM_MODE_SSE).await(10);
+        assertNull(s.getError());
+        assertEquals(s.getText(), Recordings.TEXT);
+    }
+
+    @Test
+    public void deltasArriveBeforeAStallEnds() throws Exception {
+        // Role chunk, "Hello", then the server goes quiet.
+        MockResponse response = MockResponse.stream(Recordings.lines(Recordings.load(Recordings.OPENAI_SSE)))
+                .setStall(2, 1500);
+        CollectingSubscriber s = parseFromServer(response, SPManager.STREAM_MODE_SSE);
+        assertTrue(s.awaitFirst(1000), "first delta was held back by the stall");
+        assertFalse(s.isDone());
+        assertEquals(s.getItems(), Arrays.asList("Hello"));
+        s.await(10);
+        assertEquals(s.getText(), Recordings.TEXT);
+    }
+
+    @Test
+    public void connectionResetMidStreamIsAnError() throws Exception {
+        MockResponse response = MockResponse.stream(Recordings.lines(Recordings.load(Recordings.OPENAI_SSE)))
+                .setDisconnectAfter(3);
+        CollectingSubscriber s = parseFromServer(response, SPManager.STREAM_MODE_SSE).await(10);
+        assertEquals(s.getItems(), Arrays.asList("Hello", ","));
+        assertTrue(s.getError() != null, "reset was taken for the end of the stream");
+    }
+}
@@ -0,0 +1,109 @@
+package tn.eluea.kgpt.llm.internet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MeteredResponseStreamTest {
+
+    private static final String BODY = repeat("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"hello\"}]}}]}\n", 64);
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append(s);
+        return sb.toString();
+    }
+
+    private static final class Stream extends MeteredResponseStream {
+        Stream(InputStream in, boolean gzip, TransferListener listener) {
+            super(in, gzip, listener);
+        }
+
+        @Override
+        protected void onAbort() {
+        }
+    }
+
+    private static final class Recorder implements MeteredResponseStream.TransferListener {
+        final AtomicLong bytes = new AtomicLong(-1);
+        final AtomicLong wire = new AtomicLong(-1);
+
+        @Override
+        public void recordTransfer(long bytes, boolean aborted) {
+            recordTransfer(bytes, bytes, aborted);
+        }
+
+        @Override
+        public void recordTransfer(long bytes, long wireBytes, boolean aborted) {
+            this.bytes.set(bytes);
+            this.wire.set(wireBytes);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void gzippedBodyIsDecodedAndCountedOnTheWire() throws Exception {
+        byte[] raw = BODY.getBytes(StandardCharsets.UTF_8);
+        byte[] gz = HttpEncoding.encodeBody(raw, true);
+        assertTrue(gz.length < raw.length / 4, "body did not compress");
+
+        Recorder recorder = new Recorder();
+        Stream stream = new Stream(new ByteArrayInputStream(gz), true, recorder);
+        assertEquals(readAll(stream), BODY);
+        stream.close();
+
+        assertEquals(recorder.bytes.get(), raw.length);
+        assertEquals(recorder.wire.get(), gz.length);
+    }
+
+    @Test
+    public void plainBodyPassesThroughWhenGzipWasAccepted() throws Exception {
+        byte[] raw = BODY.getBytes(StandardCharsets.UTF_8);
+        Recorder recorder = new Recorder();
+        Stream stream = new Stream(new ByteArrayInputStream(raw), true, recorder);
+        assertEquals(readAll(stream), BODY);
+        stream.close();
+
+        assertEquals(recorder.bytes.get(), raw.length);
+        assertEquals(recorder.wire.get(), raw.length);
+    }
+
+    @Test
+    public void emptyBodyIsNotMistakenForGzip() throws Exception {
+        Recorder recorder = new Recorder();
+        Stream stream = new Stream(new ByteArrayInputStream(new byte[0]), true, recorder);
+        assertEquals(stream.read(), -1);
+        stream.close();
+        assertEquals(recorder.bytes.get(), 0);
+    }
+
+    @Test
+    public void twoArgumentListenersStillReceiveTheTransfer() throws Exception {
+        AtomicLong bytes = new AtomicLong(-1);
+        boolean[] aborted = {true};
+        Stream stream = new Stream(new ByteArrayInputStream("data: x\n".getBytes()), false, (b, a) -> {
+            bytes.set(b);
+            aborted[0] = a;
+        });
+        readAll(stream);
+        stream.close();
+        assertEquals(bytes.get(), 8);
+        assertFalse(aborted[0]);
+    }
+}
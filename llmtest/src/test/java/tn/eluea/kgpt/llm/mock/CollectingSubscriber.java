@@ -0,0 +1,86 @@
+package tn.eluea.kgpt.llm.mock;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Requests everything and records each piece of text with the time it arrived. */
+public final class CollectingSubscriber implements Subscriber<String> {
+    private final List<String> mItems = new ArrayList<>();
+    private final List<Long> mReceivedAt = new ArrayList<>();
+    private final CountDownLatch mFirst = new CountDownLatch(1);
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private volatile Throwable mError;
+    private volatile Subscription mSubscription;
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        mSubscription = s;
+        s.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String s) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            mItems.add(s);
+            mReceivedAt.add(now);
+        }
+        mFirst.countDown();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        mError = t;
+        mFirst.countDown();
+        mDone.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        mFirst.countDown();
+        mDone.countDown();
+    }
+
+    public void cancel() {
+        Subscription s = mSubscription;
+        if (s != null) s.cancel();
+    }
+
+    /** Wait for onComplete / onError; fails the test on timeout. */
+    public CollectingSubscriber await(long seconds) throws InterruptedException {
+        if (!mDone.await(seconds, TimeUnit.SECONDS)) throw new AssertionError("Stream did not finish in " + seconds + "s");
+        return this;
+    }
+
+    /** Wait for the first piece of text (or the end of the stream). */
+    public boolean awaitFirst(long millis) throws InterruptedException {
+        return mFirst.await(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isDone() {
+        return mDone.getCount() == 0;
+    }
+
+    public Throwable getError() {
+        return mError;
+    }
+
+    public synchronized List<String> getItems() {
+        return new ArrayList<>(mItems);
+    }
+
+    public synchronized List<Long> getReceivedAt() {
+        return new ArrayList<>(mReceivedAt);
+    }
+
+    public synchronized String getText() {
+        StringBuilder sb = new StringBuilder();
+        for (String s : mItems) sb.append(s);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package tn.eluea.kgpt.llm.mock;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Loopback HTTP/1.1 server that stands in for an LLM provider.
+ *
+ * Replies are scripted with {@link #enqueue} and served in order, one per connection
+ * ({@code Connection: close}), always with chunked transfer encoding so chunk timing reaches the
+ * client unchanged. Requests are recorded for {@link #takeRequest}. Written on a plain
+ * {@link ServerSocket} rather than a server library so a reply can stall between any two bytes or
+ * drop the connection mid-body.
+ */
+public final class MockLlmServer implements Closeable {
+    private static final long NO_SCRIPT_TIMEOUT_MS = 5000;
+
+    private final ServerSocket mServerSocket;
+    private final BlockingQueue<MockResponse> mResponses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<RecordedRequest> mRequests = new LinkedBlockingQueue<>();
+    private final ExecutorService mWorkers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "MockLlmServer");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean mClosed = false;
+
+    private MockLlmServer() throws IOException {
+        mServerSocket = new ServerSocket();
+        mServerSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        mWorkers.execute(this::acceptLoop);
+    }
+
+    public static MockLlmServer start() throws IOException {
+        return new MockLlmServer();
+    }
+
+    /** Absolute URL of {@code path} on this server, e.g. {@code url("/v1")}. */
+    public String url(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    public void enqueue(MockResponse response) {
+        mResponses.add(response);
+    }
+
+    /** The next request received, waiting up to five seconds for it. */
+    public RecordedRequest takeRequest() throws InterruptedException {
+        RecordedRequest request = mRequests.poll(NO_SCRIPT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (request == null) throw new AssertionError("No request received");
+        return request;
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        try { mServerSocket.close(); } catch (IOException ignored) {}
+        mWorkers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!mClosed) {
+            Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            mWorkers.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        MockResponse response = null;
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            mRequests.add(readRequest(in));
+
+            response = mResponses.poll(NO_SCRIPT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (response == null) response = MockResponse.error(500, "{\"error\":{\"message\":\"no reply scripted\"}}");
+            writeResponse(socket, response);
+        } catch (IOException | InterruptedException ignored) {
+            // Client went away (cancel) or the server is closing.
+        } finally {
+            if (response != null) response.onWritten();
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // =============================
+    // Request
+    // =============================
+
+    private static RecordedRequest readRequest(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null) throw new IOException("Connection closed before the request line");
+        String[] parts = requestLine.split(" ");
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+
+        int length = 0;
+        String contentLength = headers.get("content-length");
+        if (contentLength != null) length = Integer.parseInt(contentLength);
+        byte[] wire = new byte[length];
+        int n = 0;
+        while (n < length) {
+            int r = in.read(wire, n, length - n);
+            if (r < 0) throw new IOException("Request body cut short");
+            n += r;
+        }
+
+        byte[] body = wire;
+        if ("gzip".equalsIgnoreCase(headers.get("content-encoding"))) {
+            try (InputStream gz = new GZIPInputStream(new ByteArrayInputStream(wire))) {
+                body = gz.readAllBytes();
+            }
+        }
+        return new RecordedRequest(parts[0], parts.length > 1 ? parts[1] : "", headers, body, length);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    // =============================
+    // Response
+    // =============================
+
+    private static void writeResponse(Socket socket, MockResponse response) throws IOException, InterruptedException {
+        sleep(response.getHeadersDelayMillis());
+        OutputStream out = socket.getOutputStream();
+
+        StringBuilder head = new StringBuilder()
+                .append("HTTP/1.1 ").append(response.getStatus()).append(' ').append(reason(response.getStatus())).append("\r\n")
+                .append("Content-Type: ").append(response.getContentType()).append("\r\n")
+                .append("Transfer-Encoding: chunked\r\n")
+                .append("Connection: close\r\n");
+        if (response.isGzip()) head.append("Content-Encoding: gzip\r\n");
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        int index = 0;
+        for (byte[] chunk : encodeChunks(response)) {
+            if (index == response.getDisconnectAfter()) {
+                // RST instead of FIN: the client sees a reset, not a clean end of body.
+                socket.setSoLinger(true, 0);
+                return;
+            }
+            sleep(response.getDelayBefore(index));
+            // Stamped before the write: on loopback the client may have the bytes before write() returns.
+            response.onChunkSent();
+            out.write((Integer.toHexString(chunk.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(chunk);
+            out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            index++;
+        }
+        out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /** The chunks as bytes; a gzipped reply is one deflated chunk (compression ends chunk timing). */
+    private static byte[][] encodeChunks(MockResponse response) throws IOException {
+        if (response.isGzip()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+                for (String chunk : response.getChunks()) gz.write(chunk.getBytes(StandardCharsets.UTF_8));
+            }
+            return new byte[][] { bytes.toByteArray() };
+        }
+        byte[][] chunks = new byte[response.getChunks().size()][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = response.getChunks().get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return chunks;
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) Thread.sleep(millis);
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 404: return "Not Found";
+            case 429: return "Too Many Requests";
+            case 500: return "Internal Server Error";
+            case 503: return "Service Unavailable";
+            default: return "Status";
+        }
+    }
+}
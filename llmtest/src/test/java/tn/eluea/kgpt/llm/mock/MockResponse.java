@@ -0,0 +1,135 @@
+package tn.eluea.kgpt.llm.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One scripted reply of {@link MockLlmServer}: status, body chunks and their timing.
+ *
+ * Every chunk is written and flushed as its own HTTP chunk, so the client sees the same
+ * boundaries a provider (or a re-chunking proxy) would produce. The server stamps each chunk
+ * with {@link System#nanoTime()} just before writing it; tests compare those stamps with the time
+ * the subscriber got the text.
+ */
+public final class MockResponse {
+    private final int status;
+    private final List<String> chunks;
+    private String contentType = "application/json";
+    private long headersDelayMillis;
+    private long chunkDelayMillis;
+    private final Map<Integer, Long> stalls = new HashMap<>();
+    private int disconnectAfter = -1;
+    private boolean gzip;
+
+    private final List<Long> sentAt = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch written = new CountDownLatch(1);
+
+    private MockResponse(int status, List<String> chunks) {
+        this.status = status;
+        this.chunks = chunks;
+    }
+
+    /** A whole 200 body, written in one chunk. */
+    public static MockResponse ok(String body) {
+        return new MockResponse(200, Collections.singletonList(body));
+    }
+
+    /** An error status with a whole body. */
+    public static MockResponse error(int status, String body) {
+        return new MockResponse(status, Collections.singletonList(body));
+    }
+
+    /** A 200 event stream, one HTTP chunk per entry. */
+    public static MockResponse stream(List<String> chunks) {
+        return new MockResponse(200, new ArrayList<>(chunks)).setContentType("text/event-stream");
+    }
+
+    public MockResponse setContentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    /** Time the server "thinks" before sending the status line. */
+    public MockResponse setHeadersDelay(long millis) {
+        headersDelayMillis = millis;
+        return this;
+    }
+
+    /** Pause before every chunk. */
+    public MockResponse setChunkDelay(long millis) {
+        chunkDelayMillis = millis;
+        return this;
+    }
+
+    /** An extra pause before chunk {@code index}, on top of the chunk delay. */
+    public MockResponse setStall(int index, long millis) {
+        stalls.put(index, millis);
+        return this;
+    }
+
+    /** Reset the connection after {@code count} chunks instead of finishing the body. */
+    public MockResponse setDisconnectAfter(int count) {
+        disconnectAfter = count;
+        return this;
+    }
+
+    /** Gzip the whole body and say so in Content-Encoding. */
+    public MockResponse setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    List<String> getChunks() {
+        return chunks;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    long getHeadersDelayMillis() {
+        return headersDelayMillis;
+    }
+
+    long getDelayBefore(int index) {
+        Long stall = stalls.get(index);
+        return chunkDelayMillis + (stall != null ? stall : 0);
+    }
+
+    int getDisconnectAfter() {
+        return disconnectAfter;
+    }
+
+    boolean isGzip() {
+        return gzip;
+    }
+
+    void onChunkSent() {
+        sentAt.add(System.nanoTime());
+    }
+
+    void onWritten() {
+        written.countDown();
+    }
+
+    /** Send time of each chunk written so far, in {@link System#nanoTime()} units. */
+    public List<Long> getSentAt() {
+        synchronized (sentAt) {
+            return new ArrayList<>(sentAt);
+        }
+    }
+
+    /** Wait until the server is done with this reply (finished, failed or disconnected). */
+    public boolean awaitWritten(long timeout, TimeUnit unit) throws InterruptedException {
+        return written.await(timeout, unit);
+    }
+}
@@ -0,0 +1,44 @@
+package tn.eluea.kgpt.llm.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/** A request as {@link MockLlmServer} received it. The body is already gunzipped. */
+public final class RecordedRequest {
+    private final String method;
+    private final String path;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final long wireBodyLength;
+
+    RecordedRequest(String method, String path, Map<String, String> headers, byte[] body, long wireBodyLength) {
+        this.method = method;
+        this.path = path;
+        this.headers = headers;
+        this.body = body;
+        this.wireBodyLength = wireBodyLength;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /** Header value, looked up case-insensitively; null when absent. */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public String getBody() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /** Body length as sent, before gunzipping. */
+    public long getWireBodyLength() {
+        return wireBodyLength;
+    }
+}
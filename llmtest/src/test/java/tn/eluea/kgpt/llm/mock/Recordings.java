@@ -0,0 +1,67 @@
+package tn.eluea.kgpt.llm.mock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provider replies captured from real endpoints (trimmed, ids and keys scrubbed), kept under
+ * {@code src/test/resources/recordings}, and the ways of cutting them into chunks.
+ */
+public final class Recordings {
+    public static final String OPENAI_SSE = "openai_sse.txt";
+    public static final String OPENAI_JSONL = "openai_jsonl.txt";
+    /** Frames glued together on one line by a relay, with "data:" inside the content too. */
+    public static final String OPENAI_CONCATENATED = "openai_concatenated.txt";
+    /** CRLF line ends, comments, event lines, junk before "data:", a non-JSON frame, data after [DONE]. */
+    public static final String OPENAI_NOISY_PROXY = "openai_noisy_proxy.txt";
+    public static final String OPENAI_NON_STREAM = "openai_nonstream.json";
+    public static final String OPENAI_ERROR_401 = "openai_error_401.json";
+    public static final String GEMINI_NON_STREAM = "gemini_nonstream.json";
+    public static final String GEMINI_ERROR_429 = "gemini_error_429.json";
+
+    /** The text every recording above decodes to, except {@link #OPENAI_CONCATENATED}. */
+    public static final String TEXT = "Hello, world!";
+    /** The text of {@link #OPENAI_CONCATENATED}. */
+    public static final String CONCATENATED_TEXT = "Hello, metadata: {\"k\":1}data: kept world!";
+
+    private Recordings() {
+    }
+
+    public static String load(String name) {
+        try (InputStream in = Recordings.class.getResourceAsStream("/recordings/" + name)) {
+            if (in == null) throw new IllegalArgumentException("No recording " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** One chunk per event or line, the way providers flush: split after every line feed. */
+    public static List<String> lines(String body) {
+        List<String> out = new ArrayList<>();
+        int start = 0;
+        int nl;
+        while ((nl = body.indexOf('\n', start)) >= 0) {
+            // Keep the blank line that ends an SSE event with the event itself.
+            int end = nl + 1;
+            while (end < body.length() && (body.charAt(end) == '\n' || body.charAt(end) == '\r')) end++;
+            out.add(body.substring(start, end));
+            start = end;
+        }
+        if (start < body.length()) out.add(body.substring(start));
+        return out;
+    }
+
+    /** Fixed-size slices that cut through lines and JSON, the way a re-chunking proxy does. */
+    public static List<String> slices(String body, int size) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < body.length(); i += size) {
+            out.add(body.substring(i, Math.min(body.length(), i + size)));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,24 @@
+package tn.eluea.kgpt.llm.publisher;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+public class InputStreamPublisherTckTest extends PublisherVerification<String> {
+
+    public InputStreamPublisherTckTest() {
+        super(new TestEnvironment(500));
+    }
+
+    @Override
+    public Publisher<String> createPublisher(long elements) {
+        return new InputStreamPublisher(
+                new InternetRequestPublisherTckTest.LinesInputStream(elements),
+                line -> line);
+    }
+
+    @Override
+    public Publisher<String> createFailedPublisher() {
+        return null;
+    }
+}
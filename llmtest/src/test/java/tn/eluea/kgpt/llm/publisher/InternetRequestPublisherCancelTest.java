@@ -0,0 +1,243 @@
+package tn.eluea.kgpt.llm.publisher;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tn.eluea.kgpt.llm.internet.MeteredResponseStream;
+
+public class InternetRequestPublisherCancelTest {
+
+    /** Records disconnect(); never touches the network. */
+    private static final class FakeConnection extends HttpURLConnection {
+        final CountDownLatch disconnected = new CountDownLatch(1);
+
+        FakeConnection() throws IOException {
+            super(new URL("http://127.0.0.1/"));
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected.countDown();
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+    }
+
+    /** Endless body that blocks like a socket until closed. */
+    private static final class BlockingBody extends InputStream {
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    @Test
+    public void cancelDisconnectsAndStopsSignals() throws Exception {
+        InternetRequestPublisher publisher = new InternetRequestPublisher(
+                InternetRequestPublisherTckTest::emitLines,
+                InternetRequestPublisherTckTest::emitLines);
+        FakeConnection con = new FakeConnection();
+        BlockingBody body = new BlockingBody();
+        publisher.onRequestConnection(con);
+        publisher.setInputStream(body);
+        publisher.onRequestStatusCode(200);
+
+        AtomicInteger signals = new AtomicInteger();
+        Subscription[] subscription = new Subscription[1];
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription[0] = s;
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+                signals.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                signals.incrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+                signals.incrementAndGet();
+            }
+        });
+
+        subscription[0].cancel();
+
+        assertTrue(con.disconnected.await(1, TimeUnit.SECONDS), "connection not disconnected");
+        assertTrue(body.closed.await(1, TimeUnit.SECONDS), "body not closed");
+        Thread.sleep(100);
+        assertEquals(signals.get(), 0, "signals after cancel");
+    }
+
+    @Test
+    public void cancelWhileWaitingForStatusCodeReleasesTheProducer() throws Exception {
+        InternetRequestPublisher publisher = new InternetRequestPublisher(
+                InternetRequestPublisherTckTest::emitLines,
+                InternetRequestPublisherTckTest::emitLines);
+        FakeConnection con = new FakeConnection();
+        BlockingBody body = new BlockingBody();
+        publisher.onRequestConnection(con);
+        publisher.setInputStream(body);
+        // No status code yet: the producer waits for it on the I/O executor, not in request().
+
+        Subscription[] subscription = new Subscription[1];
+        long t0 = System.nanoTime();
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription[0] = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(String s) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        assertTrue(System.nanoTime() - t0 < TimeUnit.MILLISECONDS.toNanos(200), "request() blocked");
+
+        subscription[0].cancel();
+        assertTrue(con.disconnected.await(1, TimeUnit.SECONDS), "connection not disconnected");
+    }
+
+    /** Transport stand-in: records the abort and the reported transfer. */
+    private static final class RecordingStream extends MeteredResponseStream {
+        final CountDownLatch aborted = new CountDownLatch(1);
+
+        RecordingStream(InputStream in, AtomicLong bytes, boolean[] abortedFlag, CountDownLatch reported) {
+            super(in, (b, a) -> {
+                bytes.set(b);
+                abortedFlag[0] = a;
+                reported.countDown();
+            });
+        }
+
+        @Override
+        protected void onAbort() {
+            aborted.countDown();
+        }
+    }
+
+    private static void subscribeAll(InternetRequestPublisher publisher, Subscription[] subscription,
+                                     CountDownLatch terminated) {
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription[0] = s;
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(String s) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                terminated.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                terminated.countDown();
+            }
+        });
+    }
+
+    @Test
+    public void cancelAbortsTheTransportAndRecordsAbortedBytes() throws Exception {
+        InternetRequestPublisher publisher = new InternetRequestPublisher(
+                InternetRequestPublisherTckTest::emitLines,
+                InternetRequestPublisherTckTest::emitLines);
+        byte[] head = "data: one\ndata: two\n".getBytes();
+        BlockingBody rest = new BlockingBody();
+        AtomicLong bytes = new AtomicLong(-1);
+        boolean[] aborted = new boolean[1];
+        CountDownLatch reported = new CountDownLatch(1);
+        RecordingStream body = new RecordingStream(
+                new SequenceInputStream(new ByteArrayInputStream(head), rest), bytes, aborted, reported);
+        publisher.onRequestConnection(new FakeConnection());
+        publisher.setInputStream(body);
+        publisher.onRequestStatusCode(200);
+
+        Subscription[] subscription = new Subscription[1];
+        subscribeAll(publisher, subscription, new CountDownLatch(1));
+        Thread.sleep(100);
+        subscription[0].cancel();
+
+        assertTrue(body.aborted.await(1, TimeUnit.SECONDS), "transport not aborted");
+        assertTrue(reported.await(1, TimeUnit.SECONDS), "transfer not recorded");
+        assertTrue(aborted[0], "transfer not marked aborted");
+        assertEquals(bytes.get(), (long) head.length, "bytes received before cancel");
+    }
+
+    @Test
+    public void completedResponseIsNotRecordedAsAborted() throws Exception {
+        InternetRequestPublisher publisher = new InternetRequestPublisher(
+                InternetRequestPublisherTckTest::emitLines,
+                InternetRequestPublisherTckTest::emitLines);
+        byte[] all = "data: one\ndata: two\n".getBytes();
+        AtomicLong bytes = new AtomicLong(-1);
+        boolean[] aborted = new boolean[1];
+        CountDownLatch reported = new CountDownLatch(1);
+        RecordingStream body = new RecordingStream(new ByteArrayInputStream(all), bytes, aborted, reported);
+        publisher.onRequestConnection(new FakeConnection());
+        publisher.setInputStream(body);
+        publisher.onRequestStatusCode(200);
+
+        CountDownLatch terminated = new CountDownLatch(1);
+        subscribeAll(publisher, new Subscription[1], terminated);
+
+        assertTrue(terminated.await(1, TimeUnit.SECONDS), "no terminal signal");
+        assertTrue(reported.await(1, TimeUnit.SECONDS), "transfer not recorded");
+        assertEquals(body.aborted.getCount(), 1L, "completed stream was aborted");
+        assertEquals(aborted[0], false);
+        assertEquals(bytes.get(), (long) all.length);
+    }
+}
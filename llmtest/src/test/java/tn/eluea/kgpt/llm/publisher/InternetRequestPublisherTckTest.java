@@ -0,0 +1,67 @@
+package tn.eluea.kgpt.llm.publisher;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+
+public class InternetRequestPublisherTckTest extends PublisherVerification<String> {
+
+    public InternetRequestPublisherTckTest() {
+        super(new TestEnvironment(500));
+    }
+
+    /** A 200 response of {@code lines} lines, parsed one chunk per line like the SSE parser. */
+    static InternetRequestPublisher response(long lines) {
+        InternetRequestPublisher publisher = new InternetRequestPublisher(
+                (s, reader) -> emitLines(s, reader),
+                (s, reader) -> {
+                    throw new RuntimeException(reader.readLine());
+                });
+        publisher.setInputStream(new LinesInputStream(lines));
+        publisher.onRequestStatusCode(200);
+        return publisher;
+    }
+
+    static void emitLines(org.reactivestreams.Subscriber<? super String> s, BufferedReader reader) throws Exception {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            s.onNext(line);
+        }
+    }
+
+    /** Generates "chunk\n" lines on the fly, so the TCK can ask for up to Long.MAX_VALUE of them. */
+    static final class LinesInputStream extends InputStream {
+        private static final byte[] LINE = "chunk\n".getBytes();
+        private long remaining;
+        private int pos = 0;
+
+        LinesInputStream(long lines) {
+            remaining = lines;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) return -1;
+            byte b = LINE[pos++];
+            if (pos == LINE.length) {
+                pos = 0;
+                remaining--;
+            }
+            return b;
+        }
+    }
+
+    @Override
+    public Publisher<String> createPublisher(long elements) {
+        return response(elements);
+    }
+
+    @Override
+    public Publisher<String> createFailedPublisher() {
+        // Errors are read from the response body, which only happens on demand (§1.4 allows that).
+        return null;
+    }
+}
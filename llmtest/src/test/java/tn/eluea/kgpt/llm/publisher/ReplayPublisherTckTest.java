@@ -0,0 +1,127 @@
+package tn.eluea.kgpt.llm.publisher;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ReplayPublisherTckTest extends PublisherVerification<String> {
+
+    public ReplayPublisherTckTest() {
+        super(new TestEnvironment(500));
+    }
+
+    @Override
+    public Publisher<String> createPublisher(long elements) {
+        ReplayPublisher publisher = new ReplayPublisher(null);
+        publisher.connect(new InputStreamPublisher(
+                new InternetRequestPublisherTckTest.LinesInputStream(elements), line -> line));
+        return publisher;
+    }
+
+    @Override
+    public Publisher<String> createFailedPublisher() {
+        ReplayPublisher publisher = new ReplayPublisher(null);
+        publisher.connect(new ExceptionPublisher(new RuntimeException("connect failed")));
+        return publisher;
+    }
+
+    @Override
+    public long maxElementsFromPublisher() {
+        // Everything is kept for replay.
+        return 1024;
+    }
+
+    private static final class Collector implements Subscriber<String> {
+        final List<String> items = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String s) {
+            items.add(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void lateSubscriberGetsEarlierChunksReplayed() throws Exception {
+        ReplayPublisher publisher = (ReplayPublisher) createPublisher(50);
+        Collector first = new Collector();
+        publisher.subscribe(first);
+        assertTrue(first.done.await(1, TimeUnit.SECONDS));
+
+        Collector late = new Collector();
+        publisher.subscribe(late);
+        assertTrue(late.done.await(1, TimeUnit.SECONDS));
+        assertEquals(late.items, first.items);
+        assertEquals(late.items.size(), 50);
+    }
+
+    @Test
+    public void lastCancelReportsIdleWithoutCancellingUpstream() throws Exception {
+        CountDownLatch idle = new CountDownLatch(1);
+        ReplayPublisher publisher = new ReplayPublisher(p -> idle.countDown());
+        CountDownLatch upstreamCancelled = new CountDownLatch(1);
+        // Upstream that never emits, like a server that is still thinking.
+        publisher.connect(s -> s.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                upstreamCancelled.countDown();
+            }
+        }));
+        Subscription[] subscription = new Subscription[1];
+        publisher.subscribe(new Subscriber<String>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription[0] = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(String s) {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        subscription[0].cancel();
+        assertTrue(idle.await(1, TimeUnit.SECONDS));
+        assertEquals(upstreamCancelled.getCount(), 1L);
+        publisher.cancelUpstream();
+        assertEquals(upstreamCancelled.getCount(), 0L);
+        assertTrue(publisher.hasFailed());
+    }
+}
@@ -0,0 +1,28 @@
+package tn.eluea.kgpt.llm.publisher;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+/** Covers the fixed publishers: SimpleStringPublisher and (as the failed publisher) ExceptionPublisher. */
+public class SimpleStringPublisherTckTest extends PublisherVerification<String> {
+
+    public SimpleStringPublisherTckTest() {
+        super(new TestEnvironment(500));
+    }
+
+    @Override
+    public Publisher<String> createPublisher(long elements) {
+        return new SimpleStringPublisher("Missing API Key");
+    }
+
+    @Override
+    public Publisher<String> createFailedPublisher() {
+        return new ExceptionPublisher(new RuntimeException("connect failed"));
+    }
+
+    @Override
+    public long maxElementsFromPublisher() {
+        return 1;
+    }
+}